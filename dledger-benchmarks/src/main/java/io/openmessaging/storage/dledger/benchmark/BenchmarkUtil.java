@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.benchmark;
+
+import io.openmessaging.storage.dledger.DLedgerConfig;
+import io.openmessaging.storage.dledger.MemberState;
+import io.openmessaging.storage.dledger.entry.DLedgerEntry;
+import io.openmessaging.storage.dledger.store.file.DLedgerMmapFileStore;
+import java.io.File;
+import java.util.Random;
+import java.util.UUID;
+
+public class BenchmarkUtil {
+
+    public static final String BENCHMARK_BASE = System.getProperty("java.io.tmpdir") + File.separator + "dledger-benchmarks";
+
+    public static String newStoreDir() {
+        return BENCHMARK_BASE + File.separator + UUID.randomUUID();
+    }
+
+    public static byte[] newBody(int size) {
+        byte[] body = new byte[size];
+        new Random(size).nextBytes(body);
+        return body;
+    }
+
+    public static DLedgerEntry newEntry(int bodySize) {
+        DLedgerEntry entry = new DLedgerEntry();
+        entry.setBody(newBody(bodySize));
+        return entry;
+    }
+
+    /**
+     * Create a single node store as leader, or as follower of "n1", the election and replication are not started.
+     */
+    public static DLedgerMmapFileStore createFileStore(String storeDir, boolean leader) {
+        DLedgerConfig config = new DLedgerConfig();
+        config.setStoreBaseDir(storeDir);
+        config.group("benchmark").selfId("n0").peers("n0-localhost:40911;n1-localhost:40912");
+        config.setStoreType(DLedgerConfig.FILE);
+        config.setEnableDiskForceClean(false);
+        config.setEnableLeaderElector(false);
+        MemberState memberState = new MemberState(config);
+        memberState.setCurrTermForTest(0);
+        if (leader) {
+            memberState.changeToLeader(0);
+        } else {
+            memberState.changeToFollower(0, "n1");
+        }
+        DLedgerMmapFileStore fileStore = new DLedgerMmapFileStore(config, memberState);
+        fileStore.startup();
+        return fileStore;
+    }
+
+    public static void deleteDir(String path) {
+        File file = new File(path);
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File child : files) {
+                    deleteDir(child.getPath());
+                }
+            }
+        }
+        file.delete();
+    }
+}
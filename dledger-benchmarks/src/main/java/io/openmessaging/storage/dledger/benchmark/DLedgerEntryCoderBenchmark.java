@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.benchmark;
+
+import io.openmessaging.storage.dledger.entry.DLedgerEntry;
+import io.openmessaging.storage.dledger.entry.DLedgerEntryCoder;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DLedgerEntryCoderBenchmark {
+
+    @Param({"128", "1024", "4096"})
+    private int entrySize;
+
+    private DLedgerEntry entry;
+    private ByteBuffer encodeBuffer;
+    private ByteBuffer encodedBuffer;
+
+    @Setup
+    public void setup() {
+        entry = BenchmarkUtil.newEntry(entrySize);
+        entry.setIndex(1024);
+        entry.setTerm(1);
+        entry.setPos(1024L * entrySize);
+        encodeBuffer = ByteBuffer.allocate(DLedgerEntry.BODY_OFFSET + entrySize);
+        encodedBuffer = ByteBuffer.allocate(DLedgerEntry.BODY_OFFSET + entrySize);
+        DLedgerEntryCoder.encode(entry, encodedBuffer);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        DLedgerEntryCoder.encode(entry, encodeBuffer);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public DLedgerEntry decode() {
+        return DLedgerEntryCoder.decode(encodedBuffer.duplicate());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.benchmark;
+
+import io.openmessaging.storage.dledger.entry.DLedgerEntry;
+import io.openmessaging.storage.dledger.store.file.DLedgerMmapFileStore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The stores are recreated for every iteration, so that the disk usage is bounded by one iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DLedgerMmapFileStoreBenchmark {
+
+    private static final int PRELOAD_ENTRY_NUM = 10000;
+
+    @Param({"128", "1024", "4096"})
+    private int entrySize;
+
+    private String leaderStoreDir;
+    private String followerStoreDir;
+    private DLedgerMmapFileStore leaderStore;
+    private DLedgerMmapFileStore followerStore;
+    private DLedgerEntry entry;
+    private DLedgerEntry followerEntry;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        leaderStoreDir = BenchmarkUtil.newStoreDir();
+        followerStoreDir = BenchmarkUtil.newStoreDir();
+        leaderStore = BenchmarkUtil.createFileStore(leaderStoreDir, true);
+        followerStore = BenchmarkUtil.createFileStore(followerStoreDir, false);
+        entry = BenchmarkUtil.newEntry(entrySize);
+        followerEntry = BenchmarkUtil.newEntry(entrySize);
+        followerEntry.setTerm(0);
+        for (int i = 0; i < PRELOAD_ENTRY_NUM; i++) {
+            leaderStore.appendAsLeader(entry);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        leaderStore.shutdown();
+        followerStore.shutdown();
+        BenchmarkUtil.deleteDir(leaderStoreDir);
+        BenchmarkUtil.deleteDir(followerStoreDir);
+    }
+
+    @Benchmark
+    public DLedgerEntry appendAsLeader() {
+        return leaderStore.appendAsLeader(entry);
+    }
+
+    @Benchmark
+    public DLedgerEntry appendAsFollower() {
+        //the pos is assigned by the leader, and the same file size leads to the same pos on the follower
+        followerEntry.setIndex(followerStore.getLedgerEndIndex() + 1);
+        followerEntry.setPos(followerStore.getDataFileList().preAppend(followerEntry.computeSizeInBytes()));
+        return followerStore.appendAsFollower(followerEntry, 0, "n1");
+    }
+
+    @Benchmark
+    public DLedgerEntry get() {
+        return leaderStore.get(ThreadLocalRandom.current().nextLong(PRELOAD_ENTRY_NUM));
+    }
+}
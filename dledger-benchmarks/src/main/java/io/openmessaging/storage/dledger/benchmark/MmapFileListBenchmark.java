@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.benchmark;
+
+import io.openmessaging.storage.dledger.store.file.MmapFileList;
+import io.openmessaging.storage.dledger.store.file.SelectMmapBufferResult;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MmapFileListBenchmark {
+
+    private static final int MAPPED_FILE_SIZE = 64 * 1024 * 1024;
+    private static final int PRELOAD_ENTRY_NUM = 10000;
+
+    @Param({"128", "1024", "4096"})
+    private int entrySize;
+
+    private String storeDir;
+    private MmapFileList mmapFileList;
+    private byte[] data;
+    private long[] positions;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        storeDir = BenchmarkUtil.newStoreDir();
+        mmapFileList = new MmapFileList(storeDir, MAPPED_FILE_SIZE);
+        data = BenchmarkUtil.newBody(entrySize);
+        positions = new long[PRELOAD_ENTRY_NUM];
+        for (int i = 0; i < PRELOAD_ENTRY_NUM; i++) {
+            positions[i] = mmapFileList.append(data);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        mmapFileList.destroy();
+        BenchmarkUtil.deleteDir(storeDir);
+    }
+
+    @Benchmark
+    public long append() {
+        return mmapFileList.append(data);
+    }
+
+    @Benchmark
+    public void getData(Blackhole blackhole) {
+        long pos = positions[ThreadLocalRandom.current().nextInt(PRELOAD_ENTRY_NUM)];
+        SelectMmapBufferResult sbr = mmapFileList.getData(pos, entrySize);
+        try {
+            blackhole.consume(sbr.getByteBuffer().get(entrySize - 1));
+        } finally {
+            SelectMmapBufferResult.release(sbr);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import io.openmessaging.storage.dledger.entry.DLedgerEntry;
+import io.openmessaging.storage.dledger.protocol.PushEntryRequest;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The json round trip of the push request, which is paid by every replicated entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PushEntryRequestBenchmark {
+
+    @Param({"128", "1024", "4096"})
+    private int entrySize;
+
+    @Param({"1", "32"})
+    private int batchNum;
+
+    private PushEntryRequest request;
+    private byte[] encodedRequest;
+
+    @Setup
+    public void setup() {
+        request = new PushEntryRequest();
+        request.setGroup("benchmark");
+        request.setRemoteId("n1");
+        request.setLeaderId("n0");
+        request.setTerm(1);
+        request.setType(PushEntryRequest.Type.APPEND);
+        request.setCommitIndex(1023);
+        for (int i = 0; i < batchNum; i++) {
+            DLedgerEntry entry = BenchmarkUtil.newEntry(entrySize);
+            entry.setIndex(1024 + i);
+            entry.setTerm(1);
+            entry.setPos((1024L + i) * (DLedgerEntry.BODY_OFFSET + entrySize));
+            entry.computeSizeInBytes();
+            if (batchNum == 1) {
+                request.setEntry(entry);
+            } else {
+                request.addEntry(entry);
+            }
+        }
+        encodedRequest = JSON.toJSONBytes(request);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return JSON.toJSONBytes(request);
+    }
+
+    @Benchmark
+    public PushEntryRequest decode() {
+        return JSON.parseObject(encodedRequest, PushEntryRequest.class);
+    }
+}
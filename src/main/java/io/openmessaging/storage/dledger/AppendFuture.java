@@ -20,6 +20,8 @@ public class AppendFuture<T> extends TimeoutFuture<T> {
 
     private long pos = -1;
 
+    private final long createTimeNs = System.nanoTime();
+
     public AppendFuture() {
 
     }
@@ -36,6 +38,10 @@ public class AppendFuture<T> extends TimeoutFuture<T> {
         this.pos = pos;
     }
 
+    public long getCreateTimeNs() {
+        return createTimeNs;
+    }
+
     public static <T> AppendFuture<T> newCompletedFuture(long pos, T value) {
         AppendFuture<T> future = new AppendFuture<T>();
         future.setPos(pos);
@@ -16,6 +16,7 @@
 package io.openmessaging.storage.dledger;
 
 public class BatchAppendFuture<T> extends AppendFuture<T> {
+    private long firstIndex = -1;
     private long[] positions;
 
     public BatchAppendFuture() {
@@ -26,6 +27,14 @@ public class BatchAppendFuture<T> extends AppendFuture<T> {
         super(timeOutMs);
     }
 
+    public long getFirstIndex() {
+        return firstIndex;
+    }
+
+    public void setFirstIndex(long firstIndex) {
+        this.firstIndex = firstIndex;
+    }
+
     public long[] getPositions() {
         return positions;
     }
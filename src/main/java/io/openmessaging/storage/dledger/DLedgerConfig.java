@@ -88,11 +88,145 @@ public class DLedgerConfig {
     private int minTakeLeadershipVoteIntervalMs =  30;
     private int maxTakeLeadershipVoteIntervalMs =  100;
 
-    private boolean isEnableBatchPush = false;
-    private int maxBatchPushSize = 4 * 1024;
+    private boolean isEnableBatchPush = true;
+    private int maxBatchPushSize = 1024 * 1024;
 
     private long leadershipTransferWaitTimeout = 1000;
 
+    /**
+     * The leader serves reads locally while it holds a lease of (maxHeartBeatLeak * heartBeatTimeIntervalMs -
+     * maxClockDriftMs), counted from the start of its last heartbeat round acked by a quorum.
+     * Followers refuse to vote until the same election timeout has passed since they last heard from the leader.
+     */
+    private boolean enableLeaderLease = false;
+    private int maxClockDriftMs = 500;
+
+    /**
+     * The server side limits of a range read, the smaller of these and the request's limits is applied.
+     */
+    private int maxGetEntriesNum = 1024;
+    private int maxGetEntriesSize = 4 * 1024 * 1024;
+    private long maxGetEntriesWaitMs = 30 * 1000;
+
+    /**
+     * The metrics are always registered as an MBean, and exported in the Prometheus text format at this port if it is not negative.
+     */
+    @Parameter(names = {"--metrics-port"}, description = "The port to export the metrics in Prometheus text format, -1 to disable")
+    private int metricsPort = -1;
+
+    /**
+     * Trace one of every traceSampleRate appends through the pipeline, 0 to disable.
+     * The traces slower than slowTraceThresholdMs are kept to be dumped by the trace command.
+     */
+    @Parameter(names = {"--trace-sample-rate"}, description = "Trace one of every N appends, 0 to disable")
+    private int traceSampleRate = 0;
+    private int slowTraceThresholdMs = 100;
+
+    /**
+     * The threads shared by the replication tasks of all the peers, a server hosted by a proxy uses the proxy's instead.
+     */
+    @Parameter(names = {"--replication-thread-num"}, description = "The threads to replicate the entries to all the peers")
+    private int replicationThreadNum = 2;
+
+    /**
+     * The threads to read the entries for the requests held until the entries are committed, so that the range reads
+     * never run on the replication threads completing the wait. A server hosted by a proxy uses the proxy's instead.
+     */
+    @Parameter(names = {"--read-thread-num"}, description = "The threads to read the entries for the waiting requests")
+    private int readThreadNum = 2;
+
+    /**
+     * Run the blocking rpc paths, such as the transferee waiting to catch up, on virtual threads on Java 21+.
+     * The platform threads are used on the older JVMs.
+     */
+    @Parameter(names = {"--use-virtual-thread"}, description = "Run the blocking rpc paths on virtual threads on Java 21+")
+    private boolean useVirtualThread = false;
+
+    /**
+     * Size the batches pushed to each follower between minBatchPushSize and maxBatchPushSize by its lag and rtt,
+     * otherwise the batches are sent at maxBatchPushSize. A smaller batch is sent once the follower catches up, or
+     * after batchPushLingerMs if there are batches waiting for the response.
+     */
+    private boolean enableAdaptiveBatchPush = true;
+    private int minBatchPushSize = 4 * 1024;
+    private long batchPushLingerMs = 1;
+
+    /**
+     * Before increasing the term, a candidate asks the peers whether it could win the election in the next term, and
+     * the peers still hearing from a leader refuse. A partitioned node then keeps its term instead of disrupting the
+     * group with a larger one when it comes back. The older peers not knowing the pre-vote count as granting it, so a
+     * rolling upgrade still elects.
+     */
+    @Parameter(names = {"--enable-pre-vote"}, description = "Confirm the election could be won before increasing the term")
+    private boolean enablePreVote = true;
+
+    /**
+     * Suspect the leader by a phi accrual failure detector over the heartbeat intervals, once a heartbeat is overdue
+     * and at the latest after maxHeartBeatLeak intervals, and back off the votes by the measured rtt. A short
+     * heartBeatTimeIntervalMs with a larger maxHeartBeatLeak then fails over fast without suspecting a slow network.
+     * A held leader lease still has to expire before the votes are granted.
+     */
+    @Parameter(names = {"--enable-adaptive-election"}, description = "Detect the leader failure by the heartbeat intervals and back off the votes by the rtt")
+    private boolean enableAdaptiveElection = false;
+    private double phiSuspectThreshold = 8.0;
+
+    /**
+     * The replicas pushed to but not voting nor counted in the quorum, in the format of the peers. A learner serves
+     * the follower reads and could be promoted to a peer once caught up.
+     */
+    @Parameter(names = {"--learners"}, description = "Learner info of this group")
+    private String learners = "";
+
+    /**
+     * The peers voting and acking but never leading, separated by ';' and the same on all the members. A witness on
+     * the file store drops the data files once committed, so it keeps little more than the uncommitted entries.
+     */
+    @Parameter(names = {"--witnesses"}, description = "The ids of the witnesses of this group")
+    private String witnesses = "";
+
+    /**
+     * The number of the peers that must store an entry before it is committed, 0 for a majority. A smaller write
+     * quorum lowers the commit latency, and the election quorum grows to keep writeQuorumSize + electionQuorumSize
+     * larger than the peer number, so any two quorums still overlap.
+     */
+    @Parameter(names = {"--write-quorum-size"}, description = "The number of the peers acking an entry before it is committed, 0 for a majority")
+    private int writeQuorumSize = 0;
+
+    /**
+     * The number of the votes to win an election, 0 for the smallest one overlapping both the write quorums and the
+     * other election quorums. It also bounds how many peers may fail before the group cannot elect a leader.
+     */
+    @Parameter(names = {"--election-quorum-size"}, description = "The number of the votes to win an election, 0 to derive it from the write quorum")
+    private int electionQuorumSize = 0;
+
+    /**
+     * The zone of each peer, in the format of the peers as "n0-zone0;n1-zone1" and the same on all the members.
+     */
+    @Parameter(names = {"--zones"}, description = "The zones of the peers of this group")
+    private String zones = "";
+
+    /**
+     * The number of the zones the acks of an entry must come from before it is committed, 0 to ignore the zones. A
+     * committed entry then survives the failure of minAckZones - 1 zones.
+     */
+    @Parameter(names = {"--min-ack-zones"}, description = "The number of the zones acking an entry before it is committed")
+    private int minAckZones = 0;
+
+    /**
+     * Transfer the leadership to a peer in the zone most appends come from, so that the clients of that zone skip the
+     * cross zone hop. The preferredLeaderIds take precedence when set.
+     */
+    @Parameter(names = {"--enable-client-zone-leader"}, description = "Move the leader to the zone most appends come from")
+    private boolean enableClientZoneLeader = false;
+
+    /**
+     * Size the window of the push requests in flight to each peer by the round trip time of its link, between
+     * minPushWindowSize and the fixed window used otherwise.
+     */
+    @Parameter(names = {"--enable-adaptive-push-window"}, description = "Size the push window of each peer by its rtt")
+    private boolean enableAdaptivePushWindow = false;
+    private int minPushWindowSize = 16;
+
     public String getDefaultPath() {
         return storeBaseDir + File.separator + "dledger-" + selfId;
     }
@@ -418,4 +552,212 @@ public class DLedgerConfig {
     public void setReadOnlyDataStoreDirs(String readOnlyDataStoreDirs) {
         this.readOnlyDataStoreDirs = readOnlyDataStoreDirs;
     }
+
+    public boolean isEnableLeaderLease() {
+        return enableLeaderLease;
+    }
+
+    public void setEnableLeaderLease(boolean enableLeaderLease) {
+        this.enableLeaderLease = enableLeaderLease;
+    }
+
+    public int getMaxClockDriftMs() {
+        return maxClockDriftMs;
+    }
+
+    public void setMaxClockDriftMs(int maxClockDriftMs) {
+        this.maxClockDriftMs = maxClockDriftMs;
+    }
+
+    public int getMaxGetEntriesNum() {
+        return maxGetEntriesNum;
+    }
+
+    public void setMaxGetEntriesNum(int maxGetEntriesNum) {
+        this.maxGetEntriesNum = maxGetEntriesNum;
+    }
+
+    public int getMaxGetEntriesSize() {
+        return maxGetEntriesSize;
+    }
+
+    public void setMaxGetEntriesSize(int maxGetEntriesSize) {
+        this.maxGetEntriesSize = maxGetEntriesSize;
+    }
+
+    public long getMaxGetEntriesWaitMs() {
+        return maxGetEntriesWaitMs;
+    }
+
+    public void setMaxGetEntriesWaitMs(long maxGetEntriesWaitMs) {
+        this.maxGetEntriesWaitMs = maxGetEntriesWaitMs;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    public int getTraceSampleRate() {
+        return traceSampleRate;
+    }
+
+    public void setTraceSampleRate(int traceSampleRate) {
+        this.traceSampleRate = traceSampleRate;
+    }
+
+    public int getSlowTraceThresholdMs() {
+        return slowTraceThresholdMs;
+    }
+
+    public void setSlowTraceThresholdMs(int slowTraceThresholdMs) {
+        this.slowTraceThresholdMs = slowTraceThresholdMs;
+    }
+
+    public int getReplicationThreadNum() {
+        return replicationThreadNum;
+    }
+
+    public void setReplicationThreadNum(int replicationThreadNum) {
+        this.replicationThreadNum = replicationThreadNum;
+    }
+
+    public int getReadThreadNum() {
+        return readThreadNum;
+    }
+
+    public void setReadThreadNum(int readThreadNum) {
+        this.readThreadNum = readThreadNum;
+    }
+
+    public boolean isUseVirtualThread() {
+        return useVirtualThread;
+    }
+
+    public void setUseVirtualThread(boolean useVirtualThread) {
+        this.useVirtualThread = useVirtualThread;
+    }
+
+    public boolean isEnableAdaptiveBatchPush() {
+        return enableAdaptiveBatchPush;
+    }
+
+    public void setEnableAdaptiveBatchPush(boolean enableAdaptiveBatchPush) {
+        this.enableAdaptiveBatchPush = enableAdaptiveBatchPush;
+    }
+
+    public int getMinBatchPushSize() {
+        return minBatchPushSize;
+    }
+
+    public void setMinBatchPushSize(int minBatchPushSize) {
+        this.minBatchPushSize = minBatchPushSize;
+    }
+
+    public long getBatchPushLingerMs() {
+        return batchPushLingerMs;
+    }
+
+    public void setBatchPushLingerMs(long batchPushLingerMs) {
+        this.batchPushLingerMs = batchPushLingerMs;
+    }
+
+    public boolean isEnablePreVote() {
+        return enablePreVote;
+    }
+
+    public void setEnablePreVote(boolean enablePreVote) {
+        this.enablePreVote = enablePreVote;
+    }
+
+    public boolean isEnableAdaptiveElection() {
+        return enableAdaptiveElection;
+    }
+
+    public void setEnableAdaptiveElection(boolean enableAdaptiveElection) {
+        this.enableAdaptiveElection = enableAdaptiveElection;
+    }
+
+    public double getPhiSuspectThreshold() {
+        return phiSuspectThreshold;
+    }
+
+    public void setPhiSuspectThreshold(double phiSuspectThreshold) {
+        this.phiSuspectThreshold = phiSuspectThreshold;
+    }
+
+    public String getLearners() {
+        return learners;
+    }
+
+    public void setLearners(String learners) {
+        this.learners = learners;
+    }
+
+    public String getWitnesses() {
+        return witnesses;
+    }
+
+    public void setWitnesses(String witnesses) {
+        this.witnesses = witnesses;
+    }
+
+    public int getWriteQuorumSize() {
+        return writeQuorumSize;
+    }
+
+    public void setWriteQuorumSize(int writeQuorumSize) {
+        this.writeQuorumSize = writeQuorumSize;
+    }
+
+    public int getElectionQuorumSize() {
+        return electionQuorumSize;
+    }
+
+    public void setElectionQuorumSize(int electionQuorumSize) {
+        this.electionQuorumSize = electionQuorumSize;
+    }
+
+    public String getZones() {
+        return zones;
+    }
+
+    public void setZones(String zones) {
+        this.zones = zones;
+    }
+
+    public int getMinAckZones() {
+        return minAckZones;
+    }
+
+    public void setMinAckZones(int minAckZones) {
+        this.minAckZones = minAckZones;
+    }
+
+    public boolean isEnableClientZoneLeader() {
+        return enableClientZoneLeader;
+    }
+
+    public void setEnableClientZoneLeader(boolean enableClientZoneLeader) {
+        this.enableClientZoneLeader = enableClientZoneLeader;
+    }
+
+    public boolean isEnableAdaptivePushWindow() {
+        return enableAdaptivePushWindow;
+    }
+
+    public void setEnableAdaptivePushWindow(boolean enableAdaptivePushWindow) {
+        this.enableAdaptivePushWindow = enableAdaptivePushWindow;
+    }
+
+    public int getMinPushWindowSize() {
+        return minPushWindowSize;
+    }
+
+    public void setMinPushWindowSize(int minPushWindowSize) {
+        this.minPushWindowSize = minPushWindowSize;
+    }
 }
@@ -19,6 +19,9 @@ package io.openmessaging.storage.dledger;
 import com.alibaba.fastjson.JSON;
 import io.openmessaging.storage.dledger.entry.DLedgerEntry;
 import io.openmessaging.storage.dledger.exception.DLedgerException;
+import io.openmessaging.storage.dledger.metrics.AppendTracer;
+import io.openmessaging.storage.dledger.metrics.DLedgerMetrics;
+import io.openmessaging.storage.dledger.metrics.LatencyHistogram;
 import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
 import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
 import io.openmessaging.storage.dledger.protocol.PushEntryRequest;
@@ -30,19 +33,27 @@ import io.openmessaging.storage.dledger.store.file.DLedgerMmapFileStore;
 import io.openmessaging.storage.dledger.utils.DLedgerUtils;
 import io.openmessaging.storage.dledger.utils.Pair;
 import io.openmessaging.storage.dledger.utils.PreConditions;
+import io.openmessaging.storage.dledger.utils.PushBatchSizer;
+import io.openmessaging.storage.dledger.utils.PushWindow;
 import io.openmessaging.storage.dledger.utils.Quota;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +69,10 @@ public class DLedgerEntryPusher {
 
     private DLedgerRpcService dLedgerRpcService;
 
+    private final DLedgerMetrics metrics;
+
+    private final AppendTracer appendTracer;
+
     private Map<Long, ConcurrentMap<String, Long>> peerWaterMarksByTerm = new ConcurrentHashMap<>();
     private Map<Long, ConcurrentMap<Long, TimeoutFuture<AppendEntryResponse>>> pendingAppendResponsesByTerm = new ConcurrentHashMap<>();
 
@@ -65,27 +80,135 @@ public class DLedgerEntryPusher {
 
     private QuorumAckChecker quorumAckChecker;
 
-    private Map<String, EntryDispatcher> dispatcherMap = new HashMap<>();
+    private final Map<String, EntryDispatcher> dispatcherMap = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService replicationExecutor;
+
+    private volatile boolean started = false;
+
+    private final ConcurrentMap<Long, List<CompletableFuture<Long>>> committedIndexWaiters = new ConcurrentHashMap<>();
+
+    //the peers being caught up, with the index to be acked and the future completed then
+    private final ConcurrentMap<String, Pair<Long, CompletableFuture<Boolean>>> catchUpWaiters = new ConcurrentHashMap<>();
 
     private Optional<StateMachineCaller> fsmCaller;
 
     public DLedgerEntryPusher(DLedgerConfig dLedgerConfig, MemberState memberState, DLedgerStore dLedgerStore,
-        DLedgerRpcService dLedgerRpcService) {
+        DLedgerRpcService dLedgerRpcService, DLedgerMetrics metrics, AppendTracer appendTracer,
+        ScheduledExecutorService replicationExecutor) {
         this.dLedgerConfig = dLedgerConfig;
         this.memberState = memberState;
         this.dLedgerStore = dLedgerStore;
         this.dLedgerRpcService = dLedgerRpcService;
-        for (String peer : memberState.getPeerMap().keySet()) {
+        this.metrics = metrics;
+        this.appendTracer = appendTracer;
+        this.replicationExecutor = replicationExecutor;
+        for (String peer : memberState.getReplicaIds()) {
             if (!peer.equals(memberState.getSelfId())) {
-                dispatcherMap.put(peer, new EntryDispatcher(peer, logger));
+                dispatcherMap.put(peer, new EntryDispatcher(peer, replicationExecutor, logger));
             }
         }
-        this.entryHandler = new EntryHandler(logger);
-        this.quorumAckChecker = new QuorumAckChecker(logger);
+        this.entryHandler = new EntryHandler(replicationExecutor, logger);
+        this.quorumAckChecker = new QuorumAckChecker(replicationExecutor, logger);
         this.fsmCaller = Optional.empty();
+        registerGauges();
+    }
+
+    private void registerGauges() {
+        metrics.gauge(DLedgerMetrics.PENDING_APPEND_REQUESTS, "The appends waiting for the quorum ack on the leader", () -> {
+            Map<Long, TimeoutFuture<AppendEntryResponse>> responses = pendingAppendResponsesByTerm.get(memberState.currTerm());
+            return responses == null ? 0 : responses.size();
+        });
+        metrics.gauge(DLedgerMetrics.PENDING_WRITE_REQUESTS, "The pushed entries waiting to be appended on the follower",
+            () -> entryHandler.writeRequestMap.size());
+        for (EntryDispatcher dispatcher : dispatcherMap.values()) {
+            registerDispatcherGauges(dispatcher);
+        }
+    }
+
+    private void registerDispatcherGauges(EntryDispatcher dispatcher) {
+        String peerId = dispatcher.peerId;
+        metrics.gauge(DLedgerMetrics.REPLICATION_LAG_ENTRIES, "The entries not acked by the peer, only on the leader",
+            () -> getReplicationLag(peerId, false), "peer", peerId);
+        metrics.gauge(DLedgerMetrics.REPLICATION_LAG_BYTES, "The bytes not acked by the peer, only on the leader",
+            () -> getReplicationLag(peerId, true), "peer", peerId);
+        metrics.gauge(DLedgerMetrics.PENDING_PUSH_REQUESTS, "The push requests waiting for the response of the peer",
+            () -> dispatcher.pendingMap.size() + dispatcher.batchPendingMap.size(), "peer", peerId);
+        metrics.gauge(DLedgerMetrics.PUSH_BATCH_TARGET_BYTES, "The size of the batches to push to the peer, chosen by its lag and rtt",
+            () -> dispatcher.getBatchPushTargetSize(), "peer", peerId);
+        metrics.gauge(DLedgerMetrics.PUSH_WINDOW_SIZE, "The push requests allowed in flight to the peer",
+            () -> dispatcher.getPushWindowSize(), "peer", peerId);
+    }
+
+    private void removeDispatcherGauges(String peerId) {
+        metrics.removeGauge(DLedgerMetrics.REPLICATION_LAG_ENTRIES, "peer", peerId);
+        metrics.removeGauge(DLedgerMetrics.REPLICATION_LAG_BYTES, "peer", peerId);
+        metrics.removeGauge(DLedgerMetrics.PENDING_PUSH_REQUESTS, "peer", peerId);
+        metrics.removeGauge(DLedgerMetrics.PUSH_BATCH_TARGET_BYTES, "peer", peerId);
+        metrics.removeGauge(DLedgerMetrics.PUSH_WINDOW_SIZE, "peer", peerId);
+    }
+
+    /**
+     * Create the dispatchers for the added peers and learners and retire the ones of the removed, called once the
+     * peers are changed by a config entry.
+     */
+    public synchronized void updatePeers() {
+        Set<String> replicaIds = memberState.getReplicaIds();
+        for (String peer : replicaIds) {
+            if (peer.equals(memberState.getSelfId()) || dispatcherMap.containsKey(peer)) {
+                continue;
+            }
+            EntryDispatcher dispatcher = new EntryDispatcher(peer, replicationExecutor, logger);
+            dispatcherMap.put(peer, dispatcher);
+            registerDispatcherGauges(dispatcher);
+            if (started) {
+                dispatcher.start();
+            }
+            logger.info("[{}][UpdatePeers] add the dispatcher for {}", memberState.getSelfId(), peer);
+        }
+        for (String peer : new ArrayList<>(dispatcherMap.keySet())) {
+            if (replicaIds.contains(peer)) {
+                continue;
+            }
+            EntryDispatcher dispatcher = dispatcherMap.remove(peer);
+            dispatcher.shutdown();
+            removeDispatcherGauges(peer);
+            logger.info("[{}][UpdatePeers] remove the dispatcher for {}", memberState.getSelfId(), peer);
+        }
+        quorumAckChecker.wakeup();
+    }
+
+    private void applyConfigEntry(DLedgerEntry entry) {
+        if (entry.getChannel() == DLedgerEntry.CHANNEL_CONFIG) {
+            memberState.applyConfig(entry.getIndex(), new String(entry.getBody(), StandardCharsets.UTF_8));
+            updatePeers();
+        }
     }
 
-    public void startup() {
+    private long getReplicationLag(String peerId, boolean inBytes) {
+        if (!memberState.isLeader()) {
+            return 0;
+        }
+        ConcurrentMap<String, Long> waterMarks = peerWaterMarksByTerm.get(memberState.currTerm());
+        Long peerWaterMark = waterMarks == null ? null : waterMarks.get(peerId);
+        long ledgerEndIndex = dLedgerStore.getLedgerEndIndex();
+        if (peerWaterMark == null || peerWaterMark >= ledgerEndIndex) {
+            return 0;
+        }
+        if (!inBytes) {
+            return ledgerEndIndex - peerWaterMark;
+        }
+        try {
+            DLedgerEntry firstEntry = dLedgerStore.get(Math.max(peerWaterMark + 1, dLedgerStore.getLedgerBeginIndex()));
+            DLedgerEntry lastEntry = dLedgerStore.get(ledgerEndIndex);
+            return lastEntry.getPos() + lastEntry.getSize() - firstEntry.getPos();
+        } catch (Throwable t) {
+            return -1;
+        }
+    }
+
+    public synchronized void startup() {
+        started = true;
         entryHandler.start();
         quorumAckChecker.start();
         for (EntryDispatcher dispatcher : dispatcherMap.values()) {
@@ -93,7 +216,8 @@ public class DLedgerEntryPusher {
         }
     }
 
-    public void shutdown() {
+    public synchronized void shutdown() {
+        started = false;
         entryHandler.shutdown();
         quorumAckChecker.shutdown();
         for (EntryDispatcher dispatcher : dispatcherMap.values()) {
@@ -130,16 +254,45 @@ public class DLedgerEntryPusher {
     private void updatePeerWaterMark(long term, String peerId, long index) {
         synchronized (peerWaterMarksByTerm) {
             checkTermForWaterMark(term, "updatePeerWaterMark");
-            if (peerWaterMarksByTerm.get(term).get(peerId) < index) {
+            if (peerWaterMarksByTerm.get(term).getOrDefault(peerId, -1L) < index) {
                 peerWaterMarksByTerm.get(term).put(peerId, index);
             }
         }
+        Pair<Long, CompletableFuture<Boolean>> waiter = catchUpWaiters.get(peerId);
+        if (waiter != null && index >= waiter.getKey()) {
+            waiter.getValue().complete(true);
+        }
+    }
+
+    /**
+     * Push the entries to the peer without waiting for the quota, the linger or the push window, until it acks the
+     * index in the term. The future is completed with true then, or with false once timeoutMs passes.
+     */
+    public CompletableFuture<Boolean> catchUp(long term, String peerId, long index, long timeoutMs) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        Pair<Long, CompletableFuture<Boolean>> waiter = new Pair<>(index, future);
+        catchUpWaiters.put(peerId, waiter);
+        future.whenComplete((x, ex) -> catchUpWaiters.remove(peerId, waiter));
+        try {
+            replicationExecutor.schedule(() -> future.complete(false), timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            future.complete(false);
+        }
+        //the peer may have acked it before the waiter is registered
+        if (getPeerWaterMark(term, peerId) >= index) {
+            future.complete(true);
+        }
+        EntryDispatcher dispatcher = dispatcherMap.get(peerId);
+        if (dispatcher != null) {
+            dispatcher.wakeup();
+        }
+        return future;
     }
 
     public long getPeerWaterMark(long term, String peerId) {
         synchronized (peerWaterMarksByTerm) {
             checkTermForWaterMark(term, "getPeerWaterMark");
-            return peerWaterMarksByTerm.get(term).get(peerId);
+            return peerWaterMarksByTerm.get(term).getOrDefault(peerId, -1L);
         }
     }
 
@@ -157,6 +310,8 @@ public class DLedgerEntryPusher {
             response.setIndex(entry.getIndex());
             response.setTerm(entry.getTerm());
             response.setPos(entry.getPos());
+            //the learners are still pushed to
+            wakeUpDispatchers();
             if (isBatchWait) {
                 return BatchAppendFuture.newCompletedFuture(entry.getPos(), response);
             }
@@ -174,6 +329,7 @@ public class DLedgerEntryPusher {
             if (old != null) {
                 logger.warn("[MONITOR] get old wait at index={}", entry.getIndex());
             }
+            wakeUpDispatchers();
             return future;
         }
     }
@@ -184,6 +340,15 @@ public class DLedgerEntryPusher {
         }
     }
 
+    /**
+     * Wake up all the tasks to refresh their states, called when the role or the term changes.
+     */
+    public void wakeUpAll() {
+        entryHandler.wakeup();
+        quorumAckChecker.wakeup();
+        wakeUpDispatchers();
+    }
+
     /**
      *
      * Complete the TimeoutFuture in pendingAppendResponsesByTerm (CurrentTerm, index).
@@ -204,6 +369,7 @@ public class DLedgerEntryPusher {
                 response.setIndex(index);
                 response.setLeaderId(this.memberState.getSelfId());
                 response.setPos(((AppendFuture) future).getPos());
+                metrics.getQuorumAckLatency().recordSinceNanos(((AppendFuture) future).getCreateTimeNs());
                 future.complete(response);
                 return true;
             }
@@ -251,6 +417,7 @@ public class DLedgerEntryPusher {
                 response.setIndex(futureEntry.getKey());
                 response.setLeaderId(memberState.getSelfId());
                 response.setPos(((AppendFuture) futureEntry.getValue()).getPos());
+                metrics.getQuorumAckLatency().recordSinceNanos(((AppendFuture) futureEntry.getValue()).getCreateTimeNs());
                 futureEntry.getValue().complete(response);
                 responses.remove(futureEntry.getKey());
             }
@@ -260,23 +427,83 @@ public class DLedgerEntryPusher {
     private void updateCommittedIndex(final long term, final long committedIndex) {
         dLedgerStore.updateCommittedIndex(term, committedIndex);
         this.fsmCaller.ifPresent(caller -> caller.onCommitted(committedIndex));
+        notifyCommittedIndexWaiters();
     }
 
     /**
-     * This thread will check the quorum index and complete the pending requests.
+     * Wait until the committed index reaches {index}, the returned future is completed with the committed index.
+     * The future never times out by itself, the caller should complete it and call cancelWaitCommittedIndex.
      */
-    private class QuorumAckChecker extends ShutdownAbleThread {
+    public CompletableFuture<Long> waitCommittedIndex(final long index) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        committedIndexWaiters.compute(index, (k, waiters) -> {
+            if (waiters == null) {
+                waiters = new ArrayList<>();
+            }
+            waiters.add(future);
+            return waiters;
+        });
+        //the committed index may be updated before the waiter is registered
+        if (dLedgerStore.getCommittedIndex() >= index) {
+            notifyCommittedIndexWaiters();
+        }
+        return future;
+    }
+
+    public void cancelWaitCommittedIndex(final long index, final CompletableFuture<Long> future) {
+        committedIndexWaiters.computeIfPresent(index, (k, waiters) -> {
+            waiters.remove(future);
+            return waiters.isEmpty() ? null : waiters;
+        });
+    }
+
+    private void notifyCommittedIndexWaiters() {
+        if (committedIndexWaiters.isEmpty()) {
+            return;
+        }
+        long committedIndex = dLedgerStore.getCommittedIndex();
+        for (Long index : committedIndexWaiters.keySet()) {
+            if (index > committedIndex) {
+                continue;
+            }
+            List<CompletableFuture<Long>> waiters = committedIndexWaiters.remove(index);
+            if (waiters != null) {
+                for (CompletableFuture<Long> waiter : waiters) {
+                    waiter.complete(committedIndex);
+                }
+            }
+        }
+    }
+
+    /**
+     * This task will check the quorum index and complete the pending requests.
+     * It is woken up by the acks of the peers, and checks the timeout of the pending requests by a timer.
+     */
+    private class QuorumAckChecker extends ReplicationTask {
+
+        private static final long CHECK_TIMEOUT_INTERVAL_MS = 10;
 
         private long lastPrintWatermarkTimeMs = System.currentTimeMillis();
         private long lastCheckLeakTimeMs = System.currentTimeMillis();
         private long lastQuorumIndex = -1;
 
-        public QuorumAckChecker(Logger logger) {
-            super("QuorumAckChecker-" + memberState.getSelfId(), logger);
+        public QuorumAckChecker(ScheduledExecutorService executor, Logger logger) {
+            super("QuorumAckChecker-" + memberState.getSelfId(), executor, logger);
+        }
+
+        private long nextDelay() {
+            long delay = Math.min(3000 - DLedgerUtils.elapsed(lastPrintWatermarkTimeMs), 1000 - DLedgerUtils.elapsed(lastCheckLeakTimeMs));
+            if (memberState.isLeader()) {
+                Map<Long, TimeoutFuture<AppendEntryResponse>> responses = pendingAppendResponsesByTerm.get(memberState.currTerm());
+                if (responses != null && !responses.isEmpty()) {
+                    delay = Math.min(delay, CHECK_TIMEOUT_INTERVAL_MS);
+                }
+            }
+            return Math.max(1, delay);
         }
 
         @Override
-        public void doWork() {
+        public long doWork() {
             try {
                 if (DLedgerUtils.elapsed(lastPrintWatermarkTimeMs) > 3000) {
                     if (DLedgerEntryPusher.this.fsmCaller.isPresent()) {
@@ -290,8 +517,7 @@ public class DLedgerEntryPusher {
                     lastPrintWatermarkTimeMs = System.currentTimeMillis();
                 }
                 if (!memberState.isLeader()) {
-                    waitForRunning(1);
-                    return;
+                    return Math.max(1, 3000 - DLedgerUtils.elapsed(lastPrintWatermarkTimeMs));
                 }
                 long currTerm = memberState.currTerm();
                 checkTermForPendingMap(currTerm, "QuorumAckChecker");
@@ -323,18 +549,12 @@ public class DLedgerEntryPusher {
                     }
                 }
 
-                Map<String, Long> peerWaterMarks = peerWaterMarksByTerm.get(currTerm);
-                List<Long> sortedWaterMarks = peerWaterMarks.values()
-                    .stream()
-                    .sorted(Comparator.reverseOrder())
-                    .collect(Collectors.toList());
-                long quorumIndex = sortedWaterMarks.get(sortedWaterMarks.size() / 2);
+                long quorumIndex = computeQuorumIndex(peerWaterMarksByTerm.get(currTerm));
                 final Optional<StateMachineCaller> fsmCaller = DLedgerEntryPusher.this.fsmCaller;
                 if (fsmCaller.isPresent()) {
                     // If there exist statemachine
-                    DLedgerEntryPusher.this.dLedgerStore.updateCommittedIndex(currTerm, quorumIndex);
+                    updateCommittedIndex(currTerm, quorumIndex);
                     final StateMachineCaller caller = fsmCaller.get();
-                    caller.onCommitted(quorumIndex);
 
                     // Check elapsed
                     if (DLedgerUtils.elapsed(lastCheckLeakTimeMs) > 1000) {
@@ -342,12 +562,8 @@ public class DLedgerEntryPusher {
                         checkResponseFuturesElapsed(caller.getLastAppliedIndex());
                         lastCheckLeakTimeMs = System.currentTimeMillis();
                     }
-
-                    if (quorumIndex == this.lastQuorumIndex) {
-                        waitForRunning(1);
-                    }
                 } else {
-                    dLedgerStore.updateCommittedIndex(currTerm, quorumIndex);
+                    updateCommittedIndex(currTerm, quorumIndex);
                     ConcurrentMap<Long, TimeoutFuture<AppendEntryResponse>> responses = pendingAppendResponsesByTerm.get(currTerm);
                     boolean needCheck = false;
                     int ackNum = 0;
@@ -364,6 +580,7 @@ public class DLedgerEntryPusher {
                                 response.setIndex(i);
                                 response.setLeaderId(memberState.getSelfId());
                                 response.setPos(((AppendFuture) future).getPos());
+                                metrics.getQuorumAckLatency().recordSinceNanos(((AppendFuture) future).getCreateTimeNs());
                                 future.complete(response);
                             }
                             ackNum++;
@@ -374,7 +591,6 @@ public class DLedgerEntryPusher {
 
                     if (ackNum == 0) {
                         checkResponseFuturesTimeout(quorumIndex + 1);
-                        waitForRunning(1);
                     }
 
                     if (DLedgerUtils.elapsed(lastCheckLeakTimeMs) > 1000 || needCheck) {
@@ -384,17 +600,43 @@ public class DLedgerEntryPusher {
                     }
                 }
                 lastQuorumIndex = quorumIndex;
+                return nextDelay();
             } catch (Throwable t) {
                 DLedgerEntryPusher.logger.error("Error in {}", getName(), t);
-                DLedgerUtils.sleep(100);
+                return 100;
             }
         }
     }
 
     /**
-     * This thread will be activated by the leader.
-     * This thread will push the entry to follower(identified by peerId) and update the completed pushed index to index map.
-     * Should generate a single thread for each peer.
+     * The largest index acked by a write quorum, whose acks also come from the min ack zones. Only the current peers
+     * count, the watermarks of the removed ones are kept but ignored.
+     */
+    private long computeQuorumIndex(Map<String, Long> peerWaterMarks) {
+        List<String> sortedPeers = memberState.getPeerMap().keySet()
+            .stream()
+            .sorted(Comparator.comparing((String peer) -> peerWaterMarks.getOrDefault(peer, -1L)).reversed())
+            .collect(Collectors.toList());
+        int writeQuorumSize = memberState.getWriteQuorumSize();
+        int minAckZones = memberState.getMinAckZones();
+        Set<String> ackZones = new HashSet<>();
+        for (int i = 0; i < sortedPeers.size(); i++) {
+            String zone = memberState.getZone(sortedPeers.get(i));
+            if (zone != null) {
+                ackZones.add(zone);
+            }
+            if (i + 1 >= writeQuorumSize && ackZones.size() >= minAckZones) {
+                return peerWaterMarks.getOrDefault(sortedPeers.get(i), -1L);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This task will be activated by the leader.
+     * This task will push the entry to follower(identified by peerId) and update the completed pushed index to index map.
+     * There is a task for each peer, woken up by the appends and the responses of the peer, with timers only for the
+     * retransmission and the pure commit request.
      * The push has 4 types:
      *   APPEND : append the entries to the follower
      *   COMPARE : if the leader changes, the new leader should compare its entries to follower's
@@ -409,10 +651,12 @@ public class DLedgerEntryPusher {
      *   |---<-----<------<-------<----|
      *
      */
-    private class EntryDispatcher extends ShutdownAbleThread {
+    private class EntryDispatcher extends ReplicationTask {
 
         private AtomicReference<PushEntryRequest.Type> type = new AtomicReference<>(PushEntryRequest.Type.COMPARE);
         private long lastPushCommitTimeMs = -1;
+        //the committed index known by the peer, the commit is only pushed alone when it is behind
+        private volatile long lastAckedCommitIndex = -1;
         private String peerId;
         private long compareIndex = -1;
         private long writeIndex = -1;
@@ -424,10 +668,41 @@ public class DLedgerEntryPusher {
         private ConcurrentMap<Long, Pair<Long, Integer>> batchPendingMap = new ConcurrentHashMap<>();
         private PushEntryRequest batchAppendEntryRequest = new PushEntryRequest();
         private Quota quota = new Quota(dLedgerConfig.getPeerPushQuota());
-
-        public EntryDispatcher(String peerId, Logger logger) {
-            super("EntryDispatcher-" + memberState.getSelfId() + "-" + peerId, logger);
+        private long quotaWaitMs = 0;
+        private PushEntryRequest inflightRequest;
+        private CompletableFuture<PushEntryResponse> inflightFuture;
+        private long inflightSendTimeMs = -1;
+        private final LatencyHistogram pushRtt;
+        private final PushBatchSizer batchSizer;
+        private final PushWindow pushWindow;
+        private final LongAdder pushBatches;
+        private final LongAdder pushBatchBytes;
+        private long batchBeginTimeMs = -1;
+        private long lingerWaitMs = 0;
+
+        public EntryDispatcher(String peerId, ScheduledExecutorService executor, Logger logger) {
+            super("EntryDispatcher-" + memberState.getSelfId() + "-" + peerId, executor, logger);
             this.peerId = peerId;
+            this.pushRtt = metrics.histogram(DLedgerMetrics.PUSH_RTT, "The round trip time of pushing entries to the peer", "peer", peerId);
+            this.batchSizer = new PushBatchSizer(dLedgerConfig.getMinBatchPushSize(), dLedgerConfig.getMaxBatchPushSize());
+            this.pushWindow = new PushWindow(dLedgerConfig.getMinPushWindowSize(), maxPendingSize);
+            this.pushBatches = metrics.counter(DLedgerMetrics.PUSH_BATCHES, "The batches pushed to the peer", "peer", peerId);
+            this.pushBatchBytes = metrics.counter(DLedgerMetrics.PUSH_BATCH_BYTES, "The bytes of the batches pushed to the peer", "peer", peerId);
+        }
+
+        private int getBatchPushTargetSize() {
+            return dLedgerConfig.isEnableAdaptiveBatchPush() ? batchSizer.getTargetSize() : dLedgerConfig.getMaxBatchPushSize();
+        }
+
+        private int getPushWindowSize() {
+            if (isCatchingUp()) {
+                return maxPendingSize;
+            }
+            return dLedgerConfig.isEnableAdaptivePushWindow() ? pushWindow.getSize() : maxPendingSize;
+        }
+
+        private boolean isCatchingUp() {
+            return catchUpWaiters.containsKey(peerId);
         }
 
         private boolean checkAndFreshState() {
@@ -451,6 +726,7 @@ public class DLedgerEntryPusher {
         private PushEntryRequest buildPushRequest(DLedgerEntry entry, PushEntryRequest.Type target) {
             PushEntryRequest request = new PushEntryRequest();
             request.setGroup(memberState.getGroup());
+            request.setLocalId(memberState.getSelfId());
             request.setRemoteId(peerId);
             request.setLeaderId(leaderId);
             request.setTerm(term);
@@ -462,48 +738,71 @@ public class DLedgerEntryPusher {
 
         private void resetBatchAppendEntryRequest() {
             batchAppendEntryRequest.setGroup(memberState.getGroup());
+            batchAppendEntryRequest.setLocalId(memberState.getSelfId());
             batchAppendEntryRequest.setRemoteId(peerId);
             batchAppendEntryRequest.setLeaderId(leaderId);
             batchAppendEntryRequest.setTerm(term);
             batchAppendEntryRequest.setType(PushEntryRequest.Type.APPEND);
             batchAppendEntryRequest.clear();
+            batchSizer.reset();
+            lingerWaitMs = 0;
         }
 
-        private void checkQuotaAndWait(DLedgerEntry entry) {
-            if (dLedgerStore.getLedgerEndIndex() - entry.getIndex() <= maxPendingSize) {
-                return;
+        /**
+         * @return the ms to wait before pushing the entry, 0 if the quota is not exhausted
+         */
+        private long checkQuota(DLedgerEntry entry) {
+            if (dLedgerStore.getLedgerEndIndex() - entry.getIndex() <= maxPendingSize || isCatchingUp()) {
+                return 0;
             }
             if (dLedgerStore instanceof DLedgerMemoryStore) {
-                return;
+                return 0;
             }
             DLedgerMmapFileStore mmapFileStore = (DLedgerMmapFileStore) dLedgerStore;
             if (mmapFileStore.getDataFileList().getMaxWrotePosition() - entry.getPos() < dLedgerConfig.getPeerPushThrottlePoint()) {
-                return;
+                return 0;
+            }
+            if (quotaWaitMs == 0) {
+                quota.sample(entry.getSize());
             }
-            quota.sample(entry.getSize());
             if (quota.validateNow()) {
                 long leftNow = quota.leftNow();
-                logger.warn("[Push-{}]Quota exhaust, will sleep {}ms", peerId, leftNow);
-                DLedgerUtils.sleep(leftNow);
+                logger.warn("[Push-{}]Quota exhaust, will wait {}ms", peerId, leftNow);
+                return Math.max(1, leftNow);
             }
+            return 0;
         }
-        private void doAppendInner(long index) throws Exception {
+
+        /**
+         * @return false if the entry is not pushed, for the quota is exhausted or the state is changed
+         */
+        private boolean doAppendInner(long index) throws Exception {
             DLedgerEntry entry = getDLedgerEntryForAppend(index);
             if (null == entry) {
-                return;
+                return false;
+            }
+            quotaWaitMs = checkQuota(entry);
+            if (quotaWaitMs > 0) {
+                return false;
             }
-            checkQuotaAndWait(entry);
             PushEntryRequest request = buildPushRequest(entry, PushEntryRequest.Type.APPEND);
+            long sendTimeNs = System.nanoTime();
+            long sendTimeMs = System.currentTimeMillis();
             CompletableFuture<PushEntryResponse> responseFuture = dLedgerRpcService.push(request);
-            pendingMap.put(index, System.currentTimeMillis());
+            pendingMap.put(index, sendTimeMs);
             responseFuture.whenComplete((x, ex) -> {
                 try {
                     PreConditions.check(ex == null, DLedgerResponseCode.UNKNOWN);
+                    long rttUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sendTimeNs);
+                    pushRtt.record(rttUs);
+                    pushWindow.onAck(rttUs, System.nanoTime());
                     DLedgerResponseCode responseCode = DLedgerResponseCode.valueOf(x.getCode());
                     switch (responseCode) {
                         case SUCCESS:
+                            onPeerAck(x, sendTimeMs, request.getCommitIndex());
                             pendingMap.remove(x.getIndex());
                             updatePeerWaterMark(x.getTerm(), peerId, x.getIndex());
+                            appendTracer.onPeerAck(peerId, x.getIndex(), sendTimeNs);
                             quorumAckChecker.wakeup();
                             break;
                         case INCONSISTENT_STATE:
@@ -517,8 +816,10 @@ public class DLedgerEntryPusher {
                 } catch (Throwable t) {
                     logger.error("", t);
                 }
+                wakeup();
             });
             lastPushCommitTimeMs = System.currentTimeMillis();
+            return true;
         }
 
         private DLedgerEntry getDLedgerEntryForAppend(long index) {
@@ -538,12 +839,34 @@ public class DLedgerEntryPusher {
             return entry;
         }
 
+        /**
+         * Any push acked by the peer proves this node the leader to it, so the heartbeat to it is not needed for a
+         * while, see DLedgerLeaderElector#sendHeartbeats.
+         */
+        private void onPeerAck(PushEntryResponse response, long sendTimeMs, long commitIndex) {
+            if (response.getTerm() != memberState.currTerm()) {
+                return;
+            }
+            memberState.updatePeerAckTime(peerId, sendTimeMs);
+            if (commitIndex > lastAckedCommitIndex) {
+                lastAckedCommitIndex = commitIndex;
+            }
+        }
+
+        /**
+         * Push the committed index alone if the peer has not acked it with the appends. It is not a heartbeat, which
+         * is sent by the elector only when the link has been idle.
+         */
         private void doCommit() throws Exception {
-            if (DLedgerUtils.elapsed(lastPushCommitTimeMs) > 1000) {
+            if (DLedgerUtils.elapsed(lastPushCommitTimeMs) > 1000 && dLedgerStore.getCommittedIndex() > lastAckedCommitIndex) {
                 PushEntryRequest request = buildPushRequest(null, PushEntryRequest.Type.COMMIT);
-                //Ignore the results
-                dLedgerRpcService.push(request);
-                lastPushCommitTimeMs = System.currentTimeMillis();
+                long sendTimeMs = System.currentTimeMillis();
+                dLedgerRpcService.push(request).whenComplete((x, ex) -> {
+                    if (ex == null && x.getCode() == DLedgerResponseCode.SUCCESS.getCode()) {
+                        onPeerAck(x, sendTimeMs, request.getCommitIndex());
+                    }
+                });
+                lastPushCommitTimeMs = sendTimeMs;
             }
         }
 
@@ -569,7 +892,7 @@ public class DLedgerEntryPusher {
                     doCheckAppendResponse();
                     break;
                 }
-                if (pendingMap.size() >= maxPendingSize || (DLedgerUtils.elapsed(lastCheckLeakTimeMs) > 1000)) {
+                if (pendingMap.size() >= getPushWindowSize() || (DLedgerUtils.elapsed(lastCheckLeakTimeMs) > 1000)) {
                     long peerWaterMark = getPeerWaterMark(term, peerId);
                     for (Long index : pendingMap.keySet()) {
                         if (index < peerWaterMark) {
@@ -578,27 +901,46 @@ public class DLedgerEntryPusher {
                     }
                     lastCheckLeakTimeMs = System.currentTimeMillis();
                 }
-                if (pendingMap.size() >= maxPendingSize) {
+                if (pendingMap.size() >= getPushWindowSize()) {
                     doCheckAppendResponse();
                     break;
                 }
-                doAppendInner(writeIndex);
+                if (!doAppendInner(writeIndex)) {
+                    break;
+                }
                 writeIndex++;
             }
         }
 
-        private void sendBatchAppendEntryRequest() throws Exception {
-            batchAppendEntryRequest.setCommitIndex(dLedgerStore.getCommittedIndex());
+        /**
+         * @param lagging whether there are entries left to push after the batch
+         */
+        private void sendBatchAppendEntryRequest(boolean lagging) throws Exception {
+            long commitIndex = dLedgerStore.getCommittedIndex();
+            batchAppendEntryRequest.setCommitIndex(commitIndex);
+            batchSizer.onSend((int) batchAppendEntryRequest.getTotalSize(), lagging);
+            pushBatches.increment();
+            pushBatchBytes.add(batchAppendEntryRequest.getTotalSize());
+            long sendTimeNs = System.nanoTime();
+            long sendTimeMs = System.currentTimeMillis();
             CompletableFuture<PushEntryResponse> responseFuture = dLedgerRpcService.push(batchAppendEntryRequest);
-            batchPendingMap.put(batchAppendEntryRequest.getFirstEntryIndex(), new Pair<>(System.currentTimeMillis(), batchAppendEntryRequest.getCount()));
+            batchPendingMap.put(batchAppendEntryRequest.getFirstEntryIndex(), new Pair<>(sendTimeMs, batchAppendEntryRequest.getCount()));
             responseFuture.whenComplete((x, ex) -> {
                 try {
                     PreConditions.check(ex == null, DLedgerResponseCode.UNKNOWN);
+                    long rttUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sendTimeNs);
+                    pushRtt.record(rttUs);
+                    long nowNs = System.nanoTime();
+                    batchSizer.onAck(rttUs, nowNs);
+                    pushWindow.onAck(rttUs, nowNs);
                     DLedgerResponseCode responseCode = DLedgerResponseCode.valueOf(x.getCode());
                     switch (responseCode) {
                         case SUCCESS:
+                            onPeerAck(x, sendTimeMs, commitIndex);
                             batchPendingMap.remove(x.getIndex());
                             updatePeerWaterMark(x.getTerm(), peerId, x.getIndex() + x.getCount() - 1);
+                            appendTracer.onPeerAck(peerId, x.getIndex() + x.getCount() - 1, sendTimeNs);
+                            quorumAckChecker.wakeup();
                             break;
                         case INCONSISTENT_STATE:
                             logger.info("[Push-{}]Get INCONSISTENT_STATE when batch push index={} term={}", peerId, x.getIndex(), x.getTerm());
@@ -611,9 +953,11 @@ public class DLedgerEntryPusher {
                 } catch (Throwable t) {
                     logger.error("", t);
                 }
+                wakeup();
             });
             lastPushCommitTimeMs = System.currentTimeMillis();
             batchAppendEntryRequest.clear();
+            lingerWaitMs = 0;
         }
 
         private void doBatchAppendInner(long index) throws Exception {
@@ -621,10 +965,31 @@ public class DLedgerEntryPusher {
             if (null == entry) {
                 return;
             }
+            if (batchAppendEntryRequest.getCount() == 0) {
+                batchBeginTimeMs = System.currentTimeMillis();
+            }
             batchAppendEntryRequest.addEntry(entry);
-            if (batchAppendEntryRequest.getTotalSize() >= dLedgerConfig.getMaxBatchPushSize()) {
-                sendBatchAppendEntryRequest();
+            if (batchAppendEntryRequest.getTotalSize() >= getBatchPushTargetSize()) {
+                sendBatchAppendEntryRequest(index < dLedgerStore.getLedgerEndIndex());
+            }
+        }
+
+        /**
+         * Send the batch on catching up, unless it is smaller than the target and some batches are waiting for the
+         * response, then more entries are collected until the linger time passes.
+         */
+        private void flushBatchOnCatchingUp() throws Exception {
+            if (batchAppendEntryRequest.getCount() == 0) {
+                return;
+            }
+            if (dLedgerConfig.isEnableAdaptiveBatchPush() && !batchPendingMap.isEmpty() && !isCatchingUp()
+                && batchAppendEntryRequest.getTotalSize() < getBatchPushTargetSize()) {
+                lingerWaitMs = dLedgerConfig.getBatchPushLingerMs() - DLedgerUtils.elapsed(batchBeginTimeMs);
+                if (lingerWaitMs > 0) {
+                    return;
+                }
             }
+            sendBatchAppendEntryRequest(false);
         }
 
         private void doCheckBatchAppendResponse() throws Exception {
@@ -634,12 +999,16 @@ public class DLedgerEntryPusher {
                 long firstIndex = peerWaterMark + 1;
                 long lastIndex = firstIndex + (int) pair.getValue() - 1;
                 logger.warn("[Push-{}]Retry to push entry from {} to {}", peerId, firstIndex, lastIndex);
+                if (batchAppendEntryRequest.getCount() > 0) {
+                    //collect the lingering entries again after the retry
+                    writeIndex = batchAppendEntryRequest.getFirstEntryIndex();
+                }
                 batchAppendEntryRequest.clear();
                 for (long i = firstIndex; i <= lastIndex; i++) {
                     DLedgerEntry entry = dLedgerStore.get(i);
                     batchAppendEntryRequest.addEntry(entry);
                 }
-                sendBatchAppendEntryRequest();
+                sendBatchAppendEntryRequest(false);
             }
         }
 
@@ -652,14 +1021,12 @@ public class DLedgerEntryPusher {
                     break;
                 }
                 if (writeIndex > dLedgerStore.getLedgerEndIndex()) {
-                    if (batchAppendEntryRequest.getCount() > 0) {
-                        sendBatchAppendEntryRequest();
-                    }
+                    flushBatchOnCatchingUp();
                     doCommit();
                     doCheckBatchAppendResponse();
                     break;
                 }
-                if (batchPendingMap.size() >= maxPendingSize || (DLedgerUtils.elapsed(lastCheckLeakTimeMs) > 1000)) {
+                if (batchPendingMap.size() >= getPushWindowSize() || (DLedgerUtils.elapsed(lastCheckLeakTimeMs) > 1000)) {
                     long peerWaterMark = getPeerWaterMark(term, peerId);
                     for (Map.Entry<Long, Pair<Long, Integer>> entry : batchPendingMap.entrySet()) {
                         if (entry.getKey() + entry.getValue().getValue() - 1 <= peerWaterMark) {
@@ -668,7 +1035,7 @@ public class DLedgerEntryPusher {
                     }
                     lastCheckLeakTimeMs = System.currentTimeMillis();
                 }
-                if (batchPendingMap.size() >= maxPendingSize) {
+                if (batchPendingMap.size() >= getPushWindowSize()) {
                     doCheckBatchAppendResponse();
                     break;
                 }
@@ -677,13 +1044,37 @@ public class DLedgerEntryPusher {
             }
         }
 
+        /**
+         * Send the compare or truncate request without blocking, the task is woken up when the response arrives.
+         */
+        private void sendInflightRequest(PushEntryRequest request) throws Exception {
+            long sendTimeMs = System.currentTimeMillis();
+            inflightRequest = request;
+            inflightSendTimeMs = sendTimeMs;
+            inflightFuture = dLedgerRpcService.push(request);
+            inflightFuture.whenComplete((x, ex) -> {
+                if (ex == null && x.getCode() == DLedgerResponseCode.SUCCESS.getCode()) {
+                    onPeerAck(x, sendTimeMs, -1);
+                }
+                wakeup();
+            });
+        }
+
+        private void clearInflightRequest() {
+            inflightRequest = null;
+            inflightFuture = null;
+            inflightSendTimeMs = -1;
+        }
+
         private void doTruncate(long truncateIndex) throws Exception {
             PreConditions.check(type.get() == PushEntryRequest.Type.TRUNCATE, DLedgerResponseCode.UNKNOWN);
             DLedgerEntry truncateEntry = dLedgerStore.get(truncateIndex);
             PreConditions.check(truncateEntry != null, DLedgerResponseCode.UNKNOWN);
             logger.info("[Push-{}]Will push data to truncate truncateIndex={} pos={}", peerId, truncateIndex, truncateEntry.getPos());
-            PushEntryRequest truncateRequest = buildPushRequest(truncateEntry, PushEntryRequest.Type.TRUNCATE);
-            PushEntryResponse truncateResponse = dLedgerRpcService.push(truncateRequest).get(3, TimeUnit.SECONDS);
+            sendInflightRequest(buildPushRequest(truncateEntry, PushEntryRequest.Type.TRUNCATE));
+        }
+
+        private void handleTruncateResponse(long truncateIndex, PushEntryResponse truncateResponse) {
             PreConditions.check(truncateResponse != null, DLedgerResponseCode.UNKNOWN, "truncateIndex=%d", truncateIndex);
             PreConditions.check(truncateResponse.getCode() == DLedgerResponseCode.SUCCESS.getCode(), DLedgerResponseCode.valueOf(truncateResponse.getCode()), "truncateIndex=%d", truncateIndex);
             lastPushCommitTimeMs = System.currentTimeMillis();
@@ -695,6 +1086,7 @@ public class DLedgerEntryPusher {
             switch (target) {
                 case APPEND:
                     compareIndex = -1;
+                    lastAckedCommitIndex = -1;
                     updatePeerWaterMark(term, peerId, index);
                     quorumAckChecker.wakeup();
                     writeIndex = index + 1;
@@ -730,6 +1122,29 @@ public class DLedgerEntryPusher {
                     && type.get() != PushEntryRequest.Type.TRUNCATE) {
                     break;
                 }
+                if (inflightRequest != null) {
+                    if (!inflightFuture.isDone()) {
+                        PreConditions.check(DLedgerUtils.elapsed(inflightSendTimeMs) < 3000, DLedgerResponseCode.TIMEOUT,
+                            "%s index=%d", inflightRequest.getType(), inflightRequest.getEntry().getIndex());
+                        break;
+                    }
+                    PushEntryRequest request = inflightRequest;
+                    PushEntryResponse response = inflightFuture.get();
+                    clearInflightRequest();
+                    //the state may be changed by the term change or the responses of the appends
+                    if (request.getTerm() != term || request.getType() != type.get()) {
+                        continue;
+                    }
+                    if (request.getType() == PushEntryRequest.Type.TRUNCATE) {
+                        handleTruncateResponse(request.getEntry().getIndex(), response);
+                        break;
+                    }
+                    if (request.getEntry().getIndex() != compareIndex) {
+                        continue;
+                    }
+                    handleCompareResponse(response);
+                    continue;
+                }
                 if (compareIndex == -1 && dLedgerStore.getLedgerEndIndex() == -1) {
                     break;
                 }
@@ -744,76 +1159,102 @@ public class DLedgerEntryPusher {
 
                 DLedgerEntry entry = dLedgerStore.get(compareIndex);
                 PreConditions.check(entry != null, DLedgerResponseCode.INTERNAL_ERROR, "compareIndex=%d", compareIndex);
-                PushEntryRequest request = buildPushRequest(entry, PushEntryRequest.Type.COMPARE);
-                CompletableFuture<PushEntryResponse> responseFuture = dLedgerRpcService.push(request);
-                PushEntryResponse response = responseFuture.get(3, TimeUnit.SECONDS);
-                PreConditions.check(response != null, DLedgerResponseCode.INTERNAL_ERROR, "compareIndex=%d", compareIndex);
-                PreConditions.check(response.getCode() == DLedgerResponseCode.INCONSISTENT_STATE.getCode() || response.getCode() == DLedgerResponseCode.SUCCESS.getCode()
-                    , DLedgerResponseCode.valueOf(response.getCode()), "compareIndex=%d", compareIndex);
-                long truncateIndex = -1;
-
-                if (response.getCode() == DLedgerResponseCode.SUCCESS.getCode()) {
-                    /*
-                     * The comparison is successful:
-                     * 1.Just change to append state, if the follower's end index is equal the compared index.
-                     * 2.Truncate the follower, if the follower has some dirty entries.
-                     */
-                    if (compareIndex == response.getEndIndex()) {
-                        changeState(compareIndex, PushEntryRequest.Type.APPEND);
-                        break;
-                    } else {
-                        truncateIndex = compareIndex;
-                    }
-                } else if (response.getEndIndex() < dLedgerStore.getLedgerBeginIndex()
-                    || response.getBeginIndex() > dLedgerStore.getLedgerEndIndex()) {
-                    /*
-                     The follower's entries does not intersect with the leader.
-                     This usually happened when the follower has crashed for a long time while the leader has deleted the expired entries.
-                     Just truncate the follower.
-                     */
-                    truncateIndex = dLedgerStore.getLedgerBeginIndex();
-                } else if (compareIndex < response.getBeginIndex()) {
-                    /*
-                     The compared index is smaller than the follower's begin index.
-                     This happened rarely, usually means some disk damage.
-                     Just truncate the follower.
-                     */
-                    truncateIndex = dLedgerStore.getLedgerBeginIndex();
-                } else if (compareIndex > response.getEndIndex()) {
-                    /*
-                     The compared index is bigger than the follower's end index.
-                     This happened frequently. For the compared index is usually starting from the end index of the leader.
-                     */
-                    compareIndex = response.getEndIndex();
+                sendInflightRequest(buildPushRequest(entry, PushEntryRequest.Type.COMPARE));
+                break;
+            }
+        }
+
+        private void handleCompareResponse(PushEntryResponse response) throws Exception {
+            PreConditions.check(response != null, DLedgerResponseCode.INTERNAL_ERROR, "compareIndex=%d", compareIndex);
+            PreConditions.check(response.getCode() == DLedgerResponseCode.INCONSISTENT_STATE.getCode() || response.getCode() == DLedgerResponseCode.SUCCESS.getCode()
+                , DLedgerResponseCode.valueOf(response.getCode()), "compareIndex=%d", compareIndex);
+            long truncateIndex = -1;
+
+            if (response.getCode() == DLedgerResponseCode.SUCCESS.getCode()) {
+                /*
+                 * The comparison is successful:
+                 * 1.Just change to append state, if the follower's end index is equal the compared index.
+                 * 2.Truncate the follower, if the follower has some dirty entries.
+                 */
+                if (compareIndex == response.getEndIndex()) {
+                    changeState(compareIndex, PushEntryRequest.Type.APPEND);
+                    return;
                 } else {
-                    /*
-                      Compare failed and the compared index is in the range of follower's entries.
-                     */
-                    compareIndex--;
+                    truncateIndex = compareIndex;
                 }
+            } else if (response.getEndIndex() < dLedgerStore.getLedgerBeginIndex()
+                || response.getBeginIndex() > dLedgerStore.getLedgerEndIndex()) {
                 /*
-                 The compared index is smaller than the leader's begin index, truncate the follower.
+                 The follower's entries does not intersect with the leader.
+                 This usually happened when the follower has crashed for a long time while the leader has deleted the expired entries.
+                 Just truncate the follower.
                  */
-                if (compareIndex < dLedgerStore.getLedgerBeginIndex()) {
-                    truncateIndex = dLedgerStore.getLedgerBeginIndex();
-                }
+                truncateIndex = dLedgerStore.getLedgerBeginIndex();
+            } else if (compareIndex < response.getBeginIndex()) {
                 /*
-                 If get value for truncateIndex, do it right now.
+                 The compared index is smaller than the follower's begin index.
+                 This happened rarely, usually means some disk damage.
+                 Just truncate the follower.
                  */
-                if (truncateIndex != -1) {
-                    changeState(truncateIndex, PushEntryRequest.Type.TRUNCATE);
-                    doTruncate(truncateIndex);
-                    break;
+                truncateIndex = dLedgerStore.getLedgerBeginIndex();
+            } else if (compareIndex > response.getEndIndex()) {
+                /*
+                 The compared index is bigger than the follower's end index.
+                 This happened frequently. For the compared index is usually starting from the end index of the leader.
+                 */
+                compareIndex = response.getEndIndex();
+            } else {
+                /*
+                  Compare failed and the compared index is in the range of follower's entries.
+                 */
+                compareIndex--;
+            }
+            /*
+             The compared index is smaller than the leader's begin index, truncate the follower.
+             */
+            if (compareIndex < dLedgerStore.getLedgerBeginIndex()) {
+                truncateIndex = dLedgerStore.getLedgerBeginIndex();
+            }
+            /*
+             If get value for truncateIndex, do it right now.
+             */
+            if (truncateIndex != -1) {
+                changeState(truncateIndex, PushEntryRequest.Type.TRUNCATE);
+                doTruncate(truncateIndex);
+            }
+        }
+
+        /**
+         * @return the delay before the next run, or WAIT_FOR_WAKEUP if only the appends or the responses can make progress
+         */
+        private long nextDelay() {
+            if (!memberState.isLeader()) {
+                return WAIT_FOR_WAKEUP;
+            }
+            if (type.get() != PushEntryRequest.Type.APPEND) {
+                if (inflightRequest != null) {
+                    return Math.max(1, 3000 - DLedgerUtils.elapsed(inflightSendTimeMs));
                 }
+                return WAIT_FOR_WAKEUP;
+            }
+            if (quotaWaitMs > 0) {
+                return quotaWaitMs;
             }
+            long delay = 1000 - DLedgerUtils.elapsed(lastPushCommitTimeMs);
+            if (!pendingMap.isEmpty() || !batchPendingMap.isEmpty()) {
+                delay = Math.min(delay, dLedgerConfig.getMaxPushTimeOutMs());
+            }
+            if (lingerWaitMs > 0) {
+                delay = Math.min(delay, lingerWaitMs);
+            }
+            return Math.max(1, delay);
         }
 
         @Override
-        public void doWork() {
+        public long doWork() {
             try {
                 if (!checkAndFreshState()) {
-                    waitForRunning(1);
-                    return;
+                    return WAIT_FOR_WAKEUP;
                 }
 
                 if (type.get() == PushEntryRequest.Type.APPEND) {
@@ -824,30 +1265,41 @@ public class DLedgerEntryPusher {
                     }
                 } else {
                     doCompare();
+                    if (type.get() == PushEntryRequest.Type.APPEND) {
+                        //start to append right now
+                        return 0;
+                    }
                 }
-                waitForRunning(1);
+                return nextDelay();
             } catch (Throwable t) {
                 DLedgerEntryPusher.logger.error("[Push-{}]Error in {} writeIndex={} compareIndex={}", peerId, getName(), writeIndex, compareIndex, t);
+                clearInflightRequest();
                 changeState(-1, PushEntryRequest.Type.COMPARE);
-                DLedgerUtils.sleep(500);
+                return 500;
             }
         }
     }
 
     /**
-     * This thread will be activated by the follower.
+     * This task will be activated by the follower.
      * Accept the push request and order it by the index, then append to ledger store one by one.
+     * It is woken up by the push requests, and checks the abnormal requests by a timer.
      *
      */
-    private class EntryHandler extends ShutdownAbleThread {
+    private class EntryHandler extends ReplicationTask {
+
+        /**
+         * Yield the shared thread to the other tasks after handling so many requests in a run.
+         */
+        private static final int MAX_REQUESTS_PER_RUN = 1024;
 
         private long lastCheckFastForwardTimeMs = System.currentTimeMillis();
 
         ConcurrentMap<Long, Pair<PushEntryRequest, CompletableFuture<PushEntryResponse>>> writeRequestMap = new ConcurrentHashMap<>();
         BlockingQueue<Pair<PushEntryRequest, CompletableFuture<PushEntryResponse>>> compareOrTruncateRequests = new ArrayBlockingQueue<Pair<PushEntryRequest, CompletableFuture<PushEntryResponse>>>(100);
 
-        public EntryHandler(Logger logger) {
-            super("EntryHandler-" + memberState.getSelfId(), logger);
+        public EntryHandler(ScheduledExecutorService executor, Logger logger) {
+            super("EntryHandler-" + memberState.getSelfId(), executor, logger);
         }
 
         public CompletableFuture<PushEntryResponse> handlePush(PushEntryRequest request) throws Exception {
@@ -905,6 +1357,7 @@ public class DLedgerEntryPusher {
                 PreConditions.check(writeIndex == request.getEntry().getIndex(), DLedgerResponseCode.INCONSISTENT_STATE);
                 DLedgerEntry entry = dLedgerStore.appendAsFollower(request.getEntry(), request.getTerm(), request.getLeaderId());
                 PreConditions.check(entry.getIndex() == writeIndex, DLedgerResponseCode.INCONSISTENT_STATE);
+                applyConfigEntry(entry);
                 future.complete(buildResponse(request, DLedgerResponseCode.SUCCESS.getCode()));
                 updateCommittedIndex(request.getTerm(), request.getCommitIndex());
             } catch (Throwable t) {
@@ -950,6 +1403,10 @@ public class DLedgerEntryPusher {
                 PreConditions.check(request.getType() == PushEntryRequest.Type.TRUNCATE, DLedgerResponseCode.UNKNOWN);
                 long index = dLedgerStore.truncate(request.getEntry(), request.getTerm(), request.getLeaderId());
                 PreConditions.check(index == truncateIndex, DLedgerResponseCode.INCONSISTENT_STATE);
+                if (memberState.truncatePeers(truncateIndex)) {
+                    updatePeers();
+                }
+                applyConfigEntry(request.getEntry());
                 future.complete(buildResponse(request, DLedgerResponseCode.SUCCESS.getCode()));
                 updateCommittedIndex(request.getTerm(), request.getCommitIndex());
             } catch (Throwable t) {
@@ -965,6 +1422,7 @@ public class DLedgerEntryPusher {
                 PreConditions.check(writeIndex == request.getFirstEntryIndex(), DLedgerResponseCode.INCONSISTENT_STATE);
                 for (DLedgerEntry entry : request.getBatchEntry()) {
                     dLedgerStore.appendAsFollower(entry, request.getTerm(), request.getLeaderId());
+                    applyConfigEntry(entry);
                 }
                 future.complete(buildResponse(request, DLedgerResponseCode.SUCCESS.getCode()));
                 updateCommittedIndex(request.getTerm(), request.getCommitIndex());
@@ -1040,46 +1498,50 @@ public class DLedgerEntryPusher {
         }
 
         @Override
-        public void doWork() {
+        public long doWork() {
             try {
                 if (!memberState.isFollower()) {
-                    waitForRunning(1);
-                    return;
+                    return WAIT_FOR_WAKEUP;
                 }
-                if (compareOrTruncateRequests.peek() != null) {
-                    Pair<PushEntryRequest, CompletableFuture<PushEntryResponse>> pair = compareOrTruncateRequests.poll();
-                    PreConditions.check(pair != null, DLedgerResponseCode.UNKNOWN);
-                    switch (pair.getKey().getType()) {
-                        case TRUNCATE:
-                            handleDoTruncate(pair.getKey().getEntry().getIndex(), pair.getKey(), pair.getValue());
-                            break;
-                        case COMPARE:
-                            handleDoCompare(pair.getKey().getEntry().getIndex(), pair.getKey(), pair.getValue());
-                            break;
-                        case COMMIT:
-                            handleDoCommit(pair.getKey().getCommitIndex(), pair.getKey(), pair.getValue());
-                            break;
-                        default:
-                            break;
-                    }
-                } else {
-                    long nextIndex = dLedgerStore.getLedgerEndIndex() + 1;
-                    Pair<PushEntryRequest, CompletableFuture<PushEntryResponse>> pair = writeRequestMap.remove(nextIndex);
-                    if (pair == null) {
-                        checkAbnormalFuture(dLedgerStore.getLedgerEndIndex());
-                        waitForRunning(1);
-                        return;
-                    }
-                    PushEntryRequest request = pair.getKey();
-                    if (request.isBatch()) {
-                        handleDoBatchAppend(nextIndex, request, pair.getValue());
+                for (int i = 0; i < MAX_REQUESTS_PER_RUN; i++) {
+                    if (compareOrTruncateRequests.peek() != null) {
+                        Pair<PushEntryRequest, CompletableFuture<PushEntryResponse>> pair = compareOrTruncateRequests.poll();
+                        PreConditions.check(pair != null, DLedgerResponseCode.UNKNOWN);
+                        switch (pair.getKey().getType()) {
+                            case TRUNCATE:
+                                handleDoTruncate(pair.getKey().getEntry().getIndex(), pair.getKey(), pair.getValue());
+                                break;
+                            case COMPARE:
+                                handleDoCompare(pair.getKey().getEntry().getIndex(), pair.getKey(), pair.getValue());
+                                break;
+                            case COMMIT:
+                                handleDoCommit(pair.getKey().getCommitIndex(), pair.getKey(), pair.getValue());
+                                break;
+                            default:
+                                break;
+                        }
                     } else {
-                        handleDoAppend(nextIndex, request, pair.getValue());
+                        long nextIndex = dLedgerStore.getLedgerEndIndex() + 1;
+                        Pair<PushEntryRequest, CompletableFuture<PushEntryResponse>> pair = writeRequestMap.remove(nextIndex);
+                        if (pair == null) {
+                            checkAbnormalFuture(dLedgerStore.getLedgerEndIndex());
+                            if (writeRequestMap.isEmpty()) {
+                                return WAIT_FOR_WAKEUP;
+                            }
+                            return Math.max(1, 1000 - DLedgerUtils.elapsed(lastCheckFastForwardTimeMs));
+                        }
+                        PushEntryRequest request = pair.getKey();
+                        if (request.isBatch()) {
+                            handleDoBatchAppend(nextIndex, request, pair.getValue());
+                        } else {
+                            handleDoAppend(nextIndex, request, pair.getValue());
+                        }
                     }
                 }
+                return 0;
             } catch (Throwable t) {
                 DLedgerEntryPusher.logger.error("Error in {}", getName(), t);
-                DLedgerUtils.sleep(100);
+                return 100;
             }
         }
     }
@@ -17,6 +17,7 @@
 package io.openmessaging.storage.dledger;
 
 import com.alibaba.fastjson.JSON;
+import io.openmessaging.storage.dledger.metrics.DLedgerMetrics;
 import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
 import io.openmessaging.storage.dledger.protocol.HeartBeatRequest;
 import io.openmessaging.storage.dledger.protocol.HeartBeatResponse;
@@ -25,9 +26,9 @@ import io.openmessaging.storage.dledger.protocol.LeadershipTransferResponse;
 import io.openmessaging.storage.dledger.protocol.VoteRequest;
 import io.openmessaging.storage.dledger.protocol.VoteResponse;
 import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import io.openmessaging.storage.dledger.utils.PhiAccrualFailureDetector;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
@@ -43,21 +44,40 @@ public class DLedgerLeaderElector {
 
     private static Logger logger = LoggerFactory.getLogger(DLedgerLeaderElector.class);
 
+    private static final int PHI_WINDOW_SIZE = 100;
+    private static final int PHI_MIN_SAMPLES = 3;
+    private static final int MIN_ADAPTIVE_VOTE_INTERVAL_MS = 10;
+    private static final int MIN_ADAPTIVE_VOTE_SPREAD_MS = 50;
+    private static final long MIN_RTT_WINDOW_MS = 10 * 1000;
+
     private Random random = new Random();
     private DLedgerConfig dLedgerConfig;
     private final MemberState memberState;
     private DLedgerRpcService dLedgerRpcService;
+    private final DLedgerEntryPusher dLedgerEntryPusher;
+    private final DLedgerMetrics metrics;
 
     //as a server handler
     //record the last leader state
     private volatile long lastLeaderHeartBeatTime = -1;
     private volatile long lastSendHeartBeatTime = -1;
     private volatile long lastSuccHeartBeatTime = -1;
+    //the start time of the last heartbeat round acked by a quorum, the leader lease is counted from it
+    private volatile long lastLeaseStartTime = -1;
+    //the lease is only taken again from the heartbeats sent after this, guarded by memberState
+    private long leaseResetTime = -1;
     private int heartBeatTimeIntervalMs = 2000;
+    private volatile boolean alignHeartBeat = false;
     private int maxHeartBeatLeak = 3;
+    private final PhiAccrualFailureDetector failureDetector;
+    //the min rtt of the heartbeat and vote rounds in the recent window, -1 if not measured yet
+    private volatile long minRttMs = -1;
+    private volatile long minRttTimeMs = -1;
     //as a client
     private long nextTimeToRequestVote = -1;
     private volatile boolean needIncreaseTermImmediately = false;
+    //increase the term without the pre-vote, just for test
+    private volatile boolean forceNextTerm = false;
     private int minVoteIntervalMs = 300;
     private int maxVoteIntervalMs = 1000;
 
@@ -65,20 +85,34 @@ public class DLedgerLeaderElector {
 
     private VoteResponse.ParseResult lastParseResult = VoteResponse.ParseResult.WAIT_TO_REVOTE;
     private long lastVoteCost = 0L;
+    //the time when this node became candidate, to measure the election duration
+    private volatile long candidateSinceNs = -1;
 
     private StateMaintainer stateMaintainer = new StateMaintainer("StateMaintainer", logger);
 
     private final TakeLeadershipTask takeLeadershipTask = new TakeLeadershipTask();
 
     public DLedgerLeaderElector(DLedgerConfig dLedgerConfig, MemberState memberState,
-        DLedgerRpcService dLedgerRpcService) {
+        DLedgerRpcService dLedgerRpcService, DLedgerEntryPusher dLedgerEntryPusher, DLedgerMetrics metrics) {
         this.dLedgerConfig = dLedgerConfig;
         this.memberState = memberState;
         this.dLedgerRpcService = dLedgerRpcService;
+        this.dLedgerEntryPusher = dLedgerEntryPusher;
+        this.metrics = metrics;
+        this.failureDetector = new PhiAccrualFailureDetector(PHI_WINDOW_SIZE, dLedgerConfig.getHeartBeatTimeIntervalMs() / 4);
         refreshIntervals(dLedgerConfig);
     }
 
+    public void setAlignHeartBeat(boolean alignHeartBeat) {
+        this.alignHeartBeat = alignHeartBeat;
+    }
+
     public void startup() {
+        if (dLedgerConfig.isEnableLeaderLease()) {
+            //a restarted node cannot know whether it has acked a lease just before, so it does not vote for one election timeout
+            lastLeaderHeartBeatTime = System.currentTimeMillis();
+        }
+        candidateSinceNs = System.nanoTime();
         stateMaintainer.start();
         for (RoleChangeHandler roleChangeHandler : roleChangeHandlers) {
             roleChangeHandler.startup();
@@ -100,6 +134,7 @@ public class DLedgerLeaderElector {
     }
 
     public CompletableFuture<HeartBeatResponse> handleHeartBeat(HeartBeatRequest request) throws Exception {
+        metrics.getHeartbeatsReceived().increment();
 
         if (!memberState.isPeerMember(request.getLeaderId())) {
             logger.warn("[BUG] [HandleHeartBeat] remoteId={} is an unknown member", request.getLeaderId());
@@ -115,7 +150,7 @@ public class DLedgerLeaderElector {
             return CompletableFuture.completedFuture(new HeartBeatResponse().term(memberState.currTerm()).code(DLedgerResponseCode.EXPIRED_TERM.getCode()));
         } else if (request.getTerm() == memberState.currTerm()) {
             if (request.getLeaderId().equals(memberState.getLeaderId())) {
-                lastLeaderHeartBeatTime = System.currentTimeMillis();
+                onLeaderHeartBeat(request.getRttMs());
                 return CompletableFuture.completedFuture(new HeartBeatResponse());
             }
         }
@@ -130,7 +165,7 @@ public class DLedgerLeaderElector {
                     changeRoleToFollower(request.getTerm(), request.getLeaderId());
                     return CompletableFuture.completedFuture(new HeartBeatResponse());
                 } else if (request.getLeaderId().equals(memberState.getLeaderId())) {
-                    lastLeaderHeartBeatTime = System.currentTimeMillis();
+                    onLeaderHeartBeat(request.getRttMs());
                     return CompletableFuture.completedFuture(new HeartBeatResponse());
                 } else {
                     //this should not happen, but if happened
@@ -152,7 +187,9 @@ public class DLedgerLeaderElector {
         synchronized (memberState) {
             if (memberState.currTerm() == term) {
                 memberState.changeToLeader(term);
+                recordElectionDuration();
                 lastSendHeartBeatTime = -1;
+                lastLeaseStartTime = -1;
                 handleRoleChange(term, MemberState.Role.LEADER);
                 logger.info("[{}] [ChangeRoleToLeader] from term: {} and currTerm: {}", memberState.getSelfId(), term, memberState.currTerm());
             } else {
@@ -164,6 +201,9 @@ public class DLedgerLeaderElector {
     public void changeRoleToCandidate(long term) {
         synchronized (memberState) {
             if (term >= memberState.currTerm()) {
+                if (!memberState.isCandidate()) {
+                    candidateSinceNs = System.nanoTime();
+                }
                 memberState.changeToCandidate(term);
                 handleRoleChange(term, MemberState.Role.CANDIDATE);
                 logger.info("[{}] [ChangeRoleToCandidate] from term: {} and currTerm: {}", memberState.getSelfId(), term, memberState.currTerm());
@@ -175,20 +215,86 @@ public class DLedgerLeaderElector {
 
     //just for test
     public void testRevote(long term) {
-        changeRoleToCandidate(term);
-        lastParseResult = VoteResponse.ParseResult.WAIT_TO_VOTE_NEXT;
-        nextTimeToRequestVote = -1;
+        //hold the lock, otherwise the state maintainer may vote with the last parse result in the old term
+        synchronized (memberState) {
+            changeRoleToCandidate(term);
+            lastParseResult = VoteResponse.ParseResult.WAIT_TO_VOTE_NEXT;
+            nextTimeToRequestVote = -1;
+            forceNextTerm = true;
+        }
     }
 
     public void changeRoleToFollower(long term, String leaderId) {
         logger.info("[{}][ChangeRoleToFollower] from term: {} leaderId: {} and currTerm: {}", memberState.getSelfId(), term, leaderId, memberState.currTerm());
         lastParseResult = VoteResponse.ParseResult.WAIT_TO_REVOTE;
         memberState.changeToFollower(term, leaderId);
-        lastLeaderHeartBeatTime = System.currentTimeMillis();
+        recordElectionDuration();
+        failureDetector.reset();
+        onLeaderHeartBeat(-1);
         handleRoleChange(term, MemberState.Role.FOLLOWER);
     }
 
+    private void onLeaderHeartBeat(long rttMs) {
+        long now = System.currentTimeMillis();
+        lastLeaderHeartBeatTime = now;
+        failureDetector.heartBeat(now);
+        if (rttMs >= 0) {
+            updateRtt(rttMs);
+        }
+    }
+
+    /**
+     * A push from the leader of the current term proves it alive as a heartbeat does. It is not sampled by the
+     * failure detector, as the leader only sends the heartbeats when the pushes stop for an interval.
+     */
+    public void onLeaderPush(long term, String leaderId) {
+        if (memberState.isFollower() && term == memberState.currTerm() && leaderId != null && leaderId.equals(memberState.getLeaderId())) {
+            long now = System.currentTimeMillis();
+            lastLeaderHeartBeatTime = now;
+            failureDetector.touch(now);
+        }
+    }
+
+    /**
+     * Whether the follower should suspect the leader, either by the phi of the heartbeat intervals once a heartbeat is
+     * overdue, or anyway after maxHeartBeatLeak intervals.
+     */
+    private boolean isLeaderSuspected() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - lastLeaderHeartBeatTime;
+        if (elapsed > getElectionTimeoutMs()) {
+            return true;
+        }
+        return dLedgerConfig.isEnableAdaptiveElection() && elapsed > heartBeatTimeIntervalMs
+            && failureDetector.phi(now, PHI_MIN_SAMPLES) > dLedgerConfig.getPhiSuspectThreshold();
+    }
+
+    /**
+     * Keep the min rtt of a window, so that the rounds slowed down by the connecting or a pause are not counted.
+     */
+    private void updateRtt(long rttMs) {
+        if (minRttMs < 0 || rttMs <= minRttMs || DLedgerUtils.elapsed(minRttTimeMs) > MIN_RTT_WINDOW_MS) {
+            minRttMs = rttMs;
+            minRttTimeMs = System.currentTimeMillis();
+        }
+    }
+
+    public long getMinRttMs() {
+        return minRttMs;
+    }
+
+    private void recordElectionDuration() {
+        long sinceNs = candidateSinceNs;
+        if (sinceNs != -1) {
+            candidateSinceNs = -1;
+            metrics.getElectionDuration().recordSinceNanos(sinceNs);
+        }
+    }
+
     public CompletableFuture<VoteResponse> handleVote(VoteRequest request, boolean self) {
+        if (!self) {
+            metrics.getVoteRequestsReceived().increment();
+        }
         //hold the lock to get the latest term, leaderId, ledgerEndIndex
         synchronized (memberState) {
             if (!memberState.isPeerMember(request.getLeaderId())) {
@@ -200,6 +306,11 @@ public class DLedgerLeaderElector {
                 return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_UNEXPECTED_LEADER));
             }
 
+            if (!self && !request.isLeadershipTransfer() && isLeaderLeaseHeld()) {
+                //neither grant the vote nor update the term, the leader may still be serving reads with its lease
+                return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_LEADER_LEASE));
+            }
+
             if (request.getLedgerEndTerm() < memberState.getLedgerEndTerm()) {
                 return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_EXPIRED_LEDGER_TERM));
             } else if (request.getLedgerEndTerm() == memberState.getLedgerEndTerm() && request.getLedgerEndIndex() < memberState.getLedgerEndIndex()) {
@@ -210,7 +321,10 @@ public class DLedgerLeaderElector {
                 return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_EXPIRED_VOTE_TERM));
             } else if (request.getTerm() == memberState.currTerm()) {
                 if (memberState.currVoteFor() == null) {
-                    //let it go
+                    if (memberState.getLeaderId() != null && !memberState.getLeaderId().equals(request.getLeaderId())) {
+                        //the leader of this term is known from its heartbeats, do not elect another one
+                        return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_ALREADY_HAS_LEADER));
+                    }
                 } else if (memberState.currVoteFor().equals(request.getLeaderId())) {
                     //repeat just let it go
                 } else {
@@ -236,11 +350,53 @@ public class DLedgerLeaderElector {
                 return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_TAKING_LEADERSHIP));
             }
 
-            memberState.setCurrVoteFor(request.getLeaderId());
+            long currTerm = memberState.currTerm();
+            //only answer once the vote is durable, the lock is released while waiting
+            return memberState.setCurrVoteFor(request.getLeaderId()).handle((v, t) -> {
+                if (t != null) {
+                    return new VoteResponse(request).term(currTerm).voteResult(VoteResponse.RESULT.UNKNOWN);
+                }
+                return new VoteResponse(request).term(currTerm).voteResult(VoteResponse.RESULT.ACCEPT);
+            });
+        }
+    }
+
+    /**
+     * Answer whether the candidate could win the election in the requested term, without changing any state here.
+     * The pre-vote is refused while a leader is still alive, so the term is not increased by a partitioned node.
+     */
+    public CompletableFuture<VoteResponse> handlePreVote(VoteRequest request, boolean self) {
+        synchronized (memberState) {
+            if (!memberState.isPeerMember(request.getLeaderId())) {
+                logger.warn("[BUG] [HandlePreVote] remoteId={} is an unknown member", request.getLeaderId());
+                return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_UNKNOWN_LEADER));
+            }
+            if (!self && memberState.getSelfId().equals(request.getLeaderId())) {
+                logger.warn("[BUG] [HandlePreVote] selfId={} but remoteId={}", memberState.getSelfId(), request.getLeaderId());
+                return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_UNEXPECTED_LEADER));
+            }
+            if (!self && hasLiveLeader()) {
+                return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_ALREADY_HAS_LEADER));
+            }
+            if (request.getLedgerEndTerm() < memberState.getLedgerEndTerm()) {
+                return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_EXPIRED_LEDGER_TERM));
+            } else if (request.getLedgerEndTerm() == memberState.getLedgerEndTerm() && request.getLedgerEndIndex() < memberState.getLedgerEndIndex()) {
+                return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_SMALL_LEDGER_END_INDEX));
+            }
+            if (request.getTerm() < memberState.currTerm()) {
+                return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.REJECT_EXPIRED_VOTE_TERM));
+            }
             return CompletableFuture.completedFuture(new VoteResponse(request).term(memberState.currTerm()).voteResult(VoteResponse.RESULT.ACCEPT));
         }
     }
 
+    private boolean hasLiveLeader() {
+        if (memberState.isLeader()) {
+            return true;
+        }
+        return memberState.isFollower() && memberState.getLeaderId() != null && !isLeaderSuspected();
+    }
+
     private void sendHeartbeats(long term, String leaderId) throws Exception {
         final AtomicInteger allNum = new AtomicInteger(1);
         final AtomicInteger succNum = new AtomicInteger(1);
@@ -249,16 +405,30 @@ public class DLedgerLeaderElector {
         final AtomicBoolean inconsistLeader = new AtomicBoolean(false);
         final CountDownLatch beatLatch = new CountDownLatch(1);
         long startHeartbeatTimeMs = System.currentTimeMillis();
+        //the lease is counted from the earliest send time of the requests acked by the followers
+        long leaseStartTimeMs = startHeartbeatTimeMs;
         for (String id : memberState.getPeerMap().keySet()) {
             if (memberState.getSelfId().equals(id)) {
                 continue;
             }
+            long ackTimeMs = memberState.getPeerAckTime(id);
+            if (startHeartbeatTimeMs - ackTimeMs < heartBeatTimeIntervalMs) {
+                //the follower has acked a push in the interval, which is a heartbeat already
+                metrics.getHeartbeatsPiggybacked().increment();
+                memberState.getPeersLiveTable().put(id, Boolean.TRUE);
+                leaseStartTimeMs = Math.min(leaseStartTimeMs, ackTimeMs);
+                succNum.incrementAndGet();
+                allNum.incrementAndGet();
+                continue;
+            }
             HeartBeatRequest heartBeatRequest = new HeartBeatRequest();
             heartBeatRequest.setGroup(memberState.getGroup());
             heartBeatRequest.setLocalId(memberState.getSelfId());
             heartBeatRequest.setRemoteId(id);
             heartBeatRequest.setLeaderId(leaderId);
             heartBeatRequest.setTerm(term);
+            heartBeatRequest.setRttMs(minRttMs);
+            metrics.getHeartbeatsSent().increment();
             CompletableFuture<HeartBeatResponse> future = dLedgerRpcService.heartBeat(heartBeatRequest);
             future.whenComplete((HeartBeatResponse x, Throwable ex) -> {
                 try {
@@ -288,8 +458,8 @@ public class DLedgerLeaderElector {
                     else
                         memberState.getPeersLiveTable().put(id, Boolean.TRUE);
 
-                    if (memberState.isQuorum(succNum.get())
-                        || memberState.isQuorum(succNum.get() + notReadyNum.get())) {
+                    if (memberState.isWriteQuorum(succNum.get())
+                        || memberState.isWriteQuorum(succNum.get() + notReadyNum.get())) {
                         beatLatch.countDown();
                     }
                 } catch (Throwable t) {
@@ -302,13 +472,25 @@ public class DLedgerLeaderElector {
                 }
             });
         }
+        if (memberState.isWriteQuorum(succNum.get()) || allNum.get() == memberState.peerSize()) {
+            beatLatch.countDown();
+        }
+        sendLearnerHeartbeats(term, leaderId, startHeartbeatTimeMs);
         beatLatch.await(heartBeatTimeIntervalMs, TimeUnit.MILLISECONDS);
-        if (memberState.isQuorum(succNum.get())) {
+        if (memberState.isWriteQuorum(succNum.get())) {
             lastSuccHeartBeatTime = System.currentTimeMillis();
+            if (leaseStartTimeMs == startHeartbeatTimeMs) {
+                updateRtt(lastSuccHeartBeatTime - startHeartbeatTimeMs);
+            }
+            synchronized (memberState) {
+                if (leaseStartTimeMs > leaseResetTime) {
+                    lastLeaseStartTime = leaseStartTimeMs;
+                }
+            }
         } else {
             logger.info("[{}] Parse heartbeat responses in cost={} term={} allNum={} succNum={} notReadyNum={} inconsistLeader={} maxTerm={} peerSize={} lastSuccHeartBeatTime={}",
                 memberState.getSelfId(), DLedgerUtils.elapsed(startHeartbeatTimeMs), term, allNum.get(), succNum.get(), notReadyNum.get(), inconsistLeader.get(), maxTerm.get(), memberState.peerSize(), new Timestamp(lastSuccHeartBeatTime));
-            if (memberState.isQuorum(succNum.get() + notReadyNum.get())) {
+            if (memberState.isWriteQuorum(succNum.get() + notReadyNum.get())) {
                 lastSendHeartBeatTime = -1;
             } else if (maxTerm.get() > term) {
                 changeRoleToCandidate(maxTerm.get());
@@ -320,8 +502,41 @@ public class DLedgerLeaderElector {
         }
     }
 
+    /**
+     * The learners follow the leader by the heartbeats too, but their responses are not waited for.
+     */
+    private void sendLearnerHeartbeats(long term, String leaderId, long startHeartbeatTimeMs) throws Exception {
+        for (String id : memberState.getLearnerMap().keySet()) {
+            if (startHeartbeatTimeMs - memberState.getPeerAckTime(id) < heartBeatTimeIntervalMs) {
+                metrics.getHeartbeatsPiggybacked().increment();
+                memberState.getPeersLiveTable().put(id, Boolean.TRUE);
+                continue;
+            }
+            HeartBeatRequest heartBeatRequest = new HeartBeatRequest();
+            heartBeatRequest.setGroup(memberState.getGroup());
+            heartBeatRequest.setLocalId(memberState.getSelfId());
+            heartBeatRequest.setRemoteId(id);
+            heartBeatRequest.setLeaderId(leaderId);
+            heartBeatRequest.setTerm(term);
+            heartBeatRequest.setRttMs(minRttMs);
+            metrics.getHeartbeatsSent().increment();
+            dLedgerRpcService.heartBeat(heartBeatRequest).whenComplete((x, ex) -> {
+                boolean live = ex == null && x.getCode() != DLedgerResponseCode.NETWORK_ERROR.getCode();
+                memberState.getPeersLiveTable().put(id, live);
+            });
+        }
+    }
+
+    private boolean isHeartBeatDue() {
+        if (alignHeartBeat && lastSendHeartBeatTime > 0) {
+            //send at the multiples of the interval, so that the heartbeats of the groups in one process could be coalesced
+            return System.currentTimeMillis() / heartBeatTimeIntervalMs != lastSendHeartBeatTime / heartBeatTimeIntervalMs;
+        }
+        return DLedgerUtils.elapsed(lastSendHeartBeatTime) > heartBeatTimeIntervalMs;
+    }
+
     private void maintainAsLeader() throws Exception {
-        if (DLedgerUtils.elapsed(lastSendHeartBeatTime) > heartBeatTimeIntervalMs) {
+        if (isHeartBeatDue()) {
             long term;
             String leaderId;
             synchronized (memberState) {
@@ -338,11 +553,16 @@ public class DLedgerLeaderElector {
     }
 
     private void maintainAsFollower() {
-        if (DLedgerUtils.elapsed(lastLeaderHeartBeatTime) > 2 * heartBeatTimeIntervalMs) {
+        if (DLedgerUtils.elapsed(lastLeaderHeartBeatTime) > heartBeatTimeIntervalMs) {
             synchronized (memberState) {
-                if (memberState.isFollower() && (DLedgerUtils.elapsed(lastLeaderHeartBeatTime) > maxHeartBeatLeak * heartBeatTimeIntervalMs)) {
+                if (memberState.isFollower() && isLeaderSuspected()) {
                     logger.info("[{}][HeartBeatTimeOut] lastLeaderHeartBeatTime: {} heartBeatTimeIntervalMs: {} lastLeader={}", memberState.getSelfId(), new Timestamp(lastLeaderHeartBeatTime), heartBeatTimeIntervalMs, memberState.getLeaderId());
                     changeRoleToCandidate(memberState.currTerm());
+                    if (dLedgerConfig.isEnablePreVote()) {
+                        //the current term already has a leader, so go for the next term after a random backoff
+                        lastParseResult = VoteResponse.ParseResult.WAIT_TO_VOTE_NEXT;
+                        nextTimeToRequestVote = getNextTimeToRequestVote();
+                    }
                 }
             }
         }
@@ -352,18 +572,14 @@ public class DLedgerLeaderElector {
         long ledgerEndIndex) throws Exception {
         List<CompletableFuture<VoteResponse>> responses = new ArrayList<>();
         for (String id : memberState.getPeerMap().keySet()) {
-            VoteRequest voteRequest = new VoteRequest();
-            voteRequest.setGroup(memberState.getGroup());
-            voteRequest.setLedgerEndIndex(ledgerEndIndex);
-            voteRequest.setLedgerEndTerm(ledgerEndTerm);
-            voteRequest.setLeaderId(memberState.getSelfId());
-            voteRequest.setTerm(term);
-            voteRequest.setRemoteId(id);
+            VoteRequest voteRequest = buildVoteRequest(id, term, ledgerEndTerm, ledgerEndIndex);
+            voteRequest.setLeadershipTransfer(memberState.getTermToTakeLeadership() == term);
             CompletableFuture<VoteResponse> voteResponse;
             if (memberState.getSelfId().equals(id)) {
                 voteResponse = handleVote(voteRequest, true);
             } else {
                 //async
+                metrics.getVoteRequestsSent().increment();
                 voteResponse = dLedgerRpcService.vote(voteRequest);
             }
             responses.add(voteResponse);
@@ -372,12 +588,140 @@ public class DLedgerLeaderElector {
         return responses;
     }
 
-    private boolean isTakingLeadership() {
-        if (dLedgerConfig.getPreferredLeaderIds() != null && memberState.getTermToTakeLeadership() == memberState.currTerm()) {
-            List<String> preferredLeaderIds = Arrays.asList(dLedgerConfig.getPreferredLeaderIds().split(";"));
-            return preferredLeaderIds.contains(memberState.getSelfId());
+    private VoteRequest buildVoteRequest(String remoteId, long term, long ledgerEndTerm, long ledgerEndIndex) {
+        VoteRequest voteRequest = new VoteRequest();
+        voteRequest.setGroup(memberState.getGroup());
+        voteRequest.setLedgerEndIndex(ledgerEndIndex);
+        voteRequest.setLedgerEndTerm(ledgerEndTerm);
+        voteRequest.setLocalId(memberState.getSelfId());
+        voteRequest.setLeaderId(memberState.getSelfId());
+        voteRequest.setTerm(term);
+        voteRequest.setRemoteId(remoteId);
+        return voteRequest;
+    }
+
+    /**
+     * Run a pre-vote round for the term that nextTerm() would move to, and return whether a quorum would vote for this
+     * node. A larger term known by the peers is adopted, as it is not increased by this node.
+     */
+    private boolean preVoteForNextTerm() throws Exception {
+        long term;
+        long ledgerEndTerm;
+        long ledgerEndIndex;
+        synchronized (memberState) {
+            if (!memberState.isCandidate()) {
+                return false;
+            }
+            if (forceNextTerm) {
+                //set with the role under the lock, it may be missed by the unlocked check of the caller
+                return true;
+            }
+            term = Math.max(memberState.currTerm() + 1, memberState.getKnownMaxTermInGroup());
+            ledgerEndIndex = memberState.getLedgerEndIndex();
+            ledgerEndTerm = memberState.getLedgerEndTerm();
         }
-        return false;
+        final AtomicLong knownMaxTermInGroup = new AtomicLong(-1);
+        final AtomicInteger allNum = new AtomicInteger(0);
+        final AtomicInteger acceptedNum = new AtomicInteger(0);
+        CountDownLatch preVoteLatch = new CountDownLatch(1);
+        for (String id : memberState.getPeerMap().keySet()) {
+            VoteRequest voteRequest = buildVoteRequest(id, term, ledgerEndTerm, ledgerEndIndex);
+            CompletableFuture<VoteResponse> future;
+            if (memberState.getSelfId().equals(id)) {
+                future = handlePreVote(voteRequest, true);
+            } else {
+                future = dLedgerRpcService.preVote(voteRequest);
+            }
+            future.whenComplete((VoteResponse x, Throwable ex) -> {
+                try {
+                    if (ex != null) {
+                        throw ex;
+                    }
+                    if (x.getVoteResult() == VoteResponse.RESULT.ACCEPT || x.getCode() == DLedgerResponseCode.UNSUPPORTED.getCode()) {
+                        //an older peer is asked for the real vote anyway, as it would be without the pre-vote
+                        acceptedNum.incrementAndGet();
+                    } else if (x.getVoteResult() != VoteResponse.RESULT.UNKNOWN) {
+                        knownMaxTermInGroup.accumulateAndGet(x.getTerm(), Math::max);
+                    }
+                    if (memberState.isElectionQuorum(acceptedNum.get())) {
+                        preVoteLatch.countDown();
+                    }
+                } catch (Throwable t) {
+                    logger.error("pre-vote response failed", t);
+                } finally {
+                    if (allNum.incrementAndGet() == memberState.peerSize()) {
+                        preVoteLatch.countDown();
+                    }
+                }
+            });
+        }
+        try {
+            preVoteLatch.await(2000 + random.nextInt(maxVoteIntervalMs), TimeUnit.MILLISECONDS);
+        } catch (Throwable ignore) {
+
+        }
+        boolean passed = memberState.isElectionQuorum(acceptedNum.get());
+        logger.info("[{}] [PARSE_PRE_VOTE_RESULT] term={} memberNum={} allNum={} acceptedNum={} maxTerm={} passed={}",
+            memberState.getSelfId(), term, memberState.peerSize(), allNum, acceptedNum, knownMaxTermInGroup.get(), passed);
+        if (!passed) {
+            synchronized (memberState) {
+                if (memberState.isCandidate() && knownMaxTermInGroup.get() > memberState.currTerm()) {
+                    //catch up with the term without voting, so the heartbeats of the live leader are accepted at once
+                    long prevTerm = memberState.currTerm();
+                    changeRoleToCandidate(knownMaxTermInGroup.get());
+                    memberState.nextTerm();
+                    logger.info("[{}] [ADOPT_TERM] from {} to {}", memberState.getSelfId(), prevTerm, memberState.currTerm());
+                }
+            }
+        }
+        return passed;
+    }
+
+    private long getElectionTimeoutMs() {
+        return (long) maxHeartBeatLeak * heartBeatTimeIntervalMs;
+    }
+
+    public long getLastLeaderHeartBeatTime() {
+        return lastLeaderHeartBeatTime;
+    }
+
+    public long getLeaderLeaseTimeMs() {
+        return getElectionTimeoutMs() - dLedgerConfig.getMaxClockDriftMs();
+    }
+
+    /**
+     * Whether this node is the leader and still holds the lease, so that it can serve reads locally.
+     * The lease is given up as soon as a leadership transfer starts.
+     */
+    public boolean isLeaderLeaseValid() {
+        if (!dLedgerConfig.isEnableLeaderLease() || !memberState.isLeader() || memberState.getTransferee() != null) {
+            return false;
+        }
+        long leaseStartTime = lastLeaseStartTime;
+        return leaseStartTime > 0 && DLedgerUtils.elapsed(leaseStartTime) < getLeaderLeaseTimeMs();
+    }
+
+    /**
+     * Must be called with the lock of memberState held.
+     */
+    private void resetLeaderLease() {
+        leaseResetTime = System.currentTimeMillis();
+        lastLeaseStartTime = -1;
+    }
+
+    private boolean isLeaderLeaseHeld() {
+        if (!dLedgerConfig.isEnableLeaderLease()) {
+            return false;
+        }
+        if (memberState.isLeader()) {
+            return isLeaderLeaseValid();
+        }
+        return DLedgerUtils.elapsed(lastLeaderHeartBeatTime) < getElectionTimeoutMs();
+    }
+
+    private boolean isTakingLeadership() {
+        //the leader has caught this node up and stopped the appends before asking it to take the leadership
+        return memberState.getTermToTakeLeadership() == memberState.currTerm();
     }
 
     private long getNextTimeToRequestVote() {
@@ -385,14 +729,47 @@ public class DLedgerLeaderElector {
             return System.currentTimeMillis() + dLedgerConfig.getMinTakeLeadershipVoteIntervalMs() +
                 random.nextInt(dLedgerConfig.getMaxTakeLeadershipVoteIntervalMs() - dLedgerConfig.getMinTakeLeadershipVoteIntervalMs());
         }
+        long rtt = minRttMs;
+        if (dLedgerConfig.isEnableAdaptiveElection() && rtt >= 0) {
+            //a spread of several rtt is enough to avoid the split votes, bounded by the configured intervals
+            //the spread is kept above the scheduling jitter, a loaded node responds far slower than the min rtt
+            int min = (int) Math.min(minVoteIntervalMs, Math.max(MIN_ADAPTIVE_VOTE_INTERVAL_MS, 4 * rtt));
+            int max = (int) Math.max(min + MIN_ADAPTIVE_VOTE_SPREAD_MS, Math.min(maxVoteIntervalMs, 12 * rtt));
+            return System.currentTimeMillis() + min + random.nextInt(max - min);
+        }
         return System.currentTimeMillis() + minVoteIntervalMs + random.nextInt(maxVoteIntervalMs - minVoteIntervalMs);
     }
 
+    private long getAlreadyHasLeaderBackoffMs() {
+        if (dLedgerConfig.isEnableAdaptiveElection()) {
+            //the other followers could suspect the leader as soon as its heartbeat is overdue
+            return heartBeatTimeIntervalMs;
+        }
+        return (long) heartBeatTimeIntervalMs * maxHeartBeatLeak;
+    }
+
     private void maintainAsCandidate() throws Exception {
+        if (memberState.isLearner() || memberState.isWitness()) {
+            //a learner or a witness never runs for the leader, it only takes the known term and waits for the heartbeats
+            synchronized (memberState) {
+                if (memberState.isCandidate() && memberState.getKnownMaxTermInGroup() > memberState.currTerm()) {
+                    memberState.nextTerm();
+                }
+                needIncreaseTermImmediately = false;
+            }
+            return;
+        }
         //for candidate
         if (System.currentTimeMillis() < nextTimeToRequestVote && !needIncreaseTermImmediately) {
             return;
         }
+        if (lastParseResult == VoteResponse.ParseResult.WAIT_TO_VOTE_NEXT && !needIncreaseTermImmediately
+            && dLedgerConfig.isEnablePreVote() && !forceNextTerm && !preVoteForNextTerm()) {
+            //keep the term until the election could be won
+            nextTimeToRequestVote = getNextTimeToRequestVote();
+            return;
+        }
+        forceNextTerm = false;
         long term;
         long ledgerEndTerm;
         long ledgerEndIndex;
@@ -403,6 +780,7 @@ public class DLedgerLeaderElector {
             if (lastParseResult == VoteResponse.ParseResult.WAIT_TO_VOTE_NEXT || needIncreaseTermImmediately) {
                 long prevTerm = memberState.currTerm();
                 term = memberState.nextTerm();
+                metrics.getElections().increment();
                 logger.info("{}_[INCREASE_TERM] from {} to {}", memberState.getSelfId(), prevTerm, term);
                 lastParseResult = VoteResponse.ParseResult.WAIT_TO_REVOTE;
             } else {
@@ -414,7 +792,9 @@ public class DLedgerLeaderElector {
         if (needIncreaseTermImmediately) {
             nextTimeToRequestVote = getNextTimeToRequestVote();
             needIncreaseTermImmediately = false;
-            return;
+            if (!isTakingLeadership()) {
+                return;
+            }
         }
 
         long startVoteTimeMs = System.currentTimeMillis();
@@ -426,6 +806,7 @@ public class DLedgerLeaderElector {
         final AtomicInteger notReadyTermNum = new AtomicInteger(0);
         final AtomicInteger biggerLedgerNum = new AtomicInteger(0);
         final AtomicBoolean alreadyHasLeader = new AtomicBoolean(false);
+        final AtomicBoolean leaderLeaseHeld = new AtomicBoolean(false);
 
         CountDownLatch voteLatch = new CountDownLatch(1);
         for (CompletableFuture<VoteResponse> future : quorumVoteResponses) {
@@ -449,6 +830,9 @@ public class DLedgerLeaderElector {
                             case REJECT_ALREADY_HAS_LEADER:
                                 alreadyHasLeader.compareAndSet(false, true);
                                 break;
+                            case REJECT_LEADER_LEASE:
+                                leaderLeaseHeld.compareAndSet(false, true);
+                                break;
                             case REJECT_TERM_SMALL_THAN_LEDGER:
                             case REJECT_EXPIRED_VOTE_TERM:
                                 if (x.getTerm() > knownMaxTermInGroup.get()) {
@@ -468,8 +852,8 @@ public class DLedgerLeaderElector {
                         }
                     }
                     if (alreadyHasLeader.get()
-                        || memberState.isQuorum(acceptedNum.get())
-                        || memberState.isQuorum(acceptedNum.get() + notReadyTermNum.get())) {
+                        || memberState.isElectionQuorum(acceptedNum.get())
+                        || memberState.isElectionQuorum(acceptedNum.get() + notReadyTermNum.get())) {
                         voteLatch.countDown();
                     }
                 } catch (Throwable t) {
@@ -491,6 +875,9 @@ public class DLedgerLeaderElector {
         }
 
         lastVoteCost = DLedgerUtils.elapsed(startVoteTimeMs);
+        if (allNum.get() == memberState.peerSize()) {
+            updateRtt(lastVoteCost);
+        }
         VoteResponse.ParseResult parseResult;
         if (knownMaxTermInGroup.get() > term) {
             parseResult = VoteResponse.ParseResult.WAIT_TO_VOTE_NEXT;
@@ -498,24 +885,30 @@ public class DLedgerLeaderElector {
             changeRoleToCandidate(knownMaxTermInGroup.get());
         } else if (alreadyHasLeader.get()) {
             parseResult = VoteResponse.ParseResult.WAIT_TO_REVOTE;
-            nextTimeToRequestVote = getNextTimeToRequestVote() + heartBeatTimeIntervalMs * maxHeartBeatLeak;
-        } else if (!memberState.isQuorum(validNum.get())) {
+            nextTimeToRequestVote = getNextTimeToRequestVote() + getAlreadyHasLeaderBackoffMs();
+        } else if (leaderLeaseHeld.get() && !memberState.isElectionQuorum(acceptedNum.get() + notReadyTermNum.get())) {
+            //do not increase the term, just wait for the lease of the old leader to expire
+            parseResult = VoteResponse.ParseResult.WAIT_TO_REVOTE;
+            nextTimeToRequestVote = getNextTimeToRequestVote();
+        } else if (!memberState.isElectionQuorum(validNum.get())) {
             parseResult = VoteResponse.ParseResult.WAIT_TO_REVOTE;
             nextTimeToRequestVote = getNextTimeToRequestVote();
-        } else if (!memberState.isQuorum(validNum.get() - biggerLedgerNum.get())) {
+        } else if (!memberState.isElectionQuorum(validNum.get() - biggerLedgerNum.get())) {
             parseResult = VoteResponse.ParseResult.WAIT_TO_REVOTE;
             nextTimeToRequestVote = getNextTimeToRequestVote() + maxVoteIntervalMs;
-        } else if (memberState.isQuorum(acceptedNum.get())) {
+        } else if (memberState.isElectionQuorum(acceptedNum.get())) {
             parseResult = VoteResponse.ParseResult.PASSED;
-        } else if (memberState.isQuorum(acceptedNum.get() + notReadyTermNum.get())) {
+        } else if (memberState.isElectionQuorum(acceptedNum.get() + notReadyTermNum.get())) {
             parseResult = VoteResponse.ParseResult.REVOTE_IMMEDIATELY;
+            //the peers not ready have moved to the term on the request, and vote for it now
+            nextTimeToRequestVote = -1;
         } else {
             parseResult = VoteResponse.ParseResult.WAIT_TO_VOTE_NEXT;
             nextTimeToRequestVote = getNextTimeToRequestVote();
         }
         lastParseResult = parseResult;
-        logger.info("[{}] [PARSE_VOTE_RESULT] cost={} term={} memberNum={} allNum={} acceptedNum={} notReadyTermNum={} biggerLedgerNum={} alreadyHasLeader={} maxTerm={} result={}",
-            memberState.getSelfId(), lastVoteCost, term, memberState.peerSize(), allNum, acceptedNum, notReadyTermNum, biggerLedgerNum, alreadyHasLeader, knownMaxTermInGroup.get(), parseResult);
+        logger.info("[{}] [PARSE_VOTE_RESULT] cost={} term={} memberNum={} allNum={} acceptedNum={} notReadyTermNum={} biggerLedgerNum={} alreadyHasLeader={} leaderLeaseHeld={} maxTerm={} result={}",
+            memberState.getSelfId(), lastVoteCost, term, memberState.peerSize(), allNum, acceptedNum, notReadyTermNum, biggerLedgerNum, alreadyHasLeader, leaderLeaseHeld, knownMaxTermInGroup.get(), parseResult);
 
         if (parseResult == VoteResponse.ParseResult.PASSED) {
             logger.info("[{}] [VOTE_RESULT] has been elected to be the leader in term {}", memberState.getSelfId(), term);
@@ -562,6 +955,13 @@ public class DLedgerLeaderElector {
         }
     }
 
+    /**
+     * Transfer the leadership within leadershipTransferWaitTimeout:
+     * 1.reject the new appends by setting the transferee
+     * 2.push the remaining entries to the transferee at once until it acks the ledger end index
+     * 3.ask the transferee to take the leadership, which starts the election without waiting for the timeout
+     * The appends are accepted again if it fails.
+     */
     public CompletableFuture<LeadershipTransferResponse> handleLeadershipTransfer(
         LeadershipTransferRequest request) throws Exception {
         logger.info("handleLeadershipTransfer: {}", request);
@@ -582,7 +982,49 @@ public class DLedgerLeaderElector {
             }
 
             memberState.setTransferee(request.getTransfereeId());
+            //the followers grant the vote of the transferee within their lease
+            resetLeaderLease();
+        }
+        long deadline = System.currentTimeMillis() + dLedgerConfig.getLeadershipTransferWaitTimeout();
+        return catchUpTransferee(request, deadline).thenCompose(caughtUp -> {
+            if (!caughtUp) {
+                logger.warn("[HandleLeaderTransfer] transferee={} is not caught up in {}ms", request.getTransfereeId(), dLedgerConfig.getLeadershipTransferWaitTimeout());
+                return CompletableFuture.completedFuture(new LeadershipTransferResponse().term(memberState.currTerm()).code(DLedgerResponseCode.TAKE_LEADERSHIP_FAILED.getCode()));
+            }
+            return sendTakeLeadership(request);
+        }).thenApply(response -> {
+            synchronized (memberState) {
+                if (response.getCode() != DLedgerResponseCode.SUCCESS.getCode() ||
+                    (memberState.currTerm() == request.getTerm() && memberState.getTransferee() != null)) {
+                    logger.warn("leadershipTransfer failed, set transferee to null");
+                    memberState.setTransferee(null);
+                    //the transferee may lead the next term anyway, if only the response is lost
+                    resetLeaderLease();
+                }
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Catch up the transferee to the ledger end index, again if an append accepted just before the transferee was
+     * set moves it meanwhile.
+     */
+    private CompletableFuture<Boolean> catchUpTransferee(LeadershipTransferRequest request, long deadline) {
+        long ledgerEndIndex = memberState.getLedgerEndIndex();
+        long leftMs = deadline - System.currentTimeMillis();
+        if (leftMs <= 0 || memberState.currTerm() != request.getTerm()) {
+            return CompletableFuture.completedFuture(false);
         }
+        return dLedgerEntryPusher.catchUp(request.getTerm(), request.getTransfereeId(), ledgerEndIndex, leftMs).thenCompose(caughtUp -> {
+            if (caughtUp && memberState.getLedgerEndIndex() > ledgerEndIndex) {
+                return catchUpTransferee(request, deadline);
+            }
+            return CompletableFuture.completedFuture(caughtUp);
+        });
+    }
+
+    private CompletableFuture<LeadershipTransferResponse> sendTakeLeadership(LeadershipTransferRequest request) {
         LeadershipTransferRequest takeLeadershipRequest = new LeadershipTransferRequest();
         takeLeadershipRequest.setGroup(memberState.getGroup());
         takeLeadershipRequest.setLeaderId(memberState.getLeaderId());
@@ -596,17 +1038,12 @@ public class DLedgerLeaderElector {
             logger.warn("[HandleLeaderTransfer] term changed, cur={} , request={}", memberState.currTerm(), request.getTerm());
             return CompletableFuture.completedFuture(new LeadershipTransferResponse().term(memberState.currTerm()).code(DLedgerResponseCode.EXPIRED_TERM.getCode()));
         }
-
-        return dLedgerRpcService.leadershipTransfer(takeLeadershipRequest).thenApply(response -> {
-            synchronized (memberState) {
-                if (response.getCode() != DLedgerResponseCode.SUCCESS.getCode() ||
-                    (memberState.currTerm() == request.getTerm() && memberState.getTransferee() != null)) {
-                    logger.warn("leadershipTransfer failed, set transferee to null");
-                    memberState.setTransferee(null);
-                }
-            }
-            return response;
-        });
+        try {
+            return dLedgerRpcService.leadershipTransfer(takeLeadershipRequest);
+        } catch (Exception e) {
+            logger.error("[HandleLeaderTransfer] send the take leadership request failed, request={}", takeLeadershipRequest, e);
+            return CompletableFuture.completedFuture(new LeadershipTransferResponse().term(memberState.currTerm()).code(DLedgerResponseCode.INTERNAL_ERROR.getCode()));
+        }
     }
 
     public CompletableFuture<LeadershipTransferResponse> handleTakeLeadership(
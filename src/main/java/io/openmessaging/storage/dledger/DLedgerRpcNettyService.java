@@ -18,12 +18,21 @@ package io.openmessaging.storage.dledger;
 
 import com.alibaba.fastjson.JSON;
 import io.netty.channel.ChannelHandlerContext;
+import io.openmessaging.storage.dledger.metrics.AppendTracer;
 import io.openmessaging.storage.dledger.protocol.AppendEntryRequest;
 import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.BatchAppendEntryRequest;
+import io.openmessaging.storage.dledger.protocol.BatchAppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.BatchAppendEntryResponseCoder;
+import io.openmessaging.storage.dledger.protocol.BatchHeartBeatRequest;
+import io.openmessaging.storage.dledger.protocol.BatchHeartBeatResponse;
+import io.openmessaging.storage.dledger.protocol.ChangePeersRequest;
+import io.openmessaging.storage.dledger.protocol.ChangePeersResponse;
 import io.openmessaging.storage.dledger.protocol.DLedgerRequestCode;
 import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
 import io.openmessaging.storage.dledger.protocol.GetEntriesRequest;
 import io.openmessaging.storage.dledger.protocol.GetEntriesResponse;
+import io.openmessaging.storage.dledger.protocol.GetEntriesResponseCoder;
 import io.openmessaging.storage.dledger.protocol.HeartBeatRequest;
 import io.openmessaging.storage.dledger.protocol.HeartBeatResponse;
 import io.openmessaging.storage.dledger.protocol.LeadershipTransferRequest;
@@ -37,10 +46,15 @@ import io.openmessaging.storage.dledger.protocol.PushEntryResponse;
 import io.openmessaging.storage.dledger.protocol.RequestOrResponse;
 import io.openmessaging.storage.dledger.protocol.VoteRequest;
 import io.openmessaging.storage.dledger.protocol.VoteResponse;
+import io.openmessaging.storage.dledger.proxy.DLedgerManager;
 import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import io.openmessaging.storage.dledger.utils.ThreadUtils;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.rocketmq.remoting.ChannelEventListener;
@@ -50,6 +64,7 @@ import org.apache.rocketmq.remoting.netty.NettyRemotingServer;
 import org.apache.rocketmq.remoting.netty.NettyRequestProcessor;
 import org.apache.rocketmq.remoting.netty.NettyServerConfig;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RemotingSysResponseCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,32 +84,22 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
 
     private DLedgerServer dLedgerServer;
 
-    private ExecutorService futureExecutor = Executors.newFixedThreadPool(4, new ThreadFactory() {
-        private AtomicInteger threadIndex = new AtomicInteger(0);
+    private DLedgerManager dLedgerManager;
 
-        @Override
-        public Thread newThread(Runnable r) {
-            return new Thread(r, "FutureExecutor_" + this.threadIndex.incrementAndGet());
-        }
-    });
+    private volatile HeartBeatCoalescer heartBeatCoalescer;
 
-    private ExecutorService voteInvokeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+    private ExecutorService futureExecutor = Executors.newFixedThreadPool(4, new ThreadFactory() {
         private AtomicInteger threadIndex = new AtomicInteger(0);
 
         @Override
         public Thread newThread(Runnable r) {
-            return new Thread(r, "voteInvokeExecutor_" + this.threadIndex.incrementAndGet());
+            return new Thread(r, "FutureExecutor_" + this.threadIndex.incrementAndGet());
         }
     });
 
-    private ExecutorService heartBeatInvokeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
-        private AtomicInteger threadIndex = new AtomicInteger(0);
+    private ExecutorService voteInvokeExecutor;
 
-        @Override
-        public Thread newThread(Runnable r) {
-            return new Thread(r, "heartBeatInvokeExecutor_" + this.threadIndex.incrementAndGet());
-        }
-    });
+    private ExecutorService heartBeatInvokeExecutor;
 
     public DLedgerRpcNettyService(DLedgerServer dLedgerServer) {
         this(dLedgerServer, null, null, null);
@@ -107,6 +112,23 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
     public DLedgerRpcNettyService(DLedgerServer dLedgerServer, NettyServerConfig nettyServerConfig, NettyClientConfig nettyClientConfig, ChannelEventListener channelEventListener) {
         this.dLedgerServer = dLedgerServer;
         this.memberState = dLedgerServer.getMemberState();
+        init(Integer.parseInt(memberState.getSelfAddr().split(":")[1]), nettyServerConfig, nettyClientConfig, channelEventListener,
+            dLedgerServer.getdLedgerConfig().isUseVirtualThread());
+    }
+
+    /**
+     * A service shared by the servers of a DLedgerProxy, the requests are routed by their group and remoteId.
+     */
+    public DLedgerRpcNettyService(DLedgerManager dLedgerManager, int listenPort, NettyServerConfig nettyServerConfig,
+        NettyClientConfig nettyClientConfig, ChannelEventListener channelEventListener, boolean useVirtualThread) {
+        this.dLedgerManager = dLedgerManager;
+        init(listenPort, nettyServerConfig, nettyClientConfig, channelEventListener, useVirtualThread);
+    }
+
+    private void init(int listenPort, NettyServerConfig nettyServerConfig, NettyClientConfig nettyClientConfig,
+        ChannelEventListener channelEventListener, boolean useVirtualThread) {
+        this.voteInvokeExecutor = ThreadUtils.newBlockingExecutor("voteInvokeExecutor", useVirtualThread);
+        this.heartBeatInvokeExecutor = ThreadUtils.newBlockingExecutor("heartBeatInvokeExecutor", useVirtualThread);
         NettyRequestProcessor protocolProcessor = new NettyRequestProcessor() {
             @Override
             public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) throws Exception {
@@ -122,16 +144,20 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
         if (nettyServerConfig == null) {
             nettyServerConfig = new NettyServerConfig();
         }
-        nettyServerConfig.setListenPort(Integer.parseInt(memberState.getSelfAddr().split(":")[1]));
+        nettyServerConfig.setListenPort(listenPort);
         this.remotingServer = new NettyRemotingServer(nettyServerConfig, channelEventListener);
         this.remotingServer.registerProcessor(DLedgerRequestCode.METADATA.getCode(), protocolProcessor, null);
         this.remotingServer.registerProcessor(DLedgerRequestCode.APPEND.getCode(), protocolProcessor, null);
         this.remotingServer.registerProcessor(DLedgerRequestCode.GET.getCode(), protocolProcessor, null);
+        this.remotingServer.registerProcessor(DLedgerRequestCode.BATCH_APPEND.getCode(), protocolProcessor, null);
         this.remotingServer.registerProcessor(DLedgerRequestCode.PULL.getCode(), protocolProcessor, null);
         this.remotingServer.registerProcessor(DLedgerRequestCode.PUSH.getCode(), protocolProcessor, null);
         this.remotingServer.registerProcessor(DLedgerRequestCode.VOTE.getCode(), protocolProcessor, null);
+        this.remotingServer.registerProcessor(DLedgerRequestCode.PRE_VOTE.getCode(), protocolProcessor, null);
         this.remotingServer.registerProcessor(DLedgerRequestCode.HEART_BEAT.getCode(), protocolProcessor, null);
+        this.remotingServer.registerProcessor(DLedgerRequestCode.BATCH_HEART_BEAT.getCode(), protocolProcessor, null);
         this.remotingServer.registerProcessor(DLedgerRequestCode.LEADERSHIP_TRANSFER.getCode(), protocolProcessor, null);
+        this.remotingServer.registerProcessor(DLedgerRequestCode.CHANGE_PEERS.getCode(), protocolProcessor, null);
 
         //start the remoting client
         if (nettyClientConfig == null) {
@@ -141,12 +167,51 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
     }
 
     private String getPeerAddr(RequestOrResponse request) {
-        //support different groups in the near future
-        return memberState.getPeerAddr(request.getRemoteId());
+        if (dLedgerManager == null) {
+            return memberState.getPeerAddr(request.getRemoteId());
+        }
+        DLedgerServer server = dLedgerManager.getDLedgerServer(request.getGroup(), request.getLocalId());
+        if (server == null) {
+            server = dLedgerManager.getAnyDLedgerServer(request.getGroup());
+        }
+        return server == null ? null : server.getMemberState().getPeerAddr(request.getRemoteId());
+    }
+
+    /**
+     * The server the request is sent to, or null if it is not hosted here.
+     */
+    private DLedgerServer getDLedgerServer(RequestOrResponse request) {
+        if (dLedgerManager == null) {
+            return dLedgerServer;
+        }
+        return dLedgerManager.getDLedgerServer(request.getGroup(), request.getRemoteId());
+    }
+
+    private <T extends RequestOrResponse> CompletableFuture<T> unknownServer(RequestOrResponse request, T response) {
+        response.copyBaseInfo(request);
+        DLedgerResponseCode code = dLedgerManager.containsGroup(request.getGroup()) ? DLedgerResponseCode.UNKNOWN_MEMBER : DLedgerResponseCode.UNKNOWN_GROUP;
+        response.setCode(code.getCode());
+        return CompletableFuture.completedFuture(response);
+    }
+
+    /**
+     * Coalesce the heartbeats to the same peer within windowMs into one request, which is only useful when the service is
+     * shared by many groups.
+     */
+    public void enableBatchHeartBeat(long windowMs, ScheduledExecutorService scheduler) {
+        this.heartBeatCoalescer = new HeartBeatCoalescer(remotingClient, windowMs, scheduler, this::sendHeartBeat);
     }
 
     @Override
     public CompletableFuture<HeartBeatResponse> heartBeat(HeartBeatRequest request) throws Exception {
+        HeartBeatCoalescer coalescer = heartBeatCoalescer;
+        if (coalescer != null) {
+            return coalescer.heartBeat(getPeerAddr(request), request);
+        }
+        return sendHeartBeat(request);
+    }
+
+    private CompletableFuture<HeartBeatResponse> sendHeartBeat(HeartBeatRequest request) {
         CompletableFuture<HeartBeatResponse> future = new CompletableFuture<>();
         heartBeatInvokeExecutor.execute(() -> {
             try {
@@ -172,23 +237,37 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
 
     @Override
     public CompletableFuture<VoteResponse> vote(VoteRequest request) throws Exception {
+        return vote(request, DLedgerRequestCode.VOTE);
+    }
+
+    @Override
+    public CompletableFuture<VoteResponse> preVote(VoteRequest request) throws Exception {
+        return vote(request, DLedgerRequestCode.PRE_VOTE);
+    }
+
+    private CompletableFuture<VoteResponse> vote(VoteRequest request, DLedgerRequestCode requestCode) {
         CompletableFuture<VoteResponse> future = new CompletableFuture<>();
         voteInvokeExecutor.execute(() -> {
             try {
-                RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(DLedgerRequestCode.VOTE.getCode(), null);
+                RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(requestCode.getCode(), null);
                 wrapperRequest.setBody(JSON.toJSONBytes(request));
                 remotingClient.invokeAsync(getPeerAddr(request), wrapperRequest, 3000, responseFuture -> {
                     RemotingCommand responseCommand = responseFuture.getResponseCommand();
-                    if (responseCommand != null) {
-                        VoteResponse response = JSON.parseObject(responseCommand.getBody(), VoteResponse.class);
+                    if (responseCommand != null && responseCommand.getCode() == RemotingSysResponseCode.REQUEST_CODE_NOT_SUPPORTED) {
+                        //an older peer without the pre-vote
+                        VoteResponse response = new VoteResponse(request);
+                        response.setCode(DLedgerResponseCode.UNSUPPORTED.getCode());
                         future.complete(response);
+                    } else if (responseCommand != null) {
+                        VoteResponse response = JSON.parseObject(responseCommand.getBody(), VoteResponse.class);
+                        future.complete(response == null ? new VoteResponse() : response);
                     } else {
-                        logger.error("Vote request time out, {}", request.baseInfo());
+                        logger.error("{} request time out, {}", requestCode, request.baseInfo());
                         future.complete(new VoteResponse());
                     }
                 });
             } catch (Throwable t) {
-                logger.error("Send vote request failed, {}", request.baseInfo(), t);
+                logger.error("Send {} request failed, {}", requestCode, request.baseInfo(), t);
                 future.complete(new VoteResponse());
             }
         });
@@ -206,15 +285,29 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
     public CompletableFuture<AppendEntryResponse> append(AppendEntryRequest request) throws Exception {
         CompletableFuture<AppendEntryResponse> future = new CompletableFuture<>();
         try {
-            RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(DLedgerRequestCode.APPEND.getCode(), null);
+            DLedgerRequestCode requestCode = request instanceof BatchAppendEntryRequest ? DLedgerRequestCode.BATCH_APPEND : DLedgerRequestCode.APPEND;
+            RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(requestCode.getCode(), null);
             wrapperRequest.setBody(JSON.toJSONBytes(request));
+            if (requestCode == DLedgerRequestCode.BATCH_APPEND) {
+                wrapperRequest.addExtField(BatchAppendEntryResponseCoder.EXT_FIELD_FORMAT, BatchAppendEntryResponseCoder.FORMAT_BINARY);
+            }
             remotingClient.invokeAsync(getPeerAddr(request), wrapperRequest, 3000, responseFuture -> {
                 RemotingCommand responseCommand = responseFuture.getResponseCommand();
                 if (responseCommand != null) {
-                    AppendEntryResponse response = JSON.parseObject(responseCommand.getBody(), AppendEntryResponse.class);
-                    future.complete(response);
+                    try {
+                        AppendEntryResponse response;
+                        if (requestCode == DLedgerRequestCode.BATCH_APPEND) {
+                            response = BatchAppendEntryResponseCoder.decode(responseCommand.getExtFields(), responseCommand.getBody());
+                        } else {
+                            response = JSON.parseObject(responseCommand.getBody(), AppendEntryResponse.class);
+                        }
+                        future.complete(response);
+                    } catch (Throwable t) {
+                        logger.error("Decode the append response failed, {}", request.baseInfo(), t);
+                        future.completeExceptionally(t);
+                    }
                 } else {
-                    AppendEntryResponse response = new AppendEntryResponse();
+                    AppendEntryResponse response = requestCode == DLedgerRequestCode.BATCH_APPEND ? new BatchAppendEntryResponse() : new AppendEntryResponse();
                     response.copyBaseInfo(request);
                     response.setCode(DLedgerResponseCode.NETWORK_ERROR.getCode());
                     future.complete(response);
@@ -239,11 +332,22 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
 
     @Override
     public CompletableFuture<PullEntriesResponse> pull(PullEntriesRequest request) throws Exception {
+        CompletableFuture<PullEntriesResponse> future = new CompletableFuture<>();
         RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(DLedgerRequestCode.PULL.getCode(), null);
         wrapperRequest.setBody(JSON.toJSONBytes(request));
-        RemotingCommand wrapperResponse = remotingClient.invokeSync(getPeerAddr(request), wrapperRequest, 3000);
-        PullEntriesResponse response = JSON.parseObject(wrapperResponse.getBody(), PullEntriesResponse.class);
-        return CompletableFuture.completedFuture(response);
+        remotingClient.invokeAsync(getPeerAddr(request), wrapperRequest, 3000, responseFuture -> {
+            RemotingCommand responseCommand = responseFuture.getResponseCommand();
+            if (responseCommand != null) {
+                PullEntriesResponse response = JSON.parseObject(responseCommand.getBody(), PullEntriesResponse.class);
+                future.complete(response);
+            } else {
+                PullEntriesResponse response = new PullEntriesResponse();
+                response.copyBaseInfo(request);
+                response.setCode(DLedgerResponseCode.NETWORK_ERROR.getCode());
+                future.complete(response);
+            }
+        });
+        return future;
     }
 
     @Override
@@ -305,6 +409,33 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
         return future;
     }
 
+    @Override
+    public CompletableFuture<ChangePeersResponse> changePeers(ChangePeersRequest request) throws Exception {
+        CompletableFuture<ChangePeersResponse> future = new CompletableFuture<>();
+        try {
+            RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(DLedgerRequestCode.CHANGE_PEERS.getCode(), null);
+            wrapperRequest.setBody(JSON.toJSONBytes(request));
+            remotingClient.invokeAsync(getPeerAddr(request), wrapperRequest, 10000, responseFuture -> {
+                RemotingCommand responseCommand = responseFuture.getResponseCommand();
+                if (responseCommand != null) {
+                    future.complete(JSON.parseObject(responseCommand.getBody(), ChangePeersResponse.class));
+                } else {
+                    ChangePeersResponse response = new ChangePeersResponse();
+                    response.copyBaseInfo(request);
+                    response.setCode(DLedgerResponseCode.NETWORK_ERROR.getCode());
+                    future.complete(response);
+                }
+            });
+        } catch (Throwable t) {
+            logger.error("Send changePeers request failed, {}", request.baseInfo(), t);
+            ChangePeersResponse response = new ChangePeersResponse();
+            response.copyBaseInfo(request);
+            response.setCode(DLedgerResponseCode.NETWORK_ERROR.getCode());
+            future.complete(response);
+        }
+        return future;
+    }
+
     private void writeResponse(RequestOrResponse storeResp, Throwable t, RemotingCommand request,
                                ChannelHandlerContext ctx) {
         RemotingCommand response = null;
@@ -322,6 +453,24 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
         }
     }
 
+    private void writeRangeResponse(GetEntriesResponse getEntriesResponse, Throwable t, RemotingCommand request,
+                                    ChannelHandlerContext ctx) {
+        RemotingCommand response = null;
+        try {
+            if (t != null) {
+                throw t;
+            } else {
+                response = RemotingCommand.createResponseCommand(DLedgerResponseCode.SUCCESS.getCode(), null);
+                response.setBody(GetEntriesResponseCoder.encode(getEntriesResponse));
+                response.setOpaque(request.getOpaque());
+                response.markResponseType();
+                ctx.writeAndFlush(response);
+            }
+        } catch (Throwable e) {
+            logger.error("Process range get over, but fire response failed, request:[{}] response:[{}]", request, response, e);
+        }
+    }
+
     /**
      * The core method to handle rpc requests. The advantages of using future instead of callback:
      * <p>
@@ -348,18 +497,26 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
                 break;
             }
             case APPEND: {
+                long receiveNs = System.nanoTime();
                 AppendEntryRequest appendEntryRequest = JSON.parseObject(request.getBody(), AppendEntryRequest.class);
-                CompletableFuture<AppendEntryResponse> future = handleAppend(appendEntryRequest);
-                future.whenCompleteAsync((x, y) -> {
-                    writeResponse(x, y, request, ctx);
-                }, futureExecutor);
+                processAppend(appendEntryRequest, receiveNs, request, ctx);
+                break;
+            }
+            case BATCH_APPEND: {
+                long receiveNs = System.nanoTime();
+                BatchAppendEntryRequest batchAppendEntryRequest = JSON.parseObject(request.getBody(), BatchAppendEntryRequest.class);
+                processAppend(batchAppendEntryRequest, receiveNs, request, ctx);
                 break;
             }
             case GET: {
                 GetEntriesRequest getEntriesRequest = JSON.parseObject(request.getBody(), GetEntriesRequest.class);
                 CompletableFuture<GetEntriesResponse> future = handleGet(getEntriesRequest);
                 future.whenCompleteAsync((x, y) -> {
-                    writeResponse(x, y, request, ctx);
+                    if (getEntriesRequest.getEndIndex() >= 0) {
+                        writeRangeResponse(x, y, request, ctx);
+                    } else {
+                        writeResponse(x, y, request, ctx);
+                    }
                 }, futureExecutor);
                 break;
             }
@@ -387,6 +544,14 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
                 }, futureExecutor);
                 break;
             }
+            case PRE_VOTE: {
+                VoteRequest voteRequest = JSON.parseObject(request.getBody(), VoteRequest.class);
+                CompletableFuture<VoteResponse> future = handlePreVote(voteRequest);
+                future.whenCompleteAsync((x, y) -> {
+                    writeResponse(x, y, request, ctx);
+                }, futureExecutor);
+                break;
+            }
             case HEART_BEAT: {
                 HeartBeatRequest heartBeatRequest = JSON.parseObject(request.getBody(), HeartBeatRequest.class);
                 CompletableFuture<HeartBeatResponse> future = handleHeartBeat(heartBeatRequest);
@@ -395,6 +560,14 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
                 }, futureExecutor);
                 break;
             }
+            case BATCH_HEART_BEAT: {
+                BatchHeartBeatRequest batchHeartBeatRequest = JSON.parseObject(request.getBody(), BatchHeartBeatRequest.class);
+                CompletableFuture<BatchHeartBeatResponse> future = handleBatchHeartBeat(batchHeartBeatRequest);
+                future.whenCompleteAsync((x, y) -> {
+                    writeResponse(x, y, request, ctx);
+                }, futureExecutor);
+                break;
+            }
             case LEADERSHIP_TRANSFER: {
                 long start = System.currentTimeMillis();
                 LeadershipTransferRequest leadershipTransferRequest = JSON.parseObject(request.getBody(), LeadershipTransferRequest.class);
@@ -406,6 +579,15 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
                 }, futureExecutor);
                 break;
             }
+            case CHANGE_PEERS: {
+                ChangePeersRequest changePeersRequest = JSON.parseObject(request.getBody(), ChangePeersRequest.class);
+                CompletableFuture<ChangePeersResponse> future = handleChangePeers(changePeersRequest);
+                future.whenCompleteAsync((x, y) -> {
+                    writeResponse(x, y, request, ctx);
+                    logger.info("CHANGE_PEERS FINISHED. Request={}, response={}", changePeersRequest, x);
+                }, futureExecutor);
+                break;
+            }
             default:
                 logger.error("Unknown request code {} from {}", request.getCode(), request);
                 break;
@@ -413,46 +595,182 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
         return null;
     }
 
+    private void processAppend(AppendEntryRequest appendEntryRequest, long receiveNs, RemotingCommand request,
+        ChannelHandlerContext ctx) throws Exception {
+        DLedgerServer server = getDLedgerServer(appendEntryRequest);
+        AppendTracer appendTracer = server == null ? null : server.getAppendTracer();
+        AppendTracer.AppendTrace trace = appendTracer == null ? null : appendTracer.begin(receiveNs);
+        CompletableFuture<AppendEntryResponse> future;
+        try {
+            future = handleAppend(appendEntryRequest);
+        } finally {
+            if (appendTracer != null) {
+                appendTracer.detach();
+            }
+        }
+        if (appendEntryRequest instanceof BatchAppendEntryRequest) {
+            CompletableFuture<AppendEntryResponse> appendFuture = future;
+            future = appendFuture.thenApply(x -> toBatchAppendResponse(x, appendFuture));
+        }
+        if (trace == null) {
+            future.whenCompleteAsync((x, y) -> {
+                writeAppendResponse(x, y, request, ctx);
+            }, futureExecutor);
+            return;
+        }
+        future.whenComplete((x, y) -> appendTracer.markAcked(trace)).whenCompleteAsync((x, y) -> {
+            writeAppendResponse(x, y, request, ctx);
+            appendTracer.finish(trace);
+        }, futureExecutor);
+    }
+
+    private BatchAppendEntryResponse toBatchAppendResponse(AppendEntryResponse response,
+        CompletableFuture<AppendEntryResponse> future) {
+        BatchAppendEntryResponse batchResponse = new BatchAppendEntryResponse();
+        batchResponse.copyBaseInfo(response);
+        batchResponse.setIndex(response.getIndex());
+        batchResponse.setPos(response.getPos());
+        if (response.getCode() == DLedgerResponseCode.SUCCESS.getCode() && future instanceof BatchAppendFuture) {
+            BatchAppendFuture<AppendEntryResponse> batchAppendFuture = (BatchAppendFuture<AppendEntryResponse>) future;
+            batchResponse.setFirstIndex(batchAppendFuture.getFirstIndex());
+            batchResponse.setPositions(batchAppendFuture.getPositions());
+        }
+        return batchResponse;
+    }
+
+    private void writeAppendResponse(AppendEntryResponse appendEntryResponse, Throwable t, RemotingCommand request,
+        ChannelHandlerContext ctx) {
+        //the binary format only for the requesters asking for it
+        if (t != null || !(appendEntryResponse instanceof BatchAppendEntryResponse) || !BatchAppendEntryResponseCoder.isBinary(request.getExtFields())) {
+            writeResponse(appendEntryResponse, t, request, ctx);
+            return;
+        }
+        RemotingCommand response = null;
+        try {
+            response = RemotingCommand.createResponseCommand(DLedgerResponseCode.SUCCESS.getCode(), null);
+            response.setBody(BatchAppendEntryResponseCoder.encode((BatchAppendEntryResponse) appendEntryResponse));
+            response.addExtField(BatchAppendEntryResponseCoder.EXT_FIELD_FORMAT, BatchAppendEntryResponseCoder.FORMAT_BINARY);
+            response.setOpaque(request.getOpaque());
+            response.markResponseType();
+            ctx.writeAndFlush(response);
+        } catch (Throwable e) {
+            logger.error("Process batch append over, but fire response failed, request:[{}] response:[{}]", request, response, e);
+        }
+    }
+
     @Override
     public CompletableFuture<LeadershipTransferResponse> handleLeadershipTransfer(
             LeadershipTransferRequest leadershipTransferRequest) throws Exception {
-        return dLedgerServer.handleLeadershipTransfer(leadershipTransferRequest);
+        DLedgerServer server = getDLedgerServer(leadershipTransferRequest);
+        if (server == null) {
+            return unknownServer(leadershipTransferRequest, new LeadershipTransferResponse());
+        }
+        return server.handleLeadershipTransfer(leadershipTransferRequest);
+    }
+
+    @Override
+    public CompletableFuture<ChangePeersResponse> handleChangePeers(ChangePeersRequest changePeersRequest) throws Exception {
+        DLedgerServer server = getDLedgerServer(changePeersRequest);
+        if (server == null) {
+            return unknownServer(changePeersRequest, new ChangePeersResponse());
+        }
+        return server.handleChangePeers(changePeersRequest);
     }
 
     @Override
     public CompletableFuture<HeartBeatResponse> handleHeartBeat(HeartBeatRequest request) throws Exception {
-        return dLedgerServer.handleHeartBeat(request);
+        DLedgerServer server = getDLedgerServer(request);
+        if (server == null) {
+            return unknownServer(request, new HeartBeatResponse());
+        }
+        return server.handleHeartBeat(request);
+    }
+
+    public CompletableFuture<BatchHeartBeatResponse> handleBatchHeartBeat(BatchHeartBeatRequest request) {
+        List<CompletableFuture<HeartBeatResponse>> futures = new ArrayList<>(request.getHeartBeats().size());
+        for (HeartBeatRequest heartBeatRequest : request.getHeartBeats()) {
+            CompletableFuture<HeartBeatResponse> future;
+            try {
+                future = handleHeartBeat(heartBeatRequest);
+            } catch (Throwable t) {
+                logger.error("Handle heartbeat in batch failed, {}", heartBeatRequest.baseInfo(), t);
+                HeartBeatResponse response = new HeartBeatResponse();
+                response.copyBaseInfo(heartBeatRequest);
+                future = CompletableFuture.completedFuture(response.code(DLedgerResponseCode.INTERNAL_ERROR.getCode()));
+            }
+            futures.add(future);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            BatchHeartBeatResponse response = new BatchHeartBeatResponse();
+            response.copyBaseInfo(request);
+            for (CompletableFuture<HeartBeatResponse> future : futures) {
+                response.getHeartBeats().add(future.join());
+            }
+            return response;
+        });
     }
 
     @Override
     public CompletableFuture<VoteResponse> handleVote(VoteRequest request) throws Exception {
-        VoteResponse response = dLedgerServer.handleVote(request).get();
-        return CompletableFuture.completedFuture(response);
+        DLedgerServer server = getDLedgerServer(request);
+        if (server == null) {
+            return unknownServer(request, new VoteResponse());
+        }
+        return server.handleVote(request);
+    }
+
+    @Override
+    public CompletableFuture<VoteResponse> handlePreVote(VoteRequest request) throws Exception {
+        DLedgerServer server = getDLedgerServer(request);
+        if (server == null) {
+            return unknownServer(request, new VoteResponse());
+        }
+        return server.handlePreVote(request);
     }
 
     @Override
     public CompletableFuture<AppendEntryResponse> handleAppend(AppendEntryRequest request) throws Exception {
-        return dLedgerServer.handleAppend(request);
+        DLedgerServer server = getDLedgerServer(request);
+        if (server == null) {
+            return unknownServer(request, new AppendEntryResponse());
+        }
+        return server.handleAppend(request);
     }
 
     @Override
     public CompletableFuture<GetEntriesResponse> handleGet(GetEntriesRequest request) throws Exception {
-        return dLedgerServer.handleGet(request);
+        DLedgerServer server = getDLedgerServer(request);
+        if (server == null) {
+            return unknownServer(request, new GetEntriesResponse());
+        }
+        return server.handleGet(request);
     }
 
     @Override
     public CompletableFuture<MetadataResponse> handleMetadata(MetadataRequest request) throws Exception {
-        return dLedgerServer.handleMetadata(request);
+        DLedgerServer server = getDLedgerServer(request);
+        if (server == null) {
+            return unknownServer(request, new MetadataResponse());
+        }
+        return server.handleMetadata(request);
     }
 
     @Override
     public CompletableFuture<PullEntriesResponse> handlePull(PullEntriesRequest request) throws Exception {
-        return dLedgerServer.handlePull(request);
+        DLedgerServer server = getDLedgerServer(request);
+        if (server == null) {
+            return unknownServer(request, new PullEntriesResponse());
+        }
+        return server.handlePull(request);
     }
 
     @Override
     public CompletableFuture<PushEntryResponse> handlePush(PushEntryRequest request) throws Exception {
-        return dLedgerServer.handlePush(request);
+        DLedgerServer server = getDLedgerServer(request);
+        if (server == null) {
+            return unknownServer(request, new PushEntryResponse());
+        }
+        return server.handlePush(request);
     }
 
     public RemotingCommand handleResponse(RequestOrResponse response, RemotingCommand request) {
@@ -472,6 +790,9 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
     public void shutdown() {
         this.remotingServer.shutdown();
         this.remotingClient.shutdown();
+        this.futureExecutor.shutdown();
+        this.voteInvokeExecutor.shutdown();
+        this.heartBeatInvokeExecutor.shutdown();
     }
 
     public MemberState getMemberState() {
@@ -490,6 +811,14 @@ public class DLedgerRpcNettyService extends DLedgerRpcService {
         this.dLedgerServer = dLedgerServer;
     }
 
+    public HeartBeatCoalescer getHeartBeatCoalescer() {
+        return heartBeatCoalescer;
+    }
+
+    public DLedgerManager getdLedgerManager() {
+        return dLedgerManager;
+    }
+
     public NettyRemotingServer getRemotingServer() {
         return remotingServer;
     }
@@ -18,9 +18,14 @@ package io.openmessaging.storage.dledger;
 
 import io.openmessaging.storage.dledger.entry.DLedgerEntry;
 import io.openmessaging.storage.dledger.exception.DLedgerException;
+import io.openmessaging.storage.dledger.metrics.AppendTracer;
+import io.openmessaging.storage.dledger.metrics.DLedgerMetrics;
+import io.openmessaging.storage.dledger.metrics.DLedgerMetricsExporter;
 import io.openmessaging.storage.dledger.protocol.AppendEntryRequest;
 import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
 import io.openmessaging.storage.dledger.protocol.BatchAppendEntryRequest;
+import io.openmessaging.storage.dledger.protocol.ChangePeersRequest;
+import io.openmessaging.storage.dledger.protocol.ChangePeersResponse;
 import io.openmessaging.storage.dledger.protocol.DLedgerProtocolHandler;
 import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
 import io.openmessaging.storage.dledger.protocol.GetEntriesRequest;
@@ -37,6 +42,7 @@ import io.openmessaging.storage.dledger.protocol.PushEntryRequest;
 import io.openmessaging.storage.dledger.protocol.PushEntryResponse;
 import io.openmessaging.storage.dledger.protocol.VoteRequest;
 import io.openmessaging.storage.dledger.protocol.VoteResponse;
+import io.openmessaging.storage.dledger.proxy.DLedgerProxy;
 import io.openmessaging.storage.dledger.statemachine.StateMachine;
 import io.openmessaging.storage.dledger.statemachine.StateMachineCaller;
 import io.openmessaging.storage.dledger.store.DLedgerMemoryStore;
@@ -46,16 +52,25 @@ import io.openmessaging.storage.dledger.utils.DLedgerUtils;
 import io.openmessaging.storage.dledger.utils.PreConditions;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.rocketmq.remoting.ChannelEventListener;
 import org.apache.rocketmq.remoting.netty.NettyClientConfig;
@@ -68,6 +83,9 @@ public class DLedgerServer implements DLedgerProtocolHandler {
 
     private static Logger logger = LoggerFactory.getLogger(DLedgerServer.class);
 
+    //follow the zone of the clients only when it sends enough appends in a check period
+    private static final long MIN_CLIENT_ZONE_APPENDS = 10;
+
     private MemberState memberState;
     private DLedgerConfig dLedgerConfig;
 
@@ -75,9 +93,18 @@ public class DLedgerServer implements DLedgerProtocolHandler {
     private DLedgerRpcService dLedgerRpcService;
     private DLedgerEntryPusher dLedgerEntryPusher;
     private DLedgerLeaderElector dLedgerLeaderElector;
+    private DLedgerMetrics metrics;
+    private DLedgerMetricsExporter metricsExporter;
+    private AppendTracer appendTracer;
 
     private ScheduledExecutorService executorService;
+    private ScheduledExecutorService replicationExecutor;
+    private ExecutorService readExecutor;
+    private ScheduledFuture<?> checkPreferredLeaderFuture;
+    private DLedgerProxy dLedgerProxy;
     private Optional<StateMachineCaller> fsmCaller;
+    //the appends from each client zone since the last check of the preferred leader
+    private final Map<String, LongAdder> clientZoneAppends = new ConcurrentHashMap<>();
 
     public DLedgerServer(DLedgerConfig dLedgerConfig) {
         this(dLedgerConfig, null, null, null);
@@ -90,34 +117,122 @@ public class DLedgerServer implements DLedgerProtocolHandler {
     public DLedgerServer(DLedgerConfig dLedgerConfig, NettyServerConfig nettyServerConfig, NettyClientConfig nettyClientConfig, ChannelEventListener channelEventListener) {
         this.dLedgerConfig = dLedgerConfig;
         this.memberState = new MemberState(dLedgerConfig);
-        this.dLedgerStore = createDLedgerStore(dLedgerConfig.getStoreType(), this.dLedgerConfig, this.memberState);
+        initStore();
         dLedgerRpcService = new DLedgerRpcNettyService(this, nettyServerConfig, nettyClientConfig, channelEventListener);
-        dLedgerEntryPusher = new DLedgerEntryPusher(dLedgerConfig, memberState, dLedgerStore, dLedgerRpcService);
-        dLedgerLeaderElector = new DLedgerLeaderElector(dLedgerConfig, memberState, dLedgerRpcService);
-        executorService = Executors.newSingleThreadScheduledExecutor(r -> {
+        ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(1, r -> {
             Thread t = new Thread(r);
             t.setDaemon(true);
             t.setName("DLedgerServer-ScheduledExecutor");
             return t;
         });
+        //the timeouts of the waiting reads are cancelled once woken up
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        executorService = scheduledExecutor;
+        replicationExecutor = ReplicationTask.newExecutor("DLedgerServer-ReplicationExecutor-" + dLedgerConfig.getSelfId(),
+            dLedgerConfig.getReplicationThreadNum());
+        AtomicInteger readThreadIndex = new AtomicInteger(0);
+        readExecutor = Executors.newFixedThreadPool(dLedgerConfig.getReadThreadNum(), r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("DLedgerServer-ReadExecutor-" + dLedgerConfig.getSelfId() + "-" + readThreadIndex.incrementAndGet());
+            return t;
+        });
+        initReplication();
+    }
+
+    /**
+     * Create a server hosted by the proxy, which shares the rpc service, the scheduled executor and the flush and clean
+     * services of the proxy with the other hosted servers. The proxy starts and shuts down the shared ones.
+     */
+    public DLedgerServer(DLedgerConfig dLedgerConfig, DLedgerProxy dLedgerProxy) {
+        this.dLedgerConfig = dLedgerConfig;
+        this.memberState = new MemberState(dLedgerConfig);
+        this.dLedgerProxy = dLedgerProxy;
+        initStore();
+        if (dLedgerStore instanceof DLedgerMmapFileStore) {
+            ((DLedgerMmapFileStore) dLedgerStore).setSharedFileStoreService(dLedgerProxy.getSharedFileStoreService());
+        }
+        dLedgerRpcService = dLedgerProxy.getDLedgerRpcService();
+        executorService = dLedgerProxy.getScheduledExecutorService();
+        replicationExecutor = dLedgerProxy.getReplicationExecutor();
+        readExecutor = dLedgerProxy.getReadExecutor();
+        initReplication();
+        dLedgerLeaderElector.setAlignHeartBeat(dLedgerProxy.getDLedgerProxyConfig().isEnableBatchHeartBeat());
+    }
+
+    private void initStore() {
+        this.metrics = new DLedgerMetrics(dLedgerConfig.getGroup(), dLedgerConfig.getSelfId());
+        this.appendTracer = new AppendTracer(metrics, dLedgerConfig.getTraceSampleRate(), dLedgerConfig.getSlowTraceThresholdMs(),
+            () -> memberState.peerSize() - 1);
+        //a server hosted by a proxy only registers its mbean, the proxy serves the metrics of all the groups at its port
+        this.metricsExporter = new DLedgerMetricsExporter(metrics, appendTracer, dLedgerProxy == null ? dLedgerConfig.getMetricsPort() : -1);
+        this.dLedgerStore = createDLedgerStore(dLedgerConfig.getStoreType(), this.dLedgerConfig, this.memberState);
+        this.dLedgerStore.setMetrics(metrics);
+        if (appendTracer.isEnabled() && dLedgerStore instanceof DLedgerMmapFileStore) {
+            ((DLedgerMmapFileStore) dLedgerStore).addAppendHook((entry, buffer, bodyOffset) -> appendTracer.markLocked());
+        }
+    }
+
+    private void initReplication() {
+        dLedgerEntryPusher = new DLedgerEntryPusher(dLedgerConfig, memberState, dLedgerStore, dLedgerRpcService, metrics, appendTracer,
+            replicationExecutor);
+        dLedgerLeaderElector = new DLedgerLeaderElector(dLedgerConfig, memberState, dLedgerRpcService, dLedgerEntryPusher, metrics);
+        dLedgerLeaderElector.addRoleChangeHandler(new DLedgerLeaderElector.RoleChangeHandler() {
+            @Override
+            public void handle(long term, MemberState.Role role) {
+                dLedgerEntryPusher.wakeUpAll();
+            }
+
+            @Override
+            public void startup() {
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        });
         this.fsmCaller = Optional.empty();
     }
 
     public void startup() {
         this.dLedgerStore.startup();
-        this.dLedgerRpcService.startup();
+        //the peers are persisted once a config entry is appended, a crash may lose the unflushed entry but keep the peers
+        if (memberState.truncatePeers(dLedgerStore.getLedgerEndIndex() + 1)) {
+            dLedgerEntryPusher.updatePeers();
+        }
+        if (dLedgerProxy == null) {
+            this.dLedgerRpcService.startup();
+        }
         this.dLedgerEntryPusher.startup();
         this.dLedgerLeaderElector.startup();
-        executorService.scheduleAtFixedRate(this::checkPreferredLeader, 1000, 1000, TimeUnit.MILLISECONDS);
+        this.metricsExporter.startup();
+        if (dLedgerProxy != null) {
+            dLedgerProxy.getMetricsExporter().addMetrics(metrics, appendTracer);
+        }
+        checkPreferredLeaderFuture = executorService.scheduleAtFixedRate(this::checkPreferredLeader, 1000, 1000, TimeUnit.MILLISECONDS);
     }
 
     public void shutdown() {
+        if (dLedgerProxy != null) {
+            dLedgerProxy.getMetricsExporter().removeMetrics(metrics, appendTracer);
+        }
+        this.metricsExporter.shutdown();
         this.dLedgerLeaderElector.shutdown();
         this.dLedgerEntryPusher.shutdown();
-        this.dLedgerRpcService.shutdown();
+        if (checkPreferredLeaderFuture != null) {
+            checkPreferredLeaderFuture.cancel(false);
+        }
+        if (dLedgerProxy == null) {
+            this.dLedgerRpcService.shutdown();
+        }
         this.dLedgerStore.shutdown();
-        executorService.shutdown();
+        if (dLedgerProxy == null) {
+            executorService.shutdown();
+            replicationExecutor.shutdown();
+            readExecutor.shutdown();
+        }
         this.fsmCaller.ifPresent(StateMachineCaller::shutdown);
+        this.memberState.shutdown();
     }
 
     private DLedgerStore createDLedgerStore(String storeType, DLedgerConfig config, MemberState memberState) {
@@ -133,7 +248,11 @@ public class DLedgerServer implements DLedgerProtocolHandler {
     }
 
     public void registerStateMachine(final StateMachine fsm) {
+        if (memberState.isWitness()) {
+            throw new IllegalStateException(String.format("The witness %s does not keep the data to apply", memberState.getSelfId()));
+        }
         final StateMachineCaller fsmCaller = new StateMachineCaller(this.dLedgerStore, fsm, this.dLedgerEntryPusher);
+        fsmCaller.setApplyLatency(metrics.getStateMachineApplyLatency());
         fsmCaller.start();
         this.fsmCaller = Optional.of(fsmCaller);
         // Register state machine caller to entry pusher
@@ -175,6 +294,21 @@ public class DLedgerServer implements DLedgerProtocolHandler {
         }
     }
 
+    @Override public CompletableFuture<VoteResponse> handlePreVote(VoteRequest request) throws Exception {
+        try {
+            PreConditions.check(memberState.getSelfId().equals(request.getRemoteId()), DLedgerResponseCode.UNKNOWN_MEMBER, "%s != %s", request.getRemoteId(), memberState.getSelfId());
+            PreConditions.check(memberState.getGroup().equals(request.getGroup()), DLedgerResponseCode.UNKNOWN_GROUP, "%s != %s", request.getGroup(), memberState.getGroup());
+            return dLedgerLeaderElector.handlePreVote(request, false);
+        } catch (DLedgerException e) {
+            logger.error("[{}][HandlePreVote] failed", memberState.getSelfId(), e);
+            VoteResponse response = new VoteResponse();
+            response.copyBaseInfo(request);
+            response.setCode(e.getCode().getCode());
+            response.setLeaderId(memberState.getLeaderId());
+            return CompletableFuture.completedFuture(response);
+        }
+    }
+
     /**
      * Handle the append requests:
      * 1.append the entry to local store
@@ -192,6 +326,9 @@ public class DLedgerServer implements DLedgerProtocolHandler {
             PreConditions.check(memberState.getGroup().equals(request.getGroup()), DLedgerResponseCode.UNKNOWN_GROUP, "%s != %s", request.getGroup(), memberState.getGroup());
             PreConditions.check(memberState.isLeader(), DLedgerResponseCode.NOT_LEADER);
             PreConditions.check(memberState.getTransferee() == null, DLedgerResponseCode.LEADER_TRANSFERRING);
+            if (dLedgerConfig.isEnableClientZoneLeader() && request.getClientZone() != null) {
+                clientZoneAppends.computeIfAbsent(request.getClientZone(), zone -> new LongAdder()).increment();
+            }
             long currTerm = memberState.currTerm();
             if (dLedgerEntryPusher.isPendingFull(currTerm)) {
                 AppendEntryResponse appendEntryResponse = new AppendEntryResponse();
@@ -204,21 +341,31 @@ public class DLedgerServer implements DLedgerProtocolHandler {
                 if (request instanceof BatchAppendEntryRequest) {
                     BatchAppendEntryRequest batchRequest = (BatchAppendEntryRequest) request;
                     if (batchRequest.getBatchMsgs() != null && batchRequest.getBatchMsgs().size() != 0) {
-                        // record positions to return;
-                        long[] positions = new long[batchRequest.getBatchMsgs().size()];
-                        DLedgerEntry resEntry = null;
-                        // split bodys to append
-                        int index = 0;
-                        Iterator<byte[]> iterator = batchRequest.getBatchMsgs().iterator();
-                        while (iterator.hasNext()) {
+                        List<DLedgerEntry> entries = new ArrayList<>(batchRequest.getBatchMsgs().size());
+                        for (byte[] body : batchRequest.getBatchMsgs()) {
                             DLedgerEntry dLedgerEntry = new DLedgerEntry();
-                            dLedgerEntry.setBody(iterator.next());
-                            resEntry = dLedgerStore.appendAsLeader(dLedgerEntry);
-                            positions[index++] = resEntry.getPos();
+                            dLedgerEntry.setBody(body);
+                            entries.add(dLedgerEntry);
+                        }
+                        long beginNs = System.nanoTime();
+                        appendTracer.markAppendBegin();
+                        // the entries of a batch are kept contiguous so that the client could derive their indexes
+                        // from the first one
+                        synchronized (memberState) {
+                            dLedgerStore.appendAsLeader(entries);
+                        }
+                        DLedgerEntry resEntry = entries.get(entries.size() - 1);
+                        metrics.getLeaderAppendLatency().recordSinceNanos(beginNs);
+                        appendTracer.markWritten(resEntry.getIndex());
+                        // record positions to return;
+                        long[] positions = new long[entries.size()];
+                        for (int i = 0; i < positions.length; i++) {
+                            positions[i] = entries.get(i).getPos();
                         }
                         // only wait last entry ack is ok
                         BatchAppendFuture<AppendEntryResponse> batchAppendFuture =
                             (BatchAppendFuture<AppendEntryResponse>) dLedgerEntryPusher.waitAck(resEntry, true);
+                        batchAppendFuture.setFirstIndex(entries.get(0).getIndex());
                         batchAppendFuture.setPositions(positions);
                         return batchAppendFuture;
                     }
@@ -227,7 +374,11 @@ public class DLedgerServer implements DLedgerProtocolHandler {
                 } else {
                     DLedgerEntry dLedgerEntry = new DLedgerEntry();
                     dLedgerEntry.setBody(request.getBody());
+                    long beginNs = System.nanoTime();
+                    appendTracer.markAppendBegin();
                     DLedgerEntry resEntry = dLedgerStore.appendAsLeader(dLedgerEntry);
+                    metrics.getLeaderAppendLatency().recordSinceNanos(beginNs);
+                    appendTracer.markWritten(resEntry.getIndex());
                     return dLedgerEntryPusher.waitAck(resEntry, false);
                 }
             }
@@ -246,24 +397,114 @@ public class DLedgerServer implements DLedgerProtocolHandler {
         try {
             PreConditions.check(memberState.getSelfId().equals(request.getRemoteId()), DLedgerResponseCode.UNKNOWN_MEMBER, "%s != %s", request.getRemoteId(), memberState.getSelfId());
             PreConditions.check(memberState.getGroup().equals(request.getGroup()), DLedgerResponseCode.UNKNOWN_GROUP, "%s != %s", request.getGroup(), memberState.getGroup());
+            if (request.isFollowerRead() && !memberState.isLeader()) {
+                return handleFollowerRead(request);
+            }
             PreConditions.check(memberState.isLeader(), DLedgerResponseCode.NOT_LEADER);
-            DLedgerEntry entry = dLedgerStore.get(request.getBeginIndex());
-            GetEntriesResponse response = new GetEntriesResponse();
-            response.setGroup(memberState.getGroup());
-            if (entry != null) {
-                response.setEntries(Collections.singletonList(entry));
+            if (dLedgerConfig.isEnableLeaderLease()) {
+                PreConditions.check(dLedgerLeaderElector.isLeaderLeaseValid(), DLedgerResponseCode.LEADER_LEASE_EXPIRED, "leader=%s has no valid lease", memberState.getSelfId());
             }
-            return CompletableFuture.completedFuture(response);
+            if (request.getEndIndex() >= 0 && request.getMaxWaitMs() > 0 && dLedgerStore.getCommittedIndex() < request.getBeginIndex()) {
+                return handleSubscribe(request);
+            }
+            return CompletableFuture.completedFuture(getEntries(request));
         } catch (DLedgerException e) {
             logger.error("[{}][HandleGet] failed", memberState.getSelfId(), e);
-            GetEntriesResponse response = new GetEntriesResponse();
-            response.copyBaseInfo(request);
-            response.setLeaderId(memberState.getLeaderId());
-            response.setCode(e.getCode().getCode());
-            return CompletableFuture.completedFuture(response);
+            return CompletableFuture.completedFuture(getFailedResponse(request, e.getCode()));
         }
     }
 
+    /**
+     * Hold the range read on the leader until the entry at beginIndex is committed or maxWaitMs passes,
+     * so that the consumers could follow the committed log without polling.
+     * The request is woken up by the committed index updates, and an empty range is returned if timeout.
+     * The range is read on the read executor, not on the replication thread updating the committed index.
+     */
+    private CompletableFuture<GetEntriesResponse> handleSubscribe(GetEntriesRequest request) {
+        return waitCommittedIndex(request.getBeginIndex(), request.getMaxWaitMs()).thenApplyAsync(committedIndex -> {
+            try {
+                PreConditions.check(memberState.isLeader(), DLedgerResponseCode.NOT_LEADER);
+                return getEntries(request);
+            } catch (DLedgerException e) {
+                logger.error("[{}][HandleGet] failed", memberState.getSelfId(), e);
+                return getFailedResponse(request, e.getCode());
+            }
+        }, readExecutor);
+    }
+
+    /**
+     * Handle the read requests on followers:
+     * 1.reject it if the follower has not heard from the leader within the max staleness
+     * 2.serve it if the committed index has reached the requested index
+     * 3.otherwise wait for the committed index at most maxWaitMs, and reject it if timeout
+     * The rejected response carries the leader id, so that the client could retry on the leader.
+     * The waiting read is served on the read executor, not on the entry handler updating the committed index.
+     */
+    private CompletableFuture<GetEntriesResponse> handleFollowerRead(GetEntriesRequest request) {
+        PreConditions.check(memberState.isFollower(), DLedgerResponseCode.NOT_LEADER, "%s is %s", memberState.getSelfId(), memberState.getRole());
+        PreConditions.check(!memberState.isWitness(), DLedgerResponseCode.WITNESS_NO_DATA, "%s is a witness", memberState.getSelfId());
+        if (request.getMaxStalenessMs() >= 0) {
+            long staleness = DLedgerUtils.elapsed(dLedgerLeaderElector.getLastLeaderHeartBeatTime());
+            PreConditions.check(staleness <= request.getMaxStalenessMs(), DLedgerResponseCode.FOLLOWER_READ_NOT_READY, "staleness %d > %d", staleness, request.getMaxStalenessMs());
+        }
+        final long readIndex = Math.max(request.getBeginIndex(), request.getMinCommittedIndex());
+        if (dLedgerStore.getCommittedIndex() >= readIndex) {
+            return CompletableFuture.completedFuture(getEntries(request));
+        }
+        PreConditions.check(request.getMaxWaitMs() > 0, DLedgerResponseCode.FOLLOWER_READ_NOT_READY, "committedIndex %d < readIndex %d", dLedgerStore.getCommittedIndex(), readIndex);
+        return waitCommittedIndex(readIndex, request.getMaxWaitMs()).thenApplyAsync(committedIndex -> {
+            if (committedIndex < readIndex) {
+                return getFailedResponse(request, DLedgerResponseCode.FOLLOWER_READ_NOT_READY);
+            }
+            try {
+                return getEntries(request);
+            } catch (DLedgerException e) {
+                logger.error("[{}][HandleGet] failed", memberState.getSelfId(), e);
+                return getFailedResponse(request, e.getCode());
+            }
+        }, readExecutor);
+    }
+
+    /**
+     * Wait until the index is committed, the future is completed with the committed index, which is smaller than the
+     * index if maxWaitMs passes.
+     */
+    private CompletableFuture<Long> waitCommittedIndex(long index, long maxWaitMs) {
+        CompletableFuture<Long> waiter = dLedgerEntryPusher.waitCommittedIndex(index);
+        ScheduledFuture<?> timeout = executorService.schedule(() -> {
+            dLedgerEntryPusher.cancelWaitCommittedIndex(index, waiter);
+            waiter.complete(dLedgerStore.getCommittedIndex());
+        }, Math.min(maxWaitMs, dLedgerConfig.getMaxGetEntriesWaitMs()), TimeUnit.MILLISECONDS);
+        waiter.whenComplete((committedIndex, t) -> timeout.cancel(false));
+        return waiter;
+    }
+
+    private GetEntriesResponse getEntries(GetEntriesRequest request) {
+        GetEntriesResponse response = new GetEntriesResponse();
+        response.setGroup(memberState.getGroup());
+        if (request.getEndIndex() >= 0) {
+            long endIndex = Math.min(request.getEndIndex(), dLedgerStore.getCommittedIndex());
+            if (endIndex >= request.getBeginIndex()) {
+                int maxSize = request.getMaxSize() > 0 ? Math.min(request.getMaxSize(), dLedgerConfig.getMaxGetEntriesSize()) : dLedgerConfig.getMaxGetEntriesSize();
+                response.setEntries(dLedgerStore.get(request.getBeginIndex(), endIndex, dLedgerConfig.getMaxGetEntriesNum(), maxSize));
+            }
+            return response;
+        }
+        DLedgerEntry entry = dLedgerStore.get(request.getBeginIndex());
+        if (entry != null) {
+            response.setEntries(Collections.singletonList(entry));
+        }
+        return response;
+    }
+
+    private GetEntriesResponse getFailedResponse(GetEntriesRequest request, DLedgerResponseCode code) {
+        GetEntriesResponse response = new GetEntriesResponse();
+        response.copyBaseInfo(request);
+        response.setLeaderId(memberState.getLeaderId());
+        response.setCode(code.getCode());
+        return response;
+    }
+
     @Override public CompletableFuture<MetadataResponse> handleMetadata(MetadataRequest request) throws Exception {
         try {
             PreConditions.check(memberState.getSelfId().equals(request.getRemoteId()), DLedgerResponseCode.UNKNOWN_MEMBER, "%s != %s", request.getRemoteId(), memberState.getSelfId());
@@ -271,6 +512,8 @@ public class DLedgerServer implements DLedgerProtocolHandler {
             MetadataResponse metadataResponse = new MetadataResponse();
             metadataResponse.setGroup(memberState.getGroup());
             metadataResponse.setPeers(memberState.getPeerMap());
+            metadataResponse.setLearners(memberState.getLearnerMap());
+            metadataResponse.setWitnesses(memberState.getWitnesses());
             metadataResponse.setLeaderId(memberState.getLeaderId());
             return CompletableFuture.completedFuture(metadataResponse);
         } catch (DLedgerException e) {
@@ -293,6 +536,7 @@ public class DLedgerServer implements DLedgerProtocolHandler {
         try {
             PreConditions.check(memberState.getSelfId().equals(request.getRemoteId()), DLedgerResponseCode.UNKNOWN_MEMBER, "%s != %s", request.getRemoteId(), memberState.getSelfId());
             PreConditions.check(memberState.getGroup().equals(request.getGroup()), DLedgerResponseCode.UNKNOWN_GROUP, "%s != %s", request.getGroup(), memberState.getGroup());
+            dLedgerLeaderElector.onLeaderPush(request.getTerm(), request.getLeaderId());
             return dLedgerEntryPusher.handlePush(request);
         } catch (DLedgerException e) {
             logger.error("[{}][HandlePush] failed", memberState.getSelfId(), e);
@@ -314,6 +558,7 @@ public class DLedgerServer implements DLedgerProtocolHandler {
             if (memberState.getSelfId().equals(request.getTransferId())) {
                 //It's the leader received the transfer command.
                 PreConditions.check(memberState.isPeerMember(request.getTransfereeId()), DLedgerResponseCode.UNKNOWN_MEMBER, "transferee=%s is not a peer member", request.getTransfereeId());
+                PreConditions.check(!memberState.isWitness(request.getTransfereeId()), DLedgerResponseCode.UNEXPECTED_ARGUMENT, "transferee=%s is a witness", request.getTransfereeId());
                 PreConditions.check(memberState.currTerm() == request.getTerm(), DLedgerResponseCode.INCONSISTENT_TERM, "currTerm(%s) != request.term(%s)", memberState.currTerm(), request.getTerm());
                 PreConditions.check(memberState.isLeader(), DLedgerResponseCode.NOT_LEADER, "selfId=%s is not leader=%s", memberState.getSelfId(), memberState.getLeaderId());
 
@@ -326,25 +571,9 @@ public class DLedgerServer implements DLedgerProtocolHandler {
                 // It's the transferee received the take leadership command.
                 PreConditions.check(request.getTransferId().equals(memberState.getLeaderId()), DLedgerResponseCode.INCONSISTENT_LEADER, "transfer=%s is not leader", request.getTransferId());
 
-                long costTime = 0L;
-                long startTime = System.currentTimeMillis();
+                //the leader has caught up this node before asking it, and accepts no appends since
                 long fallBehind = request.getTakeLeadershipLedgerIndex() - memberState.getLedgerEndIndex();
-
-                while (fallBehind > 0) {
-
-                    if (costTime > dLedgerConfig.getLeadershipTransferWaitTimeout()) {
-                        throw new DLedgerException(DLedgerResponseCode.TAKE_LEADERSHIP_FAILED,
-                            "transferee fall behind, wait timeout. timeout = {}, diff = {}",
-                            dLedgerConfig.getLeadershipTransferWaitTimeout(), fallBehind);
-                    }
-
-                    logger.warn("transferee fall behind, diff = {}", fallBehind);
-                    Thread.sleep(10);
-
-                    fallBehind = request.getTakeLeadershipLedgerIndex() - memberState.getLedgerEndIndex();
-                    costTime = System.currentTimeMillis() - startTime;
-                }
-
+                PreConditions.check(fallBehind <= 0, DLedgerResponseCode.TAKE_LEADERSHIP_FAILED, "transferee fall behind, diff=%s", fallBehind);
                 return dLedgerLeaderElector.handleTakeLeadership(request);
             } else {
                 return CompletableFuture.completedFuture(new LeadershipTransferResponse().term(memberState.currTerm()).code(DLedgerResponseCode.UNEXPECTED_ARGUMENT.getCode()));
@@ -360,12 +589,134 @@ public class DLedgerServer implements DLedgerProtocolHandler {
 
     }
 
+    /**
+     * Add or remove one peer at a time, a single server change keeps the old and the new majorities overlapped, so
+     * the config entry takes effect once appended without a joint config. A learner is added without changing the
+     * majority, and promoted once caught up.
+     */
+    @Override
+    public CompletableFuture<ChangePeersResponse> handleChangePeers(ChangePeersRequest request) throws Exception {
+        try {
+            PreConditions.check(memberState.getSelfId().equals(request.getRemoteId()), DLedgerResponseCode.UNKNOWN_MEMBER, "%s != %s", request.getRemoteId(), memberState.getSelfId());
+            PreConditions.check(memberState.getGroup().equals(request.getGroup()), DLedgerResponseCode.UNKNOWN_GROUP, "%s != %s", request.getGroup(), memberState.getGroup());
+            PreConditions.check(request.getType() != null && request.getPeerId() != null && request.getPeerId().matches("[^-;]{1," + TermMetaFile.MAX_VOTE_FOR_LENGTH + "}"),
+                DLedgerResponseCode.UNEXPECTED_ARGUMENT, "illegal peer %s", request.getPeerId());
+            DLedgerEntry resEntry;
+            String peers;
+            String learners;
+            synchronized (memberState) {
+                PreConditions.check(memberState.isLeader(), DLedgerResponseCode.NOT_LEADER);
+                PreConditions.check(memberState.getTransferee() == null, DLedgerResponseCode.LEADER_TRANSFERRING);
+                long committedIndex = dLedgerStore.getCommittedIndex();
+                PreConditions.check(memberState.getConfigIndex() <= committedIndex, DLedgerResponseCode.PEERS_CHANGING,
+                    "the config at %d is not committed", memberState.getConfigIndex());
+                //a new leader may hold a config change of an older term not yet committed, which could be lost
+                //and so overlap no quorum with the next change, so wait until an entry of its own term is committed
+                PreConditions.check(committedIndex >= 0 && dLedgerStore.get(committedIndex).getTerm() == memberState.currTerm(),
+                    DLedgerResponseCode.PEERS_CHANGING, "no entry of term %d is committed", memberState.currTerm());
+                Map<String, String> peerMap = new HashMap<>(memberState.getPeerMap());
+                Map<String, String> learnerMap = new HashMap<>(memberState.getLearnerMap());
+                String peerId = request.getPeerId();
+                switch (request.getType()) {
+                    case ADD:
+                    case ADD_LEARNER:
+                        PreConditions.check(!peerMap.containsKey(peerId) && !learnerMap.containsKey(peerId), DLedgerResponseCode.UNEXPECTED_ARGUMENT, "%s is already a member", peerId);
+                        PreConditions.check(request.getPeerAddr() != null && !request.getPeerAddr().isEmpty() && !request.getPeerAddr().contains(";"),
+                            DLedgerResponseCode.UNEXPECTED_ARGUMENT, "illegal address %s", request.getPeerAddr());
+                        (request.getType() == ChangePeersRequest.Type.ADD ? peerMap : learnerMap).put(peerId, request.getPeerAddr());
+                        break;
+                    case PROMOTE:
+                        PreConditions.check(learnerMap.containsKey(peerId), DLedgerResponseCode.UNKNOWN_MEMBER, "%s is not a learner", peerId);
+                        long fallBehind = dLedgerStore.getLedgerEndIndex() - dLedgerEntryPusher.getPeerWaterMark(memberState.currTerm(), peerId);
+                        PreConditions.check(fallBehind < dLedgerConfig.getMaxLeadershipTransferWaitIndex(),
+                            DLedgerResponseCode.FALL_BEHIND_TOO_MUCH, "learner fall behind too much, diff=%s", fallBehind);
+                        peerMap.put(peerId, learnerMap.remove(peerId));
+                        break;
+                    default:
+                        PreConditions.check(peerMap.containsKey(peerId) || learnerMap.containsKey(peerId), DLedgerResponseCode.UNKNOWN_MEMBER, "%s is not a member", peerId);
+                        PreConditions.check(!memberState.getSelfId().equals(peerId), DLedgerResponseCode.UNEXPECTED_ARGUMENT,
+                            "transfer the leadership before removing the leader %s", peerId);
+                        peerMap.remove(peerId);
+                        learnerMap.remove(peerId);
+                        break;
+                }
+                peers = MemberState.joinPeers(peerMap);
+                learners = MemberState.joinPeers(learnerMap);
+                String config = MemberState.encodeConfig(peers, learners);
+                DLedgerEntry entry = new DLedgerEntry();
+                entry.setChannel(DLedgerEntry.CHANNEL_CONFIG);
+                entry.setBody(config.getBytes(StandardCharsets.UTF_8));
+                resEntry = dLedgerStore.appendAsLeader(entry);
+                memberState.applyConfig(resEntry.getIndex(), config);
+            }
+            dLedgerEntryPusher.updatePeers();
+            logger.info("[{}][ChangePeers] {} {} at index={}, peers={}, learners={}", memberState.getSelfId(), request.getType(), request.getPeerId(), resEntry.getIndex(), peers, learners);
+            return dLedgerEntryPusher.waitAck(resEntry, false).thenApply(appendResponse -> {
+                ChangePeersResponse response = new ChangePeersResponse();
+                response.copyBaseInfo(request);
+                response.setCode(appendResponse.getCode());
+                response.setTerm(resEntry.getTerm());
+                response.setLeaderId(memberState.getSelfId());
+                response.setPeers(peers);
+                response.setLearners(learners);
+                response.setConfigIndex(resEntry.getIndex());
+                return response;
+            });
+        } catch (DLedgerException e) {
+            logger.error("[{}][handleChangePeers] failed", memberState.getSelfId(), e);
+            ChangePeersResponse response = new ChangePeersResponse();
+            response.copyBaseInfo(request);
+            response.setCode(e.getCode().getCode());
+            response.setLeaderId(memberState.getLeaderId());
+            response.setPeers(memberState.getPeers());
+            response.setLearners(memberState.getLearners());
+            response.setConfigIndex(memberState.getConfigIndex());
+            return CompletableFuture.completedFuture(response);
+        }
+    }
+
+    /**
+     * The peers in the zone more than half of the appends come from since the last call, empty if there is no such
+     * zone or this leader is in it.
+     */
+    private List<String> getClientZonePeers() {
+        Map<String, Long> appends = new HashMap<>();
+        long total = 0;
+        for (Map.Entry<String, LongAdder> entry : clientZoneAppends.entrySet()) {
+            long num = entry.getValue().sumThenReset();
+            appends.put(entry.getKey(), num);
+            total += num;
+        }
+        List<String> peers = new ArrayList<>();
+        if (total < MIN_CLIENT_ZONE_APPENDS) {
+            return peers;
+        }
+        for (Map.Entry<String, Long> entry : appends.entrySet()) {
+            if (entry.getValue() * 2 <= total || entry.getKey().equals(memberState.getZone(memberState.getSelfId()))) {
+                continue;
+            }
+            for (String peerId : memberState.getPeerMap().keySet()) {
+                if (entry.getKey().equals(memberState.getZone(peerId)) && !memberState.isWitness(peerId)) {
+                    peers.add(peerId);
+                }
+            }
+            logger.info("{} of {} appends come from the zone {}, whose peers are {}", entry.getValue(), total, entry.getKey(), peers);
+        }
+        return peers;
+    }
+
     private void checkPreferredLeader() {
         if (!memberState.isLeader()) {
+            clientZoneAppends.clear();
             return;
         }
 
-        if (dLedgerConfig.getPreferredLeaderIds() == null) {
+        List<String> preferredLeaderIds;
+        if (dLedgerConfig.getPreferredLeaderIds() != null) {
+            preferredLeaderIds = new ArrayList<>(Arrays.asList(dLedgerConfig.getPreferredLeaderIds().split(";")));
+        } else if (dLedgerConfig.isEnableClientZoneLeader()) {
+            preferredLeaderIds = getClientZonePeers();
+        } else {
             return;
         }
 
@@ -373,7 +724,6 @@ public class DLedgerServer implements DLedgerProtocolHandler {
             return;
         }
 
-        List<String> preferredLeaderIds = new ArrayList<>(Arrays.asList(dLedgerConfig.getPreferredLeaderIds().split(";")));
         if (preferredLeaderIds.contains(dLedgerConfig.getSelfId())) {
             return;
         }
@@ -422,8 +772,13 @@ public class DLedgerServer implements DLedgerProtocolHandler {
 
             try {
                 long startTransferTime = System.currentTimeMillis();
-                LeadershipTransferResponse response = dLedgerLeaderElector.handleLeadershipTransfer(request).get();
-                logger.info("transfer finished. request={},response={},cost={}ms", request, response, DLedgerUtils.elapsed(startTransferTime));
+                dLedgerLeaderElector.handleLeadershipTransfer(request).whenComplete((response, t) -> {
+                    if (t != null) {
+                        logger.error("[checkPreferredLeader] error, request={}", request, t);
+                    } else {
+                        logger.info("transfer finished. request={},response={},cost={}ms", request, response, DLedgerUtils.elapsed(startTransferTime));
+                    }
+                });
             } catch (Throwable t) {
                 logger.error("[checkPreferredLeader] error, request={}", request, t);
             }
@@ -446,6 +801,22 @@ public class DLedgerServer implements DLedgerProtocolHandler {
         return dLedgerConfig;
     }
 
+    public DLedgerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public DLedgerMetricsExporter getMetricsExporter() {
+        return metricsExporter;
+    }
+
+    public DLedgerProxy getdLedgerProxy() {
+        return dLedgerProxy;
+    }
+
+    public AppendTracer getAppendTracer() {
+        return appendTracer;
+    }
+
     public NettyRemotingServer getRemotingServer() {
         if (this.dLedgerRpcService instanceof DLedgerRpcNettyService) {
             return ((DLedgerRpcNettyService)this.dLedgerRpcService).getRemotingServer();
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger;
+
+import com.alibaba.fastjson.JSON;
+import io.openmessaging.storage.dledger.protocol.BatchHeartBeatRequest;
+import io.openmessaging.storage.dledger.protocol.BatchHeartBeatResponse;
+import io.openmessaging.storage.dledger.protocol.DLedgerRequestCode;
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import io.openmessaging.storage.dledger.protocol.HeartBeatRequest;
+import io.openmessaging.storage.dledger.protocol.HeartBeatResponse;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.apache.rocketmq.remoting.netty.NettyRemotingClient;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RemotingSysResponseCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesce the heartbeats sent to the same address within a short window into one BATCH_HEART_BEAT request.
+ * It is used by the rpc service shared by the groups of a DLedgerProxy, whose leaders send the heartbeats at aligned times,
+ * so the heartbeat requests between two nodes do not grow with the number of groups.
+ */
+public class HeartBeatCoalescer {
+
+    private static Logger logger = LoggerFactory.getLogger(HeartBeatCoalescer.class);
+
+    /**
+     * Try the batch again after this, in case the peer has been upgraded.
+     */
+    private static final long RETRY_BATCH_MS = 60 * 1000;
+
+    private final NettyRemotingClient remotingClient;
+    private final long windowMs;
+    private final ScheduledExecutorService scheduler;
+    /**
+     * Send one heartbeat alone, if there is only one in the window or the peer does not support the batch.
+     */
+    private final Function<HeartBeatRequest, CompletableFuture<HeartBeatResponse>> singleSender;
+    private final Map<String, List<PendingHeartBeat>> pendingByAddr = new HashMap<>();
+    //the peers of an old version not knowing the batch, with the time they answered so
+    private final Map<String, Long> unsupportedAddrs = new ConcurrentHashMap<>();
+    private final LongAdder batchRequests = new LongAdder();
+    private final LongAdder batchedHeartBeats = new LongAdder();
+
+    public HeartBeatCoalescer(NettyRemotingClient remotingClient, long windowMs, ScheduledExecutorService scheduler,
+        Function<HeartBeatRequest, CompletableFuture<HeartBeatResponse>> singleSender) {
+        this.remotingClient = remotingClient;
+        this.windowMs = windowMs;
+        this.scheduler = scheduler;
+        this.singleSender = singleSender;
+    }
+
+    public CompletableFuture<HeartBeatResponse> heartBeat(String addr, HeartBeatRequest request) {
+        CompletableFuture<HeartBeatResponse> future = new CompletableFuture<>();
+        if (addr == null) {
+            future.complete(new HeartBeatResponse().code(DLedgerResponseCode.NETWORK_ERROR.getCode()));
+            return future;
+        }
+        if (!isBatchSupported(addr)) {
+            sendOneByOne(Collections.singletonList(new PendingHeartBeat(request, future)));
+            return future;
+        }
+        boolean first;
+        synchronized (pendingByAddr) {
+            List<PendingHeartBeat> pending = pendingByAddr.computeIfAbsent(addr, k -> new ArrayList<>());
+            first = pending.isEmpty();
+            pending.add(new PendingHeartBeat(request, future));
+        }
+        if (first) {
+            scheduler.schedule(() -> flush(addr), windowMs, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    private void flush(String addr) {
+        List<PendingHeartBeat> batch;
+        synchronized (pendingByAddr) {
+            batch = pendingByAddr.remove(addr);
+        }
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        if (batch.size() == 1) {
+            sendOneByOne(batch);
+            return;
+        }
+        try {
+            BatchHeartBeatRequest batchRequest = new BatchHeartBeatRequest();
+            for (PendingHeartBeat pending : batch) {
+                batchRequest.getHeartBeats().add(pending.request);
+            }
+            RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(DLedgerRequestCode.BATCH_HEART_BEAT.getCode(), null);
+            wrapperRequest.setBody(JSON.toJSONBytes(batchRequest));
+            batchRequests.increment();
+            batchedHeartBeats.add(batch.size());
+            remotingClient.invokeAsync(addr, wrapperRequest, 3000, responseFuture -> {
+                RemotingCommand responseCommand = responseFuture.getResponseCommand();
+                if (responseCommand == null) {
+                    logger.error("Batch heartbeat request to {} time out, size={}", addr, batch.size());
+                    completeWithNetworkError(batch);
+                } else if (responseCommand.getCode() == RemotingSysResponseCode.REQUEST_CODE_NOT_SUPPORTED) {
+                    //the peer of an old version does not know the batch
+                    logger.warn("The batch heartbeat is not supported by {}, send the heartbeats one by one", addr);
+                    unsupportedAddrs.put(addr, System.currentTimeMillis());
+                    sendOneByOne(batch);
+                } else if (responseCommand.getCode() != DLedgerResponseCode.SUCCESS.getCode() || responseCommand.getBody() == null) {
+                    logger.warn("The batch heartbeat to {} failed, code={}", addr, responseCommand.getCode());
+                    sendOneByOne(batch);
+                } else {
+                    BatchHeartBeatResponse batchResponse = JSON.parseObject(responseCommand.getBody(), BatchHeartBeatResponse.class);
+                    List<HeartBeatResponse> responses = batchResponse.getHeartBeats();
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (responses != null && i < responses.size()) {
+                            batch.get(i).future.complete(responses.get(i));
+                        } else {
+                            batch.get(i).future.complete(new HeartBeatResponse().code(DLedgerResponseCode.NETWORK_ERROR.getCode()));
+                        }
+                    }
+                }
+            });
+        } catch (Throwable t) {
+            logger.error("Send batch heartbeat request to {} failed, size={}", addr, batch.size(), t);
+            completeWithNetworkError(batch);
+        }
+    }
+
+    private boolean isBatchSupported(String addr) {
+        Long unsupportedTime = unsupportedAddrs.get(addr);
+        if (unsupportedTime == null) {
+            return true;
+        }
+        if (DLedgerUtils.elapsed(unsupportedTime) > RETRY_BATCH_MS) {
+            unsupportedAddrs.remove(addr, unsupportedTime);
+            return true;
+        }
+        return false;
+    }
+
+    public long getBatchRequests() {
+        return batchRequests.sum();
+    }
+
+    public long getBatchedHeartBeats() {
+        return batchedHeartBeats.sum();
+    }
+
+    private void sendOneByOne(List<PendingHeartBeat> batch) {
+        for (PendingHeartBeat pending : batch) {
+            singleSender.apply(pending.request).whenComplete((x, ex) -> {
+                if (ex != null) {
+                    pending.future.complete(new HeartBeatResponse().code(DLedgerResponseCode.NETWORK_ERROR.getCode()));
+                } else {
+                    pending.future.complete(x);
+                }
+            });
+        }
+    }
+
+    private void completeWithNetworkError(List<PendingHeartBeat> batch) {
+        for (PendingHeartBeat pending : batch) {
+            pending.future.complete(new HeartBeatResponse().code(DLedgerResponseCode.NETWORK_ERROR.getCode()));
+        }
+    }
+
+    private static class PendingHeartBeat {
+        private final HeartBeatRequest request;
+        private final CompletableFuture<HeartBeatResponse> future;
+
+        PendingHeartBeat(HeartBeatRequest request, CompletableFuture<HeartBeatResponse> future) {
+            this.request = request;
+            this.future = future;
+        }
+    }
+}
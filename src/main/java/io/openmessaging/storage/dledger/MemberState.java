@@ -20,9 +20,16 @@ import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
 import io.openmessaging.storage.dledger.utils.IOUtils;
 import io.openmessaging.storage.dledger.utils.PreConditions;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
@@ -35,14 +42,23 @@ import static io.openmessaging.storage.dledger.MemberState.Role.LEADER;
 public class MemberState {
 
     public static final String TERM_PERSIST_FILE = "currterm";
+    public static final String TERM_META_FILE = "currterm.meta";
     public static final String TERM_PERSIST_KEY_TERM = "currTerm";
     public static final String TERM_PERSIST_KEY_VOTE_FOR = "voteLeader";
+    public static final String PEERS_PERSIST_FILE = "peers";
+    public static final String PEERS_PERSIST_KEY_PEERS = "peers";
+    public static final String PEERS_PERSIST_KEY_CONFIG_INDEX = "configIndex";
+    public static final String PEERS_PERSIST_KEY_PREV_PEERS = "prevPeers";
+    public static final String PEERS_PERSIST_KEY_LEARNERS = "learners";
+    public static final String PEERS_PERSIST_KEY_PREV_LEARNERS = "prevLearners";
+    public static final String PEERS_PERSIST_KEY_PREV_CONFIG_INDEX = "prevConfigIndex";
     public static Logger logger = LoggerFactory.getLogger(MemberState.class);
     public final DLedgerConfig dLedgerConfig;
     private final ReentrantLock defaultLock = new ReentrantLock();
     private final String group;
     private final String selfId;
-    private final String peers;
+    private volatile String peers;
+    private volatile String learners;
     private volatile Role role = CANDIDATE;
     private volatile String leaderId;
     private volatile long currTerm = 0;
@@ -50,26 +66,251 @@ public class MemberState {
     private volatile long ledgerEndIndex = -1;
     private volatile long ledgerEndTerm = -1;
     private long knownMaxTermInGroup = -1;
-    private Map<String, String> peerMap = new HashMap<>();
+    //copy on write, replaced as a whole when a config entry is appended or truncated
+    private volatile Map<String, String> peerMap;
+    //receive the entries but never vote nor count in the quorum
+    private volatile Map<String, String> learnerMap;
+    //the zone of each peer, static and the same on all the members
+    private final Map<String, String> zoneMap;
+    //vote and ack but never lead
+    private final Set<String> witnesses = new HashSet<>();
+    //the index of the config entry the peers come from, -1 for the static config
+    private volatile long configIndex = -1;
+    //the peers before the latest config entry, restored if the entry is truncated
+    private String prevPeers;
+    private String prevLearners;
+    private long prevConfigIndex = -1;
     private Map<String, Boolean> peersLiveTable = new ConcurrentHashMap<>();
+    //the send time of the latest push acked by each peer in the term led by this node
+    private Map<String, Long> peerAckTimes = new ConcurrentHashMap<>();
 
     private volatile String transferee;
     private volatile long termToTakeLeadership = -1;
 
+    private final TermMetaFile termMetaFile;
+    private final TermPersistService termPersistService;
+    private boolean termPersistServiceStarted = false;
+    //waiting for the term and the vote to be durable, guarded by this
+    private List<CompletableFuture<Void>> persistWaiters = new ArrayList<>();
+
     public MemberState(DLedgerConfig config) {
         this.group = config.getGroup();
         this.selfId = config.getSelfId();
         this.peers = config.getPeers();
-        for (String peerInfo : this.peers.split(";")) {
+        this.learners = config.getLearners() == null ? "" : config.getLearners();
+        this.peerMap = parsePeers(this.peers);
+        this.learnerMap = parsePeers(this.learners);
+        checkLearners(peerMap, learnerMap);
+        checkWitnesses(config);
+        checkQuorums(config, peerMap.size());
+        this.zoneMap = parsePeers(config.getZones() == null ? "" : config.getZones());
+        checkZones(config, peerMap, zoneMap);
+        this.prevPeers = this.peers;
+        this.prevLearners = this.learners;
+        this.dLedgerConfig = config;
+        loadPeers();
+        this.termMetaFile = new TermMetaFile(config.getDefaultPath() + File.separator + TERM_META_FILE);
+        this.termPersistService = new TermPersistService(logger);
+        loadTerm();
+    }
+
+    public static Map<String, String> parsePeers(String peers) {
+        Map<String, String> peerMap = new HashMap<>();
+        if (peers.isEmpty()) {
+            return peerMap;
+        }
+        for (String peerInfo : peers.split(";")) {
             String peerSelfId = peerInfo.split("-")[0];
             String peerAddress = peerInfo.substring(peerSelfId.length() + 1);
             peerMap.put(peerSelfId, peerAddress);
+            if (peerSelfId.length() > TermMetaFile.MAX_VOTE_FOR_LENGTH) {
+                throw new IllegalArgumentException(String.format("The id %s is longer than %d", peerSelfId, TermMetaFile.MAX_VOTE_FOR_LENGTH));
+            }
         }
-        this.dLedgerConfig = config;
-        loadTerm();
+        return peerMap;
+    }
+
+    public static String joinPeers(Map<String, String> peerMap) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(peerMap).entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(";");
+            }
+            builder.append(entry.getKey()).append("-").append(entry.getValue());
+        }
+        return builder.toString();
+    }
+
+    private static void checkLearners(Map<String, String> peerMap, Map<String, String> learnerMap) {
+        for (String learner : learnerMap.keySet()) {
+            if (peerMap.containsKey(learner)) {
+                throw new IllegalArgumentException(String.format("The learner %s is also a peer", learner));
+            }
+        }
+    }
+
+    private void checkWitnesses(DLedgerConfig config) {
+        if (config.getWitnesses() == null || config.getWitnesses().isEmpty()) {
+            return;
+        }
+        for (String witness : config.getWitnesses().split(";")) {
+            if (!peerMap.containsKey(witness)) {
+                throw new IllegalArgumentException(String.format("The witness %s is not a peer", witness));
+            }
+            witnesses.add(witness);
+        }
+        if (config.getPreferredLeaderIds() != null) {
+            for (String preferredLeaderId : config.getPreferredLeaderIds().split(";")) {
+                if (witnesses.contains(preferredLeaderId)) {
+                    throw new IllegalArgumentException(String.format("The witness %s could not be the preferred leader", preferredLeaderId));
+                }
+            }
+        }
+    }
+
+    private static void checkZones(DLedgerConfig config, Map<String, String> peerMap, Map<String, String> zoneMap) {
+        int minAckZones = config.getMinAckZones();
+        if (minAckZones < 0) {
+            throw new IllegalArgumentException(String.format("The min ack zones %d is negative", minAckZones));
+        }
+        if (minAckZones == 0) {
+            return;
+        }
+        for (String peer : peerMap.keySet()) {
+            if (!zoneMap.containsKey(peer)) {
+                throw new IllegalArgumentException(String.format("The zone of the peer %s is unknown", peer));
+            }
+        }
+        if (minAckZones > new HashSet<>(zoneMap.values()).size()) {
+            throw new IllegalArgumentException(String.format("The min ack zones %d is more than the zones %s", minAckZones, zoneMap.values()));
+        }
+    }
+
+    private static void checkQuorums(DLedgerConfig config, int peerSize) {
+        int writeQuorumSize = config.getWriteQuorumSize();
+        int electionQuorumSize = config.getElectionQuorumSize();
+        if (writeQuorumSize < 0 || writeQuorumSize > peerSize || electionQuorumSize < 0 || electionQuorumSize > peerSize) {
+            throw new IllegalArgumentException(String.format("The quorum sizes write=%d election=%d are out of the peer number %d", writeQuorumSize, electionQuorumSize, peerSize));
+        }
+        if (electionQuorumSize > 0 && electionQuorumSize <= peerSize / 2) {
+            throw new IllegalArgumentException(String.format("The election quorum %d of %d peers could elect two leaders in one term", electionQuorumSize, peerSize));
+        }
+        if (writeQuorumSize > 0 && electionQuorumSize > 0 && writeQuorumSize + electionQuorumSize <= peerSize) {
+            throw new IllegalArgumentException(String.format("The write quorum %d and the election quorum %d do not overlap in %d peers", writeQuorumSize, electionQuorumSize, peerSize));
+        }
+    }
+
+    /**
+     * The body of a config entry.
+     */
+    public static String encodeConfig(String peers, String learners) {
+        Properties properties = new Properties();
+        properties.put(PEERS_PERSIST_KEY_PEERS, peers);
+        properties.put(PEERS_PERSIST_KEY_LEARNERS, learners);
+        return IOUtils.properties2String(properties);
+    }
+
+    private void loadPeers() {
+        try {
+            String data = IOUtils.file2String(dLedgerConfig.getDefaultPath() + File.separator + PEERS_PERSIST_FILE);
+            Properties properties = IOUtils.string2Properties(data);
+            if (properties == null || !properties.containsKey(PEERS_PERSIST_KEY_PEERS)) {
+                return;
+            }
+            //the peers changed online take precedence over the static config
+            peers = properties.getProperty(PEERS_PERSIST_KEY_PEERS);
+            learners = properties.getProperty(PEERS_PERSIST_KEY_LEARNERS, "");
+            peerMap = parsePeers(peers);
+            learnerMap = parsePeers(learners);
+            configIndex = Long.parseLong(properties.getProperty(PEERS_PERSIST_KEY_CONFIG_INDEX));
+            prevPeers = properties.getProperty(PEERS_PERSIST_KEY_PREV_PEERS);
+            prevLearners = properties.getProperty(PEERS_PERSIST_KEY_PREV_LEARNERS, "");
+            prevConfigIndex = Long.parseLong(properties.getProperty(PEERS_PERSIST_KEY_PREV_CONFIG_INDEX));
+        } catch (Throwable t) {
+            logger.error("Load peers failed", t);
+        }
+    }
+
+    private void persistPeers() {
+        try {
+            Properties properties = new Properties();
+            properties.put(PEERS_PERSIST_KEY_PEERS, peers);
+            properties.put(PEERS_PERSIST_KEY_CONFIG_INDEX, String.valueOf(configIndex));
+            properties.put(PEERS_PERSIST_KEY_PREV_PEERS, prevPeers);
+            properties.put(PEERS_PERSIST_KEY_LEARNERS, learners);
+            properties.put(PEERS_PERSIST_KEY_PREV_LEARNERS, prevLearners);
+            properties.put(PEERS_PERSIST_KEY_PREV_CONFIG_INDEX, String.valueOf(prevConfigIndex));
+            String data = IOUtils.properties2String(properties);
+            IOUtils.string2File(data, dLedgerConfig.getDefaultPath() + File.separator + PEERS_PERSIST_FILE);
+        } catch (Throwable t) {
+            logger.error("Persist peers failed", t);
+        }
+    }
+
+    /**
+     * Take the peers of a config entry once it is appended, a config entry is effective before it is committed.
+     *
+     * @param config the body of the config entry, see encodeConfig
+     */
+    public synchronized void applyConfig(long index, String config) {
+        if (index <= configIndex) {
+            return;
+        }
+        Properties properties = IOUtils.string2Properties(config);
+        if (properties == null || !properties.containsKey(PEERS_PERSIST_KEY_PEERS)) {
+            logger.error("[{}][BUG] illegal config at index={}: {}", selfId, index, config);
+            return;
+        }
+        String newPeers = properties.getProperty(PEERS_PERSIST_KEY_PEERS);
+        String newLearners = properties.getProperty(PEERS_PERSIST_KEY_LEARNERS, "");
+        Map<String, String> newPeerMap = parsePeers(newPeers);
+        Map<String, String> newLearnerMap = parsePeers(newLearners);
+        prevPeers = peers;
+        prevLearners = learners;
+        prevConfigIndex = configIndex;
+        peers = newPeers;
+        learners = newLearners;
+        configIndex = index;
+        peerMap = newPeerMap;
+        learnerMap = newLearnerMap;
+        Set<String> ids = getReplicaIds();
+        peersLiveTable.keySet().retainAll(ids);
+        peerAckTimes.keySet().retainAll(ids);
+        persistPeers();
+        logger.info("[{}][ApplyConfig] index={} peers={} learners={}", selfId, index, newPeers, newLearners);
+    }
+
+    /**
+     * Restore the previous peers if the latest config entry is truncated, only one uncommitted config entry is allowed
+     * so the previous one is always kept.
+     *
+     * @return whether the peers are changed
+     */
+    public synchronized boolean truncatePeers(long index) {
+        if (configIndex < index) {
+            return false;
+        }
+        peers = prevPeers;
+        learners = prevLearners;
+        configIndex = prevConfigIndex;
+        peerMap = parsePeers(peers);
+        learnerMap = parsePeers(learners);
+        persistPeers();
+        logger.info("[{}][TruncatePeers] index={} peers={} learners={}", selfId, index, peers, learners);
+        return true;
     }
 
     private void loadTerm() {
+        try {
+            if (termMetaFile.load()) {
+                currTerm = termMetaFile.getTerm();
+                currVoteFor = termMetaFile.getVoteFor();
+                return;
+            }
+        } catch (Throwable t) {
+            logger.error("Load last term from {} failed", TERM_META_FILE, t);
+        }
+        //the properties file written by the older versions
         try {
             String data = IOUtils.file2String(dLedgerConfig.getDefaultPath() + File.separator + TERM_PERSIST_FILE);
             Properties properties = IOUtils.string2Properties(data);
@@ -90,15 +331,58 @@ public class MemberState {
         }
     }
 
-    private void persistTerm() {
+    /**
+     * Must be called with the lock held, the write is left to the persist service so the lock is not held on the disk.
+     *
+     * @return completed once the current term and vote are durable
+     */
+    private CompletableFuture<Void> persistTerm() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        persistWaiters.add(future);
+        if (!termPersistServiceStarted) {
+            termPersistServiceStarted = true;
+            termPersistService.start();
+        }
+        termPersistService.wakeup();
+        return future;
+    }
+
+    private void flushTerm() {
+        List<CompletableFuture<Void>> waiters;
+        long term;
+        String voteFor;
+        synchronized (this) {
+            if (persistWaiters.isEmpty()) {
+                return;
+            }
+            waiters = persistWaiters;
+            persistWaiters = new ArrayList<>();
+            term = currTerm;
+            voteFor = currVoteFor;
+        }
         try {
-            Properties properties = new Properties();
-            properties.put(TERM_PERSIST_KEY_TERM, currTerm);
-            properties.put(TERM_PERSIST_KEY_VOTE_FOR, currVoteFor == null ? "" : currVoteFor);
-            String data = IOUtils.properties2String(properties);
-            IOUtils.string2File(data, dLedgerConfig.getDefaultPath() + File.separator + TERM_PERSIST_FILE);
+            //all the waiters are covered, the snapshot is not older than any of their updates
+            termMetaFile.write(term, voteFor);
+            waiters.forEach(future -> future.complete(null));
         } catch (Throwable t) {
             logger.error("Persist curr term failed", t);
+            waiters.forEach(future -> future.completeExceptionally(t));
+        }
+    }
+
+    public void shutdown() {
+        boolean started;
+        synchronized (this) {
+            started = termPersistServiceStarted;
+        }
+        if (started) {
+            termPersistService.shutdown();
+        }
+        flushTerm();
+        try {
+            termMetaFile.close();
+        } catch (IOException e) {
+            logger.error("Close the term meta file failed", e);
         }
     }
 
@@ -110,9 +394,12 @@ public class MemberState {
         return currVoteFor;
     }
 
-    public synchronized void setCurrVoteFor(String currVoteFor) {
+    /**
+     * @return completed once the vote is durable, the vote should not be granted before that
+     */
+    public synchronized CompletableFuture<Void> setCurrVoteFor(String currVoteFor) {
         this.currVoteFor = currVoteFor;
-        persistTerm();
+        return persistTerm();
     }
 
     public synchronized long nextTerm() {
@@ -132,6 +419,7 @@ public class MemberState {
         this.role = LEADER;
         this.leaderId = selfId;
         peersLiveTable.clear();
+        peerAckTimes.clear();
     }
 
     public synchronized void changeToFollower(long term, String leaderId) {
@@ -141,6 +429,10 @@ public class MemberState {
         transferee = null;
     }
 
+    public long getKnownMaxTermInGroup() {
+        return knownMaxTermInGroup;
+    }
+
     public synchronized void changeToCandidate(long term) {
         assert term >= currTerm;
         PreConditions.check(term >= currTerm, DLedgerResponseCode.ILLEGAL_MEMBER_STATE, "should %d >= %d", term, currTerm);
@@ -183,15 +475,16 @@ public class MemberState {
     }
 
     public String getSelfAddr() {
-        return peerMap.get(selfId);
+        return getPeerAddr(selfId);
     }
 
     public String getLeaderAddr() {
-        return peerMap.get(leaderId);
+        return getPeerAddr(leaderId);
     }
 
     public String getPeerAddr(String peerId) {
-        return peerMap.get(peerId);
+        String addr = peerMap.get(peerId);
+        return addr == null ? learnerMap.get(peerId) : addr;
     }
 
     public boolean isLeader() {
@@ -206,8 +499,56 @@ public class MemberState {
         return role == CANDIDATE;
     }
 
-    public boolean isQuorum(int num) {
-        return num >= ((peerSize() / 2) + 1);
+    /**
+     * The acks to commit an entry, also enough to keep the leadership and the lease since no election quorum could
+     * be formed without one of them. It is capped by the current peers when they are changed online.
+     */
+    public int getWriteQuorumSize() {
+        int peerSize = peerSize();
+        int writeQuorumSize = dLedgerConfig.getWriteQuorumSize();
+        return writeQuorumSize > 0 ? Math.min(writeQuorumSize, peerSize) : peerSize / 2 + 1;
+    }
+
+    /**
+     * The votes to win an election, overlapping both any write quorum and any other election quorum.
+     */
+    public int getElectionQuorumSize() {
+        int peerSize = peerSize();
+        int electionQuorumSize = Math.max(peerSize / 2 + 1, peerSize - getWriteQuorumSize() + 1);
+        return Math.max(electionQuorumSize, Math.min(dLedgerConfig.getElectionQuorumSize(), peerSize));
+    }
+
+    /**
+     * @return the zone of the peer, null if unknown
+     */
+    public String getZone(String id) {
+        return zoneMap.get(id);
+    }
+
+    /**
+     * The zones the acks of an entry must come from, capped by the zones of the current peers.
+     */
+    public int getMinAckZones() {
+        int minAckZones = dLedgerConfig.getMinAckZones();
+        if (minAckZones <= 0) {
+            return 0;
+        }
+        Set<String> zones = new HashSet<>();
+        for (String peer : peerMap.keySet()) {
+            String zone = zoneMap.get(peer);
+            if (zone != null) {
+                zones.add(zone);
+            }
+        }
+        return Math.min(minAckZones, zones.size());
+    }
+
+    public boolean isWriteQuorum(int num) {
+        return num >= getWriteQuorumSize();
+    }
+
+    public boolean isElectionQuorum(int num) {
+        return num >= getElectionQuorumSize();
     }
 
     public int peerSize() {
@@ -222,10 +563,63 @@ public class MemberState {
         return peerMap;
     }
 
+    public Map<String, String> getLearnerMap() {
+        return learnerMap;
+    }
+
+    public boolean isLearner() {
+        return learnerMap.containsKey(selfId);
+    }
+
+    public boolean isWitness() {
+        return witnesses.contains(selfId);
+    }
+
+    public boolean isWitness(String id) {
+        return witnesses.contains(id);
+    }
+
+    public Set<String> getWitnesses() {
+        return witnesses;
+    }
+
+    /**
+     * @return the peers and the learners, all of which are replicated to
+     */
+    public Set<String> getReplicaIds() {
+        Set<String> ids = new HashSet<>(peerMap.keySet());
+        ids.addAll(learnerMap.keySet());
+        return ids;
+    }
+
+    public String getLearners() {
+        return learners;
+    }
+
+    public String getPeers() {
+        return peers;
+    }
+
+    public long getConfigIndex() {
+        return configIndex;
+    }
+
     public Map<String, Boolean> getPeersLiveTable() {
         return peersLiveTable;
     }
 
+    public void updatePeerAckTime(String peerId, long sendTimeMs) {
+        peerAckTimes.merge(peerId, sendTimeMs, Math::max);
+    }
+
+    /**
+     * @return the send time of the latest push acked by the peer, or -1 if none
+     */
+    public long getPeerAckTime(String peerId) {
+        Long ackTime = peerAckTimes.get(peerId);
+        return ackTime == null ? -1 : ackTime;
+    }
+
     //just for test
     public void setCurrTermForTest(long term) {
         PreConditions.check(term >= currTerm, DLedgerResponseCode.ILLEGAL_MEMBER_STATE);
@@ -253,6 +647,23 @@ public class MemberState {
         return ledgerEndTerm;
     }
 
+    private class TermPersistService extends ShutdownAbleThread {
+
+        TermPersistService(Logger logger) {
+            super("TermPersistService-" + selfId, logger);
+            setDaemon(true);
+        }
+
+        @Override public void doWork() {
+            try {
+                flushTerm();
+                waitForRunning(1000);
+            } catch (Throwable t) {
+                logger.error("Error in {}", getName(), t);
+            }
+        }
+    }
+
     public enum Role {
         UNKNOWN,
         CANDIDATE,
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+
+/**
+ * A task run on a shared scheduled executor instead of a dedicated thread, so the threads do not grow with the peers
+ * and the groups. The task runs when it is woken up, or when the delay returned by the last run has elapsed, and never
+ * runs concurrently with itself. A wakeup during a run makes it run once more right after.
+ */
+public abstract class ReplicationTask implements Runnable {
+
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    private static final int RUNNING = 2;
+    private static final int NOTIFIED = 3;
+
+    /**
+     * Returned by doWork to wait for the next wakeup without a timer.
+     */
+    public static final long WAIT_FOR_WAKEUP = -1;
+
+    private final String name;
+    private final ScheduledExecutorService executor;
+    protected final Logger logger;
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    //notified when a run ends after the shutdown
+    private final Object shutdownLock = new Object();
+    private volatile boolean running = false;
+    private volatile ScheduledFuture<?> timer;
+
+    /**
+     * Create the executor to run the tasks, which removes the cancelled timers at once.
+     */
+    public static ScheduledExecutorService newExecutor(String name, int threadNum) {
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threadNum, r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName(name + "-" + threadIndex.incrementAndGet());
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    public ReplicationTask(String name, ScheduledExecutorService executor, Logger logger) {
+        this.name = name;
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    /**
+     * @return the delay in ms before the next run, or WAIT_FOR_WAKEUP
+     */
+    public abstract long doWork() throws Exception;
+
+    public void start() {
+        running = true;
+        wakeup();
+    }
+
+    public void shutdown() {
+        running = false;
+        cancelTimer();
+        long deadline = System.currentTimeMillis() + 10000;
+        synchronized (shutdownLock) {
+            long remaining = deadline - System.currentTimeMillis();
+            while (state.get() >= RUNNING && remaining > 0) {
+                try {
+                    shutdownLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+        if (state.get() >= RUNNING) {
+            logger.error("The {} failed to shutdown in {} seconds", name, 10);
+        }
+    }
+
+    public void wakeup() {
+        while (running) {
+            int current = state.get();
+            if (current == IDLE) {
+                if (state.compareAndSet(IDLE, SCHEDULED)) {
+                    submit();
+                    return;
+                }
+            } else if (current == RUNNING) {
+                if (state.compareAndSet(RUNNING, NOTIFIED)) {
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        state.set(RUNNING);
+        long delay = WAIT_FOR_WAKEUP;
+        try {
+            if (running) {
+                delay = doWork();
+            }
+        } catch (Throwable t) {
+            logger.error("Unexpected Error in running {} ", name, t);
+            delay = 100;
+        }
+        //the timer is only replaced while this run still owns the state, a run submitted after the release has its own
+        if (running && delay > 0) {
+            schedule(delay);
+        }
+        if (state.compareAndSet(RUNNING, IDLE)) {
+            if (running && delay == 0) {
+                wakeup();
+            }
+        } else {
+            state.set(SCHEDULED);
+            submit();
+        }
+        if (!running) {
+            synchronized (shutdownLock) {
+                shutdownLock.notifyAll();
+            }
+        }
+    }
+
+    private void submit() {
+        if (!running) {
+            state.set(IDLE);
+            return;
+        }
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            state.set(IDLE);
+            logger.warn("The {} is rejected by the executor", name);
+        }
+    }
+
+    private void schedule(long delay) {
+        cancelTimer();
+        try {
+            timer = executor.schedule(this::wakeup, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.warn("The timer of {} is rejected by the executor", name);
+        }
+    }
+
+    private void cancelTimer() {
+        ScheduledFuture<?> old = timer;
+        if (old != null) {
+            old.cancel(false);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The term and the vote of a member in a fixed-size binary file with two slots, written in turn and forced to the disk.
+ * Each slot carries a sequence and a crc, so a torn write only loses the slot being written and the other one is loaded.
+ */
+public class TermMetaFile {
+
+    public static final int SLOT_SIZE = 128;
+    //magic(4) + seq(8) + term(8) + voteForLength(2), and the crc(4) at the end of the slot
+    public static final int MAX_VOTE_FOR_LENGTH = SLOT_SIZE - 26;
+    private static final int MAGIC = 0xD1ED7E53;
+
+    private final File file;
+    //opened on the first write, so a member that never votes holds no file
+    private FileChannel fileChannel;
+    private long seq = -1;
+    private long term = 0;
+    private String voteFor;
+
+    public TermMetaFile(String fileName) {
+        this.file = new File(fileName);
+    }
+
+    /**
+     * Load the latest valid slot.
+     *
+     * @return false if neither slot is valid, e.g. the file is just created
+     */
+    public synchronized boolean load() throws IOException {
+        if (fileChannel != null) {
+            return load(fileChannel);
+        }
+        if (!file.exists()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return load(channel);
+        }
+    }
+
+    private boolean load(FileChannel channel) throws IOException {
+        boolean loaded = false;
+        for (int slot = 0; slot < 2; slot++) {
+            ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, (long) slot * SLOT_SIZE + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            if (buffer.hasRemaining()) {
+                continue;
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC) {
+                continue;
+            }
+            long slotSeq = buffer.getLong();
+            long slotTerm = buffer.getLong();
+            int length = buffer.getShort();
+            if (length < -1 || length > MAX_VOTE_FOR_LENGTH || crc(buffer.array(), length) != buffer.getInt(SLOT_SIZE - 4)) {
+                continue;
+            }
+            if (slotSeq > seq) {
+                seq = slotSeq;
+                term = slotTerm;
+                voteFor = length < 0 ? null : new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                loaded = true;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Write the term and the vote to the older slot and force it to the disk.
+     */
+    public synchronized void write(long term, String voteFor) throws IOException {
+        byte[] voteForBytes = voteFor == null ? null : voteFor.getBytes(StandardCharsets.UTF_8);
+        if (voteForBytes != null && voteForBytes.length > MAX_VOTE_FOR_LENGTH) {
+            throw new IllegalArgumentException(String.format("The vote for %s is longer than %d bytes", voteFor, MAX_VOTE_FOR_LENGTH));
+        }
+        long nextSeq = seq + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putLong(nextSeq);
+        buffer.putLong(term);
+        buffer.putShort((short) (voteForBytes == null ? -1 : voteForBytes.length));
+        if (voteForBytes != null) {
+            buffer.put(voteForBytes);
+        }
+        buffer.putInt(SLOT_SIZE - 4, crc(buffer.array(), voteForBytes == null ? -1 : voteForBytes.length));
+        buffer.clear();
+        long offset = (nextSeq % 2) * SLOT_SIZE;
+        if (fileChannel == null) {
+            File parent = file.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer, offset + buffer.position());
+        }
+        fileChannel.force(false);
+        this.seq = nextSeq;
+        this.term = term;
+        this.voteFor = voteFor;
+    }
+
+    private static int crc(byte[] slot, int voteForLength) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(slot, 0, 22 + Math.max(voteForLength, 0));
+        return (int) crc32.getValue();
+    }
+
+    public synchronized void close() throws IOException {
+        if (fileChannel != null) {
+            fileChannel.close();
+            fileChannel = null;
+        }
+    }
+
+    public long getTerm() {
+        return term;
+    }
+
+    public String getVoteFor() {
+        return voteFor;
+    }
+}
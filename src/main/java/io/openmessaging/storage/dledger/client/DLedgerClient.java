@@ -19,6 +19,10 @@ package io.openmessaging.storage.dledger.client;
 import io.openmessaging.storage.dledger.ShutdownAbleThread;
 import io.openmessaging.storage.dledger.protocol.AppendEntryRequest;
 import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.BatchAppendEntryRequest;
+import io.openmessaging.storage.dledger.protocol.BatchAppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.ChangePeersRequest;
+import io.openmessaging.storage.dledger.protocol.ChangePeersResponse;
 import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
 import io.openmessaging.storage.dledger.protocol.GetEntriesRequest;
 import io.openmessaging.storage.dledger.protocol.GetEntriesResponse;
@@ -28,10 +32,20 @@ import io.openmessaging.storage.dledger.protocol.LeadershipTransferResponse;
 import io.openmessaging.storage.dledger.protocol.LeadershipTransferRequest;
 import io.openmessaging.storage.dledger.utils.DLedgerUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,12 +54,32 @@ public class DLedgerClient {
 
     private static Logger logger = LoggerFactory.getLogger(DLedgerClient.class);
     private final Map<String, String> peerMap = new ConcurrentHashMap<>();
+    //the witnesses keep no data to read
+    private final Set<String> witnesses = ConcurrentHashMap.newKeySet();
     private final String group;
-    private String leaderId;
+    private volatile String leaderId;
     private DLedgerClientRpcService dLedgerClientRpcService;
 
     private MetadataUpdater metadataUpdater = new MetadataUpdater("MetadataUpdater", logger);
 
+    private volatile ReadMode readMode = ReadMode.LEADER_ONLY;
+    private volatile String zone;
+    private volatile long followerReadWaitMs = 1000;
+    private final Map<String, Long> peerReadCostUs = new ConcurrentHashMap<>();
+    private final AtomicInteger readRound = new AtomicInteger(0);
+
+    private static final int MAX_APPEND_RETRY_TIMES = 3;
+    private volatile long appendLingerMs = 1;
+    private volatile int maxAppendBatchNum = 128;
+    private volatile int maxAppendBatchSize = 256 * 1024;
+    private int maxInflightAppends = 32;
+    private Semaphore inflightAppends;
+    private final BlockingQueue<PendingAppend> appendQueue = new LinkedBlockingQueue<>(16 * 1024);
+    private AppendBatcher appendBatcher = new AppendBatcher("AppendBatcher", logger);
+    //the batcher is started by the first async append, the clients appending synchronously never poll the queue
+    private final AtomicBoolean appendBatcherStarted = new AtomicBoolean(false);
+    private volatile boolean started = false;
+
     public DLedgerClient(String group, String peers) {
         this.group = group;
         updatePeers(peers);
@@ -55,6 +89,28 @@ public class DLedgerClient {
     }
 
     public AppendEntryResponse append(byte[] body) {
+        AppendEntryRequest appendEntryRequest = new AppendEntryRequest();
+        appendEntryRequest.setBody(body);
+        return append(appendEntryRequest);
+    }
+
+    /**
+     * Append the bodies by one request, the leader writes them to its store by one append and gives them contiguous
+     * indexes from the first index of the response.
+     */
+    public BatchAppendEntryResponse batchAppend(List<byte[]> bodies) {
+        BatchAppendEntryRequest appendEntryRequest = new BatchAppendEntryRequest();
+        appendEntryRequest.setBatchMsgs(bodies);
+        AppendEntryResponse response = append(appendEntryRequest);
+        if (response instanceof BatchAppendEntryResponse) {
+            return (BatchAppendEntryResponse) response;
+        }
+        BatchAppendEntryResponse batchResponse = new BatchAppendEntryResponse();
+        batchResponse.copyBaseInfo(response);
+        return batchResponse;
+    }
+
+    private AppendEntryResponse append(AppendEntryRequest appendEntryRequest) {
         try {
             waitOnUpdatingMetadata(1500, false);
             if (leaderId == null) {
@@ -62,12 +118,13 @@ public class DLedgerClient {
                 appendEntryResponse.setCode(DLedgerResponseCode.METADATA_ERROR.getCode());
                 return appendEntryResponse;
             }
-            AppendEntryRequest appendEntryRequest = new AppendEntryRequest();
             appendEntryRequest.setGroup(group);
             appendEntryRequest.setRemoteId(leaderId);
-            appendEntryRequest.setBody(body);
+            appendEntryRequest.setClientZone(zone);
             AppendEntryResponse response = dLedgerClientRpcService.append(appendEntryRequest).get();
-            if (response.getCode() == DLedgerResponseCode.NOT_LEADER.getCode()) {
+            if (response.getCode() == DLedgerResponseCode.NETWORK_ERROR.getCode()) {
+                needFreshMetadata();
+            } else if (response.getCode() == DLedgerResponseCode.NOT_LEADER.getCode()) {
                 waitOnUpdatingMetadata(1500, true);
                 if (leaderId != null) {
                     appendEntryRequest.setRemoteId(leaderId);
@@ -84,7 +141,62 @@ public class DLedgerClient {
         }
     }
 
+    /**
+     * Append the body without waiting for the response. The bodies appended within appendLingerMs are sent to the
+     * leader in one BatchAppendEntryRequest, and at most maxInflightAppends requests are sent without response.
+     * The caller is blocked if too many bodies are waiting to be sent.
+     */
+    public CompletableFuture<AppendEntryResponse> appendAsync(byte[] body) {
+        PendingAppend pendingAppend = new PendingAppend(body);
+        try {
+            appendQueue.put(pendingAppend);
+            if (started) {
+                startAppendBatcher();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            AppendEntryResponse response = new AppendEntryResponse();
+            response.setCode(DLedgerResponseCode.INTERNAL_ERROR.getCode());
+            pendingAppend.future.complete(response);
+        }
+        return pendingAppend.future;
+    }
+
     public GetEntriesResponse get(long index) {
+        return get(index, -1, -1);
+    }
+
+    /**
+     * Get the entry at {index}, the request is routed according to the read mode.
+     * A follower serves the request only if it has committed {minCommittedIndex} (or {index} if larger) and has heard
+     * from the leader within {maxStalenessMs}, otherwise the request falls back to the leader.
+     */
+    public GetEntriesResponse get(long index, long minCommittedIndex, long maxStalenessMs) {
+        GetEntriesRequest request = new GetEntriesRequest();
+        request.setBeginIndex(index);
+        request.setMinCommittedIndex(minCommittedIndex);
+        request.setMaxStalenessMs(maxStalenessMs);
+        return get(request);
+    }
+
+    /**
+     * Get the committed entries in [beginIndex, endIndex] by one request, routed as {@link #get(long)}.
+     * The server returns fewer entries if the range exceeds maxSize bytes or its own limits, but at least the first
+     * one if it has been committed, so the caller could continue from the index after the last returned entry.
+     */
+    public GetEntriesResponse getRange(long beginIndex, long endIndex, int maxSize) {
+        GetEntriesRequest request = new GetEntriesRequest();
+        request.setBeginIndex(beginIndex);
+        request.setEndIndex(endIndex);
+        request.setMaxSize(maxSize);
+        return get(request);
+    }
+
+    /**
+     * Get the entries from beginIndex as {@link #getRange}, the leader holds the request until the entry at beginIndex
+     * is committed or maxWaitMs passes. An empty response means no entry has been committed within maxWaitMs.
+     */
+    public GetEntriesResponse subscribe(long beginIndex, long maxWaitMs) {
         try {
             waitOnUpdatingMetadata(1500, false);
             if (leaderId == null) {
@@ -96,7 +208,9 @@ public class DLedgerClient {
             GetEntriesRequest request = new GetEntriesRequest();
             request.setGroup(group);
             request.setRemoteId(leaderId);
-            request.setBeginIndex(index);
+            request.setBeginIndex(beginIndex);
+            request.setEndIndex(Long.MAX_VALUE);
+            request.setMaxWaitMs(maxWaitMs);
             GetEntriesResponse response = dLedgerClientRpcService.get(request).get();
             if (response.getCode() == DLedgerResponseCode.NOT_LEADER.getCode()) {
                 waitOnUpdatingMetadata(1500, true);
@@ -115,6 +229,158 @@ public class DLedgerClient {
         }
     }
 
+    private GetEntriesResponse get(GetEntriesRequest request) {
+        try {
+            waitOnUpdatingMetadata(1500, false);
+            if (leaderId == null) {
+                GetEntriesResponse response = new GetEntriesResponse();
+                response.setCode(DLedgerResponseCode.METADATA_ERROR.getCode());
+                return response;
+            }
+
+            request.setGroup(group);
+            String readPeerId = selectReadPeer();
+            if (readPeerId != null && !readPeerId.equals(leaderId)) {
+                request.setRemoteId(readPeerId);
+                request.setFollowerRead(true);
+                request.setMaxWaitMs(followerReadWaitMs);
+                GetEntriesResponse response = getFromPeer(request);
+                if (response != null && response.getCode() == DLedgerResponseCode.SUCCESS.getCode()) {
+                    return response;
+                }
+                request.setFollowerRead(false);
+            }
+            request.setRemoteId(leaderId);
+            GetEntriesResponse response = getFromPeer(request);
+            if (response == null || response.getCode() == DLedgerResponseCode.NOT_LEADER.getCode()) {
+                waitOnUpdatingMetadata(1500, true);
+                if (leaderId != null) {
+                    request.setRemoteId(leaderId);
+                    response = dLedgerClientRpcService.get(request).get();
+                }
+            }
+            return response;
+        } catch (Exception t) {
+            needFreshMetadata();
+            logger.error("", t);
+            GetEntriesResponse getEntriesResponse = new GetEntriesResponse();
+            getEntriesResponse.setCode(DLedgerResponseCode.INTERNAL_ERROR.getCode());
+            return getEntriesResponse;
+        }
+    }
+
+    private GetEntriesResponse getFromPeer(GetEntriesRequest request) {
+        long startNs = System.nanoTime();
+        try {
+            GetEntriesResponse response = dLedgerClientRpcService.get(request).get();
+            updateReadCost(request.getRemoteId(), TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNs));
+            return response;
+        } catch (Exception e) {
+            logger.warn("Get entries from {} failed", request.getRemoteId(), e);
+            updateReadCost(request.getRemoteId(), TimeUnit.SECONDS.toMicros(3));
+            return null;
+        }
+    }
+
+    private void updateReadCost(String peerId, long costUs) {
+        peerReadCostUs.compute(peerId, (k, old) -> old == null ? costUs : (old * 7 + costUs) / 8);
+    }
+
+    private String selectReadPeer() {
+        switch (readMode) {
+            case NEAREST:
+                //the peers never read from are tried first
+                String nearestPeerId = leaderId;
+                long minCost = Long.MAX_VALUE;
+                for (String peerId : peerMap.keySet()) {
+                    if (witnesses.contains(peerId)) {
+                        continue;
+                    }
+                    long cost = peerReadCostUs.getOrDefault(peerId, 0L);
+                    if (cost < minCost) {
+                        minCost = cost;
+                        nearestPeerId = peerId;
+                    }
+                }
+                return nearestPeerId;
+            case ANY_FOLLOWER:
+                List<String> followerIds = new ArrayList<>(peerMap.size());
+                for (String peerId : peerMap.keySet()) {
+                    if (!peerId.equals(leaderId) && !witnesses.contains(peerId)) {
+                        followerIds.add(peerId);
+                    }
+                }
+                if (followerIds.isEmpty()) {
+                    return leaderId;
+                }
+                return followerIds.get(Math.floorMod(readRound.getAndIncrement(), followerIds.size()));
+            default:
+                return leaderId;
+        }
+    }
+
+    public ReadMode getReadMode() {
+        return readMode;
+    }
+
+    public void setReadMode(ReadMode readMode) {
+        this.readMode = readMode;
+    }
+
+    public String getZone() {
+        return zone;
+    }
+
+    /**
+     * The zone of this client, sent with the appends so that the leader could move to the zone of most clients.
+     */
+    public void setZone(String zone) {
+        this.zone = zone;
+    }
+
+    public long getFollowerReadWaitMs() {
+        return followerReadWaitMs;
+    }
+
+    public void setFollowerReadWaitMs(long followerReadWaitMs) {
+        this.followerReadWaitMs = followerReadWaitMs;
+    }
+
+    public long getAppendLingerMs() {
+        return appendLingerMs;
+    }
+
+    public void setAppendLingerMs(long appendLingerMs) {
+        this.appendLingerMs = appendLingerMs;
+    }
+
+    public int getMaxAppendBatchNum() {
+        return maxAppendBatchNum;
+    }
+
+    public void setMaxAppendBatchNum(int maxAppendBatchNum) {
+        this.maxAppendBatchNum = maxAppendBatchNum;
+    }
+
+    public int getMaxAppendBatchSize() {
+        return maxAppendBatchSize;
+    }
+
+    public void setMaxAppendBatchSize(int maxAppendBatchSize) {
+        this.maxAppendBatchSize = maxAppendBatchSize;
+    }
+
+    public int getMaxInflightAppends() {
+        return maxInflightAppends;
+    }
+
+    /**
+     * Should be set before startup.
+     */
+    public void setMaxInflightAppends(int maxInflightAppends) {
+        this.maxInflightAppends = maxInflightAppends;
+    }
+
     public LeadershipTransferResponse leadershipTransfer(String curLeaderId, String transfereeId, long term) {
 
         try {
@@ -132,12 +398,46 @@ public class DLedgerClient {
         }
     }
 
+    public ChangePeersResponse changePeers(String leaderId, ChangePeersRequest.Type type, String peerId, String peerAddr) {
+        try {
+            ChangePeersRequest request = new ChangePeersRequest();
+            request.setGroup(group);
+            request.setRemoteId(leaderId);
+            request.setType(type);
+            request.setPeerId(peerId);
+            request.setPeerAddr(peerAddr);
+            return dLedgerClientRpcService.changePeers(request).get();
+        } catch (Exception t) {
+            needFreshMetadata();
+            logger.error("changePeers {} {} error", type, peerId, t);
+            return new ChangePeersResponse().code(DLedgerResponseCode.INTERNAL_ERROR.getCode());
+        }
+    }
+
     public void startup() {
+        this.inflightAppends = new Semaphore(maxInflightAppends);
         this.dLedgerClientRpcService.startup();
         this.metadataUpdater.start();
+        this.started = true;
+        //the bodies appended before the startup are queued
+        if (!appendQueue.isEmpty()) {
+            startAppendBatcher();
+        }
+    }
+
+    private void startAppendBatcher() {
+        if (!appendBatcherStarted.get() && appendBatcherStarted.compareAndSet(false, true)) {
+            this.appendBatcher.start();
+        }
     }
 
     public void shutdown() {
+        this.started = false;
+        //claim the batcher if not started yet, so that a racing async append never starts it after the shutdown
+        if (!appendBatcherStarted.compareAndSet(false, true)) {
+            this.appendBatcher.shutdown();
+        }
+        this.appendBatcher.failPendingAppends();
         this.dLedgerClientRpcService.shutdown();
         this.metadataUpdater.shutdown();
     }
@@ -190,6 +490,14 @@ public class DLedgerClient {
                         peerMap.putAll(response.getPeers());
                         dLedgerClientRpcService.updatePeers(response.getPeers());
                     }
+                    //the learners serve the follower reads too
+                    if (response.getLearners() != null) {
+                        peerMap.putAll(response.getLearners());
+                        dLedgerClientRpcService.updatePeers(response.getLearners());
+                    }
+                    if (response.getWitnesses() != null) {
+                        witnesses.addAll(response.getWitnesses());
+                    }
                 }
             } catch (Throwable t) {
                 if (isLeader) {
@@ -225,4 +533,176 @@ public class DLedgerClient {
         }
     }
 
+    private static class PendingAppend {
+        private final byte[] body;
+        private final CompletableFuture<AppendEntryResponse> future = new CompletableFuture<>();
+
+        PendingAppend(byte[] body) {
+            this.body = body;
+        }
+    }
+
+    private static class AppendBatch {
+        private final List<PendingAppend> appends;
+        private int retryTimes = 0;
+        private String failedLeaderId;
+
+        AppendBatch(List<PendingAppend> appends) {
+            this.appends = appends;
+        }
+    }
+
+    /**
+     * Collect the async appends into batches and send them to the leader. The batches rejected by an old leader are
+     * sent again to the new one, keeping their in-flight permits.
+     */
+    private class AppendBatcher extends ShutdownAbleThread {
+
+        private final Queue<AppendBatch> retryBatches = new ConcurrentLinkedQueue<>();
+        private PendingAppend overflowAppend;
+
+        public AppendBatcher(String name, Logger logger) {
+            super(name, logger);
+        }
+
+        private AppendBatch pollBatch() throws InterruptedException {
+            PendingAppend first = overflowAppend != null ? overflowAppend : appendQueue.poll(100, TimeUnit.MILLISECONDS);
+            overflowAppend = null;
+            if (first == null) {
+                return null;
+            }
+            List<PendingAppend> appends = new ArrayList<>();
+            appends.add(first);
+            int batchSize = first.body.length;
+            long lingerEndNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(appendLingerMs);
+            while (appends.size() < maxAppendBatchNum && batchSize < maxAppendBatchSize) {
+                long waitNs = lingerEndNs - System.nanoTime();
+                PendingAppend next = waitNs > 0 ? appendQueue.poll(waitNs, TimeUnit.NANOSECONDS) : appendQueue.poll();
+                if (next == null) {
+                    break;
+                }
+                if (batchSize + next.body.length > maxAppendBatchSize) {
+                    overflowAppend = next;
+                    break;
+                }
+                appends.add(next);
+                batchSize += next.body.length;
+            }
+            return new AppendBatch(appends);
+        }
+
+        private void send(AppendBatch batch) {
+            waitOnUpdatingMetadata(1500, false);
+            String remoteId = leaderId;
+            if (remoteId == null) {
+                inflightAppends.release();
+                complete(batch, (AppendEntryResponse) new AppendEntryResponse().code(DLedgerResponseCode.METADATA_ERROR.getCode()));
+                return;
+            }
+            AppendEntryRequest request;
+            if (batch.appends.size() == 1) {
+                request = new AppendEntryRequest();
+                request.setBody(batch.appends.get(0).body);
+            } else {
+                List<byte[]> bodies = new ArrayList<>(batch.appends.size());
+                for (PendingAppend pendingAppend : batch.appends) {
+                    bodies.add(pendingAppend.body);
+                }
+                BatchAppendEntryRequest batchRequest = new BatchAppendEntryRequest();
+                batchRequest.setBatchMsgs(bodies);
+                request = batchRequest;
+            }
+            request.setGroup(group);
+            request.setRemoteId(remoteId);
+            request.setClientZone(zone);
+            try {
+                dLedgerClientRpcService.append(request).whenComplete((response, t) -> {
+                    if (t != null) {
+                        logger.error("Append to {} failed", remoteId, t);
+                        response = (AppendEntryResponse) new AppendEntryResponse().code(DLedgerResponseCode.INTERNAL_ERROR.getCode());
+                    }
+                    if (response.getCode() == DLedgerResponseCode.NOT_LEADER.getCode() && batch.retryTimes < MAX_APPEND_RETRY_TIMES) {
+                        batch.retryTimes++;
+                        batch.failedLeaderId = remoteId;
+                        retryBatches.add(batch);
+                        return;
+                    }
+                    if (response.getCode() == DLedgerResponseCode.NETWORK_ERROR.getCode()) {
+                        needFreshMetadata();
+                    }
+                    inflightAppends.release();
+                    complete(batch, response);
+                });
+            } catch (Exception e) {
+                logger.error("Append to {} failed", remoteId, e);
+                needFreshMetadata();
+                inflightAppends.release();
+                complete(batch, (AppendEntryResponse) new AppendEntryResponse().code(DLedgerResponseCode.INTERNAL_ERROR.getCode()));
+            }
+        }
+
+        /**
+         * The entries of a batch are appended contiguously, so their indexes are derived from the last one.
+         */
+        private void complete(AppendBatch batch, AppendEntryResponse response) {
+            int batchNum = batch.appends.size();
+            if (batchNum == 1) {
+                batch.appends.get(0).future.complete(response);
+                return;
+            }
+            long[] positions = null;
+            if (response instanceof BatchAppendEntryResponse && ((BatchAppendEntryResponse) response).getCount() == batchNum) {
+                positions = ((BatchAppendEntryResponse) response).getPositions();
+            }
+            for (int i = 0; i < batchNum; i++) {
+                AppendEntryResponse entryResponse = new AppendEntryResponse();
+                entryResponse.copyBaseInfo(response);
+                if (response.getCode() == DLedgerResponseCode.SUCCESS.getCode()) {
+                    entryResponse.setIndex(response.getIndex() - (batchNum - 1 - i));
+                    if (positions != null) {
+                        entryResponse.setPos(positions[i]);
+                    } else {
+                        entryResponse.setPos(i == batchNum - 1 ? response.getPos() : -1);
+                    }
+                }
+                batch.appends.get(i).future.complete(entryResponse);
+            }
+        }
+
+        private void failPendingAppends() {
+            AppendEntryResponse response = new AppendEntryResponse();
+            response.setCode(DLedgerResponseCode.INTERNAL_ERROR.getCode());
+            AppendBatch batch;
+            while ((batch = retryBatches.poll()) != null) {
+                complete(batch, response);
+            }
+            if (overflowAppend != null) {
+                overflowAppend.future.complete(response);
+            }
+            PendingAppend pendingAppend;
+            while ((pendingAppend = appendQueue.poll()) != null) {
+                pendingAppend.future.complete(response);
+            }
+        }
+
+        @Override
+        public void doWork() {
+            try {
+                AppendBatch batch = retryBatches.poll();
+                if (batch != null) {
+                    waitOnUpdatingMetadata(1500, batch.failedLeaderId.equals(leaderId));
+                    send(batch);
+                    return;
+                }
+                batch = pollBatch();
+                if (batch != null) {
+                    inflightAppends.acquire();
+                    send(batch);
+                }
+            } catch (Throwable t) {
+                logger.error("Error", t);
+                DLedgerUtils.sleep(10);
+            }
+        }
+    }
 }
@@ -19,14 +19,22 @@ package io.openmessaging.storage.dledger.client;
 import com.alibaba.fastjson.JSON;
 import io.openmessaging.storage.dledger.protocol.AppendEntryRequest;
 import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.BatchAppendEntryRequest;
+import io.openmessaging.storage.dledger.protocol.BatchAppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.ChangePeersRequest;
+import io.openmessaging.storage.dledger.protocol.ChangePeersResponse;
+import io.openmessaging.storage.dledger.protocol.BatchAppendEntryResponseCoder;
 import io.openmessaging.storage.dledger.protocol.DLedgerRequestCode;
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
 import io.openmessaging.storage.dledger.protocol.GetEntriesRequest;
 import io.openmessaging.storage.dledger.protocol.GetEntriesResponse;
+import io.openmessaging.storage.dledger.protocol.GetEntriesResponseCoder;
 import io.openmessaging.storage.dledger.protocol.MetadataRequest;
 import io.openmessaging.storage.dledger.protocol.MetadataResponse;
 import io.openmessaging.storage.dledger.protocol.LeadershipTransferResponse;
 import io.openmessaging.storage.dledger.protocol.LeadershipTransferRequest;
 import java.util.concurrent.CompletableFuture;
+import org.apache.rocketmq.remoting.exception.RemotingTimeoutException;
 import org.apache.rocketmq.remoting.netty.NettyClientConfig;
 import org.apache.rocketmq.remoting.netty.NettyRemotingClient;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
@@ -41,37 +49,88 @@ public class DLedgerClientRpcNettyService extends DLedgerClientRpcService {
 
     @Override
     public CompletableFuture<AppendEntryResponse> append(AppendEntryRequest request) throws Exception {
-        RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(DLedgerRequestCode.APPEND.getCode(), null);
+        CompletableFuture<AppendEntryResponse> future = new CompletableFuture<>();
+        DLedgerRequestCode requestCode = request instanceof BatchAppendEntryRequest ? DLedgerRequestCode.BATCH_APPEND : DLedgerRequestCode.APPEND;
+        RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(requestCode.getCode(), null);
         wrapperRequest.setBody(JSON.toJSONBytes(request));
-        RemotingCommand wrapperResponse = this.remotingClient.invokeSync(getPeerAddr(request.getRemoteId()), wrapperRequest, 3000);
-        AppendEntryResponse response = JSON.parseObject(wrapperResponse.getBody(), AppendEntryResponse.class);
-        return CompletableFuture.completedFuture(response);
+        if (requestCode == DLedgerRequestCode.BATCH_APPEND) {
+            wrapperRequest.addExtField(BatchAppendEntryResponseCoder.EXT_FIELD_FORMAT, BatchAppendEntryResponseCoder.FORMAT_BINARY);
+        }
+        this.remotingClient.invokeAsync(getPeerAddr(request.getRemoteId()), wrapperRequest, 3000, responseFuture -> {
+            RemotingCommand responseCommand = responseFuture.getResponseCommand();
+            if (responseCommand != null) {
+                try {
+                    if (requestCode == DLedgerRequestCode.BATCH_APPEND) {
+                        future.complete(BatchAppendEntryResponseCoder.decode(responseCommand.getExtFields(), responseCommand.getBody()));
+                    } else {
+                        future.complete(JSON.parseObject(responseCommand.getBody(), AppendEntryResponse.class));
+                    }
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            } else {
+                AppendEntryResponse response = requestCode == DLedgerRequestCode.BATCH_APPEND ? new BatchAppendEntryResponse() : new AppendEntryResponse();
+                response.copyBaseInfo(request);
+                response.setCode(DLedgerResponseCode.NETWORK_ERROR.getCode());
+                future.complete(response);
+            }
+        });
+        return future;
     }
 
     @Override public CompletableFuture<MetadataResponse> metadata(MetadataRequest request) throws Exception {
         RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(DLedgerRequestCode.METADATA.getCode(), null);
         wrapperRequest.setBody(JSON.toJSONBytes(request));
-        RemotingCommand wrapperResponse = this.remotingClient.invokeSync(getPeerAddr(request.getRemoteId()), wrapperRequest, 3000);
-        MetadataResponse response = JSON.parseObject(wrapperResponse.getBody(), MetadataResponse.class);
-        return CompletableFuture.completedFuture(response);
+        return invoke(getPeerAddr(request.getRemoteId()), wrapperRequest, 3000)
+            .thenApply(wrapperResponse -> JSON.parseObject(wrapperResponse.getBody(), MetadataResponse.class));
     }
 
     @Override
     public CompletableFuture<LeadershipTransferResponse> leadershipTransfer(LeadershipTransferRequest request) throws Exception {
         RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(DLedgerRequestCode.LEADERSHIP_TRANSFER.getCode(), null);
         wrapperRequest.setBody(JSON.toJSONBytes(request));
-        RemotingCommand wrapperResponse = this.remotingClient.invokeSync(getPeerAddr(request.getRemoteId()), wrapperRequest, 10000);
-        LeadershipTransferResponse response = JSON.parseObject(wrapperResponse.getBody(), LeadershipTransferResponse.class);
-        return CompletableFuture.completedFuture(response);
+        return invoke(getPeerAddr(request.getRemoteId()), wrapperRequest, 10000)
+            .thenApply(wrapperResponse -> JSON.parseObject(wrapperResponse.getBody(), LeadershipTransferResponse.class));
+    }
+
+    @Override
+    public CompletableFuture<ChangePeersResponse> changePeers(ChangePeersRequest request) throws Exception {
+        RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(DLedgerRequestCode.CHANGE_PEERS.getCode(), null);
+        wrapperRequest.setBody(JSON.toJSONBytes(request));
+        //the response is sent once the config entry is committed
+        return invoke(getPeerAddr(request.getRemoteId()), wrapperRequest, 10000)
+            .thenApply(wrapperResponse -> JSON.parseObject(wrapperResponse.getBody(), ChangePeersResponse.class));
     }
 
     @Override
     public CompletableFuture<GetEntriesResponse> get(GetEntriesRequest request) throws Exception {
         RemotingCommand wrapperRequest = RemotingCommand.createRequestCommand(DLedgerRequestCode.GET.getCode(), null);
         wrapperRequest.setBody(JSON.toJSONBytes(request));
-        RemotingCommand wrapperResponse = this.remotingClient.invokeSync(getPeerAddr(request.getRemoteId()), wrapperRequest, 3000);
-        GetEntriesResponse response = JSON.parseObject(wrapperResponse.getBody(), GetEntriesResponse.class);
-        return CompletableFuture.completedFuture(response);
+        //the request may be held by the server for maxWaitMs
+        return invoke(getPeerAddr(request.getRemoteId()), wrapperRequest, 3000 + request.getMaxWaitMs()).thenApply(wrapperResponse -> {
+            if (request.getEndIndex() >= 0) {
+                return GetEntriesResponseCoder.decode(wrapperResponse.getBody());
+            }
+            return JSON.parseObject(wrapperResponse.getBody(), GetEntriesResponse.class);
+        });
+    }
+
+    /**
+     * Invoke without holding the calling thread, the future fails as the invokeSync would throw.
+     */
+    private CompletableFuture<RemotingCommand> invoke(String addr, RemotingCommand wrapperRequest, long timeoutMs) throws Exception {
+        CompletableFuture<RemotingCommand> future = new CompletableFuture<>();
+        this.remotingClient.invokeAsync(addr, wrapperRequest, timeoutMs, responseFuture -> {
+            RemotingCommand responseCommand = responseFuture.getResponseCommand();
+            if (responseCommand != null) {
+                future.complete(responseCommand);
+            } else if (responseFuture.getCause() != null) {
+                future.completeExceptionally(responseFuture.getCause());
+            } else {
+                future.completeExceptionally(new RemotingTimeoutException(addr, timeoutMs));
+            }
+        });
+        return future;
     }
 
     @Override
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.cmdline;
+
+import com.beust.jcommander.Parameter;
+import io.openmessaging.storage.dledger.DLedgerConfig;
+import io.openmessaging.storage.dledger.DLedgerServer;
+import io.openmessaging.storage.dledger.client.DLedgerClient;
+import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import io.openmessaging.storage.dledger.utils.IOUtils;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append with several concurrent producers and report the throughput and the commit latency.
+ * With --local-nodes, a group of the given size is started in this process, otherwise the cluster of --peers is used.
+ */
+public class BenchCommand extends BaseCommand {
+
+    private static Logger logger = LoggerFactory.getLogger(BenchCommand.class);
+
+    @Parameter(names = {"--group", "-g"}, description = "Group of this server")
+    private String group = "default";
+
+    @Parameter(names = {"--peers", "-p"}, description = "Peer info of this server")
+    private String peers = "n0-localhost:20911";
+
+    @Parameter(names = {"--producers", "-c"}, description = "The number of concurrent producers")
+    private int producers = 16;
+
+    @Parameter(names = {"--size", "-s"}, description = "The body size of each entry")
+    private int entrySize = 1024;
+
+    @Parameter(names = {"--duration", "-d"}, description = "The measured seconds")
+    private int durationSeconds = 30;
+
+    @Parameter(names = {"--warmup", "-w"}, description = "The seconds to run before measuring")
+    private int warmupSeconds = 5;
+
+    @Parameter(names = {"--histogram-file"}, description = "Write the percentile distribution of the commit latency (ms) to this file")
+    private String histogramFile;
+
+    @Parameter(names = {"--local-nodes", "-n"}, description = "Start a group of this size in process instead of using --peers")
+    private int localNodes = 0;
+
+    @Parameter(names = {"--local-base-port"}, description = "The first port of the local nodes")
+    private int localBasePort = 30911;
+
+    @Parameter(names = {"--local-store-type"}, description = "The store type of the local nodes, FILE or MEMORY")
+    private String localStoreType = DLedgerConfig.FILE;
+
+    @Parameter(names = {"--local-store-base-dir"}, description = "The store dir of the local nodes, a temporary dir by default")
+    private String localStoreBaseDir;
+
+    @Parameter(names = {"--local-batch-push"}, description = "Enable the batch push of the local nodes", arity = 1)
+    private boolean localBatchPush = true;
+
+    @Parameter(names = {"--local-flush-interval"}, description = "The flush interval (ms) of the local nodes")
+    private long localFlushInterval = 10;
+
+    @Parameter(names = {"--local-trace-sample-rate"}, description = "Trace one of every N appends on the local nodes and dump the breakdown, 0 to disable")
+    private int localTraceSampleRate = 0;
+
+    @Override
+    public void doCommand() {
+        List<DLedgerServer> servers = new ArrayList<>();
+        String storeBaseDir = null;
+        if (localNodes > 0) {
+            storeBaseDir = localStoreBaseDir != null ? localStoreBaseDir
+                : System.getProperty("java.io.tmpdir") + File.separator + "dledger-bench-" + UUID.randomUUID();
+            peers = localPeers();
+            for (int i = 0; i < localNodes; i++) {
+                servers.add(launchLocalServer("n" + i, storeBaseDir));
+            }
+            if (!waitForLeader(servers, 10000)) {
+                logger.error("No leader is elected in the local group of {} nodes", localNodes);
+                shutdown(servers, storeBaseDir);
+                return;
+            }
+        }
+        DLedgerClient dLedgerClient = new DLedgerClient(group, peers);
+        dLedgerClient.startup();
+        try {
+            run(dLedgerClient);
+            for (DLedgerServer server : servers) {
+                if (localTraceSampleRate > 0 && server.getMemberState().isLeader()) {
+                    StringBuilder builder = new StringBuilder();
+                    server.getAppendTracer().dump(builder);
+                    logger.info("Append trace of {}:\n{}", server.getMemberState().getSelfId(), builder);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Bench failed", e);
+        } finally {
+            dLedgerClient.shutdown();
+            shutdown(servers, storeBaseDir);
+        }
+    }
+
+    private void run(DLedgerClient dLedgerClient) throws Exception {
+        byte[] body = new byte[entrySize];
+        long now = System.currentTimeMillis();
+        long measureBeginMs = now + TimeUnit.SECONDS.toMillis(warmupSeconds);
+        long measureEndMs = measureBeginMs + TimeUnit.SECONDS.toMillis(durationSeconds);
+        AtomicLong failedNum = new AtomicLong();
+        List<Histogram> histograms = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            //the latency is recorded in microseconds, up to one minute
+            Histogram histogram = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+            histograms.add(histogram);
+            Thread thread = new Thread(() -> {
+                while (true) {
+                    long beginMs = System.currentTimeMillis();
+                    if (beginMs >= measureEndMs) {
+                        break;
+                    }
+                    long beginNs = System.nanoTime();
+                    AppendEntryResponse response = dLedgerClient.append(body);
+                    long costUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - beginNs);
+                    if (beginMs < measureBeginMs) {
+                        continue;
+                    }
+                    if (response.getCode() == DLedgerResponseCode.SUCCESS.getCode()) {
+                        histogram.recordValue(Math.min(costUs, histogram.getHighestTrackableValue()));
+                    } else {
+                        failedNum.incrementAndGet();
+                    }
+                }
+            }, "BenchProducer-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Histogram total = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+        for (Histogram histogram : histograms) {
+            total.add(histogram);
+        }
+        double seconds = (measureEndMs - measureBeginMs) / 1000.0;
+        long successNum = total.getTotalCount();
+        logger.info("Appended {} entries of {} bytes with {} producers in {} s, failed {}", successNum, entrySize, producers,
+            String.format("%.1f", seconds), failedNum.get());
+        logger.info("TPS {}, {} MB/s", String.format("%.1f", successNum / seconds),
+            String.format("%.2f", successNum * (double) entrySize / seconds / 1024 / 1024));
+        logger.info("Commit latency(ms) p50={} p99={} p999={} max={}", String.format("%.3f", total.getValueAtPercentile(50) / 1000.0),
+            String.format("%.3f", total.getValueAtPercentile(99) / 1000.0), String.format("%.3f", total.getValueAtPercentile(99.9) / 1000.0),
+            String.format("%.3f", total.getMaxValue() / 1000.0));
+        if (histogramFile != null) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(histogramFile))) {
+                total.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private String localPeers() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < localNodes; i++) {
+            if (i > 0) {
+                builder.append(";");
+            }
+            builder.append("n").append(i).append("-localhost:").append(localBasePort + i);
+        }
+        return builder.toString();
+    }
+
+    private DLedgerServer launchLocalServer(String selfId, String storeBaseDir) {
+        DLedgerConfig config = new DLedgerConfig();
+        config.group(group).selfId(selfId).peers(peers);
+        config.setStoreBaseDir(storeBaseDir + File.separator + selfId);
+        config.setStoreType(localStoreType);
+        config.setEnableBatchPush(localBatchPush);
+        config.setFlushFileInterval(localFlushInterval);
+        config.setTraceSampleRate(localTraceSampleRate);
+        DLedgerServer dLedgerServer = new DLedgerServer(config);
+        dLedgerServer.startup();
+        return dLedgerServer;
+    }
+
+    private boolean waitForLeader(List<DLedgerServer> servers, long maxWaitMs) {
+        long start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < maxWaitMs) {
+            for (DLedgerServer server : servers) {
+                if (server.getMemberState().isLeader()) {
+                    return true;
+                }
+            }
+            DLedgerUtils.sleep(10);
+        }
+        return false;
+    }
+
+    private void shutdown(List<DLedgerServer> servers, String storeBaseDir) {
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+        if (storeBaseDir != null && localStoreBaseDir == null) {
+            IOUtils.deleteFile(new File(storeBaseDir));
+        }
+    }
+}
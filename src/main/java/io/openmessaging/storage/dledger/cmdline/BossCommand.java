@@ -30,6 +30,9 @@ public class BossCommand {
         commands.put("get", new GetCommand());
         commands.put("readFile", new ReadFileCommand());
         commands.put("leadershipTransfer", new LeadershipTransferCommand());
+        commands.put("changePeers", new ChangePeersCommand());
+        commands.put("bench", new BenchCommand());
+        commands.put("trace", new TraceCommand());
 
         JCommander.Builder builder = JCommander.newBuilder();
         builder.addCommand("server", new DLedgerConfig());
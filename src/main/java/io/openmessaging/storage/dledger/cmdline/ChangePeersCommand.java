@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.cmdline;
+
+import com.alibaba.fastjson.JSON;
+import com.beust.jcommander.Parameter;
+import io.openmessaging.storage.dledger.client.DLedgerClient;
+import io.openmessaging.storage.dledger.protocol.ChangePeersRequest;
+import io.openmessaging.storage.dledger.protocol.ChangePeersResponse;
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ChangePeersCommand extends BaseCommand {
+
+    private static Logger logger = LoggerFactory.getLogger(ChangePeersCommand.class);
+
+    @Parameter(names = {"--group", "-g"}, description = "Group of this server")
+    private String group = "default";
+
+    @Parameter(names = {"--peers", "-p"}, description = "Peer info of this server")
+    private String peers = "n0-localhost:20911";
+
+    @Parameter(names = {"--leader", "-l"}, description = "The current leader")
+    private String leaderId = "n0";
+
+    @Parameter(names = {"--type", "-t"}, description = "ADD, REMOVE, ADD_LEARNER or PROMOTE")
+    private ChangePeersRequest.Type type = ChangePeersRequest.Type.ADD;
+
+    @Parameter(names = {"--peerId", "-i"}, description = "The peer to add or remove")
+    private String peerId;
+
+    @Parameter(names = {"--peerAddr", "-a"}, description = "The address of the peer or learner to add")
+    private String peerAddr;
+
+    @Override
+    public void doCommand() {
+        DLedgerClient dLedgerClient = new DLedgerClient(group, peers);
+        dLedgerClient.startup();
+        ChangePeersResponse response = dLedgerClient.changePeers(leaderId, type, peerId, peerAddr);
+        logger.info("ChangePeers code={}, Result:{}", DLedgerResponseCode.valueOf(response.getCode()),
+            JSON.toJSONString(response));
+        dLedgerClient.shutdown();
+    }
+}
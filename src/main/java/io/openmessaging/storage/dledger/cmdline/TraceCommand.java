@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.cmdline;
+
+import com.beust.jcommander.Parameter;
+import io.openmessaging.storage.dledger.metrics.DLedgerMetricsExporter;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dump the stage breakdown of the sampled appends of a server started with --trace-sample-rate and --metrics-port.
+ */
+public class TraceCommand extends BaseCommand {
+
+    private static Logger logger = LoggerFactory.getLogger(TraceCommand.class);
+
+    @Parameter(names = {"--address", "-a"}, description = "The host:metricsPort of the server, usually the leader")
+    private String address = "localhost:9091";
+
+    @Parameter(names = {"--timeout"}, description = "The timeout (ms) of connecting and reading")
+    private int timeoutMs = 3000;
+
+    @Override
+    public void doCommand() {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL("http://" + address + DLedgerMetricsExporter.TRACE_PATH).openConnection();
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            try (InputStream in = connection.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
+                }
+                logger.info("Append trace of {}:\n{}", address, new String(out.toByteArray(), StandardCharsets.UTF_8));
+            }
+        } catch (Exception e) {
+            logger.error("Dump the append trace from {} failed", address, e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
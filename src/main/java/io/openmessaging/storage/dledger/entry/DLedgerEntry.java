@@ -22,6 +22,10 @@ public class DLedgerEntry {
     public final static int HEADER_SIZE = POS_OFFSET + 8 + 4 + 4 + 4;
     public final static int BODY_OFFSET = HEADER_SIZE + 4;
 
+    public final static int CHANNEL_DATA = 0;
+    //the body is the peers of the group since this entry, see MemberState#applyPeers
+    public final static int CHANNEL_CONFIG = 1;
+
     private int magic;
     private int size;
     private long index;
@@ -22,6 +22,14 @@ public class DLedgerEntryCoder {
 
     public static void encode(DLedgerEntry entry, ByteBuffer byteBuffer) {
         byteBuffer.clear();
+        put(entry, byteBuffer);
+        byteBuffer.flip();
+    }
+
+    /**
+     * Put the entry at the current position of the buffer, used to encode several entries into one buffer.
+     */
+    public static void put(DLedgerEntry entry, ByteBuffer byteBuffer) {
         int size = entry.computeSizeInBytes();
         //always put magic on the first position
         byteBuffer.putInt(entry.getMagic());
@@ -34,7 +42,6 @@ public class DLedgerEntryCoder {
         byteBuffer.putInt(entry.getBodyCrc());
         byteBuffer.putInt(entry.getBody().length);
         byteBuffer.put(entry.getBody());
-        byteBuffer.flip();
     }
 
     public static void encodeIndex(long pos, int size, int magic, long index, long term, ByteBuffer byteBuffer) {
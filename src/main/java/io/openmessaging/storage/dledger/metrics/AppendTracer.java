@@ -0,0 +1,295 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.metrics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Sampled tracing of the appends through the pipeline of the leader, the time of each stage is aggregated
+ * into the histograms of {@link #APPEND_TRACE_STAGE}, and the slowest traces are kept for the trace command.
+ *
+ * The stages are:
+ * decode: parsing the request body;
+ * lock_wait: waiting for the lock of the store, only for the file store;
+ * store_write: writing the entry to the store;
+ * replicate: from the local write to the ack of the peer, push_rtt is the round trip of the push carrying it;
+ * quorum: from the local write to the ack of the quorum;
+ * response_write: from the quorum ack to the response written to the channel;
+ * total: from receiving the request to the response written.
+ */
+public class AppendTracer {
+
+    public static final String APPEND_TRACE_STAGE = "dledger_append_trace_stage_microseconds";
+
+    private static final String HELP = "The time of each stage of the sampled appends";
+    private static final int MAX_IN_FLIGHT_TRACES = 1024;
+    private static final int MAX_SLOW_TRACES = 64;
+
+    private final DLedgerMetrics metrics;
+    private final int sampleRate;
+    private final long slowThresholdNs;
+    private final IntSupplier remotePeerNum;
+
+    private final AtomicLong appendCounter = new AtomicLong();
+    private final ThreadLocal<AppendTrace> currentTrace = new ThreadLocal<>();
+    /**
+     * The written traces waiting for the acks of the peers, keyed by the entry index.
+     */
+    private final ConcurrentSkipListMap<Long, AppendTrace> inFlightTraces = new ConcurrentSkipListMap<>();
+    private final Deque<AppendTrace> slowTraces = new ArrayDeque<>();
+
+    private final LatencyHistogram decode;
+    private final LatencyHistogram lockWait;
+    private final LatencyHistogram storeWrite;
+    private final LatencyHistogram quorum;
+    private final LatencyHistogram responseWrite;
+    private final LatencyHistogram total;
+    private final ConcurrentMap<String, LatencyHistogram> replicate = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> pushRtt = new ConcurrentHashMap<>();
+
+    public AppendTracer(DLedgerMetrics metrics, int sampleRate, long slowThresholdMs, IntSupplier remotePeerNum) {
+        this.metrics = metrics;
+        this.sampleRate = sampleRate;
+        this.slowThresholdNs = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+        this.remotePeerNum = remotePeerNum;
+        this.decode = stage("decode");
+        this.lockWait = stage("lock_wait");
+        this.storeWrite = stage("store_write");
+        this.quorum = stage("quorum");
+        this.responseWrite = stage("response_write");
+        this.total = stage("total");
+    }
+
+    private LatencyHistogram stage(String stage, String... peer) {
+        if (peer.length == 0) {
+            return metrics.histogram(APPEND_TRACE_STAGE, HELP, "stage", stage);
+        }
+        return metrics.histogram(APPEND_TRACE_STAGE, HELP, "stage", stage, "peer", peer[0]);
+    }
+
+    public boolean isEnabled() {
+        return sampleRate > 0;
+    }
+
+    /**
+     * Called after the request is decoded, and returns null if this append is not sampled.
+     * The sampled trace is bound to the current thread until {@link #detach()}.
+     */
+    public AppendTrace begin(long receiveNs) {
+        if (sampleRate <= 0 || appendCounter.getAndIncrement() % sampleRate != 0) {
+            return null;
+        }
+        AppendTrace trace = new AppendTrace(receiveNs);
+        trace.decodedNs = System.nanoTime();
+        currentTrace.set(trace);
+        return trace;
+    }
+
+    public void detach() {
+        if (sampleRate > 0) {
+            currentTrace.remove();
+        }
+    }
+
+    public void markAppendBegin() {
+        AppendTrace trace = sampleRate > 0 ? currentTrace.get() : null;
+        if (trace != null) {
+            trace.appendBeginNs = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called inside the lock of the store, only the first entry of a batch counts.
+     */
+    public void markLocked() {
+        AppendTrace trace = sampleRate > 0 ? currentTrace.get() : null;
+        if (trace != null && trace.lockedNs == 0) {
+            trace.lockedNs = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called after the entries are written to the store, the index is the last one of a batch.
+     */
+    public void markWritten(long index) {
+        AppendTrace trace = sampleRate > 0 ? currentTrace.get() : null;
+        if (trace == null) {
+            return;
+        }
+        trace.index = index;
+        trace.writtenNs = System.nanoTime();
+        if (remotePeerNum.getAsInt() > 0) {
+            if (inFlightTraces.size() >= MAX_IN_FLIGHT_TRACES) {
+                inFlightTraces.pollFirstEntry();
+            }
+            inFlightTraces.put(index, trace);
+        }
+    }
+
+    /**
+     * Called when the peer acks the entries up to ackIndex, sendNs is the time the push was sent.
+     */
+    public void onPeerAck(String peerId, long ackIndex, long sendNs) {
+        if (inFlightTraces.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (AppendTrace trace : inFlightTraces.headMap(ackIndex, true).values()) {
+            if (trace.peerAcks.putIfAbsent(peerId, new long[] {now - trace.writtenNs, now - sendNs}) != null) {
+                continue;
+            }
+            long[] ack = trace.peerAcks.get(peerId);
+            replicate.computeIfAbsent(peerId, k -> stage("replicate", k)).record(TimeUnit.NANOSECONDS.toMicros(ack[0]));
+            pushRtt.computeIfAbsent(peerId, k -> stage("push_rtt", k)).record(TimeUnit.NANOSECONDS.toMicros(ack[1]));
+            removeIfDone(trace);
+        }
+    }
+
+    public void markAcked(AppendTrace trace) {
+        trace.ackedNs = System.nanoTime();
+    }
+
+    /**
+     * Called after the response is written, the remaining stages are recorded.
+     */
+    public void finish(AppendTrace trace) {
+        trace.respondedNs = System.nanoTime();
+        record(decode, trace.receiveNs, trace.decodedNs);
+        if (trace.lockedNs != 0) {
+            record(lockWait, trace.appendBeginNs, trace.lockedNs);
+            record(storeWrite, trace.lockedNs, trace.writtenNs);
+        } else {
+            record(storeWrite, trace.appendBeginNs, trace.writtenNs);
+        }
+        record(quorum, trace.writtenNs, trace.ackedNs);
+        record(responseWrite, trace.ackedNs, trace.respondedNs);
+        record(total, trace.receiveNs, trace.respondedNs);
+        trace.finished = true;
+        removeIfDone(trace);
+        if (trace.respondedNs - trace.receiveNs >= slowThresholdNs) {
+            synchronized (slowTraces) {
+                if (slowTraces.size() >= MAX_SLOW_TRACES) {
+                    slowTraces.pollLast();
+                }
+                slowTraces.addFirst(trace);
+            }
+        }
+    }
+
+    private void removeIfDone(AppendTrace trace) {
+        if (trace.finished && trace.peerAcks.size() >= remotePeerNum.getAsInt()) {
+            inFlightTraces.remove(trace.index, trace);
+        }
+    }
+
+    private static void record(LatencyHistogram histogram, long beginNs, long endNs) {
+        if (beginNs != 0 && endNs != 0) {
+            histogram.record(TimeUnit.NANOSECONDS.toMicros(endNs - beginNs));
+        }
+    }
+
+    /**
+     * Write the histograms of the stages and the slow traces as a readable table, the time is in microseconds.
+     */
+    public void dump(StringBuilder out) {
+        out.append(String.format("Append trace of %s-%s, sample rate 1/%d%n", metrics.getGroup(), metrics.getSelfId(), sampleRate));
+        out.append(String.format("%-24s %10s %10s %10s %10s %10s%n", "stage", "count", "avg", "p50", "p99", "p999"));
+        dumpStage(out, "decode", decode);
+        dumpStage(out, "lock_wait", lockWait);
+        dumpStage(out, "store_write", storeWrite);
+        for (Map.Entry<String, LatencyHistogram> entry : replicate.entrySet()) {
+            dumpStage(out, "replicate{" + entry.getKey() + "}", entry.getValue());
+            dumpStage(out, "push_rtt{" + entry.getKey() + "}", pushRtt.get(entry.getKey()));
+        }
+        dumpStage(out, "quorum", quorum);
+        dumpStage(out, "response_write", responseWrite);
+        dumpStage(out, "total", total);
+        out.append(String.format("%nSlow appends over %dms, latest first:%n", TimeUnit.NANOSECONDS.toMillis(slowThresholdNs)));
+        synchronized (slowTraces) {
+            for (AppendTrace trace : slowTraces) {
+                out.append(trace).append(String.format("%n"));
+            }
+        }
+    }
+
+    private static void dumpStage(StringBuilder out, String stage, LatencyHistogram histogram) {
+        if (histogram == null) {
+            return;
+        }
+        long count = histogram.getCount();
+        out.append(String.format("%-24s %10d %10d %10d %10d %10d%n", stage, count, count == 0 ? 0 : histogram.getSumUs() / count,
+            histogram.getPercentileUpperBoundUs(50), histogram.getPercentileUpperBoundUs(99), histogram.getPercentileUpperBoundUs(99.9)));
+    }
+
+    public static class AppendTrace {
+        private final long receiveNs;
+        private volatile long decodedNs;
+        private volatile long appendBeginNs;
+        private volatile long lockedNs;
+        private volatile long writtenNs;
+        private volatile long ackedNs;
+        private volatile long respondedNs;
+        private volatile long index = -1;
+        private volatile boolean finished;
+        /**
+         * The replicate and push rtt time of each peer.
+         */
+        private final ConcurrentMap<String, long[]> peerAcks = new ConcurrentHashMap<>();
+
+        AppendTrace(long receiveNs) {
+            this.receiveNs = receiveNs;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        private static long us(long beginNs, long endNs) {
+            return beginNs == 0 || endNs == 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(endNs - beginNs);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("index=").append(index)
+                .append(" total=").append(us(receiveNs, respondedNs))
+                .append(" decode=").append(us(receiveNs, decodedNs));
+            if (lockedNs != 0) {
+                builder.append(" lock_wait=").append(us(appendBeginNs, lockedNs))
+                    .append(" store_write=").append(us(lockedNs, writtenNs));
+            } else {
+                builder.append(" store_write=").append(us(appendBeginNs, writtenNs));
+            }
+            for (Map.Entry<String, long[]> entry : peerAcks.entrySet()) {
+                builder.append(" replicate{").append(entry.getKey()).append("}=").append(TimeUnit.NANOSECONDS.toMicros(entry.getValue()[0]))
+                    .append(" push_rtt{").append(entry.getKey()).append("}=").append(TimeUnit.NANOSECONDS.toMicros(entry.getValue()[1]));
+            }
+            builder.append(" quorum=").append(us(writtenNs, ackedNs))
+                .append(" response_write=").append(us(ackedNs, respondedNs));
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of one DLedgerServer, labeled by its group and id.
+ * The hot paths keep the returned histograms and counters, so recording does not look up or allocate anything.
+ */
+public class DLedgerMetrics {
+
+    public static final String LEADER_APPEND_LATENCY = "dledger_leader_append_latency_microseconds";
+    public static final String QUORUM_ACK_LATENCY = "dledger_quorum_ack_latency_microseconds";
+    public static final String STATE_MACHINE_APPLY_LATENCY = "dledger_state_machine_apply_latency_microseconds";
+    public static final String FLUSH_LATENCY = "dledger_flush_latency_microseconds";
+    public static final String MMAP_ROLL_OVER_LATENCY = "dledger_mmap_roll_over_latency_microseconds";
+    public static final String ELECTION_DURATION = "dledger_election_duration_microseconds";
+    public static final String PUSH_RTT = "dledger_push_rtt_microseconds";
+    public static final String PUSH_BATCH_TARGET_BYTES = "dledger_push_batch_target_bytes";
+    public static final String PUSH_WINDOW_SIZE = "dledger_push_window_size";
+    public static final String PUSH_BATCHES = "dledger_push_batches_total";
+    public static final String PUSH_BATCH_BYTES = "dledger_push_batch_bytes_total";
+    public static final String REPLICATION_LAG_ENTRIES = "dledger_replication_lag_entries";
+    public static final String REPLICATION_LAG_BYTES = "dledger_replication_lag_bytes";
+    public static final String PENDING_APPEND_REQUESTS = "dledger_pending_append_requests";
+    public static final String PENDING_PUSH_REQUESTS = "dledger_pending_push_requests";
+    public static final String PENDING_WRITE_REQUESTS = "dledger_pending_write_requests";
+    public static final String VOTE_REQUESTS_SENT = "dledger_vote_requests_sent_total";
+    public static final String VOTE_REQUESTS_RECEIVED = "dledger_vote_requests_received_total";
+    public static final String HEARTBEATS_SENT = "dledger_heartbeats_sent_total";
+    public static final String HEARTBEATS_RECEIVED = "dledger_heartbeats_received_total";
+    public static final String HEARTBEATS_PIGGYBACKED = "dledger_heartbeats_piggybacked_total";
+    public static final String ELECTIONS = "dledger_elections_total";
+
+    private static final String TYPE_HISTOGRAM = "histogram";
+    private static final String TYPE_COUNTER = "counter";
+    private static final String TYPE_GAUGE = "gauge";
+
+    private final String group;
+    private final String selfId;
+    private final ConcurrentMap<String, MetricFamily> families = new ConcurrentSkipListMap<>();
+
+    private final LatencyHistogram leaderAppendLatency;
+    private final LatencyHistogram quorumAckLatency;
+    private final LatencyHistogram stateMachineApplyLatency;
+    private final LatencyHistogram flushLatency;
+    private final LatencyHistogram electionDuration;
+    private final LongAdder voteRequestsSent;
+    private final LongAdder voteRequestsReceived;
+    private final LongAdder heartbeatsSent;
+    private final LongAdder heartbeatsReceived;
+    private final LongAdder heartbeatsPiggybacked;
+    private final LongAdder elections;
+
+    public DLedgerMetrics(String group, String selfId) {
+        this.group = group;
+        this.selfId = selfId;
+        this.leaderAppendLatency = histogram(LEADER_APPEND_LATENCY, "The latency of appending entries to the local store as leader");
+        this.quorumAckLatency = histogram(QUORUM_ACK_LATENCY, "The latency from the local append to the quorum ack");
+        this.stateMachineApplyLatency = histogram(STATE_MACHINE_APPLY_LATENCY, "The latency of applying committed entries to the state machine");
+        this.flushLatency = histogram(FLUSH_LATENCY, "The latency of flushing the data and index files");
+        this.electionDuration = histogram(ELECTION_DURATION, "The duration from becoming candidate to becoming leader or follower");
+        this.voteRequestsSent = counter(VOTE_REQUESTS_SENT, "The vote requests sent to the other peers");
+        this.voteRequestsReceived = counter(VOTE_REQUESTS_RECEIVED, "The vote requests received from the other peers");
+        this.heartbeatsSent = counter(HEARTBEATS_SENT, "The heartbeats sent to the followers");
+        this.heartbeatsReceived = counter(HEARTBEATS_RECEIVED, "The heartbeats received from the leader");
+        this.heartbeatsPiggybacked = counter(HEARTBEATS_PIGGYBACKED, "The heartbeats not sent as the followers have acked the pushes");
+        this.elections = counter(ELECTIONS, "The elections started by increasing the term");
+    }
+
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, help, TYPE_HISTOGRAM).metrics.computeIfAbsent(labelText(labels), k -> new LatencyHistogram());
+    }
+
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, help, TYPE_COUNTER).metrics.computeIfAbsent(labelText(labels), k -> new LongAdder());
+    }
+
+    /**
+     * The supplier is called when the metrics are read, it should be cheap and never throw.
+     */
+    public void gauge(String name, String help, LongSupplier supplier, String... labels) {
+        family(name, help, TYPE_GAUGE).metrics.put(labelText(labels), supplier);
+    }
+
+    public void removeGauge(String name, String... labels) {
+        MetricFamily family = families.get(name);
+        if (family != null) {
+            family.metrics.remove(labelText(labels));
+        }
+    }
+
+    private MetricFamily family(String name, String help, String type) {
+        MetricFamily family = families.computeIfAbsent(name, k -> new MetricFamily(name, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    private String labelText(String... labels) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("group=\"").append(escape(group)).append("\",id=\"").append(escape(selfId)).append("\"");
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            builder.append(",").append(labels[i]).append("=\"").append(escape(labels[i + 1])).append("\"");
+        }
+        return builder.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Write all the metrics in the Prometheus text format, the latency is in microseconds.
+     */
+    public void writePrometheus(StringBuilder out) {
+        writePrometheus(Collections.singletonList(this), out);
+    }
+
+    /**
+     * Write the metrics of several servers in one exposition, each family is described once and followed by the
+     * samples of all the servers, as the text format rejects a family described twice.
+     */
+    public static void writePrometheus(Collection<DLedgerMetrics> metricsList, StringBuilder out) {
+        Map<String, List<MetricFamily>> familiesByName = new TreeMap<>();
+        for (DLedgerMetrics metrics : metricsList) {
+            for (MetricFamily family : metrics.families.values()) {
+                familiesByName.computeIfAbsent(family.name, k -> new ArrayList<>()).add(family);
+            }
+        }
+        for (List<MetricFamily> families : familiesByName.values()) {
+            MetricFamily first = families.get(0);
+            out.append("# HELP ").append(first.name).append(" ").append(first.help).append("\n");
+            out.append("# TYPE ").append(first.name).append(" ").append(first.type).append("\n");
+            for (MetricFamily family : families) {
+                writeSamples(family, out);
+            }
+        }
+    }
+
+    private static void writeSamples(MetricFamily family, StringBuilder out) {
+        for (Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+            String labels = entry.getKey();
+            Object metric = entry.getValue();
+            if (metric instanceof LatencyHistogram) {
+                LatencyHistogram histogram = (LatencyHistogram) metric;
+                long cumulative = 0;
+                for (int bucket = 0; bucket < LatencyHistogram.BUCKET_BOUNDS_US.length; bucket++) {
+                    cumulative += histogram.getBucketCount(bucket);
+                    out.append(family.name).append("_bucket{").append(labels).append(",le=\"")
+                        .append(LatencyHistogram.BUCKET_BOUNDS_US[bucket]).append("\"} ").append(cumulative).append("\n");
+                }
+                cumulative += histogram.getBucketCount(LatencyHistogram.BUCKET_BOUNDS_US.length);
+                out.append(family.name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(cumulative).append("\n");
+                out.append(family.name).append("_sum{").append(labels).append("} ").append(histogram.getSumUs()).append("\n");
+                out.append(family.name).append("_count{").append(labels).append("} ").append(cumulative).append("\n");
+            } else {
+                out.append(family.name).append("{").append(labels).append("} ").append(valueOf(metric)).append("\n");
+            }
+        }
+    }
+
+    /**
+     * Flatten the metrics to name{labels} keys, the histograms are reduced to count, sum and percentiles.
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (MetricFamily family : families.values()) {
+            for (Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+                String labels = "{" + entry.getKey() + "}";
+                Object metric = entry.getValue();
+                if (metric instanceof LatencyHistogram) {
+                    LatencyHistogram histogram = (LatencyHistogram) metric;
+                    snapshot.put(family.name + "_count" + labels, histogram.getCount());
+                    snapshot.put(family.name + "_sum" + labels, histogram.getSumUs());
+                    snapshot.put(family.name + "_p50" + labels, histogram.getPercentileUpperBoundUs(50));
+                    snapshot.put(family.name + "_p99" + labels, histogram.getPercentileUpperBoundUs(99));
+                    snapshot.put(family.name + "_p999" + labels, histogram.getPercentileUpperBoundUs(99.9));
+                } else {
+                    snapshot.put(family.name + labels, valueOf(metric));
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private static long valueOf(Object metric) {
+        if (metric instanceof LongAdder) {
+            return ((LongAdder) metric).sum();
+        }
+        return ((LongSupplier) metric).getAsLong();
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public String getSelfId() {
+        return selfId;
+    }
+
+    public LatencyHistogram getLeaderAppendLatency() {
+        return leaderAppendLatency;
+    }
+
+    public LatencyHistogram getQuorumAckLatency() {
+        return quorumAckLatency;
+    }
+
+    public LatencyHistogram getStateMachineApplyLatency() {
+        return stateMachineApplyLatency;
+    }
+
+    public LatencyHistogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    public LatencyHistogram getElectionDuration() {
+        return electionDuration;
+    }
+
+    public LongAdder getVoteRequestsSent() {
+        return voteRequestsSent;
+    }
+
+    public LongAdder getVoteRequestsReceived() {
+        return voteRequestsReceived;
+    }
+
+    public LongAdder getHeartbeatsSent() {
+        return heartbeatsSent;
+    }
+
+    public LongAdder getHeartbeatsReceived() {
+        return heartbeatsReceived;
+    }
+
+    public LongAdder getHeartbeatsPiggybacked() {
+        return heartbeatsPiggybacked;
+    }
+
+    public LongAdder getElections() {
+        return elections;
+    }
+
+    private static class MetricFamily {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final ConcurrentMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+        MetricFamily(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
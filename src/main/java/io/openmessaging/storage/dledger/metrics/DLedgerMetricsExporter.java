@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Export the metrics as an MBean, and in the Prometheus text format at http://host:metricsPort/metrics if the port is set.
+ * The breakdown of the sampled appends is served at http://host:metricsPort/trace.
+ * A proxy owns one exporter without MBean for the process, which serves the metrics of all the hosted groups at its port.
+ */
+public class DLedgerMetricsExporter {
+
+    private static Logger logger = LoggerFactory.getLogger(DLedgerMetricsExporter.class);
+
+    public static final String METRICS_PATH = "/metrics";
+    public static final String TRACE_PATH = "/trace";
+
+    //the metrics registered as the MBean, null for the exporter of a proxy
+    private final DLedgerMetrics metrics;
+    private final int metricsPort;
+    private final List<DLedgerMetrics> exportedMetrics = new CopyOnWriteArrayList<>();
+    private final List<AppendTracer> appendTracers = new CopyOnWriteArrayList<>();
+    private ObjectName objectName;
+    private HttpServer httpServer;
+
+    public DLedgerMetricsExporter(DLedgerMetrics metrics, AppendTracer appendTracer, int metricsPort) {
+        this.metrics = metrics;
+        this.metricsPort = metricsPort;
+        addMetrics(metrics, appendTracer);
+    }
+
+    public DLedgerMetricsExporter(int metricsPort) {
+        this.metrics = null;
+        this.metricsPort = metricsPort;
+    }
+
+    /**
+     * Serve the metrics at the http endpoint, the tracer may be null.
+     */
+    public void addMetrics(DLedgerMetrics metrics, AppendTracer appendTracer) {
+        exportedMetrics.add(metrics);
+        if (appendTracer != null) {
+            appendTracers.add(appendTracer);
+        }
+    }
+
+    public void removeMetrics(DLedgerMetrics metrics, AppendTracer appendTracer) {
+        exportedMetrics.remove(metrics);
+        appendTracers.remove(appendTracer);
+    }
+
+    public void startup() {
+        if (metrics != null) {
+            registerMBean();
+        }
+        if (metricsPort < 0) {
+            return;
+        }
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(metricsPort), 0);
+            httpServer.createContext(METRICS_PATH, exchange -> {
+                StringBuilder builder = new StringBuilder();
+                DLedgerMetrics.writePrometheus(exportedMetrics, builder);
+                writeText(exchange, builder, "text/plain; version=0.0.4; charset=utf-8");
+            });
+            httpServer.createContext(TRACE_PATH, exchange -> {
+                StringBuilder builder = new StringBuilder();
+                for (AppendTracer appendTracer : appendTracers) {
+                    appendTracer.dump(builder);
+                }
+                writeText(exchange, builder, "text/plain; charset=utf-8");
+            });
+            httpServer.start();
+            logger.info("Export the metrics at port {}", httpServer.getAddress().getPort());
+        } catch (Exception e) {
+            logger.error("Start the metrics http server at port {} failed", metricsPort, e);
+            httpServer = null;
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            objectName = new ObjectName(String.format("io.openmessaging.storage.dledger:type=DLedgerMetrics,group=%s,id=%s",
+                ObjectName.quote(metrics.getGroup()), ObjectName.quote(metrics.getSelfId())));
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(new MetricsMBean(), objectName);
+            }
+        } catch (Exception e) {
+            logger.warn("Register the metrics mbean failed", e);
+            objectName = null;
+        }
+    }
+
+    private static void writeText(HttpExchange exchange, StringBuilder builder, String contentType) throws IOException {
+        byte[] body = builder.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public void shutdown() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                logger.warn("Unregister the metrics mbean failed", e);
+            }
+        }
+    }
+
+    /**
+     * The actual port of the http endpoint, which is useful when the metricsPort is 0.
+     */
+    public int getHttpPort() {
+        return httpServer == null ? -1 : httpServer.getAddress().getPort();
+    }
+
+    private class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long value = metrics.snapshot().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            //the metrics are read only
+            throw new AttributeNotFoundException("No writable attribute " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Long> snapshot = metrics.snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Long value = snapshot.get(attribute);
+                if (value != null) {
+                    list.add(new Attribute(attribute, value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName), "No operation " + actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : metrics.snapshot().keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false));
+            }
+            return new MBeanInfo(DLedgerMetrics.class.getName(), "The metrics of DLedger", attributes.toArray(new MBeanAttributeInfo[0]),
+                null, null, null);
+        }
+    }
+}
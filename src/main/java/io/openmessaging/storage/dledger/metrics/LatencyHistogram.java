@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram with fixed buckets in microseconds, recording does not allocate.
+ */
+public class LatencyHistogram {
+
+    public static final long[] BUCKET_BOUNDS_US = {
+        50, 100, 250, 500,
+        1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+        1000000, 2500000, 5000000, 10000000, 30000000
+    };
+
+    /**
+     * The last one counts the values above all the bounds.
+     */
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_BOUNDS_US.length + 1);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sumUs = new AtomicLong();
+
+    public void record(long us) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_US.length && us > BUCKET_BOUNDS_US[bucket]) {
+            bucket++;
+        }
+        bucketCounts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sumUs.addAndGet(us);
+    }
+
+    public void recordSinceNanos(long beginNanos) {
+        record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - beginNanos));
+    }
+
+    public long getBucketCount(int bucket) {
+        return bucketCounts.get(bucket);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSumUs() {
+        return sumUs.get();
+    }
+
+    /**
+     * The upper bound of the bucket holding the given percentile, which overestimates it by at most one bucket.
+     */
+    public long getPercentileUpperBoundUs(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_BOUNDS_US.length; bucket++) {
+            seen += bucketCounts.get(bucket);
+            if (seen >= threshold) {
+                return BUCKET_BOUNDS_US[bucket];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -19,6 +19,8 @@ package io.openmessaging.storage.dledger.protocol;
 public class AppendEntryRequest extends RequestOrResponse {
 
     private byte[] body;
+    //the zone of the client, counted by the leader to follow the clients
+    private String clientZone;
 
     public byte[] getBody() {
         return body;
@@ -27,4 +29,12 @@ public class AppendEntryRequest extends RequestOrResponse {
     public void setBody(byte[] body) {
         this.body = body;
     }
+
+    public String getClientZone() {
+        return clientZone;
+    }
+
+    public void setClientZone(String clientZone) {
+        this.clientZone = clientZone;
+    }
 }
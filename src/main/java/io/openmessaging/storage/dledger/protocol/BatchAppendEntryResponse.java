@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.protocol;
+
+/**
+ * The response to a batch append, the entries of the batch are given contiguous indexes from firstIndex.
+ * The index and pos of the base response refer to the last entry.
+ */
+public class BatchAppendEntryResponse extends AppendEntryResponse {
+
+    private long firstIndex = -1;
+    private long[] positions = new long[0];
+
+    public long getFirstIndex() {
+        return firstIndex;
+    }
+
+    public void setFirstIndex(long firstIndex) {
+        this.firstIndex = firstIndex;
+    }
+
+    public long[] getPositions() {
+        return positions;
+    }
+
+    public void setPositions(long[] positions) {
+        this.positions = positions;
+    }
+
+    public int getCount() {
+        return positions.length;
+    }
+}
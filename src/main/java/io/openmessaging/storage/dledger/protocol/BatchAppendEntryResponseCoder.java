@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.protocol;
+
+import com.alibaba.fastjson.JSON;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * The binary format of the response to a batch append:
+ * headerLength(4) + header(json of the response without positions) + firstIndex(8) + count(4) + firstPos(8) +
+ * the distance of each later position to the previous one(4 * (count - 1))
+ */
+public class BatchAppendEntryResponseCoder {
+
+    /**
+     * The ext field of the request and the response telling the binary format is used, the older clients and servers
+     * neither set nor recognize it, so they keep the json.
+     */
+    public static final String EXT_FIELD_FORMAT = "batchAppendFormat";
+    public static final String FORMAT_BINARY = "binary";
+
+    public static boolean isBinary(Map<String, String> extFields) {
+        return extFields != null && FORMAT_BINARY.equals(extFields.get(EXT_FIELD_FORMAT));
+    }
+
+    public static BatchAppendEntryResponse decode(Map<String, String> extFields, byte[] body) {
+        if (isBinary(extFields)) {
+            return decode(body);
+        }
+        return JSON.parseObject(body, BatchAppendEntryResponse.class);
+    }
+
+    public static byte[] encode(BatchAppendEntryResponse response) {
+        AppendEntryResponse headerResponse = new AppendEntryResponse();
+        headerResponse.copyBaseInfo(response);
+        headerResponse.setIndex(response.getIndex());
+        headerResponse.setPos(response.getPos());
+        byte[] header = JSON.toJSONBytes(headerResponse);
+        long[] positions = response.getPositions();
+        int totalSize = 4 + header.length + 8 + 4 + (positions.length == 0 ? 0 : 8 + 4 * (positions.length - 1));
+        ByteBuffer byteBuffer = ByteBuffer.allocate(totalSize);
+        byteBuffer.putInt(header.length);
+        byteBuffer.put(header);
+        byteBuffer.putLong(response.getFirstIndex());
+        byteBuffer.putInt(positions.length);
+        for (int i = 0; i < positions.length; i++) {
+            if (i == 0) {
+                byteBuffer.putLong(positions[i]);
+            } else {
+                //the entries are never larger than a data file, so are the distances
+                byteBuffer.putInt((int) (positions[i] - positions[i - 1]));
+            }
+        }
+        return byteBuffer.array();
+    }
+
+    public static BatchAppendEntryResponse decode(byte[] body) {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(body);
+        byte[] header = new byte[byteBuffer.getInt()];
+        byteBuffer.get(header);
+        AppendEntryResponse headerResponse = JSON.parseObject(header, AppendEntryResponse.class);
+        BatchAppendEntryResponse response = new BatchAppendEntryResponse();
+        response.copyBaseInfo(headerResponse);
+        response.setIndex(headerResponse.getIndex());
+        response.setPos(headerResponse.getPos());
+        response.setFirstIndex(byteBuffer.getLong());
+        long[] positions = new long[byteBuffer.getInt()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i == 0 ? byteBuffer.getLong() : positions[i - 1] + byteBuffer.getInt();
+        }
+        response.setPositions(positions);
+        return response;
+    }
+}
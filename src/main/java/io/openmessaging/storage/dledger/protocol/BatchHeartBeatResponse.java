@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The responses in the same order as the heartbeats of the request.
+ */
+public class BatchHeartBeatResponse extends RequestOrResponse {
+
+    private List<HeartBeatResponse> heartBeats = new ArrayList<>();
+
+    public List<HeartBeatResponse> getHeartBeats() {
+        return heartBeats;
+    }
+
+    public void setHeartBeats(List<HeartBeatResponse> heartBeats) {
+        this.heartBeats = heartBeats;
+    }
+}
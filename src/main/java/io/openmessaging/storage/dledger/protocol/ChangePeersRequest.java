@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.protocol;
+
+public class ChangePeersRequest extends RequestOrResponse {
+
+    private Type type;
+    private String peerId;
+    //only for ADD and ADD_LEARNER
+    private String peerAddr;
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getPeerId() {
+        return peerId;
+    }
+
+    public void setPeerId(String peerId) {
+        this.peerId = peerId;
+    }
+
+    public String getPeerAddr() {
+        return peerAddr;
+    }
+
+    public void setPeerAddr(String peerAddr) {
+        this.peerAddr = peerAddr;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangePeersRequest{" +
+            "type=" + type +
+            ", peerId='" + peerId + '\'' +
+            ", peerAddr='" + peerAddr + '\'' +
+            ", group='" + group + '\'' +
+            ", remoteId='" + remoteId + '\'' +
+            ", localId='" + localId + '\'' +
+            ", code=" + code +
+            ", leaderId='" + leaderId + '\'' +
+            ", term=" + term +
+            '}';
+    }
+
+    public enum Type {
+        ADD,
+        REMOVE,
+        ADD_LEARNER,
+        //the learner becomes a peer
+        PROMOTE
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.protocol;
+
+public class ChangePeersResponse extends RequestOrResponse {
+
+    //the peers after the change, or the current ones if it failed
+    private String peers;
+    private String learners;
+    private long configIndex = -1;
+
+    public String getPeers() {
+        return peers;
+    }
+
+    public void setPeers(String peers) {
+        this.peers = peers;
+    }
+
+    public String getLearners() {
+        return learners;
+    }
+
+    public void setLearners(String learners) {
+        this.learners = learners;
+    }
+
+    public long getConfigIndex() {
+        return configIndex;
+    }
+
+    public void setConfigIndex(long configIndex) {
+        this.configIndex = configIndex;
+    }
+
+    public ChangePeersResponse term(long term) {
+        this.term = term;
+        return this;
+    }
+
+    @Override
+    public ChangePeersResponse code(int code) {
+        this.code = code;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangePeersResponse{" +
+            "peers='" + peers + '\'' +
+            ", learners='" + learners + '\'' +
+            ", configIndex=" + configIndex +
+            ", group='" + group + '\'' +
+            ", remoteId='" + remoteId + '\'' +
+            ", localId='" + localId + '\'' +
+            ", code=" + code +
+            ", leaderId='" + leaderId + '\'' +
+            ", term=" + term +
+            '}';
+    }
+}
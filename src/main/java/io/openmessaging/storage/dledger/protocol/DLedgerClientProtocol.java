@@ -30,4 +30,6 @@ public interface DLedgerClientProtocol {
     CompletableFuture<MetadataResponse> metadata(MetadataRequest request) throws Exception;
 
     CompletableFuture<LeadershipTransferResponse> leadershipTransfer(LeadershipTransferRequest request) throws Exception;
+
+    CompletableFuture<ChangePeersResponse> changePeers(ChangePeersRequest request) throws Exception;
 }
@@ -30,4 +30,6 @@ public interface DLedgerClientProtocolHandler {
     CompletableFuture<MetadataResponse> handleMetadata(MetadataRequest request) throws Exception;
 
     CompletableFuture<LeadershipTransferResponse> handleLeadershipTransfer(LeadershipTransferRequest leadershipTransferRequest) throws Exception;
+
+    CompletableFuture<ChangePeersResponse> handleChangePeers(ChangePeersRequest changePeersRequest) throws Exception;
 }
@@ -25,6 +25,8 @@ public interface DLedgerProtocol extends DLedgerClientProtocol {
 
     CompletableFuture<VoteResponse> vote(VoteRequest request) throws Exception;
 
+    CompletableFuture<VoteResponse> preVote(VoteRequest request) throws Exception;
+
     CompletableFuture<HeartBeatResponse> heartBeat(HeartBeatRequest request) throws Exception;
 
     CompletableFuture<PullEntriesResponse> pull(PullEntriesRequest request) throws Exception;
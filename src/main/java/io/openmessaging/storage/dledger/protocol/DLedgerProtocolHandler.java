@@ -25,6 +25,8 @@ public interface DLedgerProtocolHandler extends DLedgerClientProtocolHandler {
 
     CompletableFuture<VoteResponse> handleVote(VoteRequest request) throws Exception;
 
+    CompletableFuture<VoteResponse> handlePreVote(VoteRequest request) throws Exception;
+
     CompletableFuture<HeartBeatResponse> handleHeartBeat(HeartBeatRequest request) throws Exception;
 
     CompletableFuture<PullEntriesResponse> handlePull(PullEntriesRequest request) throws Exception;
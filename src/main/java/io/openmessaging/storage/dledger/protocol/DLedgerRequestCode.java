@@ -24,11 +24,15 @@ public enum DLedgerRequestCode {
     METADATA(50000, ""),
     APPEND(50001, ""),
     GET(50002, ""),
+    BATCH_APPEND(50003, ""),
     VOTE(51001, ""),
     HEART_BEAT(51002, ""),
     PULL(51003, ""),
     PUSH(51004, ""),
-    LEADERSHIP_TRANSFER(51005, "");
+    LEADERSHIP_TRANSFER(51005, ""),
+    BATCH_HEART_BEAT(51006, ""),
+    PRE_VOTE(51007, ""),
+    CHANGE_PEERS(51008, "");
 
     private static Map<Integer, DLedgerRequestCode> codeMap = new HashMap<>();
 
@@ -48,13 +48,17 @@ public enum DLedgerResponseCode {
     TAKE_LEADERSHIP_FAILED(418, ""),
     INDEX_LESS_THAN_LOCAL_BEGIN(419, ""),
     REQUEST_WITH_EMPTY_BODYS(420, ""),
+    FOLLOWER_READ_NOT_READY(421, ""),
     INTERNAL_ERROR(500, ""),
     TERM_CHANGED(501, ""),
     WAIT_QUORUM_ACK_TIMEOUT(502, ""),
     LEADER_PENDING_FULL(503, ""),
     ILLEGAL_MEMBER_STATE(504, ""),
     LEADER_NOT_READY(505, ""),
-    LEADER_TRANSFERRING(506, "");
+    LEADER_TRANSFERRING(506, ""),
+    LEADER_LEASE_EXPIRED(507, ""),
+    PEERS_CHANGING(508, ""),
+    WITNESS_NO_DATA(509, "");
 
     private static Map<Integer, DLedgerResponseCode> codeMap = new HashMap<>();
 
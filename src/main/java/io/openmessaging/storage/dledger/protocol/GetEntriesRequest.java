@@ -21,10 +21,41 @@ import java.util.List;
 public class GetEntriesRequest extends RequestOrResponse {
     private Long beginIndex;
 
+    /**
+     * The last index (inclusive) of a range read, -1 means only the entry at beginIndex is returned.
+     * Range reads return committed entries only, and the response body is encoded in binary.
+     */
+    private long endIndex = -1;
+
+    /**
+     * The max bytes of the entries returned by a range read, 0 means the server side limit.
+     * The first entry is always returned even if it is larger.
+     */
     private int maxSize;
 
     private List<Long> indexList;
 
+    /**
+     * Whether a follower may serve this request, only committed entries are returned by followers.
+     */
+    private boolean followerRead = false;
+
+    /**
+     * The follower must have committed at least this index before serving the request, -1 means beginIndex.
+     */
+    private long minCommittedIndex = -1;
+
+    /**
+     * The follower must have heard from the leader within this time, -1 means no limit.
+     */
+    private long maxStalenessMs = -1;
+
+    /**
+     * How long the request may wait for the committed index to catch up, 0 means rejecting immediately.
+     * On the leader only range reads wait, until beginIndex is committed, and an empty range is returned if timeout.
+     */
+    private long maxWaitMs = 0;
+
     public Long getBeginIndex() {
         return beginIndex;
     }
@@ -33,6 +64,14 @@ public class GetEntriesRequest extends RequestOrResponse {
         this.beginIndex = beginIndex;
     }
 
+    public long getEndIndex() {
+        return endIndex;
+    }
+
+    public void setEndIndex(long endIndex) {
+        this.endIndex = endIndex;
+    }
+
     public int getMaxSize() {
         return maxSize;
     }
@@ -48,4 +87,36 @@ public class GetEntriesRequest extends RequestOrResponse {
     public void setIndexList(List<Long> indexList) {
         this.indexList = indexList;
     }
+
+    public boolean isFollowerRead() {
+        return followerRead;
+    }
+
+    public void setFollowerRead(boolean followerRead) {
+        this.followerRead = followerRead;
+    }
+
+    public long getMinCommittedIndex() {
+        return minCommittedIndex;
+    }
+
+    public void setMinCommittedIndex(long minCommittedIndex) {
+        this.minCommittedIndex = minCommittedIndex;
+    }
+
+    public long getMaxStalenessMs() {
+        return maxStalenessMs;
+    }
+
+    public void setMaxStalenessMs(long maxStalenessMs) {
+        this.maxStalenessMs = maxStalenessMs;
+    }
+
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    public void setMaxWaitMs(long maxWaitMs) {
+        this.maxWaitMs = maxWaitMs;
+    }
 }
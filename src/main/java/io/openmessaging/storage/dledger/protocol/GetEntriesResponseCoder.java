@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.protocol;
+
+import com.alibaba.fastjson.JSON;
+import io.openmessaging.storage.dledger.entry.DLedgerEntry;
+import io.openmessaging.storage.dledger.entry.DLedgerEntryCoder;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary format of the response to a range read, which avoids encoding the entry bodies in json:
+ * headerLength(4) + header(json of the response without entries) + entryNum(4) + entries(encoded as in the data file)
+ */
+public class GetEntriesResponseCoder {
+
+    public static byte[] encode(GetEntriesResponse response) {
+        GetEntriesResponse headerResponse = new GetEntriesResponse();
+        headerResponse.copyBaseInfo(response);
+        byte[] header = JSON.toJSONBytes(headerResponse);
+        int totalSize = 4 + header.length + 4;
+        for (DLedgerEntry entry : response.getEntries()) {
+            totalSize += entry.computeSizeInBytes();
+        }
+        ByteBuffer byteBuffer = ByteBuffer.allocate(totalSize);
+        byteBuffer.putInt(header.length);
+        byteBuffer.put(header);
+        byteBuffer.putInt(response.getEntries().size());
+        for (DLedgerEntry entry : response.getEntries()) {
+            DLedgerEntryCoder.put(entry, byteBuffer);
+        }
+        return byteBuffer.array();
+    }
+
+    public static GetEntriesResponse decode(byte[] body) {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(body);
+        byte[] header = new byte[byteBuffer.getInt()];
+        byteBuffer.get(header);
+        GetEntriesResponse response = JSON.parseObject(header, GetEntriesResponse.class);
+        int entryNum = byteBuffer.getInt();
+        List<DLedgerEntry> entries = new ArrayList<>(entryNum);
+        for (int i = 0; i < entryNum; i++) {
+            entries.add(DLedgerEntryCoder.decode(byteBuffer));
+        }
+        response.setEntries(entries);
+        return response;
+    }
+}
@@ -18,4 +18,14 @@ package io.openmessaging.storage.dledger.protocol;
 
 public class HeartBeatRequest extends RequestOrResponse {
 
+    //the rtt measured by the leader, for the followers to back off their votes by, -1 if unknown
+    private long rttMs = -1;
+
+    public long getRttMs() {
+        return rttMs;
+    }
+
+    public void setRttMs(long rttMs) {
+        this.rttMs = rttMs;
+    }
 }
@@ -17,11 +17,16 @@
 package io.openmessaging.storage.dledger.protocol;
 
 import java.util.Map;
+import java.util.Set;
 
 public class MetadataResponse extends RequestOrResponse {
 
     private Map<String, String> peers;
 
+    private Map<String, String> learners;
+
+    private Set<String> witnesses;
+
     public Map<String, String> getPeers() {
         return peers;
     }
@@ -29,4 +34,20 @@ public class MetadataResponse extends RequestOrResponse {
     public void setPeers(Map<String, String> peers) {
         this.peers = peers;
     }
+
+    public Map<String, String> getLearners() {
+        return learners;
+    }
+
+    public void setLearners(Map<String, String> learners) {
+        this.learners = learners;
+    }
+
+    public Set<String> getWitnesses() {
+        return witnesses;
+    }
+
+    public void setWitnesses(Set<String> witnesses) {
+        this.witnesses = witnesses;
+    }
 }
@@ -22,6 +22,11 @@ public class VoteRequest extends RequestOrResponse {
 
     private long ledgerEndTerm = -1;
 
+    /**
+     * Set by a transferee taking over leadership, the old leader has already given up its lease.
+     */
+    private boolean leadershipTransfer = false;
+
     public long getLedgerEndIndex() {
         return ledgerEndIndex;
     }
@@ -37,4 +42,12 @@ public class VoteRequest extends RequestOrResponse {
     public void setLedgerEndTerm(long ledgerEndTerm) {
         this.ledgerEndTerm = ledgerEndTerm;
     }
+
+    public boolean isLeadershipTransfer() {
+        return leadershipTransfer;
+    }
+
+    public void setLeadershipTransfer(boolean leadershipTransfer) {
+        this.leadershipTransfer = leadershipTransfer;
+    }
 }
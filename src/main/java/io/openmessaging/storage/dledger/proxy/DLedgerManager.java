@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.proxy;
+
+import io.openmessaging.storage.dledger.DLedgerServer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The servers hosted by one DLedgerProxy, indexed by group and selfId so that the shared rpc service could route the requests.
+ */
+public class DLedgerManager {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, DLedgerServer>> servers = new ConcurrentHashMap<>();
+
+    public void addDLedgerServer(DLedgerServer server) {
+        String group = server.getMemberState().getGroup();
+        String selfId = server.getMemberState().getSelfId();
+        DLedgerServer old = servers.computeIfAbsent(group, k -> new ConcurrentHashMap<>()).putIfAbsent(selfId, server);
+        if (old != null) {
+            throw new IllegalArgumentException(String.format("The server %s of group %s already exists", selfId, group));
+        }
+    }
+
+    public DLedgerServer removeDLedgerServer(String group, String selfId) {
+        Map<String, DLedgerServer> groupServers = servers.get(group);
+        if (groupServers == null) {
+            return null;
+        }
+        DLedgerServer server = groupServers.remove(selfId);
+        servers.computeIfPresent(group, (k, v) -> v.isEmpty() ? null : v);
+        return server;
+    }
+
+    public DLedgerServer getDLedgerServer(String group, String selfId) {
+        if (group == null || selfId == null) {
+            return null;
+        }
+        Map<String, DLedgerServer> groupServers = servers.get(group);
+        return groupServers == null ? null : groupServers.get(selfId);
+    }
+
+    /**
+     * Any server of the group, which is enough to resolve the peer addresses since they are the same in the group.
+     */
+    public DLedgerServer getAnyDLedgerServer(String group) {
+        Map<String, DLedgerServer> groupServers = group == null ? null : servers.get(group);
+        if (groupServers == null) {
+            return null;
+        }
+        for (DLedgerServer server : groupServers.values()) {
+            return server;
+        }
+        return null;
+    }
+
+    public boolean containsGroup(String group) {
+        return group != null && servers.containsKey(group);
+    }
+
+    public List<DLedgerServer> getDLedgerServers() {
+        List<DLedgerServer> list = new ArrayList<>();
+        for (Map<String, DLedgerServer> groupServers : servers.values()) {
+            list.addAll(groupServers.values());
+        }
+        return list;
+    }
+}
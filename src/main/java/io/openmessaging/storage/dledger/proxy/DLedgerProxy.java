@@ -0,0 +1,211 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.proxy;
+
+import io.openmessaging.storage.dledger.DLedgerConfig;
+import io.openmessaging.storage.dledger.DLedgerRpcNettyService;
+import io.openmessaging.storage.dledger.DLedgerServer;
+import io.openmessaging.storage.dledger.ReplicationTask;
+import io.openmessaging.storage.dledger.metrics.DLedgerMetricsExporter;
+import io.openmessaging.storage.dledger.store.file.SharedFileStoreService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.remoting.ChannelEventListener;
+import org.apache.rocketmq.remoting.netty.NettyClientConfig;
+import org.apache.rocketmq.remoting.netty.NettyServerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Host many groups in one process. The servers share one netty server and client on one port, which route the requests by
+ * group and remoteId, one scheduled executor, one replication executor, and one flush and one clean thread for all the
+ * file stores.
+ * The self addresses of the hosted servers should all be on the port of the proxy.
+ */
+public class DLedgerProxy {
+
+    private static Logger logger = LoggerFactory.getLogger(DLedgerProxy.class);
+
+    private final DLedgerProxyConfig dLedgerProxyConfig;
+    private final DLedgerManager dLedgerManager = new DLedgerManager();
+    private final int listenPort;
+    private final DLedgerRpcNettyService dLedgerRpcService;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final ScheduledExecutorService replicationExecutor;
+    private final ExecutorService readExecutor;
+    private final SharedFileStoreService sharedFileStoreService;
+    private final DLedgerMetricsExporter metricsExporter;
+    private volatile boolean started = false;
+
+    public DLedgerProxy(DLedgerProxyConfig dLedgerProxyConfig) {
+        this(dLedgerProxyConfig, null, null, null);
+    }
+
+    public DLedgerProxy(DLedgerProxyConfig dLedgerProxyConfig, NettyServerConfig nettyServerConfig, NettyClientConfig nettyClientConfig,
+        ChannelEventListener channelEventListener) {
+        this.dLedgerProxyConfig = dLedgerProxyConfig;
+        int port = dLedgerProxyConfig.getListenPort();
+        if (port < 0) {
+            if (dLedgerProxyConfig.getConfigs().isEmpty()) {
+                throw new IllegalArgumentException("The listen port should be set if there is no config");
+            }
+            port = portOf(dLedgerProxyConfig.getConfigs().get(0));
+        }
+        this.listenPort = port;
+        this.dLedgerRpcService = new DLedgerRpcNettyService(dLedgerManager, listenPort, nettyServerConfig, nettyClientConfig, channelEventListener,
+            dLedgerProxyConfig.isUseVirtualThread());
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(dLedgerProxyConfig.getScheduledThreadNum(), r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("DLedgerProxy-ScheduledExecutor-" + threadIndex.incrementAndGet());
+            return t;
+        });
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        this.scheduledExecutorService = scheduledExecutor;
+        this.replicationExecutor = ReplicationTask.newExecutor("DLedgerProxy-ReplicationExecutor", dLedgerProxyConfig.getReplicationThreadNum());
+        AtomicInteger readThreadIndex = new AtomicInteger(0);
+        this.readExecutor = Executors.newFixedThreadPool(dLedgerProxyConfig.getReadThreadNum(), r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("DLedgerProxy-ReadExecutor-" + readThreadIndex.incrementAndGet());
+            return t;
+        });
+        this.sharedFileStoreService = new SharedFileStoreService(dLedgerProxyConfig.getFlushFileInterval());
+        //the groups share one http endpoint, as they would fail to bind the same port one by one
+        int metricsPort = dLedgerProxyConfig.getMetricsPort();
+        if (metricsPort < 0 && !dLedgerProxyConfig.getConfigs().isEmpty()) {
+            metricsPort = dLedgerProxyConfig.getConfigs().get(0).getMetricsPort();
+        }
+        this.metricsExporter = new DLedgerMetricsExporter(metricsPort);
+        if (dLedgerProxyConfig.isEnableBatchHeartBeat()) {
+            this.dLedgerRpcService.enableBatchHeartBeat(dLedgerProxyConfig.getBatchHeartBeatWindowMs(), scheduledExecutorService);
+        }
+        for (DLedgerConfig config : dLedgerProxyConfig.getConfigs()) {
+            addDLedgerServer(config);
+        }
+    }
+
+    private static int portOf(DLedgerConfig config) {
+        String replicas = config.getLearners() == null || config.getLearners().isEmpty() ? config.getPeers() : config.getPeers() + ";" + config.getLearners();
+        for (String peerInfo : replicas.split(";")) {
+            String peerSelfId = peerInfo.split("-")[0];
+            if (peerSelfId.equals(config.getSelfId())) {
+                return Integer.parseInt(peerInfo.substring(peerInfo.lastIndexOf(':') + 1));
+            }
+        }
+        throw new IllegalArgumentException(String.format("The server %s is not in the peers %s", config.getSelfId(), config.getPeers()));
+    }
+
+    public synchronized void startup() {
+        if (started) {
+            return;
+        }
+        dLedgerRpcService.startup();
+        sharedFileStoreService.startup();
+        metricsExporter.startup();
+        for (DLedgerServer server : dLedgerManager.getDLedgerServers()) {
+            server.startup();
+        }
+        started = true;
+    }
+
+    public synchronized void shutdown() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        for (DLedgerServer server : dLedgerManager.getDLedgerServers()) {
+            server.shutdown();
+        }
+        sharedFileStoreService.shutdown();
+        metricsExporter.shutdown();
+        dLedgerRpcService.shutdown();
+        scheduledExecutorService.shutdown();
+        replicationExecutor.shutdown();
+        readExecutor.shutdown();
+    }
+
+    /**
+     * Add a group to host, it is started at once if the proxy is running.
+     */
+    public synchronized DLedgerServer addDLedgerServer(DLedgerConfig config) {
+        int port = portOf(config);
+        if (port != listenPort) {
+            throw new IllegalArgumentException(String.format("The server %s of group %s is on port %d, but the proxy listens on %d",
+                config.getSelfId(), config.getGroup(), port, listenPort));
+        }
+        DLedgerServer server = new DLedgerServer(config, this);
+        dLedgerManager.addDLedgerServer(server);
+        if (started) {
+            server.startup();
+        }
+        logger.info("Add the server {} of group {}, {} servers hosted", config.getSelfId(), config.getGroup(), dLedgerManager.getDLedgerServers().size());
+        return server;
+    }
+
+    /**
+     * Remove a hosted group and shut it down, the data is kept.
+     */
+    public synchronized DLedgerServer removeDLedgerServer(String group, String selfId) {
+        DLedgerServer server = dLedgerManager.removeDLedgerServer(group, selfId);
+        if (server != null && started) {
+            server.shutdown();
+        }
+        return server;
+    }
+
+    public DLedgerProxyConfig getDLedgerProxyConfig() {
+        return dLedgerProxyConfig;
+    }
+
+    public DLedgerManager getDLedgerManager() {
+        return dLedgerManager;
+    }
+
+    public DLedgerRpcNettyService getDLedgerRpcService() {
+        return dLedgerRpcService;
+    }
+
+    public ScheduledExecutorService getScheduledExecutorService() {
+        return scheduledExecutorService;
+    }
+
+    public ScheduledExecutorService getReplicationExecutor() {
+        return replicationExecutor;
+    }
+
+    public ExecutorService getReadExecutor() {
+        return readExecutor;
+    }
+
+    public DLedgerMetricsExporter getMetricsExporter() {
+        return metricsExporter;
+    }
+
+    public SharedFileStoreService getSharedFileStoreService() {
+        return sharedFileStoreService;
+    }
+
+    public int getListenPort() {
+        return listenPort;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.proxy;
+
+import io.openmessaging.storage.dledger.DLedgerConfig;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DLedgerProxyConfig {
+
+    /**
+     * The port shared by all the hosted servers, -1 to take it from the self address of the first config.
+     */
+    private int listenPort = -1;
+
+    /**
+     * The threads of the scheduled executor shared by the hosted servers.
+     */
+    private int scheduledThreadNum = 4;
+
+    /**
+     * The threads shared by the replication tasks of all the hosted servers.
+     */
+    private int replicationThreadNum = 4;
+
+    /**
+     * The threads to read the entries for the waiting requests of all the hosted servers.
+     */
+    private int readThreadNum = 4;
+
+    /**
+     * The interval of the flush service shared by the hosted file stores.
+     */
+    private long flushFileInterval = 10;
+
+    /**
+     * Coalesce the heartbeats of the hosted groups to the same peer within the window into one request.
+     * The leaders send the heartbeats at the multiples of heartBeatTimeIntervalMs to make them fall in the same window.
+     */
+    private boolean enableBatchHeartBeat = true;
+    private long batchHeartBeatWindowMs = 20;
+
+    /**
+     * Run the blocking rpc paths on virtual threads if the JVM supports them.
+     */
+    private boolean useVirtualThread = false;
+
+    /**
+     * The port to export the metrics of all the hosted groups, the metricsPort of the first config is used if not set.
+     */
+    private int metricsPort = -1;
+
+    private List<DLedgerConfig> configs = new ArrayList<>();
+
+    public int getListenPort() {
+        return listenPort;
+    }
+
+    public void setListenPort(int listenPort) {
+        this.listenPort = listenPort;
+    }
+
+    public int getScheduledThreadNum() {
+        return scheduledThreadNum;
+    }
+
+    public void setScheduledThreadNum(int scheduledThreadNum) {
+        this.scheduledThreadNum = scheduledThreadNum;
+    }
+
+    public int getReplicationThreadNum() {
+        return replicationThreadNum;
+    }
+
+    public void setReplicationThreadNum(int replicationThreadNum) {
+        this.replicationThreadNum = replicationThreadNum;
+    }
+
+    public int getReadThreadNum() {
+        return readThreadNum;
+    }
+
+    public void setReadThreadNum(int readThreadNum) {
+        this.readThreadNum = readThreadNum;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    public long getFlushFileInterval() {
+        return flushFileInterval;
+    }
+
+    public void setFlushFileInterval(long flushFileInterval) {
+        this.flushFileInterval = flushFileInterval;
+    }
+
+    public boolean isEnableBatchHeartBeat() {
+        return enableBatchHeartBeat;
+    }
+
+    public void setEnableBatchHeartBeat(boolean enableBatchHeartBeat) {
+        this.enableBatchHeartBeat = enableBatchHeartBeat;
+    }
+
+    public long getBatchHeartBeatWindowMs() {
+        return batchHeartBeatWindowMs;
+    }
+
+    public void setBatchHeartBeatWindowMs(long batchHeartBeatWindowMs) {
+        this.batchHeartBeatWindowMs = batchHeartBeatWindowMs;
+    }
+
+    public boolean isUseVirtualThread() {
+        return useVirtualThread;
+    }
+
+    public void setUseVirtualThread(boolean useVirtualThread) {
+        this.useVirtualThread = useVirtualThread;
+    }
+
+    public List<DLedgerConfig> getConfigs() {
+        return configs;
+    }
+
+    public void setConfigs(List<DLedgerConfig> configs) {
+        this.configs = configs;
+    }
+}
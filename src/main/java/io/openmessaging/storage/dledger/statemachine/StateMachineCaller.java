@@ -18,6 +18,7 @@ package io.openmessaging.storage.dledger.statemachine;
 
 import io.openmessaging.storage.dledger.DLedgerEntryPusher;
 import io.openmessaging.storage.dledger.entry.DLedgerEntry;
+import io.openmessaging.storage.dledger.metrics.LatencyHistogram;
 import io.openmessaging.storage.dledger.store.DLedgerStore;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
@@ -65,6 +66,7 @@ public class StateMachineCaller extends ServiceThread {
     private final AtomicLong applyingIndex;
     private final BlockingQueue<ApplyTask> taskQueue;
     private final Function<Long, Boolean> completeEntryCallback;
+    private volatile LatencyHistogram applyLatency;
 
     public StateMachineCaller(final DLedgerStore dLedgerStore, final StateMachine statemachine,
         final DLedgerEntryPusher entryPusher) {
@@ -85,6 +87,10 @@ public class StateMachineCaller extends ServiceThread {
         return this.taskQueue.offer(task);
     }
 
+    public void setApplyLatency(LatencyHistogram applyLatency) {
+        this.applyLatency = applyLatency;
+    }
+
     public StateMachine getStateMachine() {
         return this.statemachine;
     }
@@ -146,9 +152,14 @@ public class StateMachineCaller extends ServiceThread {
             return;
         }
         final CommittedEntryIterator iter = new CommittedEntryIterator(this.dLedgerStore, committedIndex, this.applyingIndex, lastAppliedIndex, this.completeEntryCallback);
+        final long beginNs = System.nanoTime();
         while (iter.hasNext()) {
             this.statemachine.onApply(iter);
         }
+        final LatencyHistogram histogram = this.applyLatency;
+        if (histogram != null) {
+            histogram.recordSinceNanos(beginNs);
+        }
         final long lastIndex = iter.getIndex();
         this.lastAppliedIndex.set(lastIndex);
         final DLedgerEntry dLedgerEntry = this.dLedgerStore.get(lastIndex);
@@ -121,4 +121,9 @@ public class DLedgerMemoryStore extends DLedgerStore {
     public long getLedgerEndTerm() {
         return ledgerEndTerm;
     }
+
+    @Override
+    public MemberState getMemberState() {
+        return memberState;
+    }
 }
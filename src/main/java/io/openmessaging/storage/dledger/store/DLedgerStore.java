@@ -18,6 +18,9 @@ package io.openmessaging.storage.dledger.store;
 
 import io.openmessaging.storage.dledger.MemberState;
 import io.openmessaging.storage.dledger.entry.DLedgerEntry;
+import io.openmessaging.storage.dledger.metrics.DLedgerMetrics;
+import java.util.ArrayList;
+import java.util.List;
 
 public abstract class DLedgerStore {
 
@@ -27,10 +30,43 @@ public abstract class DLedgerStore {
 
     public abstract DLedgerEntry appendAsLeader(DLedgerEntry entry);
 
+    /**
+     * Append the entries as leader, the caller should hold the lock of the member state to keep their indexes contiguous.
+     */
+    public List<DLedgerEntry> appendAsLeader(List<DLedgerEntry> entries) {
+        for (DLedgerEntry entry : entries) {
+            appendAsLeader(entry);
+        }
+        return entries;
+    }
+
     public abstract DLedgerEntry appendAsFollower(DLedgerEntry entry, long leaderTerm, String leaderId);
 
     public abstract DLedgerEntry get(Long index);
 
+    /**
+     * Get the entries in [beginIndex, endIndex], stopping once maxNum entries or maxSize bytes are read.
+     * The entry at beginIndex is always returned if it exists, even if it is larger than maxSize.
+     */
+    public List<DLedgerEntry> get(long beginIndex, long endIndex, int maxNum, int maxSize) {
+        List<DLedgerEntry> entries = new ArrayList<>();
+        long lastIndex = Math.min(endIndex, getLedgerEndIndex());
+        long totalSize = 0;
+        for (long index = beginIndex; index <= lastIndex && entries.size() < maxNum; index++) {
+            DLedgerEntry entry = get(index);
+            if (entry == null) {
+                break;
+            }
+            int size = entry.computeSizeInBytes();
+            if (!entries.isEmpty() && totalSize + size > maxSize) {
+                break;
+            }
+            entries.add(entry);
+            totalSize += size;
+        }
+        return entries;
+    }
+
     public abstract long getCommittedIndex();
 
     public void updateCommittedIndex(long term, long committedIndex) {
@@ -53,6 +89,10 @@ public abstract class DLedgerStore {
 
     }
 
+    public void setMetrics(DLedgerMetrics metrics) {
+
+    }
+
     public long truncate(DLedgerEntry entry, long leaderTerm, String leaderId) {
         return -1;
     }
@@ -21,6 +21,8 @@ import io.openmessaging.storage.dledger.MemberState;
 import io.openmessaging.storage.dledger.ShutdownAbleThread;
 import io.openmessaging.storage.dledger.entry.DLedgerEntry;
 import io.openmessaging.storage.dledger.entry.DLedgerEntryCoder;
+import io.openmessaging.storage.dledger.metrics.DLedgerMetrics;
+import io.openmessaging.storage.dledger.metrics.LatencyHistogram;
 import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
 import io.openmessaging.storage.dledger.store.DLedgerStore;
 import io.openmessaging.storage.dledger.utils.IOUtils;
@@ -63,7 +65,9 @@ public class DLedgerMmapFileStore extends DLedgerStore {
     private ThreadLocal<ByteBuffer> localIndexBuffer;
     private FlushDataService flushDataService;
     private CleanSpaceService cleanSpaceService;
+    private SharedFileStoreService sharedFileStoreService;
     private volatile boolean isDiskFull = false;
+    private volatile LatencyHistogram flushLatency;
 
     private long lastCheckPointTimeMs = System.currentTimeMillis();
 
@@ -88,21 +92,53 @@ public class DLedgerMmapFileStore extends DLedgerStore {
         cleanSpaceService = new CleanSpaceService("DLedgerCleanSpaceService", logger);
     }
 
+    @Override
+    public void setMetrics(DLedgerMetrics metrics) {
+        this.flushLatency = metrics.getFlushLatency();
+        String help = "The latency of creating the next mapped file, which stalls the appends";
+        this.dataFileList.setRollOverLatency(metrics.histogram(DLedgerMetrics.MMAP_ROLL_OVER_LATENCY, help, "file", "data"));
+        this.indexFileList.setRollOverLatency(metrics.histogram(DLedgerMetrics.MMAP_ROLL_OVER_LATENCY, help, "file", "index"));
+    }
+
     @Override
     public void startup() {
         load();
         recover();
-        flushDataService.start();
-        cleanSpaceService.start();
+        if (sharedFileStoreService != null) {
+            sharedFileStoreService.register(this);
+        } else {
+            flushDataService.start();
+            cleanSpaceService.start();
+        }
     }
 
     @Override
     public void shutdown() {
+        if (sharedFileStoreService != null) {
+            sharedFileStoreService.deregister(this);
+        }
         this.dataFileList.flush(0);
         this.indexFileList.flush(0);
         persistCheckPoint();
-        cleanSpaceService.shutdown();
-        flushDataService.shutdown();
+        if (sharedFileStoreService == null) {
+            cleanSpaceService.shutdown();
+            flushDataService.shutdown();
+        }
+    }
+
+    /**
+     * Run the flush and clean steps in the threads of the shared service instead of the own ones, must be set before startup.
+     */
+    public void setSharedFileStoreService(SharedFileStoreService sharedFileStoreService) {
+        this.sharedFileStoreService = sharedFileStoreService;
+    }
+
+    void flushOnce() {
+        flushDataService.doFlush();
+    }
+
+    void cleanOnce() {
+        cleanSpaceService.doClean();
     }
 
     public long getWritePos() {
@@ -374,6 +410,76 @@ public class DLedgerMmapFileStore extends DLedgerStore {
         }
     }
 
+    /**
+     * Write the entries to the data file by one append, falling back to appending one by one if they could not fit
+     * in one data file. The index file is still appended by entry, as its appends could not cross the files.
+     */
+    @Override
+    public List<DLedgerEntry> appendAsLeader(List<DLedgerEntry> entries) {
+        PreConditions.check(memberState.isLeader(), DLedgerResponseCode.NOT_LEADER);
+        PreConditions.check(!isDiskFull, DLedgerResponseCode.DISK_FULL);
+        int totalSize = 0;
+        for (DLedgerEntry entry : entries) {
+            totalSize += entry.computeSizeInBytes();
+        }
+        if (entries.size() == 1 || totalSize + MmapFileList.MIN_BLANK_LEN > dLedgerConfig.getMappedFileSizeForEntryData()) {
+            synchronized (memberState) {
+                return super.appendAsLeader(entries);
+            }
+        }
+        ByteBuffer dataBuffer = localEntryBuffer.get();
+        if (dataBuffer.capacity() < totalSize) {
+            dataBuffer = ByteBuffer.allocate(totalSize);
+        }
+        dataBuffer.clear();
+        int[] offsets = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            offsets[i] = dataBuffer.position();
+            DLedgerEntryCoder.put(entries.get(i), dataBuffer);
+        }
+        dataBuffer.flip();
+        ByteBuffer indexBuffer = localIndexBuffer.get();
+        synchronized (memberState) {
+            PreConditions.check(memberState.isLeader(), DLedgerResponseCode.NOT_LEADER, null);
+            PreConditions.check(memberState.getTransferee() == null, DLedgerResponseCode.LEADER_TRANSFERRING, null);
+            long prePos = dataFileList.preAppend(totalSize);
+            PreConditions.check(prePos != -1, DLedgerResponseCode.DISK_ERROR, null);
+            long currTerm = memberState.currTerm();
+            for (int i = 0; i < entries.size(); i++) {
+                DLedgerEntry entry = entries.get(i);
+                entry.setIndex(ledgerEndIndex + 1 + i);
+                entry.setTerm(currTerm);
+                entry.setMagic(CURRENT_MAGIC);
+                entry.setPos(prePos + offsets[i]);
+                ByteBuffer entryBuffer = dataBuffer.duplicate();
+                entryBuffer.position(offsets[i]);
+                entryBuffer.limit(offsets[i] + entry.getSize());
+                DLedgerEntryCoder.setIndexTerm(entryBuffer, entry.getIndex(), currTerm, CURRENT_MAGIC);
+                DLedgerEntryCoder.setPos(entryBuffer, entry.getPos());
+                for (AppendHook writeHook : appendHooks) {
+                    writeHook.doHook(entry, entryBuffer.slice(), DLedgerEntry.BODY_OFFSET);
+                }
+            }
+            long dataPos = dataFileList.append(dataBuffer.array(), 0, totalSize);
+            PreConditions.check(dataPos == prePos, DLedgerResponseCode.DISK_ERROR, null);
+            for (DLedgerEntry entry : entries) {
+                DLedgerEntryCoder.encodeIndex(entry.getPos(), entry.getSize(), CURRENT_MAGIC, entry.getIndex(), currTerm, indexBuffer);
+                long indexPos = indexFileList.append(indexBuffer.array(), 0, indexBuffer.remaining(), false);
+                PreConditions.check(indexPos == entry.getIndex() * INDEX_UNIT_SIZE, DLedgerResponseCode.DISK_ERROR, null);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("[{}] Append as Leader {} entries from {}", memberState.getSelfId(), entries.size(), entries.get(0).getIndex());
+            }
+            ledgerEndIndex += entries.size();
+            ledgerEndTerm = currTerm;
+            if (ledgerBeginIndex == -1) {
+                ledgerBeginIndex = entries.get(0).getIndex();
+            }
+            updateLedgerEndIndexAndTerm();
+            return entries;
+        }
+    }
+
     @Override
     public long truncate(DLedgerEntry entry, long leaderTerm, String leaderId) {
         PreConditions.check(memberState.isFollower(), DLedgerResponseCode.NOT_FOLLOWER, null);
@@ -548,6 +654,59 @@ public class DLedgerMmapFileStore extends DLedgerStore {
         }
     }
 
+    /**
+     * Read the index units of the range in one piece, and then the entries by one sequential scan of the data file.
+     * The range is cut at the end of the mapped file, since a mapped buffer could not span two files.
+     */
+    @Override
+    public List<DLedgerEntry> get(long beginIndex, long endIndex, int maxNum, int maxSize) {
+        indexCheck(beginIndex);
+        long lastIndex = Math.min(endIndex, ledgerEndIndex);
+        SelectMmapBufferResult indexSbr = null;
+        SelectMmapBufferResult dataSbr = null;
+        try {
+            indexSbr = indexFileList.getData(beginIndex * INDEX_UNIT_SIZE);
+            PreConditions.check(indexSbr != null && indexSbr.getByteBuffer() != null, DLedgerResponseCode.DISK_ERROR, "Get null index for %d", beginIndex);
+            ByteBuffer indexBuffer = indexSbr.getByteBuffer();
+            long maxCount = Math.min(Math.min(lastIndex - beginIndex + 1, maxNum), indexBuffer.remaining() / INDEX_UNIT_SIZE);
+            int mappedFileSize = dataFileList.getMappedFileSize();
+            long beginPos = -1;
+            long endPos = -1;
+            int count = 0;
+            while (count < maxCount) {
+                indexBuffer.position(count * INDEX_UNIT_SIZE);
+                indexBuffer.getInt(); //magic
+                long pos = indexBuffer.getLong();
+                int size = indexBuffer.getInt();
+                if (count == 0) {
+                    beginPos = pos;
+                } else if (pos != endPos
+                    || pos + size - beginPos > maxSize
+                    || (pos + size - 1) / mappedFileSize != beginPos / mappedFileSize) {
+                    break;
+                }
+                endPos = pos + size;
+                count++;
+            }
+            dataSbr = dataFileList.getData(beginPos, (int) (endPos - beginPos));
+            PreConditions.check(dataSbr != null && dataSbr.getByteBuffer() != null, DLedgerResponseCode.DISK_ERROR, "Get null data for %d-%d", beginIndex, beginIndex + count - 1);
+            ByteBuffer dataBuffer = dataSbr.getByteBuffer();
+            List<DLedgerEntry> entries = new ArrayList<>(count);
+            long pos = beginPos;
+            for (int i = 0; i < count; i++) {
+                DLedgerEntry entry = DLedgerEntryCoder.decode(dataBuffer);
+                PreConditions.check(pos == entry.getPos() && beginIndex + i == entry.getIndex(), DLedgerResponseCode.DISK_ERROR,
+                    "%d != %d or %d != %d", pos, entry.getPos(), beginIndex + i, entry.getIndex());
+                entries.add(entry);
+                pos += entry.getSize();
+            }
+            return entries;
+        } finally {
+            SelectMmapBufferResult.release(indexSbr);
+            SelectMmapBufferResult.release(dataSbr);
+        }
+    }
+
     public Pair<Long, Integer> getEntryPosAndSize(Long index) {
         indexCheck(index);
         SelectMmapBufferResult indexSbr = null;
@@ -650,25 +809,33 @@ public class DLedgerMmapFileStore extends DLedgerStore {
 
         @Override public void doWork() {
             try {
-                long start = System.currentTimeMillis();
-                DLedgerMmapFileStore.this.dataFileList.flush(0);
-                DLedgerMmapFileStore.this.indexFileList.flush(0);
-                long elapsed;
-                if ((elapsed = DLedgerUtils.elapsed(start)) > 500) {
-                    logger.info("Flush data cost={} ms", elapsed);
-                }
-
-                if (DLedgerUtils.elapsed(lastCheckPointTimeMs) > dLedgerConfig.getCheckPointInterval()) {
-                    persistCheckPoint();
-                    lastCheckPointTimeMs = System.currentTimeMillis();
-                }
-
+                doFlush();
                 waitForRunning(dLedgerConfig.getFlushFileInterval());
             } catch (Throwable t) {
                 logger.info("Error in {}", getName(), t);
                 DLedgerUtils.sleep(200);
             }
         }
+
+        void doFlush() {
+            long start = System.currentTimeMillis();
+            long startNs = System.nanoTime();
+            DLedgerMmapFileStore.this.dataFileList.flush(0);
+            DLedgerMmapFileStore.this.indexFileList.flush(0);
+            LatencyHistogram histogram = flushLatency;
+            if (histogram != null) {
+                histogram.recordSinceNanos(startNs);
+            }
+            long elapsed;
+            if ((elapsed = DLedgerUtils.elapsed(start)) > 500) {
+                logger.info("Flush data cost={} ms", elapsed);
+            }
+
+            if (DLedgerUtils.elapsed(lastCheckPointTimeMs) > dLedgerConfig.getCheckPointInterval()) {
+                persistCheckPoint();
+                lastCheckPointTimeMs = System.currentTimeMillis();
+            }
+        }
     }
 
     class CleanSpaceService extends ShutdownAbleThread {
@@ -682,32 +849,7 @@ public class DLedgerMmapFileStore extends DLedgerStore {
 
         @Override public void doWork() {
             try {
-                storeBaseRatio = DLedgerUtils.getDiskPartitionSpaceUsedPercent(dLedgerConfig.getStoreBaseDir());
-                dataRatio = calcDataStorePathPhysicRatio();
-                long hourOfMs = 3600L * 1000L;
-                long fileReservedTimeMs = dLedgerConfig.getFileReservedHours() *  hourOfMs;
-                if (fileReservedTimeMs < hourOfMs) {
-                    logger.warn("The fileReservedTimeMs={} is smaller than hourOfMs={}", fileReservedTimeMs, hourOfMs);
-                    fileReservedTimeMs =  hourOfMs;
-                }
-                //If the disk is full, should prevent more data to get in
-                DLedgerMmapFileStore.this.isDiskFull = isNeedForbiddenWrite();
-                boolean timeUp = isTimeToDelete();
-                boolean checkExpired = isNeedCheckExpired();
-                boolean forceClean = isNeedForceClean();
-                boolean enableForceClean = dLedgerConfig.isEnableDiskForceClean();
-                int intervalForcibly = 120 * 1000;
-                if (timeUp || checkExpired) {
-                    int count = getDataFileList().deleteExpiredFileByTime(fileReservedTimeMs, 100, intervalForcibly, forceClean && enableForceClean);
-                    if (count > 0 || (forceClean && enableForceClean) || isDiskFull) {
-                        logger.info("Clean space count={} timeUp={} checkExpired={} forceClean={} enableForceClean={} diskFull={} storeBaseRatio={} dataRatio={}",
-                            count, timeUp, checkExpired, forceClean, enableForceClean, isDiskFull, storeBaseRatio, dataRatio);
-                    }
-                    if (count > 0) {
-                        DLedgerMmapFileStore.this.reviseLedgerBeginIndex();
-                    }
-                }
-                getDataFileList().retryDeleteFirstFile(intervalForcibly);
+                doClean();
                 waitForRunning(100);
             } catch (Throwable t) {
                 logger.info("Error in {}", getName(), t);
@@ -715,6 +857,43 @@ public class DLedgerMmapFileStore extends DLedgerStore {
             }
         }
 
+        void doClean() {
+            storeBaseRatio = DLedgerUtils.getDiskPartitionSpaceUsedPercent(dLedgerConfig.getStoreBaseDir());
+            dataRatio = calcDataStorePathPhysicRatio();
+            long hourOfMs = 3600L * 1000L;
+            long fileReservedTimeMs = dLedgerConfig.getFileReservedHours() *  hourOfMs;
+            if (fileReservedTimeMs < hourOfMs) {
+                logger.warn("The fileReservedTimeMs={} is smaller than hourOfMs={}", fileReservedTimeMs, hourOfMs);
+                fileReservedTimeMs =  hourOfMs;
+            }
+            //If the disk is full, should prevent more data to get in
+            DLedgerMmapFileStore.this.isDiskFull = isNeedForbiddenWrite();
+            boolean timeUp = isTimeToDelete();
+            boolean checkExpired = isNeedCheckExpired();
+            boolean forceClean = isNeedForceClean();
+            boolean enableForceClean = dLedgerConfig.isEnableDiskForceClean();
+            int intervalForcibly = 120 * 1000;
+            if (timeUp || checkExpired) {
+                int count = getDataFileList().deleteExpiredFileByTime(fileReservedTimeMs, 100, intervalForcibly, forceClean && enableForceClean);
+                if (count > 0 || (forceClean && enableForceClean) || isDiskFull) {
+                    logger.info("Clean space count={} timeUp={} checkExpired={} forceClean={} enableForceClean={} diskFull={} storeBaseRatio={} dataRatio={}",
+                        count, timeUp, checkExpired, forceClean, enableForceClean, isDiskFull, storeBaseRatio, dataRatio);
+                }
+                if (count > 0) {
+                    DLedgerMmapFileStore.this.reviseLedgerBeginIndex();
+                }
+            }
+            if (memberState.isWitness()) {
+                //a witness only votes and acks, the committed data is never read from it
+                int count = getDataFileList().deleteFilesBefore(committedPos, intervalForcibly);
+                if (count > 0) {
+                    logger.info("Clean space of witness count={} committedPos={}", count, committedPos);
+                    DLedgerMmapFileStore.this.reviseLedgerBeginIndex();
+                }
+            }
+            getDataFileList().retryDeleteFirstFile(intervalForcibly);
+        }
+
         private boolean isTimeToDelete() {
             String when = DLedgerMmapFileStore.this.dLedgerConfig.getDeleteWhen();
             if (DLedgerUtils.isItTimeToDo(when)) {
@@ -16,6 +16,7 @@
 
 package io.openmessaging.storage.dledger.store.file;
 
+import io.openmessaging.storage.dledger.metrics.LatencyHistogram;
 import io.openmessaging.storage.dledger.utils.DLedgerUtils;
 import java.io.File;
 import java.io.IOException;
@@ -46,6 +47,8 @@ public class MmapFileList {
 
     private volatile long storeTimestamp = 0;
 
+    private volatile LatencyHistogram rollOverLatency;
+
     public MmapFileList(final String storePath, int mappedFileSize) {
         this.storePath = storePath;
         this.mappedFileSize = mappedFileSize;
@@ -192,7 +195,7 @@ public class MmapFileList {
     public long preAppend(int len, boolean useBlank) {
         MmapFile mappedFile = getLastMappedFile();
         if (null == mappedFile || mappedFile.isFull()) {
-            mappedFile = getLastMappedFile(0);
+            mappedFile = rollOver();
         }
         if (null == mappedFile) {
             logger.error("Create mapped file for {}", storePath);
@@ -214,7 +217,7 @@ public class MmapFileList {
                     logger.error("Append blank error for {}", storePath);
                     return -1;
                 }
-                mappedFile = getLastMappedFile(0);
+                mappedFile = rollOver();
                 if (null == mappedFile) {
                     logger.error("Create mapped file for {}", storePath);
                     return -1;
@@ -225,6 +228,23 @@ public class MmapFileList {
 
     }
 
+    /**
+     * Create the next mapped file, the appends are stalled meanwhile.
+     */
+    private MmapFile rollOver() {
+        long beginNs = System.nanoTime();
+        MmapFile mappedFile = getLastMappedFile(0);
+        LatencyHistogram histogram = rollOverLatency;
+        if (histogram != null) {
+            histogram.recordSinceNanos(beginNs);
+        }
+        return mappedFile;
+    }
+
+    public void setRollOverLatency(LatencyHistogram rollOverLatency) {
+        this.rollOverLatency = rollOverLatency;
+    }
+
     public long append(byte[] data, int pos, int len, boolean useBlank) {
         if (preAppend(len, useBlank) == -1) {
             return -1;
@@ -465,6 +485,26 @@ public class MmapFileList {
         return deleteCount;
     }
 
+    /**
+     * Delete the files ending before the offset, the last file is always kept.
+     */
+    public int deleteFilesBefore(final long offset, final long intervalForcibly) {
+        Object[] mfs = this.copyMappedFiles();
+        if (null == mfs) {
+            return 0;
+        }
+        List<MmapFile> files = new ArrayList<MmapFile>();
+        for (int i = 0; i < mfs.length - 1 && files.size() < DELETE_FILES_BATCH_MAX; i++) {
+            MmapFile mappedFile = (MmapFile) mfs[i];
+            if (mappedFile.getFileFromOffset() + this.mappedFileSize > offset || !mappedFile.destroy(intervalForcibly)) {
+                break;
+            }
+            files.add(mappedFile);
+        }
+        deleteExpiredFiles(files);
+        return files.size();
+    }
+
     public int deleteExpiredFileByOffset(long offset, int unitSize) {
         Object[] mfs = this.copyMappedFiles();
 
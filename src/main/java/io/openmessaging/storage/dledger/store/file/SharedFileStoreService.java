@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.store.file;
+
+import io.openmessaging.storage.dledger.ShutdownAbleThread;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One flush thread and one clean thread for all the file stores hosted in a process, instead of two threads per store.
+ */
+public class SharedFileStoreService {
+
+    private static Logger logger = LoggerFactory.getLogger(SharedFileStoreService.class);
+
+    private static final long CLEAN_INTERVAL_MS = 100;
+
+    private final List<DLedgerMmapFileStore> stores = new CopyOnWriteArrayList<>();
+    private final long flushIntervalMs;
+    private final StepService flushService;
+    private final StepService cleanService;
+
+    public SharedFileStoreService(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushService = new StepService("DLedgerSharedFlushDataService", true);
+        this.cleanService = new StepService("DLedgerSharedCleanSpaceService", false);
+    }
+
+    public void startup() {
+        flushService.start();
+        cleanService.start();
+    }
+
+    public void shutdown() {
+        cleanService.shutdown();
+        flushService.shutdown();
+    }
+
+    public void register(DLedgerMmapFileStore store) {
+        stores.add(store);
+    }
+
+    /**
+     * Return after the running step of the store if any, so that the store could be shut down safely.
+     */
+    public void deregister(DLedgerMmapFileStore store) {
+        stores.remove(store);
+        synchronized (flushService.lock) {
+            synchronized (cleanService.lock) {
+                logger.info("Deregister a store, {} stores left", stores.size());
+            }
+        }
+    }
+
+    public int getStoreNum() {
+        return stores.size();
+    }
+
+    private class StepService extends ShutdownAbleThread {
+
+        private final boolean flush;
+        //held by a step on a store, not the thread itself, whose monitor is used by join
+        private final Object lock = new Object();
+
+        StepService(String name, boolean flush) {
+            super(name, SharedFileStoreService.logger);
+            this.flush = flush;
+        }
+
+        @Override
+        public void doWork() {
+            for (DLedgerMmapFileStore store : stores) {
+                try {
+                    synchronized (lock) {
+                        if (!stores.contains(store)) {
+                            continue;
+                        }
+                        if (flush) {
+                            store.flushOnce();
+                        } else {
+                            store.cleanOnce();
+                        }
+                    }
+                } catch (Throwable t) {
+                    logger.info("Error in {}", getName(), t);
+                    DLedgerUtils.sleep(200);
+                }
+            }
+            try {
+                waitForRunning(flush ? flushIntervalMs : CLEAN_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                logger.info("The {} is interrupted", getName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Track the minimum round trip time over a sliding window, as BBR does. A minimum older than the window is replaced by
+ * the next sample, so the base rtt follows a link that got slower instead of keeping a stale low value for ever.
+ * Not thread safe, the callers hold their own lock.
+ */
+public class MinRttFilter {
+
+    public static final long WINDOW_NS = TimeUnit.SECONDS.toNanos(5);
+
+    private final long windowNs;
+
+    private long minRttUs = Long.MAX_VALUE;
+    private long stampNs;
+
+    public MinRttFilter() {
+        this(WINDOW_NS);
+    }
+
+    public MinRttFilter(long windowNs) {
+        this.windowNs = windowNs;
+    }
+
+    public long update(long rttUs, long nowNs) {
+        if (rttUs <= minRttUs || nowNs - stampNs > windowNs) {
+            minRttUs = rttUs;
+            stampNs = nowNs;
+        }
+        return minRttUs;
+    }
+
+    public long get() {
+        return minRttUs;
+    }
+
+    public void reset() {
+        minRttUs = Long.MAX_VALUE;
+    }
+}
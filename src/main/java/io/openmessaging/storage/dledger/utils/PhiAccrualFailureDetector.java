@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.utils;
+
+/**
+ * The phi accrual failure detector over the heartbeat inter-arrival times. Instead of a fixed timeout, it tells how
+ * suspicious the silence since the last heartbeat is: phi = -log10(P(the next heartbeat arrives even later)), assuming
+ * the intervals are normally distributed, so phi 8 means a false suspicion in about 1e8 heartbeats.
+ */
+public class PhiAccrualFailureDetector {
+
+    private final long[] intervals;
+    private final long minStdDeviationMs;
+
+    private int count = 0;
+    private int next = 0;
+    private long sum = 0;
+    private long sumOfSquares = 0;
+    private long lastHeartBeatTime = -1;
+
+    /**
+     * @param windowSize the number of the latest intervals to estimate the distribution from
+     * @param minStdDeviationMs keep the detector from being too sensitive when the intervals are very regular
+     */
+    public PhiAccrualFailureDetector(int windowSize, long minStdDeviationMs) {
+        this.intervals = new long[Math.max(1, windowSize)];
+        this.minStdDeviationMs = Math.max(1, minStdDeviationMs);
+    }
+
+    public synchronized void heartBeat(long now) {
+        if (lastHeartBeatTime > 0 && now >= lastHeartBeatTime) {
+            long interval = now - lastHeartBeatTime;
+            if (count == intervals.length) {
+                long evicted = intervals[next];
+                sum -= evicted;
+                sumOfSquares -= evicted * evicted;
+            } else {
+                count++;
+            }
+            intervals[next] = interval;
+            next = (next + 1) % intervals.length;
+            sum += interval;
+            sumOfSquares += interval * interval;
+        }
+        lastHeartBeatTime = now;
+    }
+
+    /**
+     * Record an arrival that is not sampled, as it does not come at the heartbeat intervals.
+     */
+    public synchronized void touch(long now) {
+        if (now > lastHeartBeatTime) {
+            lastHeartBeatTime = now;
+        }
+    }
+
+    /**
+     * @return the suspicion level at the time, or 0 if there are fewer intervals than minSamples
+     */
+    public synchronized double phi(long now, int minSamples) {
+        if (count == 0 || count < minSamples) {
+            return 0;
+        }
+        double mean = (double) sum / count;
+        double variance = Math.max(0, (double) sumOfSquares / count - mean * mean);
+        double stdDeviation = Math.max(minStdDeviationMs, Math.sqrt(variance));
+        double y = (now - lastHeartBeatTime - mean) / stdDeviation;
+        //the logistic approximation of the cumulative normal distribution
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (y > 0) {
+            return -Math.log10(e / (1 + e));
+        }
+        return -Math.log10(1 - 1 / (1 + e));
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        next = 0;
+        sum = 0;
+        sumOfSquares = 0;
+        lastHeartBeatTime = -1;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.utils;
+
+/**
+ * Choose the size of the batches pushed to a follower. The target grows when the follower lags behind, or the average
+ * round trip time rises well above the minimum of the last few seconds as the requests are queued, and shrinks when the batches sent on
+ * catching up are much smaller than it, to keep the latency low.
+ */
+public class PushBatchSizer {
+
+    /**
+     * Ignore the rtt jitter below this.
+     */
+    private static final long RTT_SLACK_US = 500;
+
+    private final int minSize;
+    private final int maxSize;
+
+    private volatile int targetSize;
+    private final MinRttFilter minRtt = new MinRttFilter();
+    private long avgRttUs = -1;
+
+    public PushBatchSizer(int minSize, int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.max(1, Math.min(minSize, this.maxSize));
+        this.targetSize = this.minSize;
+    }
+
+    /**
+     * @param lagging whether there are entries left to push after the batch
+     */
+    public synchronized void onSend(int batchSize, boolean lagging) {
+        if (lagging) {
+            grow();
+        } else if (batchSize < targetSize / 4) {
+            targetSize = Math.max(minSize, targetSize / 2);
+        }
+    }
+
+    public synchronized void onAck(long rttUs, long nowNs) {
+        long minRttUs = minRtt.update(rttUs, nowNs);
+        avgRttUs = avgRttUs < 0 ? rttUs : (avgRttUs * 7 + rttUs) / 8;
+        if (avgRttUs > 2 * minRttUs + RTT_SLACK_US) {
+            grow();
+        }
+    }
+
+    public synchronized void reset() {
+        targetSize = minSize;
+        minRtt.reset();
+        avgRttUs = -1;
+    }
+
+    private void grow() {
+        targetSize = (int) Math.min(maxSize, targetSize * 2L);
+    }
+
+    public int getTargetSize() {
+        return targetSize;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
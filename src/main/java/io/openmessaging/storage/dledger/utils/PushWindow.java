@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.utils;
+
+/**
+ * Size the window of the push requests in flight to a follower by the bandwidth delay product of its link, twice the
+ * requests acked in the minimum round trip time of the last few seconds. A far follower gets a window deep enough to keep the link busy, and a
+ * near one a shallow window that queues little. The window doubles every round trip while it is the bottleneck.
+ */
+public class PushWindow {
+
+    /**
+     * Measure the ack rate over at least this, to smooth the bursts.
+     */
+    private static final long MIN_SAMPLE_US = 1000;
+
+    private final int minSize;
+    private final int maxSize;
+
+    private volatile int size;
+    private final MinRttFilter minRtt = new MinRttFilter();
+    private long sampleStartNs = -1;
+    private long sampleAcks = 0;
+
+    public PushWindow(int minSize, int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.max(1, Math.min(minSize, this.maxSize));
+        this.size = this.minSize;
+    }
+
+    public synchronized void onAck(long rttUs, long nowNs) {
+        long minRttUs = minRtt.update(Math.max(1, rttUs), nowNs);
+        if (sampleStartNs < 0) {
+            sampleStartNs = nowNs;
+            return;
+        }
+        sampleAcks++;
+        long elapsedUs = (nowNs - sampleStartNs) / 1000;
+        if (elapsedUs < Math.max(minRttUs, MIN_SAMPLE_US)) {
+            return;
+        }
+        long bdp = sampleAcks * minRttUs / elapsedUs;
+        size = (int) Math.max(minSize, Math.min(maxSize, 2 * bdp));
+        sampleStartNs = nowNs;
+        sampleAcks = 0;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Create the executors for the tasks that may block. The virtual threads of Java 21+ are looked up by reflection, so the
+ * code still compiles and runs on Java 8, where the executors fall back to the platform threads.
+ */
+public class ThreadUtils {
+
+    private static Logger logger = LoggerFactory.getLogger(ThreadUtils.class);
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (Throwable ignored) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Create an executor running every task on a new virtual thread if useVirtualThread and the JVM supports it,
+     * otherwise on a cached pool of platform threads. The threads are named as name_N.
+     */
+    public static ExecutorService newBlockingExecutor(String name, boolean useVirtualThread) {
+        if (useVirtualThread) {
+            if (isVirtualThreadSupported()) {
+                try {
+                    Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "_", 1L);
+                    ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+                    return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+                } catch (Throwable t) {
+                    logger.warn("Failed to create the virtual thread executor {}, fall back to the platform threads", name, t);
+                }
+            } else {
+                logger.warn("The virtual threads are not supported by Java {}, {} falls back to the platform threads",
+                    System.getProperty("java.version"), name);
+            }
+        }
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        return Executors.newCachedThreadPool(r -> new Thread(r, name + "_" + threadIndex.incrementAndGet()));
+    }
+}
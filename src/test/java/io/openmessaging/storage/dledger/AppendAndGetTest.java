@@ -16,16 +16,39 @@
 
 package io.openmessaging.storage.dledger;
 
+import com.alibaba.fastjson.JSON;
+import io.netty.channel.ChannelHandlerContext;
 import io.openmessaging.storage.dledger.client.DLedgerClient;
+import io.openmessaging.storage.dledger.client.DLedgerClientRpcNettyService;
+import io.openmessaging.storage.dledger.client.ReadMode;
 import io.openmessaging.storage.dledger.entry.DLedgerEntry;
 import io.openmessaging.storage.dledger.protocol.AppendEntryRequest;
 import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.BatchAppendEntryRequest;
+import io.openmessaging.storage.dledger.protocol.BatchAppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.BatchAppendEntryResponseCoder;
+import io.openmessaging.storage.dledger.protocol.DLedgerRequestCode;
 import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import io.openmessaging.storage.dledger.protocol.GetEntriesRequest;
 import io.openmessaging.storage.dledger.protocol.GetEntriesResponse;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.rocketmq.remoting.netty.NettyClientConfig;
+import org.apache.rocketmq.remoting.netty.NettyRemotingClient;
+import org.apache.rocketmq.remoting.netty.NettyRemotingServer;
+import org.apache.rocketmq.remoting.netty.NettyRequestProcessor;
+import org.apache.rocketmq.remoting.netty.NettyServerConfig;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -161,4 +184,360 @@ public class AppendAndGetTest extends ServerTestHarness {
             Assertions.assertEquals(entry.getPos(), future.get().getPos());
         }
     }
+
+    @Test
+    public void testThreeServerFollowerRead() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchThreeServersInFile(group, peers);
+        DLedgerServer dLedgerServer0 = servers.get(0);
+        DLedgerClient dLedgerClient = launchClient(group, peers);
+        for (int i = 0; i < 10; i++) {
+            AppendEntryResponse appendEntryResponse = dLedgerClient.append(("testThreeServerFollowerRead" + i).getBytes());
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), appendEntryResponse.getCode());
+            Assertions.assertEquals(i, appendEntryResponse.getIndex());
+        }
+
+        //the follower waits until it knows the entry is committed
+        GetEntriesRequest request = new GetEntriesRequest();
+        request.setGroup(group);
+        request.setRemoteId("n0");
+        request.setBeginIndex(9L);
+        request.setFollowerRead(true);
+        request.setMaxWaitMs(2000);
+        GetEntriesResponse getEntriesResponse = dLedgerServer0.handleGet(request).get();
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), getEntriesResponse.getCode());
+        Assertions.assertArrayEquals("testThreeServerFollowerRead9".getBytes(), getEntriesResponse.getEntries().get(0).getBody());
+
+        request.setMinCommittedIndex(100);
+        request.setMaxWaitMs(100);
+        getEntriesResponse = dLedgerServer0.handleGet(request).get();
+        Assertions.assertEquals(DLedgerResponseCode.FOLLOWER_READ_NOT_READY.getCode(), getEntriesResponse.getCode());
+        Assertions.assertEquals("n1", getEntriesResponse.getLeaderId());
+
+        request.setFollowerRead(false);
+        getEntriesResponse = dLedgerServer0.handleGet(request).get();
+        Assertions.assertEquals(DLedgerResponseCode.NOT_LEADER.getCode(), getEntriesResponse.getCode());
+
+        for (ReadMode readMode : ReadMode.values()) {
+            dLedgerClient.setReadMode(readMode);
+            for (int i = 0; i < 10; i++) {
+                getEntriesResponse = dLedgerClient.get(i);
+                Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), getEntriesResponse.getCode());
+                Assertions.assertEquals(1, getEntriesResponse.getEntries().size());
+                Assertions.assertArrayEquals(("testThreeServerFollowerRead" + i).getBytes(), getEntriesResponse.getEntries().get(0).getBody());
+            }
+        }
+
+        dLedgerClient.shutdown();
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testFollowerReadOnReadExecutor() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchThreeServersInFile(group, peers);
+        DLedgerServer leader = waitForLeader(servers, 10000);
+        Assertions.assertNotNull(leader);
+        DLedgerServer follower = servers.get(0) == leader ? servers.get(1) : servers.get(0);
+
+        GetEntriesRequest request = new GetEntriesRequest();
+        request.setGroup(group);
+        request.setRemoteId(follower.getMemberState().getSelfId());
+        request.setBeginIndex(leader.getdLedgerStore().getLedgerEndIndex() + 1);
+        request.setFollowerRead(true);
+        request.setMaxWaitMs(10000);
+        CompletableFuture<GetEntriesResponse> future = follower.handleGet(request);
+        Assertions.assertFalse(future.isDone());
+        //the entry is read on the thread completing the held request, which is not the entry handler
+        CompletableFuture<String> readThread = future.thenApply(response -> Thread.currentThread().getName());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(leader).getCode());
+        String readThreadName = readThread.get(3, TimeUnit.SECONDS);
+        Assertions.assertTrue(readThreadName.startsWith("DLedgerServer-ReadExecutor"), readThreadName);
+        GetEntriesResponse getEntriesResponse = future.get();
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), getEntriesResponse.getCode());
+        Assertions.assertEquals(1, getEntriesResponse.getEntries().size());
+
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testThreeServerGetRange() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchThreeServersInFile(group, peers);
+        DLedgerClient dLedgerClient = launchClient(group, peers);
+        for (int i = 0; i < 10; i++) {
+            AppendEntryResponse appendEntryResponse = dLedgerClient.append(("testThreeServerGetRange" + i).getBytes());
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), appendEntryResponse.getCode());
+        }
+
+        //the followers may return a shorter range until they know the later entries are committed
+        for (ReadMode readMode : ReadMode.values()) {
+            dLedgerClient.setReadMode(readMode);
+            long nextIndex = 2;
+            while (nextIndex < 10) {
+                GetEntriesResponse getEntriesResponse = dLedgerClient.getRange(nextIndex, 20, 0);
+                Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), getEntriesResponse.getCode());
+                Assertions.assertFalse(getEntriesResponse.getEntries().isEmpty());
+                for (DLedgerEntry entry : getEntriesResponse.getEntries()) {
+                    Assertions.assertEquals(nextIndex, entry.getIndex());
+                    Assertions.assertArrayEquals(("testThreeServerGetRange" + nextIndex).getBytes(), entry.getBody());
+                    nextIndex++;
+                }
+            }
+            GetEntriesResponse getEntriesResponse = dLedgerClient.getRange(2, 20, 1);
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), getEntriesResponse.getCode());
+            Assertions.assertEquals(1, getEntriesResponse.getEntries().size());
+        }
+
+        dLedgerClient.setReadMode(ReadMode.LEADER_ONLY);
+        GetEntriesResponse getEntriesResponse = dLedgerClient.getRange(10, 20, 0);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), getEntriesResponse.getCode());
+        Assertions.assertTrue(getEntriesResponse.getEntries().isEmpty());
+
+        dLedgerClient.shutdown();
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testThreeServerSubscribe() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchThreeServersInFile(group, peers);
+        DLedgerClient dLedgerClient = launchClient(group, peers);
+        DLedgerClient subscribeClient = launchClient(group, peers);
+
+        //no entry is committed within the wait time
+        long start = System.currentTimeMillis();
+        GetEntriesResponse getEntriesResponse = subscribeClient.subscribe(0, 300);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), getEntriesResponse.getCode());
+        Assertions.assertTrue(getEntriesResponse.getEntries().isEmpty());
+        Assertions.assertTrue(DLedgerUtils.elapsed(start) >= 300);
+
+        //the held request returns once the entry is committed
+        CompletableFuture<GetEntriesResponse> future = CompletableFuture.supplyAsync(() -> subscribeClient.subscribe(0, 10000));
+        Thread.sleep(200);
+        Assertions.assertFalse(future.isDone());
+        start = System.currentTimeMillis();
+        AppendEntryResponse appendEntryResponse = dLedgerClient.append("testThreeServerSubscribe".getBytes());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), appendEntryResponse.getCode());
+        getEntriesResponse = future.get(3, TimeUnit.SECONDS);
+        Assertions.assertTrue(DLedgerUtils.elapsed(start) < 3000);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), getEntriesResponse.getCode());
+        Assertions.assertEquals(1, getEntriesResponse.getEntries().size());
+        Assertions.assertArrayEquals("testThreeServerSubscribe".getBytes(), getEntriesResponse.getEntries().get(0).getBody());
+
+        dLedgerClient.shutdown();
+        subscribeClient.shutdown();
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubscribeReadOnReadExecutor() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchThreeServersInFile(group, peers);
+        DLedgerServer leader = waitForLeader(servers, 10000);
+        Assertions.assertNotNull(leader);
+
+        GetEntriesRequest request = new GetEntriesRequest();
+        request.setGroup(group);
+        request.setRemoteId(leader.getMemberState().getSelfId());
+        request.setBeginIndex(leader.getdLedgerStore().getLedgerEndIndex() + 1);
+        request.setEndIndex(Long.MAX_VALUE);
+        request.setMaxWaitMs(10000);
+        CompletableFuture<GetEntriesResponse> future = leader.handleGet(request);
+        Assertions.assertFalse(future.isDone());
+        //the range is read on the thread completing the held request, which is not the one committing the entry
+        CompletableFuture<String> readThread = future.thenApply(response -> Thread.currentThread().getName());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(leader).getCode());
+        //wait on the dependent only, a thread waiting on the held request may run its dependents
+        String readThreadName = readThread.get(3, TimeUnit.SECONDS);
+        Assertions.assertTrue(readThreadName.startsWith("DLedgerServer-ReadExecutor"), readThreadName);
+        GetEntriesResponse getEntriesResponse = future.get();
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), getEntriesResponse.getCode());
+        Assertions.assertEquals(1, getEntriesResponse.getEntries().size());
+
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testThreeServerAppendAsync() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchThreeServersInFile(group, peers);
+        DLedgerClient dLedgerClient = launchClient(group, peers);
+        List<CompletableFuture<AppendEntryResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(dLedgerClient.appendAsync(("testThreeServerAppendAsync" + i).getBytes()));
+        }
+        Set<Long> indexes = new HashSet<>();
+        for (int i = 0; i < futures.size(); i++) {
+            AppendEntryResponse appendEntryResponse = futures.get(i).get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), appendEntryResponse.getCode());
+            Assertions.assertTrue(indexes.add(appendEntryResponse.getIndex()));
+            GetEntriesResponse getEntriesResponse = dLedgerClient.get(appendEntryResponse.getIndex());
+            Assertions.assertArrayEquals(("testThreeServerAppendAsync" + i).getBytes(), getEntriesResponse.getEntries().get(0).getBody());
+        }
+        Assertions.assertEquals(0L, (long) Collections.min(indexes));
+        Assertions.assertEquals(199L, (long) Collections.max(indexes));
+
+        dLedgerClient.shutdown();
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testAppendBatcherStartedByAsyncAppend() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchThreeServersInFile(group, peers);
+        long batcherNum = appendBatcherNum();
+        DLedgerClient dLedgerClient = launchClient(group, peers);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), dLedgerClient.append(new byte[128]).getCode());
+        Assertions.assertEquals(batcherNum, appendBatcherNum());
+
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), dLedgerClient.appendAsync(new byte[128]).get(3, TimeUnit.SECONDS).getCode());
+        Assertions.assertEquals(batcherNum + 1, appendBatcherNum());
+
+        dLedgerClient.shutdown();
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    private long appendBatcherNum() {
+        return Thread.getAllStackTraces().keySet().stream().filter(t -> "AppendBatcher".equals(t.getName()) && t.isAlive()).count();
+    }
+
+    @Test
+    public void testThreeServerBatchAppend() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchThreeServersInFile(group, peers);
+        DLedgerClient dLedgerClient = launchClient(group, peers);
+        long nextIndex = 0;
+        for (int i = 0; i < 5; i++) {
+            List<byte[]> bodies = new ArrayList<>();
+            for (int j = 0; j < 10; j++) {
+                bodies.add(("testThreeServerBatchAppend" + (i * 10 + j)).getBytes());
+            }
+            BatchAppendEntryResponse batchResponse = dLedgerClient.batchAppend(bodies);
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), batchResponse.getCode());
+            Assertions.assertEquals(nextIndex, batchResponse.getFirstIndex());
+            Assertions.assertEquals(10, batchResponse.getCount());
+            Assertions.assertEquals(nextIndex + 9, batchResponse.getIndex());
+            for (int j = 0; j < 10; j++) {
+                GetEntriesResponse getEntriesResponse = dLedgerClient.get(nextIndex);
+                DLedgerEntry entry = getEntriesResponse.getEntries().get(0);
+                Assertions.assertArrayEquals(bodies.get(j), entry.getBody());
+                Assertions.assertEquals(entry.getPos(), batchResponse.getPositions()[j]);
+                nextIndex++;
+            }
+        }
+
+        BatchAppendEntryResponse batchResponse = dLedgerClient.batchAppend(new ArrayList<>());
+        Assertions.assertEquals(DLedgerResponseCode.REQUEST_WITH_EMPTY_BODYS.getCode(), batchResponse.getCode());
+        Assertions.assertEquals(0, batchResponse.getCount());
+
+        dLedgerClient.shutdown();
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchAppendMixedFormats() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String addr = "localhost:" + nextPort();
+        DLedgerServer dLedgerServer = launchServer(group, "n0-" + addr, "n0", "n0", DLedgerConfig.FILE);
+        BatchAppendEntryRequest request = new BatchAppendEntryRequest();
+        request.setGroup(group);
+        request.setRemoteId("n0");
+        request.setBatchMsgs(Arrays.asList("a".getBytes(), "b".getBytes()));
+
+        //an older client does not ask for the binary format
+        NettyRemotingClient remotingClient = new NettyRemotingClient(new NettyClientConfig(), null);
+        remotingClient.start();
+        RemotingCommand command = RemotingCommand.createRequestCommand(DLedgerRequestCode.BATCH_APPEND.getCode(), null);
+        command.setBody(JSON.toJSONBytes(request));
+        RemotingCommand responseCommand = remotingClient.invokeSync(addr, command, 3000);
+        Assertions.assertFalse(BatchAppendEntryResponseCoder.isBinary(responseCommand.getExtFields()));
+        AppendEntryResponse response = JSON.parseObject(responseCommand.getBody(), AppendEntryResponse.class);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+        Assertions.assertEquals(1, response.getIndex());
+        command = RemotingCommand.createRequestCommand(DLedgerRequestCode.BATCH_APPEND.getCode(), null);
+        command.setBody(JSON.toJSONBytes(request));
+        command.addExtField(BatchAppendEntryResponseCoder.EXT_FIELD_FORMAT, BatchAppendEntryResponseCoder.FORMAT_BINARY);
+        responseCommand = remotingClient.invokeSync(addr, command, 3000);
+        Assertions.assertTrue(BatchAppendEntryResponseCoder.isBinary(responseCommand.getExtFields()));
+        BatchAppendEntryResponse batchResponse = BatchAppendEntryResponseCoder.decode(responseCommand.getBody());
+        Assertions.assertEquals(2, batchResponse.getFirstIndex());
+        Assertions.assertEquals(2, batchResponse.getCount());
+        remotingClient.shutdown();
+
+        //an older server ignores the ext field and answers the json
+        AtomicBoolean broken = new AtomicBoolean(false);
+        NettyServerConfig serverConfig = new NettyServerConfig();
+        serverConfig.setListenPort(nextPort());
+        NettyRemotingServer oldServer = new NettyRemotingServer(serverConfig, null);
+        oldServer.registerProcessor(DLedgerRequestCode.BATCH_APPEND.getCode(), new NettyRequestProcessor() {
+            @Override
+            public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                RemotingCommand response = RemotingCommand.createResponseCommand(DLedgerResponseCode.SUCCESS.getCode(), null);
+                if (broken.get()) {
+                    response.addExtField(BatchAppendEntryResponseCoder.EXT_FIELD_FORMAT, BatchAppendEntryResponseCoder.FORMAT_BINARY);
+                    response.setBody(new byte[] {1});
+                    return response;
+                }
+                AppendEntryResponse appendEntryResponse = new AppendEntryResponse();
+                appendEntryResponse.setIndex(7);
+                response.setBody(JSON.toJSONBytes(appendEntryResponse));
+                return response;
+            }
+
+            @Override
+            public boolean rejectRequest() {
+                return false;
+            }
+        }, null);
+        oldServer.start();
+        DLedgerClientRpcNettyService clientRpcService = new DLedgerClientRpcNettyService();
+        clientRpcService.updatePeers("n1-localhost:" + serverConfig.getListenPort());
+        clientRpcService.startup();
+        request.setRemoteId("n1");
+        batchResponse = (BatchAppendEntryResponse) clientRpcService.append(request).get(3, TimeUnit.SECONDS);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), batchResponse.getCode());
+        Assertions.assertEquals(7, batchResponse.getIndex());
+        Assertions.assertEquals(0, batchResponse.getCount());
+
+        //an undecodable response fails the future instead of leaving it pending
+        broken.set(true);
+        CompletableFuture<AppendEntryResponse> future = clientRpcService.append(request);
+        Assertions.assertThrows(ExecutionException.class, () -> future.get(3, TimeUnit.SECONDS));
+        clientRpcService.shutdown();
+        oldServer.shutdown();
+        dLedgerServer.shutdown();
+    }
+
+    private List<DLedgerServer> launchThreeServersInFile(String group, String peers) {
+        List<DLedgerServer> servers = new ArrayList<>();
+        servers.add(launchServer(group, peers, "n0", "n1", DLedgerConfig.FILE));
+        servers.add(launchServer(group, peers, "n1", "n1", DLedgerConfig.FILE));
+        servers.add(launchServer(group, peers, "n2", "n1", DLedgerConfig.FILE));
+        return servers;
+    }
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger;
+
+import io.openmessaging.storage.dledger.entry.DLedgerEntry;
+import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.ChangePeersRequest;
+import io.openmessaging.storage.dledger.protocol.ChangePeersResponse;
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import io.openmessaging.storage.dledger.utils.IOUtils;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ChangePeersTest extends ServerTestHarness {
+
+    private ChangePeersResponse changePeers(DLedgerServer leader, ChangePeersRequest.Type type, String peerId,
+        String peerAddr) throws Exception {
+        ChangePeersRequest request = new ChangePeersRequest();
+        request.setGroup(leader.getMemberState().getGroup());
+        request.setRemoteId(leader.getMemberState().getSelfId());
+        request.setType(type);
+        request.setPeerId(peerId);
+        request.setPeerAddr(peerAddr);
+        return leader.handleChangePeers(request).get(3, TimeUnit.SECONDS);
+    }
+
+    private void waitFor(DLedgerServer server, long endIndex, int peerSize) {
+        long start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < 3000
+            && (server.getdLedgerStore().getLedgerEndIndex() < endIndex || server.getMemberState().peerSize() != peerSize)) {
+            DLedgerUtils.sleep(50);
+        }
+        Assertions.assertEquals(endIndex, server.getdLedgerStore().getLedgerEndIndex());
+        Assertions.assertEquals(peerSize, server.getMemberState().peerSize());
+    }
+
+    @Test
+    public void testAddAndRemovePeer() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String n2Addr = "localhost:" + nextPort();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d", nextPort(), nextPort());
+        DLedgerServer dLedgerServer0 = launchServer(group, peers, "n0", "n0", DLedgerConfig.FILE);
+        DLedgerServer dLedgerServer1 = launchServer(group, peers, "n1", "n0", DLedgerConfig.FILE);
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(dLedgerServer0).getCode());
+        }
+
+        DLedgerServer dLedgerServer2 = launchServer(group, peers + ";n2-" + n2Addr, "n2", "n0", DLedgerConfig.FILE);
+        ChangePeersResponse response = changePeers(dLedgerServer0, ChangePeersRequest.Type.ADD, "n2", n2Addr);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+        Assertions.assertEquals(5, response.getConfigIndex());
+        Assertions.assertEquals(3, dLedgerServer0.getMemberState().peerSize());
+        Assertions.assertEquals(DLedgerEntry.CHANNEL_CONFIG, dLedgerServer0.getdLedgerStore().get(5L).getChannel());
+        waitFor(dLedgerServer1, 5, 3);
+        waitFor(dLedgerServer2, 5, 3);
+
+        Assertions.assertEquals(DLedgerResponseCode.UNEXPECTED_ARGUMENT.getCode(),
+            changePeers(dLedgerServer0, ChangePeersRequest.Type.ADD, "n2", n2Addr).getCode());
+        Assertions.assertEquals(DLedgerResponseCode.UNEXPECTED_ARGUMENT.getCode(),
+            changePeers(dLedgerServer0, ChangePeersRequest.Type.REMOVE, "n0", null).getCode());
+
+        //the new peer counts in the quorum
+        dLedgerServer1.shutdown();
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(dLedgerServer0).getCode());
+        response = changePeers(dLedgerServer0, ChangePeersRequest.Type.REMOVE, "n1", null);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+        Assertions.assertEquals(7, response.getConfigIndex());
+        Assertions.assertFalse(dLedgerServer0.getMemberState().isPeerMember("n1"));
+        waitFor(dLedgerServer2, 7, 2);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(dLedgerServer0).getCode());
+
+        //the changed peers take precedence over the static config after restart
+        dLedgerServer0.shutdown();
+        dLedgerServer0 = launchServer(group, peers, "n0", "n0", DLedgerConfig.FILE);
+        Assertions.assertEquals(7, dLedgerServer0.getMemberState().getConfigIndex());
+        Assertions.assertTrue(dLedgerServer0.getMemberState().isPeerMember("n2"));
+        Assertions.assertFalse(dLedgerServer0.getMemberState().isPeerMember("n1"));
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(dLedgerServer0).getCode());
+        dLedgerServer0.shutdown();
+        dLedgerServer2.shutdown();
+    }
+
+    @Test
+    public void testPeersOfLostConfigEntry() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String n2Addr = "localhost:" + nextPort();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d", nextPort(), nextPort());
+        DLedgerServer dLedgerServer0 = launchServer(group, peers, "n0", "n0", DLedgerConfig.FILE);
+        DLedgerServer dLedgerServer1 = launchServer(group, peers, "n1", "n0", DLedgerConfig.FILE);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(dLedgerServer0).getCode());
+        ChangePeersResponse response = changePeers(dLedgerServer0, ChangePeersRequest.Type.ADD, "n2", n2Addr);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+        Assertions.assertEquals(1, response.getConfigIndex());
+        dLedgerServer0.shutdown();
+        dLedgerServer1.shutdown();
+
+        //the peers of a removal at index 2 were persisted, but the entry was lost with the unflushed tail
+        String peersFile = dLedgerServer0.getdLedgerConfig().getDefaultPath() + File.separator + MemberState.PEERS_PERSIST_FILE;
+        Properties properties = IOUtils.string2Properties(IOUtils.file2String(peersFile));
+        properties.put(MemberState.PEERS_PERSIST_KEY_PREV_PEERS, properties.getProperty(MemberState.PEERS_PERSIST_KEY_PEERS));
+        properties.put(MemberState.PEERS_PERSIST_KEY_PREV_CONFIG_INDEX, "1");
+        properties.put(MemberState.PEERS_PERSIST_KEY_PEERS, peers.split(";")[0] + ";n2-" + n2Addr);
+        properties.put(MemberState.PEERS_PERSIST_KEY_CONFIG_INDEX, "2");
+        IOUtils.string2File(IOUtils.properties2String(properties), peersFile);
+
+        dLedgerServer0 = launchServer(group, peers, "n0", "n0", DLedgerConfig.FILE);
+        Assertions.assertEquals(1, dLedgerServer0.getdLedgerStore().getLedgerEndIndex());
+        Assertions.assertEquals(1, dLedgerServer0.getMemberState().getConfigIndex());
+        Assertions.assertEquals(3, dLedgerServer0.getMemberState().peerSize());
+        Assertions.assertTrue(dLedgerServer0.getMemberState().isPeerMember("n1"));
+        dLedgerServer0.shutdown();
+    }
+
+    @Test
+    public void testChangeAfterLeaderChange() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = new ArrayList<>();
+        for (String selfId : new String[] {"n0", "n1", "n2"}) {
+            servers.add(launchServer(group, peers, selfId, DLedgerConfig.FILE, config -> config.setHeartBeatTimeIntervalMs(200)));
+        }
+        DLedgerServer leader = waitForLeader(servers, 10000);
+        Assertions.assertNotNull(leader);
+        String followerId = servers.get(0) == leader ? "n1" : "n0";
+        Assertions.assertEquals(DLedgerResponseCode.PEERS_CHANGING.getCode(),
+            changePeers(leader, ChangePeersRequest.Type.REMOVE, followerId, null).getCode());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(leader).getCode());
+
+        //the new leader has only committed the entries of the old term
+        String oldLeaderId = leader.getMemberState().getSelfId();
+        leader.shutdown();
+        servers.remove(leader);
+        leader = waitForLeader(servers, 10000);
+        Assertions.assertNotNull(leader);
+        Assertions.assertEquals(DLedgerResponseCode.PEERS_CHANGING.getCode(),
+            changePeers(leader, ChangePeersRequest.Type.REMOVE, oldLeaderId, null).getCode());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(leader).getCode());
+        ChangePeersResponse response = changePeers(leader, ChangePeersRequest.Type.REMOVE, oldLeaderId, null);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+        Assertions.assertEquals(2, leader.getMemberState().peerSize());
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testLearner() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d", nextPort(), nextPort());
+        String learners = String.format("n2-localhost:%d", nextPort());
+        DLedgerServer dLedgerServer0 = launchServer(group, peers, learners, "n0", "n0", DLedgerConfig.FILE);
+        DLedgerServer dLedgerServer1 = launchServer(group, peers, learners, "n1", "n0", DLedgerConfig.FILE);
+        DLedgerServer dLedgerServer2 = launchServer(group, peers, learners, "n2", "n0", DLedgerConfig.FILE);
+        Assertions.assertTrue(dLedgerServer2.getMemberState().isLearner());
+        Assertions.assertEquals(2, dLedgerServer0.getMemberState().peerSize());
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(dLedgerServer0).getCode());
+        }
+        waitFor(dLedgerServer2, 4, 2);
+
+        //the learner does not count in the quorum
+        dLedgerServer1.shutdown();
+        CompletableFuture<AppendEntryResponse> future = appendAsync(dLedgerServer0);
+        Thread.sleep(500);
+        Assertions.assertFalse(future.isDone());
+        Assertions.assertEquals(5, dLedgerServer2.getdLedgerStore().getLedgerEndIndex());
+
+        //once promoted, the learner makes the majority with the leader
+        ChangePeersResponse response = changePeers(dLedgerServer0, ChangePeersRequest.Type.PROMOTE, "n2", null);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+        Assertions.assertEquals("", response.getLearners());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), future.get(3, TimeUnit.SECONDS).getCode());
+        waitFor(dLedgerServer2, 6, 3);
+        Assertions.assertFalse(dLedgerServer2.getMemberState().isLearner());
+        dLedgerServer0.shutdown();
+        dLedgerServer2.shutdown();
+    }
+
+    @Test
+    public void testLearnerFollowsElectedLeader() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d", nextPort(), nextPort());
+        String learners = String.format("n2-localhost:%d", nextPort());
+        List<DLedgerServer> servers = new ArrayList<>();
+        for (String selfId : new String[] {"n0", "n1", "n2"}) {
+            servers.add(launchServer(group, peers, selfId, DLedgerConfig.MEMORY, config -> config.setLearners(learners)));
+        }
+        DLedgerServer learner = servers.get(2);
+        long start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < 5000 && !learner.getMemberState().isFollower()) {
+            DLedgerUtils.sleep(50);
+        }
+        Assertions.assertTrue(learner.getMemberState().isFollower());
+        DLedgerServer leader = servers.get(0).getMemberState().isLeader() ? servers.get(0) : servers.get(1);
+        Assertions.assertTrue(leader.getMemberState().isLeader());
+        Assertions.assertEquals(leader.getMemberState().getSelfId(), learner.getMemberState().getLeaderId());
+        Assertions.assertEquals(leader.getMemberState().currTerm(), learner.getMemberState().currTerm());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(leader).getCode());
+        waitFor(learner, 0, 2);
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+}
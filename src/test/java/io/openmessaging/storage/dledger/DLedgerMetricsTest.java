@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger;
+
+import io.openmessaging.storage.dledger.client.DLedgerClient;
+import io.openmessaging.storage.dledger.metrics.AppendTracer;
+import io.openmessaging.storage.dledger.metrics.DLedgerMetrics;
+import io.openmessaging.storage.dledger.metrics.LatencyHistogram;
+import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import io.openmessaging.storage.dledger.util.FileTestUtil;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.io.File;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.Attribute;
+import javax.management.AttributeNotFoundException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DLedgerMetricsTest extends ServerTestHarness {
+
+    private synchronized DLedgerServer launchServerWithMetrics(String group, String peers, String selfId, int traceSampleRate) {
+        DLedgerConfig config = new DLedgerConfig();
+        config.setStoreBaseDir(FileTestUtil.TEST_BASE + File.separator + group);
+        config.group(group).selfId(selfId).peers(peers);
+        config.setStoreType(DLedgerConfig.FILE);
+        config.setMappedFileSizeForEntryData(1024 * 1024);
+        config.setEnableDiskForceClean(false);
+        config.setMetricsPort(0);
+        config.setTraceSampleRate(traceSampleRate);
+        config.setSlowTraceThresholdMs(0);
+        DLedgerServer dLedgerServer = new DLedgerServer(config);
+        dLedgerServer.startup();
+        bases.add(config.getDefaultPath());
+        return dLedgerServer;
+    }
+
+    private String fetch(DLedgerServer server, String path) throws Exception {
+        URL url = new URL("http://localhost:" + server.getMetricsExporter().getHttpPort() + path);
+        try (InputStream in = url.openStream()) {
+            byte[] body = new byte[1024 * 1024];
+            int size = 0;
+            int read;
+            while ((read = in.read(body, size, body.length - size)) > 0) {
+                size += read;
+            }
+            return new String(body, 0, size, StandardCharsets.UTF_8);
+        }
+    }
+
+    private DLedgerServer launchThreeServers(String group, String peers, int traceSampleRate, List<DLedgerServer> servers) throws Exception {
+        servers.add(launchServerWithMetrics(group, peers, "n0", traceSampleRate));
+        servers.add(launchServerWithMetrics(group, peers, "n1", traceSampleRate));
+        servers.add(launchServerWithMetrics(group, peers, "n2", traceSampleRate));
+        DLedgerServer leaderServer = null;
+        long start = System.currentTimeMillis();
+        while (leaderServer == null && DLedgerUtils.elapsed(start) < 10000) {
+            leaderServer = parseServers(servers, new AtomicInteger(0), new AtomicInteger(0));
+            Thread.sleep(10);
+        }
+        return leaderServer;
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(10);
+        }
+        histogram.record(3000);
+        histogram.record(Long.MAX_VALUE / 2);
+        Assertions.assertEquals(100, histogram.getCount());
+        Assertions.assertEquals(98, histogram.getBucketCount(0));
+        Assertions.assertEquals(1, histogram.getBucketCount(LatencyHistogram.BUCKET_BOUNDS_US.length));
+        Assertions.assertEquals(50, histogram.getPercentileUpperBoundUs(50));
+        Assertions.assertEquals(5000, histogram.getPercentileUpperBoundUs(99));
+        Assertions.assertEquals(Long.MAX_VALUE, histogram.getPercentileUpperBoundUs(100));
+
+        DLedgerMetrics metrics = new DLedgerMetrics("g", "n0");
+        metrics.histogram("test_latency_microseconds", "test", "peer", "n1").record(3000);
+        metrics.counter("test_total", "test").add(3);
+        metrics.gauge("test_gauge", "test", () -> 7, "peer", "n\"1");
+        StringBuilder builder = new StringBuilder();
+        metrics.writePrometheus(builder);
+        String text = builder.toString();
+        Assertions.assertTrue(text.contains("# TYPE test_latency_microseconds histogram\n"));
+        Assertions.assertTrue(text.contains("test_latency_microseconds_bucket{group=\"g\",id=\"n0\",peer=\"n1\",le=\"2500\"} 0\n"));
+        Assertions.assertTrue(text.contains("test_latency_microseconds_bucket{group=\"g\",id=\"n0\",peer=\"n1\",le=\"5000\"} 1\n"));
+        Assertions.assertTrue(text.contains("test_latency_microseconds_bucket{group=\"g\",id=\"n0\",peer=\"n1\",le=\"+Inf\"} 1\n"));
+        Assertions.assertTrue(text.contains("test_latency_microseconds_sum{group=\"g\",id=\"n0\",peer=\"n1\"} 3000\n"));
+        Assertions.assertTrue(text.contains("test_total{group=\"g\",id=\"n0\"} 3\n"));
+        Assertions.assertTrue(text.contains("test_gauge{group=\"g\",id=\"n0\",peer=\"n\\\"1\"} 7\n"));
+        Assertions.assertEquals(3L, metrics.snapshot().get("test_total{group=\"g\",id=\"n0\"}"));
+    }
+
+    @Test
+    public void testThreeServerMetrics() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = new ArrayList<>();
+        DLedgerServer leaderServer = launchThreeServers(group, peers, 0, servers);
+        Assertions.assertNotNull(leaderServer);
+
+        DLedgerClient dLedgerClient = launchClient(group, peers);
+        for (int i = 0; i < 10; i++) {
+            AppendEntryResponse appendEntryResponse = dLedgerClient.append(new byte[128]);
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), appendEntryResponse.getCode());
+        }
+
+        DLedgerMetrics metrics = leaderServer.getMetrics();
+        Assertions.assertEquals(10, metrics.getLeaderAppendLatency().getCount());
+        Assertions.assertTrue(metrics.getQuorumAckLatency().getCount() > 0);
+        Assertions.assertEquals(1, metrics.getElectionDuration().getCount());
+        Assertions.assertTrue(metrics.getVoteRequestsSent().sum() > 0);
+
+        String text = fetch(leaderServer, "/metrics");
+        String leaderLabels = String.format("group=\"%s\",id=\"%s\"", group, leaderServer.getMemberState().getSelfId());
+        Assertions.assertTrue(text.contains(DLedgerMetrics.LEADER_APPEND_LATENCY + "_count{" + leaderLabels + "} 10\n"), text);
+        Assertions.assertTrue(text.contains(DLedgerMetrics.FLUSH_LATENCY + "_count{"), text);
+        Assertions.assertTrue(text.contains(DLedgerMetrics.MMAP_ROLL_OVER_LATENCY + "_count{" + leaderLabels + ",file=\"data\"}"), text);
+        for (DLedgerServer server : servers) {
+            String peerId = server.getMemberState().getSelfId();
+            if (server != leaderServer) {
+                Assertions.assertTrue(text.contains(DLedgerMetrics.PUSH_RTT + "_count{" + leaderLabels + ",peer=\"" + peerId + "\"}"), text);
+                Assertions.assertTrue(text.contains(DLedgerMetrics.REPLICATION_LAG_ENTRIES + "{" + leaderLabels + ",peer=\"" + peerId + "\"}"), text);
+                Assertions.assertTrue(server.getMetrics().getHeartbeatsReceived().sum() > 0);
+            }
+        }
+
+        ObjectName objectName = new ObjectName(String.format("io.openmessaging.storage.dledger:type=DLedgerMetrics,group=%s,id=%s",
+            ObjectName.quote(group), ObjectName.quote(leaderServer.getMemberState().getSelfId())));
+        Object count = ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, DLedgerMetrics.LEADER_APPEND_LATENCY + "_count{" + leaderLabels + "}");
+        Assertions.assertEquals(10L, count);
+        //read only, with the exceptions of the jmx contract
+        Attribute attribute = new Attribute(DLedgerMetrics.LEADER_APPEND_LATENCY + "_count{" + leaderLabels + "}", 0L);
+        Assertions.assertThrows(AttributeNotFoundException.class, () -> ManagementFactory.getPlatformMBeanServer().setAttribute(objectName, attribute));
+        Assertions.assertThrows(ReflectionException.class, () -> ManagementFactory.getPlatformMBeanServer().invoke(objectName, "reset", null, null));
+
+        dLedgerClient.shutdown();
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+        Assertions.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+
+    @Test
+    public void testThreeServerAppendTrace() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = new ArrayList<>();
+        DLedgerServer leaderServer = launchThreeServers(group, peers, 1, servers);
+        Assertions.assertNotNull(leaderServer);
+
+        DLedgerClient dLedgerClient = launchClient(group, peers);
+        for (int i = 0; i < 10; i++) {
+            AppendEntryResponse appendEntryResponse = dLedgerClient.append(new byte[128]);
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), appendEntryResponse.getCode());
+        }
+
+        DLedgerMetrics metrics = leaderServer.getMetrics();
+        String leaderLabels = String.format("group=\"%s\",id=\"%s\"", group, leaderServer.getMemberState().getSelfId());
+        String stage = AppendTracer.APPEND_TRACE_STAGE + "_count{" + leaderLabels + ",stage=\"%s\"%s}";
+        long start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < 3000 && !Long.valueOf(10).equals(metrics.snapshot().get(String.format(stage, "total", "")))) {
+            Thread.sleep(10);
+        }
+        for (String name : new String[] {"decode", "lock_wait", "store_write", "quorum", "response_write", "total"}) {
+            Assertions.assertEquals(10L, metrics.snapshot().get(String.format(stage, name, "")), name);
+        }
+        for (DLedgerServer server : servers) {
+            if (server != leaderServer) {
+                String peer = ",peer=\"" + server.getMemberState().getSelfId() + "\"";
+                start = System.currentTimeMillis();
+                while (DLedgerUtils.elapsed(start) < 3000 && !Long.valueOf(10).equals(metrics.snapshot().get(String.format(stage, "replicate", peer)))) {
+                    Thread.sleep(10);
+                }
+                Assertions.assertEquals(10L, metrics.snapshot().get(String.format(stage, "replicate", peer)));
+                Assertions.assertEquals(10L, metrics.snapshot().get(String.format(stage, "push_rtt", peer)));
+            }
+        }
+
+        String text = fetch(leaderServer, "/trace");
+        Assertions.assertTrue(text.contains("lock_wait"), text);
+        Assertions.assertTrue(text.contains("index=9 total="), text);
+
+        dLedgerClient.shutdown();
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger;
+
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measure the time to a new leader when the leader crashes.
+ */
+public class FailoverTest extends ServerTestHarness {
+
+    private DLedgerServer launchAdaptiveServer(String group, String peers, String selfId) {
+        return launchServer(group, peers, selfId, DLedgerConfig.MEMORY, config -> {
+            config.setHeartBeatTimeIntervalMs(100);
+            config.setMaxHeartBeatLeak(10);
+            config.setEnableAdaptiveElection(true);
+        });
+    }
+
+    @Test
+    public void testFailoverOnLeaderCrash() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = new ArrayList<>();
+        servers.add(launchAdaptiveServer(group, peers, "n0"));
+        servers.add(launchAdaptiveServer(group, peers, "n1"));
+        servers.add(launchAdaptiveServer(group, peers, "n2"));
+        DLedgerServer leader = waitForLeader(servers, 5000);
+        Assertions.assertNotNull(leader);
+
+        //no false suspicion while the leader is alive
+        long term = leader.getMemberState().currTerm();
+        Thread.sleep(2000);
+        Assertions.assertTrue(leader.getMemberState().isLeader());
+        Assertions.assertEquals(term, leader.getMemberState().currTerm());
+
+        List<Long> failoverTimes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            //let the followers learn the heartbeat intervals of the leader
+            Thread.sleep(1000);
+            String crashedId = leader.getMemberState().getSelfId();
+            leader.shutdown();
+            long crashTime = System.currentTimeMillis();
+            servers.remove(leader);
+            leader = waitForLeader(servers, 5000);
+            Assertions.assertNotNull(leader);
+            failoverTimes.add(DLedgerUtils.elapsed(crashTime));
+
+            servers.add(launchAdaptiveServer(group, peers, crashedId));
+            leader = waitForLeader(servers, 5000);
+            Assertions.assertNotNull(leader);
+        }
+        for (long failoverTime : failoverTimes) {
+            Assertions.assertTrue(failoverTime < 1000, "failover times " + failoverTimes);
+        }
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger;
+
+import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FlexibleQuorumTest extends ServerTestHarness {
+
+    private DLedgerServer launchFlexibleServer(String group, String peers, String selfId) {
+        return launchServer(group, peers, selfId, DLedgerConfig.FILE, config -> {
+            config.setHeartBeatTimeIntervalMs(200);
+            config.setWriteQuorumSize(2);
+        });
+    }
+
+    @Test
+    public void testQuorumSizes() {
+        String group = UUID.randomUUID().toString();
+        String peers = "n0-localhost:10911;n1-localhost:10912;n2-localhost:10913;n3-localhost:10914;n4-localhost:10915";
+        DLedgerConfig config = createConfig(group, peers, "n0", DLedgerConfig.FILE);
+        MemberState memberState = new MemberState(config);
+        Assertions.assertEquals(3, memberState.getWriteQuorumSize());
+        Assertions.assertEquals(3, memberState.getElectionQuorumSize());
+
+        config.setWriteQuorumSize(2);
+        memberState = new MemberState(config);
+        Assertions.assertEquals(2, memberState.getWriteQuorumSize());
+        Assertions.assertEquals(4, memberState.getElectionQuorumSize());
+        Assertions.assertTrue(memberState.isWriteQuorum(2));
+        Assertions.assertFalse(memberState.isElectionQuorum(3));
+
+        config.setElectionQuorumSize(5);
+        Assertions.assertEquals(5, new MemberState(config).getElectionQuorumSize());
+        config.setElectionQuorumSize(3);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MemberState(config));
+        config.setWriteQuorumSize(4);
+        config.setElectionQuorumSize(2);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MemberState(config));
+        config.setWriteQuorumSize(6);
+        config.setElectionQuorumSize(0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MemberState(config));
+    }
+
+    @Test
+    public void testNoCommittedEntryLostWithSmallWriteQuorum() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d;n3-localhost:%d;n4-localhost:%d",
+            nextPort(), nextPort(), nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            servers.add(launchFlexibleServer(group, peers, "n" + i));
+        }
+        DLedgerServer leader = waitForLeader(servers, 10000);
+        Assertions.assertNotNull(leader);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(leader).getCode());
+
+        //the leader and a single follower are a write quorum
+        List<String> staleIds = new ArrayList<>();
+        DLedgerServer survivor = null;
+        for (DLedgerServer server : servers) {
+            if (server == leader) {
+                continue;
+            }
+            if (survivor == null) {
+                survivor = server;
+            } else {
+                staleIds.add(server.getMemberState().getSelfId());
+                server.shutdown();
+            }
+        }
+        long lastIndex = -1;
+        for (int i = 0; i < 10; i++) {
+            AppendEntryResponse response = append(leader);
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+            lastIndex = response.getIndex();
+        }
+        Thread.sleep(1000);
+        Assertions.assertTrue(leader.getMemberState().isLeader());
+
+        //the stale peers are a majority but not an election quorum, electing one of them would lose the entries
+        String survivorId = survivor.getMemberState().getSelfId();
+        leader.shutdown();
+        survivor.shutdown();
+        servers.clear();
+        for (String staleId : staleIds) {
+            servers.add(launchFlexibleServer(group, peers, staleId));
+        }
+        Thread.sleep(3000);
+        for (DLedgerServer server : servers) {
+            Assertions.assertFalse(server.getMemberState().isLeader());
+        }
+
+        //only the survivor has all the committed entries, so it must win
+        survivor = launchFlexibleServer(group, peers, survivorId);
+        servers.add(survivor);
+        DLedgerServer newLeader = waitForLeader(servers, 10000);
+        Assertions.assertNotNull(newLeader);
+        Assertions.assertSame(survivor, newLeader);
+        Assertions.assertTrue(newLeader.getdLedgerStore().getLedgerEndIndex() >= lastIndex);
+        AppendEntryResponse response = append(newLeader);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+        Assertions.assertTrue(response.getIndex() > lastIndex);
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+}
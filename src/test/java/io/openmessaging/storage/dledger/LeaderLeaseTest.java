@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger;
+
+import io.openmessaging.storage.dledger.client.DLedgerClient;
+import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import io.openmessaging.storage.dledger.protocol.GetEntriesResponse;
+import io.openmessaging.storage.dledger.protocol.LeadershipTransferRequest;
+import io.openmessaging.storage.dledger.protocol.LeadershipTransferResponse;
+import io.openmessaging.storage.dledger.protocol.VoteRequest;
+import io.openmessaging.storage.dledger.protocol.VoteResponse;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LeaderLeaseTest extends ServerTestHarness {
+
+    private static final int HEART_BEAT_INTERVAL_MS = 200;
+    private static final int MAX_CLOCK_DRIFT_MS = 100;
+
+    private List<DLedgerServer> launchLeaseServers(String group, String peers) {
+        List<DLedgerServer> servers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            servers.add(launchServer(group, peers, "n" + i, DLedgerConfig.MEMORY, config -> {
+                config.setHeartBeatTimeIntervalMs(HEART_BEAT_INTERVAL_MS);
+                config.setEnableLeaderLease(true);
+                config.setMaxClockDriftMs(MAX_CLOCK_DRIFT_MS);
+            }));
+        }
+        return servers;
+    }
+
+    private DLedgerServer waitForLeaseHolder(List<DLedgerServer> servers) throws Exception {
+        DLedgerServer leaderServer = waitForLeader(servers, 10000);
+        Assertions.assertNotNull(leaderServer);
+        long start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < 3000 && !leaderServer.getdLedgerLeaderElector().isLeaderLeaseValid()) {
+            Thread.sleep(5);
+        }
+        Assertions.assertTrue(leaderServer.getdLedgerLeaderElector().isLeaderLeaseValid());
+        return leaderServer;
+    }
+
+    @Test
+    public void testLeaseRead() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchLeaseServers(group, peers);
+        DLedgerServer leaderServer = waitForLeaseHolder(servers);
+        Assertions.assertNotNull(leaderServer);
+        Assertions.assertEquals(leaderServer.getdLedgerLeaderElector().getLeaderLeaseTimeMs(), 3 * HEART_BEAT_INTERVAL_MS - MAX_CLOCK_DRIFT_MS);
+
+        DLedgerClient dLedgerClient = launchClient(group, peers);
+        AppendEntryResponse appendEntryResponse = dLedgerClient.append("HelloLease".getBytes());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), appendEntryResponse.getCode());
+        GetEntriesResponse getEntriesResponse = dLedgerClient.get(appendEntryResponse.getIndex());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), getEntriesResponse.getCode());
+        Assertions.assertEquals(1, getEntriesResponse.getEntries().size());
+        Assertions.assertArrayEquals("HelloLease".getBytes(), getEntriesResponse.getEntries().get(0).getBody());
+
+        dLedgerClient.shutdown();
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testFollowerRejectVoteWithinLease() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchLeaseServers(group, peers);
+        DLedgerServer leaderServer = waitForLeaseHolder(servers);
+        Assertions.assertNotNull(leaderServer);
+
+        List<DLedgerServer> followers = new ArrayList<>(servers);
+        followers.remove(leaderServer);
+        MemberState follower = followers.get(0).getMemberState();
+        long term = follower.currTerm();
+        VoteRequest voteRequest = new VoteRequest();
+        voteRequest.setGroup(group);
+        voteRequest.setRemoteId(follower.getSelfId());
+        voteRequest.setLeaderId(followers.get(1).getMemberState().getSelfId());
+        voteRequest.setTerm(term + 1);
+        voteRequest.setLedgerEndTerm(term + 1);
+        voteRequest.setLedgerEndIndex(1000);
+        VoteResponse voteResponse = followers.get(0).handleVote(voteRequest).get();
+        Assertions.assertEquals(VoteResponse.RESULT.REJECT_LEADER_LEASE, voteResponse.getVoteResult());
+        Assertions.assertEquals(term, follower.currTerm());
+        Assertions.assertTrue(follower.isFollower());
+        Assertions.assertTrue(leaderServer.getMemberState().isLeader());
+
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testLeaseExpireBeforeNewLeaderElected() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchLeaseServers(group, peers);
+        DLedgerServer leaderServer = waitForLeaseHolder(servers);
+        Assertions.assertNotNull(leaderServer);
+
+        List<DLedgerServer> followers = new ArrayList<>(servers);
+        followers.remove(leaderServer);
+        for (DLedgerServer follower : followers) {
+            simulatePartition(leaderServer, follower);
+        }
+
+        long leaseExpiredTime = -1;
+        long newLeaderTime = -1;
+        long start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < 10000 && newLeaderTime == -1) {
+            boolean hasNewLeader = followers.get(0).getMemberState().isLeader() || followers.get(1).getMemberState().isLeader();
+            boolean leaseValid = leaderServer.getdLedgerLeaderElector().isLeaderLeaseValid();
+            Assertions.assertFalse(hasNewLeader && leaseValid, "the old leader still holds the lease when the new leader is elected");
+            if (!leaseValid && leaseExpiredTime == -1) {
+                leaseExpiredTime = System.currentTimeMillis();
+            }
+            if (hasNewLeader) {
+                newLeaderTime = System.currentTimeMillis();
+            }
+            Thread.sleep(5);
+        }
+        Assertions.assertTrue(leaseExpiredTime > 0);
+        Assertions.assertTrue(newLeaderTime > 0);
+        //the followers may run faster than the leader by the tolerated clock drift, without breaking the lease
+        Assertions.assertTrue(newLeaderTime - leaseExpiredTime >= MAX_CLOCK_DRIFT_MS / 2,
+            String.format("lease expired at %d but new leader elected at %d", leaseExpiredTime, newLeaderTime));
+
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testLeaseGivenUpWhenTakeLeadershipResponseLost() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchLeaseServers(group, peers);
+        DLedgerServer leaderServer = waitForLeaseHolder(servers);
+        Assertions.assertNotNull(leaderServer);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(leaderServer).getCode());
+
+        List<DLedgerServer> followers = new ArrayList<>(servers);
+        followers.remove(leaderServer);
+        DLedgerServer transferee = followers.get(0);
+        long start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < 3000 && transferee.getMemberState().getLedgerEndIndex() < leaderServer.getMemberState().getLedgerEndIndex()) {
+            Thread.sleep(5);
+        }
+        Assertions.assertEquals(leaderServer.getMemberState().getLedgerEndIndex(), transferee.getMemberState().getLedgerEndIndex());
+
+        //the leader hears from nobody in the new term, and the take leadership command never gets answered
+        MemberState leaderState = leaderServer.getMemberState();
+        String leaderId = leaderState.getSelfId();
+        String transfereeId = transferee.getMemberState().getSelfId();
+        long term = leaderState.currTerm();
+        for (DLedgerServer follower : followers) {
+            leaderState.getPeerMap().put(follower.getMemberState().getSelfId(), null);
+        }
+        transferee.getMemberState().getPeerMap().put(leaderId, null);
+
+        LeadershipTransferRequest request = new LeadershipTransferRequest();
+        request.setGroup(group);
+        request.setRemoteId(leaderId);
+        request.setTransferId(leaderId);
+        request.setTransfereeId(transfereeId);
+        request.setTerm(term);
+        LeadershipTransferResponse response = leaderServer.handleLeadershipTransfer(request).get(3, TimeUnit.SECONDS);
+        Assertions.assertNotEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+
+        //the transferee takes the leadership with the command the leader sent before the answer was lost
+        LeadershipTransferRequest takeLeadershipRequest = new LeadershipTransferRequest();
+        takeLeadershipRequest.setGroup(group);
+        takeLeadershipRequest.setLeaderId(leaderId);
+        takeLeadershipRequest.setLocalId(leaderId);
+        takeLeadershipRequest.setRemoteId(transfereeId);
+        takeLeadershipRequest.setTerm(term);
+        takeLeadershipRequest.setTakeLeadershipLedgerIndex(leaderState.getLedgerEndIndex());
+        takeLeadershipRequest.setTransferId(leaderId);
+        takeLeadershipRequest.setTransfereeId(transfereeId);
+        response = transferee.handleLeadershipTransfer(takeLeadershipRequest).get(3, TimeUnit.SECONDS);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+        Assertions.assertTrue(transferee.getMemberState().isLeader());
+        Assertions.assertEquals(term + 1, transferee.getMemberState().currTerm());
+
+        Assertions.assertTrue(leaderState.isLeader());
+        Assertions.assertEquals(term, leaderState.currTerm());
+        Assertions.assertFalse(leaderServer.getdLedgerLeaderElector().isLeaderLeaseValid());
+
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger;
+
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import io.openmessaging.storage.dledger.protocol.LeadershipTransferRequest;
+import io.openmessaging.storage.dledger.protocol.LeadershipTransferResponse;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LeadershipTransferTest extends ServerTestHarness {
+
+    private DLedgerServer launchTransferServer(String group, String peers, String selfId) {
+        return launchServer(group, peers, selfId, DLedgerConfig.MEMORY, config -> config.setLeadershipTransferWaitTimeout(500));
+    }
+
+    private LeadershipTransferResponse transfer(DLedgerServer leader, String transfereeId) throws Exception {
+        LeadershipTransferRequest request = new LeadershipTransferRequest();
+        request.setGroup(leader.getMemberState().getGroup());
+        request.setRemoteId(leader.getMemberState().getSelfId());
+        request.setTransferId(leader.getMemberState().getSelfId());
+        request.setTransfereeId(transfereeId);
+        request.setTerm(leader.getMemberState().currTerm());
+        return leader.handleLeadershipTransfer(request).get(3, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testTransferWithPendingEntries() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            servers.add(launchTransferServer(group, peers, "n" + i));
+        }
+        DLedgerServer leader = waitForLeader(servers, 10000);
+        Assertions.assertNotNull(leader);
+        DLedgerServer transferee = servers.get(0) == leader ? servers.get(1) : servers.get(0);
+        long term = leader.getMemberState().currTerm();
+
+        //the transferee is caught up with the entries not yet acked
+        for (int i = 0; i < 500; i++) {
+            appendAsync(leader);
+        }
+        long ledgerEndIndex = leader.getdLedgerStore().getLedgerEndIndex();
+        long start = System.currentTimeMillis();
+        LeadershipTransferResponse response = transfer(leader, transferee.getMemberState().getSelfId());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+        Assertions.assertTrue(transferee.getMemberState().isLeader());
+        Assertions.assertTrue(transferee.getMemberState().currTerm() > term);
+        Assertions.assertTrue(transferee.getdLedgerStore().getLedgerEndIndex() >= ledgerEndIndex);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(transferee).getCode());
+        //the pause includes pushing the pending entries to the transferee
+        long unavailableMs = DLedgerUtils.elapsed(start);
+        Assertions.assertTrue(unavailableMs < 1000, "unavailable for " + unavailableMs + "ms");
+        Assertions.assertNull(leader.getMemberState().getTransferee());
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testTransferPausesAppendsBriefly() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            servers.add(launchTransferServer(group, peers, "n" + i));
+        }
+        DLedgerServer leader = waitForLeader(servers, 10000);
+        Assertions.assertNotNull(leader);
+        List<Long> pausedMs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(leader).getCode());
+            DLedgerServer transferee = servers.get((servers.indexOf(leader) + 1) % servers.size());
+            //a planned move, with the transferee caught up
+            long start = System.currentTimeMillis();
+            while (transferee.getdLedgerStore().getLedgerEndIndex() < leader.getdLedgerStore().getLedgerEndIndex() && DLedgerUtils.elapsed(start) < 3000) {
+                Thread.sleep(1);
+            }
+            //the appends are paused from the transfer request until the new leader acks one
+            long pauseStartNs = System.nanoTime();
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), transfer(leader, transferee.getMemberState().getSelfId()).getCode());
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(transferee).getCode());
+            pausedMs.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pauseStartNs));
+            leader = transferee;
+        }
+        Collections.sort(pausedMs);
+        Assertions.assertTrue(pausedMs.get(pausedMs.size() / 2) < 100, "paused for " + pausedMs + "ms");
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testTransferTimeout() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            servers.add(launchTransferServer(group, peers, "n" + i));
+        }
+        DLedgerServer leader = waitForLeader(servers, 10000);
+        Assertions.assertNotNull(leader);
+        DLedgerServer transferee = servers.get(0) == leader ? servers.get(1) : servers.get(0);
+        transferee.shutdown();
+        servers.remove(transferee);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(leader).getCode());
+
+        //the transferee never catches up, the appends are accepted again after the budget
+        long start = System.currentTimeMillis();
+        LeadershipTransferResponse response = transfer(leader, transferee.getMemberState().getSelfId());
+        Assertions.assertEquals(DLedgerResponseCode.TAKE_LEADERSHIP_FAILED.getCode(), response.getCode());
+        Assertions.assertTrue(DLedgerUtils.elapsed(start) < 1500);
+        Assertions.assertTrue(leader.getMemberState().isLeader());
+        Assertions.assertNull(leader.getMemberState().getTransferee());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(leader).getCode());
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+}
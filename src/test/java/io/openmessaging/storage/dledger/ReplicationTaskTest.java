@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger;
+
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ReplicationTaskTest {
+
+    private static Logger logger = LoggerFactory.getLogger(ReplicationTaskTest.class);
+
+    private static class CountingTask extends ReplicationTask {
+
+        private final AtomicInteger runs = new AtomicInteger(0);
+        private final AtomicInteger concurrent = new AtomicInteger(0);
+        private final AtomicInteger maxConcurrent = new AtomicInteger(0);
+        private volatile long delay = WAIT_FOR_WAKEUP;
+
+        CountingTask(String name, ScheduledExecutorService executor) {
+            super(name, executor, ReplicationTaskTest.logger);
+        }
+
+        @Override
+        public long doWork() {
+            int now = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(now, Math::max);
+            runs.incrementAndGet();
+            DLedgerUtils.sleep(1);
+            concurrent.decrementAndGet();
+            return delay;
+        }
+    }
+
+    @Test
+    public void testRunOnWakeupWithoutConcurrency() throws Exception {
+        ScheduledExecutorService executor = ReplicationTask.newExecutor("ReplicationTaskTest", 4);
+        CountingTask task = new CountingTask("counting", executor);
+        task.start();
+        Thread.sleep(50);
+        //runs once on start, then waits for the wakeup
+        Assertions.assertEquals(1, task.runs.get());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    task.wakeup();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Thread.sleep(50);
+        Assertions.assertEquals(1, task.maxConcurrent.get());
+        Assertions.assertTrue(task.runs.get() > 1);
+        //the wakeups during a run are coalesced into one more run
+        Assertions.assertTrue(task.runs.get() < 4000);
+
+        task.shutdown();
+        int runs = task.runs.get();
+        task.wakeup();
+        Thread.sleep(50);
+        Assertions.assertEquals(runs, task.runs.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testShutdownWaitsForTheRun() throws Exception {
+        ScheduledExecutorService executor = ReplicationTask.newExecutor("ReplicationTaskTest", 1);
+        AtomicInteger finished = new AtomicInteger(0);
+        ReplicationTask task = new ReplicationTask("slow", executor, logger) {
+            @Override
+            public long doWork() {
+                DLedgerUtils.sleep(300);
+                finished.incrementAndGet();
+                return 10;
+            }
+        };
+        task.start();
+        Thread.sleep(50);
+        long start = System.currentTimeMillis();
+        task.shutdown();
+        //returns once the run in progress ends, without waiting for the timeout
+        Assertions.assertEquals(1, finished.get());
+        Assertions.assertTrue(DLedgerUtils.elapsed(start) < 2000);
+        Thread.sleep(100);
+        Assertions.assertEquals(1, finished.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testManyTasksShareFewThreads() throws Exception {
+        ScheduledExecutorService executor = ReplicationTask.newExecutor("ReplicationTaskTest", 2);
+        List<CountingTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            CountingTask task = new CountingTask("timer-" + i, executor);
+            task.delay = 10;
+            tasks.add(task);
+            task.start();
+        }
+        Thread.sleep(500);
+        for (CountingTask task : tasks) {
+            //the timers keep every task running
+            Assertions.assertTrue(task.runs.get() > 1, task.getName());
+            Assertions.assertEquals(1, task.maxConcurrent.get(), task.getName());
+            task.shutdown();
+        }
+        int threads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("ReplicationTaskTest")) {
+                threads++;
+            }
+        }
+        Assertions.assertTrue(threads <= 2 + 4, "threads=" + threads);
+        executor.shutdown();
+    }
+}
@@ -17,10 +17,16 @@
 package io.openmessaging.storage.dledger;
 
 import io.openmessaging.storage.dledger.client.DLedgerClient;
+import io.openmessaging.storage.dledger.protocol.AppendEntryRequest;
+import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
 import io.openmessaging.storage.dledger.util.FileTestUtil;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class ServerTestHarness extends ServerTestBase {
 
@@ -49,8 +55,14 @@ public class ServerTestHarness extends ServerTestBase {
 
     protected synchronized DLedgerServer launchServer(String group, String peers, String selfId, String leaderId,
         String storeType) {
+        return launchServer(group, peers, "", selfId, leaderId, storeType);
+    }
+
+    protected synchronized DLedgerServer launchServer(String group, String peers, String learners, String selfId,
+        String leaderId, String storeType) {
         DLedgerConfig config = new DLedgerConfig();
         config.group(group).selfId(selfId).peers(peers);
+        config.setLearners(learners);
         config.setStoreBaseDir(FileTestUtil.TEST_BASE + File.separator + group);
         config.setStoreType(storeType);
         config.setMappedFileSizeForEntryData(10 * 1024 * 1024);
@@ -72,6 +84,49 @@ public class ServerTestHarness extends ServerTestBase {
         return dLedgerServer;
     }
 
+    protected DLedgerConfig createConfig(String group, String peers, String selfId, String storeType) {
+        DLedgerConfig config = new DLedgerConfig();
+        config.setStoreBaseDir(FileTestUtil.TEST_BASE + File.separator + group);
+        config.group(group).selfId(selfId).peers(peers);
+        config.setStoreType(storeType);
+        config.setMappedFileSizeForEntryData(10 * 1024 * 1024);
+        config.setEnableDiskForceClean(false);
+        bases.add(config.getDefaultPath());
+        return config;
+    }
+
+    /**
+     * Launch a server electing its leader, the config is customized before the server is created.
+     */
+    protected synchronized DLedgerServer launchServer(String group, String peers, String selfId, String storeType,
+        Consumer<DLedgerConfig> customizer) {
+        DLedgerConfig config = createConfig(group, peers, selfId, storeType);
+        customizer.accept(config);
+        DLedgerServer dLedgerServer = new DLedgerServer(config);
+        dLedgerServer.startup();
+        return dLedgerServer;
+    }
+
+    /**
+     * Launch a server with a fixed leader in term 0, the config is customized before the server is created.
+     */
+    protected synchronized DLedgerServer launchServer(String group, String peers, String selfId, String leaderId,
+        String storeType, Consumer<DLedgerConfig> customizer) {
+        DLedgerConfig config = createConfig(group, peers, selfId, storeType);
+        config.setEnableLeaderElector(false);
+        customizer.accept(config);
+        DLedgerServer dLedgerServer = new DLedgerServer(config);
+        MemberState memberState = dLedgerServer.getMemberState();
+        memberState.setCurrTermForTest(0);
+        if (selfId.equals(leaderId)) {
+            memberState.changeToLeader(0);
+        } else {
+            memberState.changeToFollower(0, leaderId);
+        }
+        dLedgerServer.startup();
+        return dLedgerServer;
+    }
+
     protected synchronized DLedgerServer launchServerEnableBatchPush(String group, String peers, String selfId, String leaderId,
         String storeType) {
         DLedgerConfig config = new DLedgerConfig();
@@ -119,6 +174,32 @@ public class ServerTestHarness extends ServerTestBase {
         return leaderServer;
     }
 
+    protected DLedgerServer waitForLeader(List<DLedgerServer> servers, long timeoutMs) throws Exception {
+        long start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < timeoutMs) {
+            AtomicInteger leaderNum = new AtomicInteger(0);
+            AtomicInteger followerNum = new AtomicInteger(0);
+            DLedgerServer leaderServer = parseServers(servers, leaderNum, followerNum);
+            if (leaderNum.get() == 1 && followerNum.get() == servers.size() - 1) {
+                return leaderServer;
+            }
+            Thread.sleep(5);
+        }
+        return null;
+    }
+
+    protected CompletableFuture<AppendEntryResponse> appendAsync(DLedgerServer leader) throws Exception {
+        AppendEntryRequest request = new AppendEntryRequest();
+        request.setGroup(leader.getMemberState().getGroup());
+        request.setRemoteId(leader.getMemberState().getSelfId());
+        request.setBody(new byte[128]);
+        return leader.handleAppend(request);
+    }
+
+    protected AppendEntryResponse append(DLedgerServer leader) throws Exception {
+        return appendAsync(leader).get(3, TimeUnit.SECONDS);
+    }
+
     protected void simulatePartition(DLedgerServer server1, DLedgerServer server2) {
         server1.getMemberState().getPeerMap().put(server2.getMemberState().getSelfId(), null);
         server2.getMemberState().getPeerMap().put(server1.getMemberState().getSelfId(), null);
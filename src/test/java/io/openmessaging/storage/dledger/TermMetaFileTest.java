@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger;
+
+import io.openmessaging.storage.dledger.util.FileTestUtil;
+import io.openmessaging.storage.dledger.utils.IOUtils;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TermMetaFileTest extends ServerTestBase {
+
+    private String createTestDir() {
+        String baseDir = FileTestUtil.createTestDir("termmeta");
+        bases.add(baseDir);
+        return baseDir;
+    }
+
+    @Test
+    public void testWriteAndLoad() throws Exception {
+        String fileName = createTestDir() + File.separator + MemberState.TERM_META_FILE;
+        TermMetaFile termMetaFile = new TermMetaFile(fileName);
+        Assertions.assertFalse(termMetaFile.load());
+        //nothing is opened or created before the first write
+        Assertions.assertFalse(new File(fileName).exists());
+        termMetaFile.write(1, "n0");
+        termMetaFile.write(2, null);
+        termMetaFile.write(3, "n1");
+        termMetaFile.close();
+        Assertions.assertEquals(2 * TermMetaFile.SLOT_SIZE, new File(fileName).length());
+
+        termMetaFile = new TermMetaFile(fileName);
+        Assertions.assertTrue(termMetaFile.load());
+        Assertions.assertEquals(3, termMetaFile.getTerm());
+        Assertions.assertEquals("n1", termMetaFile.getVoteFor());
+        termMetaFile.write(4, null);
+        termMetaFile.close();
+
+        termMetaFile = new TermMetaFile(fileName);
+        Assertions.assertTrue(termMetaFile.load());
+        Assertions.assertEquals(4, termMetaFile.getTerm());
+        Assertions.assertNull(termMetaFile.getVoteFor());
+        termMetaFile.close();
+    }
+
+    @Test
+    public void testLoadAfterTornWrite() throws Exception {
+        String fileName = createTestDir() + File.separator + MemberState.TERM_META_FILE;
+        TermMetaFile termMetaFile = new TermMetaFile(fileName);
+        termMetaFile.write(5, "n2");
+        termMetaFile.write(6, "n0");
+        termMetaFile.close();
+        //the second write went to the second slot, break it in the middle
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.seek(TermMetaFile.SLOT_SIZE + 16);
+            file.write(new byte[] {1, 2, 3});
+        }
+        termMetaFile = new TermMetaFile(fileName);
+        Assertions.assertTrue(termMetaFile.load());
+        Assertions.assertEquals(5, termMetaFile.getTerm());
+        Assertions.assertEquals("n2", termMetaFile.getVoteFor());
+        //the next write overrides the broken slot
+        termMetaFile.write(7, "n1");
+        termMetaFile.close();
+        termMetaFile = new TermMetaFile(fileName);
+        Assertions.assertTrue(termMetaFile.load());
+        Assertions.assertEquals(7, termMetaFile.getTerm());
+        termMetaFile.close();
+    }
+
+    @Test
+    public void testMemberStateUpgradeFromProperties() throws Exception {
+        DLedgerConfig config = new DLedgerConfig();
+        config.setStoreBaseDir(createTestDir());
+        config.group(UUID.randomUUID().toString()).selfId("n0").peers("n0-localhost:20911;n1-localhost:20912");
+        IOUtils.string2File(MemberState.TERM_PERSIST_KEY_TERM + "=8\n" + MemberState.TERM_PERSIST_KEY_VOTE_FOR + "=n1\n",
+            config.getDefaultPath() + File.separator + MemberState.TERM_PERSIST_FILE);
+
+        MemberState memberState = new MemberState(config);
+        Assertions.assertFalse(new File(config.getDefaultPath() + File.separator + MemberState.TERM_META_FILE).exists());
+        Assertions.assertEquals(8, memberState.currTerm());
+        Assertions.assertEquals("n1", memberState.currVoteFor());
+        memberState.nextTerm();
+        memberState.setCurrVoteFor("n0").get(3, TimeUnit.SECONDS);
+        memberState.shutdown();
+
+        memberState = new MemberState(config);
+        Assertions.assertEquals(9, memberState.currTerm());
+        Assertions.assertEquals("n0", memberState.currVoteFor());
+        memberState.shutdown();
+    }
+}
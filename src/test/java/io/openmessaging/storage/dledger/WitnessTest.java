@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger;
+
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import io.openmessaging.storage.dledger.protocol.GetEntriesRequest;
+import io.openmessaging.storage.dledger.statemachine.MockStateMachine;
+import io.openmessaging.storage.dledger.store.file.DLedgerMmapFileStore;
+import io.openmessaging.storage.dledger.util.FileTestUtil;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.io.File;
+import java.util.UUID;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class WitnessTest extends ServerTestHarness {
+
+    private DLedgerServer launchWitnessServer(String group, String peers, String selfId, String leaderId) {
+        return launchServer(group, peers, selfId, leaderId, DLedgerConfig.FILE, config -> {
+            config.setWitnesses("n2");
+            config.setMappedFileSizeForEntryData(4 * 1024);
+        });
+    }
+
+    @Test
+    public void testWitnessDropsCommittedData() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        DLedgerServer dLedgerServer0 = launchWitnessServer(group, peers, "n0", "n0");
+        DLedgerServer dLedgerServer1 = launchWitnessServer(group, peers, "n1", "n0");
+        DLedgerServer dLedgerServer2 = launchWitnessServer(group, peers, "n2", "n0");
+        Assertions.assertTrue(dLedgerServer2.getMemberState().isWitness());
+        Assertions.assertThrows(IllegalStateException.class, () -> dLedgerServer2.registerStateMachine(new MockStateMachine()));
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(dLedgerServer0).getCode());
+        }
+
+        DLedgerMmapFileStore witnessStore = (DLedgerMmapFileStore) dLedgerServer2.getdLedgerStore();
+        long start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < 3000 && witnessStore.getDataFileList().getMappedFiles().size() > 1) {
+            DLedgerUtils.sleep(100);
+        }
+        Assertions.assertEquals(1, witnessStore.getDataFileList().getMappedFiles().size());
+        Assertions.assertTrue(witnessStore.getLedgerBeginIndex() > 0);
+        Assertions.assertEquals(99, witnessStore.getLedgerEndIndex());
+        DLedgerMmapFileStore leaderStore = (DLedgerMmapFileStore) dLedgerServer0.getdLedgerStore();
+        Assertions.assertTrue(leaderStore.getDataFileList().getMappedFiles().size() > 1);
+        Assertions.assertEquals(0, leaderStore.getLedgerBeginIndex());
+
+        GetEntriesRequest getRequest = new GetEntriesRequest();
+        getRequest.setGroup(group);
+        getRequest.setRemoteId("n2");
+        getRequest.setBeginIndex(99L);
+        getRequest.setFollowerRead(true);
+        Assertions.assertEquals(DLedgerResponseCode.WITNESS_NO_DATA.getCode(), dLedgerServer2.handleGet(getRequest).get().getCode());
+
+        //the witness still acks
+        dLedgerServer1.shutdown();
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), append(dLedgerServer0).getCode());
+        dLedgerServer0.shutdown();
+        dLedgerServer2.shutdown();
+    }
+
+    @Test
+    public void testWitnessConfig() {
+        DLedgerConfig config = new DLedgerConfig();
+        config.group(UUID.randomUUID().toString()).selfId("n0").peers("n0-localhost:10911;n1-localhost:10912");
+        config.setStoreBaseDir(FileTestUtil.TEST_BASE + File.separator + config.getGroup());
+        bases.add(config.getDefaultPath());
+        config.setWitnesses("n2");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MemberState(config));
+        config.setWitnesses("n1");
+        config.setPreferredLeaderIds("n1");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MemberState(config));
+    }
+}
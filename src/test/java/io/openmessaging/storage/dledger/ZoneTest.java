@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger;
+
+import io.openmessaging.storage.dledger.client.DLedgerClient;
+import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ZoneTest extends ServerTestHarness {
+
+    private DLedgerServer launchZoneServer(String group, String peers, String selfId, String leaderId) {
+        return launchServer(group, peers, selfId, leaderId, DLedgerConfig.MEMORY, config -> {
+            config.setZones("n0-z0;n1-z0;n2-z1");
+            config.setMinAckZones(2);
+            config.setMaxWaitAckTimeMs(1000);
+            config.setEnableAdaptivePushWindow(true);
+        });
+    }
+
+    @Test
+    public void testZoneConfig() {
+        String peers = "n0-localhost:10911;n1-localhost:10912;n2-localhost:10913";
+        DLedgerConfig config = createConfig(UUID.randomUUID().toString(), peers, "n0", DLedgerConfig.MEMORY);
+        config.setZones("n0-z0;n1-z0;n2-z1");
+        MemberState memberState = new MemberState(config);
+        Assertions.assertEquals("z1", memberState.getZone("n2"));
+        Assertions.assertEquals(0, memberState.getMinAckZones());
+        config.setMinAckZones(2);
+        Assertions.assertEquals(2, new MemberState(config).getMinAckZones());
+        config.setMinAckZones(3);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MemberState(config));
+        config.setMinAckZones(1);
+        config.setZones("n0-z0;n1-z0");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MemberState(config));
+    }
+
+    @Test
+    public void testCommitAckedByMinZones() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        DLedgerServer dLedgerServer0 = launchZoneServer(group, peers, "n0", "n0");
+        DLedgerServer dLedgerServer1 = launchZoneServer(group, peers, "n1", "n0");
+
+        //n0 and n1 are a majority but in the same zone
+        AppendEntryResponse response = append(dLedgerServer0);
+        Assertions.assertEquals(DLedgerResponseCode.WAIT_QUORUM_ACK_TIMEOUT.getCode(), response.getCode());
+        Assertions.assertEquals(1, dLedgerServer1.getdLedgerStore().getLedgerEndIndex() + 1);
+
+        DLedgerServer dLedgerServer2 = launchZoneServer(group, peers, "n2", "n0");
+        dLedgerServer1.shutdown();
+        response = append(dLedgerServer0);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), response.getCode());
+        Assertions.assertEquals(1, response.getIndex());
+        dLedgerServer0.shutdown();
+        dLedgerServer2.shutdown();
+    }
+
+    @Test
+    public void testLeaderFollowsClientZone() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            servers.add(launchServer(group, peers, "n" + i, DLedgerConfig.MEMORY, config -> {
+                config.setZones("n0-z0;n1-z1;n2-z2");
+                config.setEnableClientZoneLeader(true);
+            }));
+        }
+        DLedgerServer leader = waitForLeader(servers, 10000);
+        Assertions.assertNotNull(leader);
+        String targetId = leader.getMemberState().getSelfId().equals("n2") ? "n1" : "n2";
+        String targetZone = leader.getMemberState().getZone(targetId);
+
+        DLedgerClient dLedgerClient = launchClient(group, peers);
+        dLedgerClient.setZone(targetZone);
+        long start = System.currentTimeMillis();
+        DLedgerServer target = servers.get(Integer.parseInt(targetId.substring(1)));
+        while (!target.getMemberState().isLeader() && DLedgerUtils.elapsed(start) < 10000) {
+            dLedgerClient.append(new byte[128]);
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(target.getMemberState().isLeader());
+        //the leader stays in the zone of the clients
+        Thread.sleep(2000);
+        Assertions.assertTrue(target.getMemberState().isLeader());
+        dLedgerClient.shutdown();
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+}
@@ -18,8 +18,12 @@ package io.openmessaging.storage.dledger.protocol;
 
 import io.openmessaging.storage.dledger.DLedgerServer;
 import io.openmessaging.storage.dledger.ServerTestHarness;
+import io.openmessaging.storage.dledger.client.DLedgerClient;
 import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -101,5 +105,55 @@ public class HeartbeatRequestTest extends ServerTestHarness {
         dLedgerServer1.shutdown();
     }
 
-}
+    @Test
+    public void testHeartbeatPiggybackedOnPush() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = new ArrayList<>();
+        servers.add(launchServer(group, peers, "n0"));
+        servers.add(launchServer(group, peers, "n1"));
+        servers.add(launchServer(group, peers, "n2"));
+        DLedgerServer leader = null;
+        long start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < 3000) {
+            AtomicInteger leaderNum = new AtomicInteger(0);
+            AtomicInteger followerNum = new AtomicInteger(0);
+            leader = parseServers(servers, leaderNum, followerNum);
+            if (leaderNum.get() == 1 && followerNum.get() == 2) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        Assertions.assertNotNull(leader);
+        for (DLedgerServer server : servers) {
+            server.getdLedgerConfig().setHeartBeatTimeIntervalMs(200);
+        }
+        long term = leader.getMemberState().currTerm();
+        DLedgerClient client = launchClient(group, peers);
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), client.append(new byte[128]).getCode());
+        Thread.sleep(500);
+
+        //the pushes acked by the followers replace the heartbeats
+        long heartbeatsSent = leader.getMetrics().getHeartbeatsSent().sum();
+        long heartbeatsPiggybacked = leader.getMetrics().getHeartbeatsPiggybacked().sum();
+        start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < 2000) {
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), client.append(new byte[128]).getCode());
+        }
+        long piggybacked = leader.getMetrics().getHeartbeatsPiggybacked().sum() - heartbeatsPiggybacked;
+        long sent = leader.getMetrics().getHeartbeatsSent().sum() - heartbeatsSent;
+        Assertions.assertTrue(piggybacked >= 10, "piggybacked=" + piggybacked);
+        Assertions.assertTrue(sent <= 4, "sent=" + sent);
+        for (DLedgerServer server : servers) {
+            Assertions.assertEquals(term, server.getMemberState().currTerm());
+            Assertions.assertEquals(server == leader, server.getMemberState().isLeader());
+        }
 
+        //the heartbeats are sent again once the link is idle
+        heartbeatsSent = leader.getMetrics().getHeartbeatsSent().sum();
+        Thread.sleep(1000);
+        Assertions.assertTrue(leader.getMetrics().getHeartbeatsSent().sum() - heartbeatsSent >= 4);
+        Assertions.assertTrue(leader.getMemberState().isLeader());
+        client.shutdown();
+    }
+}
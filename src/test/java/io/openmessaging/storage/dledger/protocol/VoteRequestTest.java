@@ -16,10 +16,20 @@
 
 package io.openmessaging.storage.dledger.protocol;
 
+import com.alibaba.fastjson.JSON;
+import io.netty.channel.ChannelHandlerContext;
+import io.openmessaging.storage.dledger.DLedgerConfig;
 import io.openmessaging.storage.dledger.DLedgerServer;
 import io.openmessaging.storage.dledger.ServerTestHarness;
 import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.rocketmq.remoting.netty.NettyRemotingServer;
+import org.apache.rocketmq.remoting.netty.NettyRequestProcessor;
+import org.apache.rocketmq.remoting.netty.NettyServerConfig;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -174,5 +184,192 @@ public class VoteRequestTest extends ServerTestHarness {
         Assertions.assertTrue(leader.getMemberState().isLeader());
     }
 
+    private List<DLedgerServer> launchPreVoteServers(String group, String peers, boolean enablePreVote) {
+        List<DLedgerServer> servers = new ArrayList<>();
+        for (String selfId : new String[] {"n0", "n1", "n2"}) {
+            //an election timeout of 300ms
+            servers.add(launchServer(group, peers, selfId, DLedgerConfig.MEMORY, config -> {
+                config.setHeartBeatTimeIntervalMs(100);
+                config.setEnablePreVote(enablePreVote);
+            }));
+        }
+        return servers;
+    }
+
+    @Test
+    public void testPreVote() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchPreVoteServers(group, peers, true);
+        DLedgerServer leader = waitForLeader(servers, 5000);
+        Assertions.assertNotNull(leader);
+        servers.remove(leader);
+        DLedgerServer follower = servers.get(0);
+        DLedgerServer isolated = servers.get(1);
+        long term = leader.getMemberState().currTerm();
+
+        //the pre-vote is refused while the leader is alive, and does not change the term
+        VoteRequest voteRequest = new VoteRequest();
+        voteRequest.setGroup(group);
+        voteRequest.setTerm(term + 1);
+        voteRequest.setLeaderId(isolated.getMemberState().getSelfId());
+        voteRequest.setLedgerEndIndex(isolated.getMemberState().getLedgerEndIndex());
+        voteRequest.setLedgerEndTerm(isolated.getMemberState().getLedgerEndTerm());
+        voteRequest.setRemoteId(leader.getMemberState().getSelfId());
+        Assertions.assertEquals(VoteResponse.RESULT.REJECT_ALREADY_HAS_LEADER, leader.handlePreVote(voteRequest).get().getVoteResult());
+        voteRequest.setRemoteId(follower.getMemberState().getSelfId());
+        Assertions.assertEquals(VoteResponse.RESULT.REJECT_ALREADY_HAS_LEADER, follower.handlePreVote(voteRequest).get().getVoteResult());
+        Assertions.assertEquals(term, leader.getMemberState().currTerm());
+        Assertions.assertEquals(term, follower.getMemberState().currTerm());
+        //a candidate grants the pre-vote, and still does not change the term
+        voteRequest.setRemoteId(isolated.getMemberState().getSelfId());
+        voteRequest.setLeaderId(follower.getMemberState().getSelfId());
+        isolated.getdLedgerLeaderElector().changeRoleToCandidate(term);
+        Assertions.assertEquals(VoteResponse.RESULT.ACCEPT, isolated.handlePreVote(voteRequest).get().getVoteResult());
+        Assertions.assertEquals(term, isolated.getMemberState().currTerm());
+
+        //the node cut off from the leader neither takes over nor increases the term of the group
+        long start = System.currentTimeMillis();
+        while (!isolated.getMemberState().isFollower() && DLedgerUtils.elapsed(start) < 3000) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(isolated.getMemberState().isFollower());
+        long voteRequests = follower.getMetrics().getVoteRequestsReceived().sum();
+        simulatePartition(leader, isolated);
+        Thread.sleep(3000);
+        Assertions.assertTrue(isolated.getMemberState().isCandidate());
+        //the pre-votes are refused, so no vote is ever asked for
+        Assertions.assertEquals(voteRequests, follower.getMetrics().getVoteRequestsReceived().sum());
+        Assertions.assertTrue(leader.getMemberState().isLeader());
+        Assertions.assertTrue(follower.getMemberState().isFollower());
+        Assertions.assertEquals(term, leader.getMemberState().currTerm());
+        Assertions.assertEquals(term, follower.getMemberState().currTerm());
+        Assertions.assertEquals(term, isolated.getMemberState().currTerm());
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+        leader.shutdown();
+    }
+
+    @Test
+    public void testVotesWithoutPreVote() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchPreVoteServers(group, peers, false);
+        DLedgerServer leader = waitForLeader(servers, 5000);
+        Assertions.assertNotNull(leader);
+        servers.remove(leader);
+        DLedgerServer follower = servers.get(0);
+        DLedgerServer isolated = servers.get(1);
+        long term = leader.getMemberState().currTerm();
+
+        //the votes go out at once, only the follower knowing the leader of the term keeps the term from growing
+        long voteRequests = follower.getMetrics().getVoteRequestsReceived().sum();
+        simulatePartition(leader, isolated);
+        Thread.sleep(3000);
+        Assertions.assertTrue(isolated.getMemberState().isCandidate());
+        Assertions.assertTrue(follower.getMetrics().getVoteRequestsReceived().sum() > voteRequests);
+        Assertions.assertTrue(leader.getMemberState().isLeader());
+        Assertions.assertEquals(term, follower.getMemberState().currTerm());
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+        leader.shutdown();
+    }
+
+    @Test
+    public void testPreVoteAdoptsLargerTerm() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerServer> servers = launchPreVoteServers(group, peers, true);
+        DLedgerServer leader = waitForLeader(servers, 5000);
+        Assertions.assertNotNull(leader);
+        DLedgerServer follower = servers.get(leader == servers.get(0) ? 1 : 0);
+        DLedgerServer isolated = servers.get(leader == servers.get(2) ? 1 : 2);
+        long term = leader.getMemberState().currTerm();
+        String leaderAddr = isolated.getMemberState().getPeerAddr(leader.getMemberState().getSelfId());
+        String isolatedAddr = leader.getMemberState().getPeerAddr(isolated.getMemberState().getSelfId());
+
+        //the others move to a larger term while the node is cut off
+        simulatePartition(leader, isolated);
+        simulatePartition(follower, isolated);
+        follower.getdLedgerLeaderElector().testRevote(term);
+        long start = System.currentTimeMillis();
+        while (!(follower.getMemberState().isLeader() && leader.getMemberState().isFollower()) && DLedgerUtils.elapsed(start) < 5000) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(follower.getMemberState().isLeader());
+        long newTerm = follower.getMemberState().currTerm();
+        Assertions.assertTrue(newTerm > term);
+        Assertions.assertEquals(term, isolated.getMemberState().currTerm());
+
+        //the refused pre-vote tells the larger term, which is taken without voting
+        long voteRequests = leader.getMetrics().getVoteRequestsReceived().sum();
+        leader.getMemberState().getPeerMap().put(isolated.getMemberState().getSelfId(), isolatedAddr);
+        isolated.getMemberState().getPeerMap().put(leader.getMemberState().getSelfId(), leaderAddr);
+        start = System.currentTimeMillis();
+        while (isolated.getMemberState().currTerm() < newTerm && DLedgerUtils.elapsed(start) < 3000) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(newTerm, isolated.getMemberState().currTerm());
+        Assertions.assertTrue(isolated.getMemberState().isCandidate());
+        Assertions.assertEquals(voteRequests, leader.getMetrics().getVoteRequestsReceived().sum());
+        Assertions.assertTrue(follower.getMemberState().isLeader());
+        Assertions.assertEquals(newTerm, follower.getMemberState().currTerm());
+        for (DLedgerServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testPreVoteWithOlderPeers() throws Exception {
+        //the older peers answer the votes but do not know the pre-vote
+        AtomicBoolean accept = new AtomicBoolean(false);
+        List<NettyRemotingServer> olderPeers = new ArrayList<>();
+        String peers = String.format("n0-localhost:%d", nextPort());
+        for (int i = 1; i < 3; i++) {
+            NettyServerConfig serverConfig = new NettyServerConfig();
+            serverConfig.setListenPort(nextPort());
+            NettyRemotingServer olderPeer = new NettyRemotingServer(serverConfig, null);
+            olderPeer.registerProcessor(DLedgerRequestCode.VOTE.getCode(), new NettyRequestProcessor() {
+                @Override
+                public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+                    VoteRequest voteRequest = JSON.parseObject(request.getBody(), VoteRequest.class);
+                    VoteResponse voteResponse = new VoteResponse(voteRequest).term(voteRequest.getTerm())
+                        .voteResult(accept.get() ? VoteResponse.RESULT.ACCEPT : VoteResponse.RESULT.REJECT_ALREADY_VOTED);
+                    RemotingCommand response = RemotingCommand.createResponseCommand(DLedgerResponseCode.SUCCESS.getCode(), null);
+                    response.setBody(JSON.toJSONBytes(voteResponse));
+                    return response;
+                }
+
+                @Override
+                public boolean rejectRequest() {
+                    return false;
+                }
+            }, null);
+            olderPeer.start();
+            olderPeers.add(olderPeer);
+            peers += String.format(";n%d-localhost:%d", i, serverConfig.getListenPort());
+        }
+        String group = UUID.randomUUID().toString();
+        DLedgerServer server = launchServer(group, peers, "n0", DLedgerConfig.MEMORY, config -> config.setHeartBeatTimeIntervalMs(100));
+
+        //the first round is lost, so the next one starts with a pre-vote
+        long start = System.currentTimeMillis();
+        while (server.getMemberState().currTerm() == 0 && DLedgerUtils.elapsed(start) < 3000) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        accept.set(true);
+        start = System.currentTimeMillis();
+        while (!server.getMemberState().isLeader() && DLedgerUtils.elapsed(start) < 5000) {
+            Thread.sleep(5);
+        }
+        Assertions.assertTrue(server.getMemberState().isLeader());
+        server.shutdown();
+        for (NettyRemotingServer olderPeer : olderPeers) {
+            olderPeer.shutdown();
+        }
+    }
 }
 
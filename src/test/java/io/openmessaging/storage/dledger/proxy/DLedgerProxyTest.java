@@ -0,0 +1,302 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.proxy;
+
+import io.openmessaging.storage.dledger.DLedgerConfig;
+import io.openmessaging.storage.dledger.DLedgerServer;
+import io.openmessaging.storage.dledger.HeartBeatCoalescer;
+import io.openmessaging.storage.dledger.ServerTestHarness;
+import io.openmessaging.storage.dledger.client.DLedgerClient;
+import io.openmessaging.storage.dledger.metrics.DLedgerMetricsExporter;
+import io.openmessaging.storage.dledger.protocol.AppendEntryRequest;
+import io.openmessaging.storage.dledger.protocol.AppendEntryResponse;
+import io.openmessaging.storage.dledger.protocol.BatchHeartBeatRequest;
+import io.openmessaging.storage.dledger.protocol.BatchHeartBeatResponse;
+import io.openmessaging.storage.dledger.protocol.DLedgerResponseCode;
+import io.openmessaging.storage.dledger.protocol.GetEntriesResponse;
+import io.openmessaging.storage.dledger.protocol.HeartBeatRequest;
+import io.openmessaging.storage.dledger.protocol.HeartBeatResponse;
+import io.openmessaging.storage.dledger.utils.DLedgerUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.remoting.netty.NettyClientConfig;
+import org.apache.rocketmq.remoting.netty.NettyRemotingClient;
+import org.apache.rocketmq.remoting.netty.NettyRemotingServer;
+import org.apache.rocketmq.remoting.netty.NettyServerConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DLedgerProxyTest extends ServerTestHarness {
+
+    private DLedgerConfig createConfig(String group, String peers, String selfId) {
+        return createConfig(group, peers, selfId, DLedgerConfig.FILE);
+    }
+
+    private synchronized DLedgerProxy launchProxy(String selfId, String peers, List<String> groups) {
+        DLedgerProxyConfig proxyConfig = new DLedgerProxyConfig();
+        for (String group : groups) {
+            proxyConfig.getConfigs().add(createConfig(group, peers, selfId));
+        }
+        DLedgerProxy dLedgerProxy = new DLedgerProxy(proxyConfig);
+        dLedgerProxy.startup();
+        return dLedgerProxy;
+    }
+
+    private DLedgerServer waitForLeader(List<DLedgerProxy> proxies, String group) throws Exception {
+        List<DLedgerServer> servers = new ArrayList<>();
+        for (DLedgerProxy proxy : proxies) {
+            for (DLedgerServer server : proxy.getDLedgerManager().getDLedgerServers()) {
+                if (server.getMemberState().getGroup().equals(group)) {
+                    servers.add(server);
+                }
+            }
+        }
+        long start = System.currentTimeMillis();
+        while (DLedgerUtils.elapsed(start) < 10000) {
+            AtomicInteger leaderNum = new AtomicInteger(0);
+            AtomicInteger followerNum = new AtomicInteger(0);
+            DLedgerServer leaderServer = parseServers(servers, leaderNum, followerNum);
+            if (leaderNum.get() == 1 && followerNum.get() == servers.size() - 1) {
+                return leaderServer;
+            }
+            Thread.sleep(10);
+        }
+        return null;
+    }
+
+    @Test
+    public void testThreeProxiesWithTwoGroups() throws Exception {
+        List<String> groups = new ArrayList<>();
+        groups.add(UUID.randomUUID().toString());
+        groups.add(UUID.randomUUID().toString());
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerProxy> proxies = new ArrayList<>();
+        proxies.add(launchProxy("n0", peers, groups));
+        proxies.add(launchProxy("n1", peers, groups));
+        proxies.add(launchProxy("n2", peers, groups));
+        for (DLedgerProxy proxy : proxies) {
+            Assertions.assertEquals(2, proxy.getDLedgerManager().getDLedgerServers().size());
+            Assertions.assertEquals(2, proxy.getSharedFileStoreService().getStoreNum());
+        }
+
+        for (String group : groups) {
+            Assertions.assertNotNull(waitForLeader(proxies, group), group);
+            DLedgerClient dLedgerClient = launchClient(group, peers);
+            for (int i = 0; i < 10; i++) {
+                AppendEntryResponse appendEntryResponse = dLedgerClient.append((group + i).getBytes());
+                Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), appendEntryResponse.getCode());
+                Assertions.assertEquals(i, appendEntryResponse.getIndex());
+            }
+            GetEntriesResponse getEntriesResponse = dLedgerClient.get(9);
+            Assertions.assertEquals(1, getEntriesResponse.getEntries().size());
+            Assertions.assertArrayEquals((group + 9).getBytes(), getEntriesResponse.getEntries().get(0).getBody());
+            dLedgerClient.shutdown();
+        }
+
+        //removing a group does not affect the others sharing the port
+        for (DLedgerProxy proxy : proxies) {
+            Assertions.assertNotNull(proxy.removeDLedgerServer(groups.get(1), proxy.getDLedgerManager().getDLedgerServers().get(0).getMemberState().getSelfId()));
+            Assertions.assertEquals(1, proxy.getSharedFileStoreService().getStoreNum());
+        }
+        DLedgerClient dLedgerClient = launchClient(groups.get(0), peers);
+        AppendEntryResponse appendEntryResponse = dLedgerClient.append("after".getBytes());
+        Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), appendEntryResponse.getCode());
+        Assertions.assertEquals(10, appendEntryResponse.getIndex());
+        dLedgerClient.shutdown();
+
+        for (DLedgerProxy proxy : proxies) {
+            proxy.shutdown();
+        }
+    }
+
+    @Test
+    public void testOneMetricsEndpointForAllGroups() throws Exception {
+        String peers = String.format("n0-localhost:%d", nextPort());
+        DLedgerProxyConfig proxyConfig = new DLedgerProxyConfig();
+        proxyConfig.setMetricsPort(0);
+        List<String> groups = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            groups.add(UUID.randomUUID().toString());
+            DLedgerConfig config = createConfig(groups.get(i), peers, "n0");
+            config.setMetricsPort(0);
+            proxyConfig.getConfigs().add(config);
+        }
+        DLedgerProxy proxy = new DLedgerProxy(proxyConfig);
+        proxy.startup();
+        int httpPort = proxy.getMetricsExporter().getHttpPort();
+        Assertions.assertTrue(httpPort > 0);
+        for (DLedgerServer server : proxy.getDLedgerManager().getDLedgerServers()) {
+            Assertions.assertEquals(-1, server.getMetricsExporter().getHttpPort());
+        }
+
+        //every family is described once, followed by the samples of both groups
+        String text = fetch(httpPort);
+        Assertions.assertEquals(text.indexOf("# TYPE dledger_elections_total counter"), text.lastIndexOf("# TYPE dledger_elections_total counter"));
+        for (String group : groups) {
+            Assertions.assertTrue(text.contains("dledger_elections_total{group=\"" + group + "\",id=\"n0\"}"), group);
+        }
+
+        Assertions.assertNotNull(proxy.removeDLedgerServer(groups.get(1), "n0"));
+        text = fetch(httpPort);
+        Assertions.assertTrue(text.contains("group=\"" + groups.get(0) + "\""));
+        Assertions.assertFalse(text.contains("group=\"" + groups.get(1) + "\""));
+        proxy.shutdown();
+    }
+
+    private String fetch(int httpPort) throws Exception {
+        try (InputStream in = new URL("http://localhost:" + httpPort + DLedgerMetricsExporter.METRICS_PATH).openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testRouteToUnknownServer() throws Exception {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d", nextPort());
+        List<String> groups = new ArrayList<>();
+        groups.add(group);
+        DLedgerProxy proxy = launchProxy("n0", peers, groups);
+
+        AppendEntryRequest request = new AppendEntryRequest();
+        request.setGroup(UUID.randomUUID().toString());
+        request.setRemoteId("n0");
+        request.setBody(new byte[128]);
+        Assertions.assertEquals(DLedgerResponseCode.UNKNOWN_GROUP.getCode(), proxy.getDLedgerRpcService().handleAppend(request).get().getCode());
+        request.setGroup(group);
+        request.setRemoteId("n1");
+        Assertions.assertEquals(DLedgerResponseCode.UNKNOWN_MEMBER.getCode(), proxy.getDLedgerRpcService().handleAppend(request).get().getCode());
+
+        DLedgerConfig config = createConfig(UUID.randomUUID().toString(), String.format("n0-localhost:%d", nextPort()), "n0");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> proxy.addDLedgerServer(config));
+        proxy.shutdown();
+    }
+
+    @Test
+    public void testBatchHeartBeat() throws Exception {
+        List<String> groups = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            groups.add(UUID.randomUUID().toString());
+        }
+        String peers = String.format("n0-localhost:%d;n1-localhost:%d;n2-localhost:%d", nextPort(), nextPort(), nextPort());
+        List<DLedgerProxy> proxies = new ArrayList<>();
+        for (String selfId : new String[] {"n0", "n1", "n2"}) {
+            DLedgerProxyConfig proxyConfig = new DLedgerProxyConfig();
+            for (String group : groups) {
+                DLedgerConfig config = createConfig(group, peers, selfId, DLedgerConfig.MEMORY);
+                config.setHeartBeatTimeIntervalMs(200);
+                proxyConfig.getConfigs().add(config);
+            }
+            DLedgerProxy proxy = new DLedgerProxy(proxyConfig);
+            proxy.startup();
+            proxies.add(proxy);
+        }
+        List<DLedgerServer> leaders = new ArrayList<>();
+        for (String group : groups) {
+            DLedgerServer leader = waitForLeader(proxies, group);
+            Assertions.assertNotNull(leader, group);
+            leaders.add(leader);
+        }
+        Thread.sleep(1000);
+        long batchRequests = 0;
+        long batchedHeartBeats = 0;
+        for (DLedgerProxy proxy : proxies) {
+            batchRequests += proxy.getDLedgerRpcService().getHeartBeatCoalescer().getBatchRequests();
+            batchedHeartBeats += proxy.getDLedgerRpcService().getHeartBeatCoalescer().getBatchedHeartBeats();
+        }
+        Assertions.assertTrue(batchRequests > 0);
+        Assertions.assertTrue(batchedHeartBeats >= 2 * batchRequests, batchedHeartBeats + " heartbeats in " + batchRequests + " requests");
+        //the leaders are kept by the batched heartbeats
+        for (int i = 0; i < groups.size(); i++) {
+            Assertions.assertTrue(leaders.get(i).getMemberState().isLeader());
+            Assertions.assertTrue(leaders.get(i).getMetrics().getHeartbeatsSent().sum() > 0);
+        }
+
+        BatchHeartBeatRequest batchRequest = new BatchHeartBeatRequest();
+        HeartBeatRequest unknown = new HeartBeatRequest();
+        unknown.setGroup(UUID.randomUUID().toString());
+        unknown.setRemoteId("n0");
+        batchRequest.getHeartBeats().add(unknown);
+        BatchHeartBeatResponse batchResponse = proxies.get(0).getDLedgerRpcService().handleBatchHeartBeat(batchRequest).get();
+        Assertions.assertEquals(1, batchResponse.getHeartBeats().size());
+        Assertions.assertEquals(DLedgerResponseCode.UNKNOWN_GROUP.getCode(), batchResponse.getHeartBeats().get(0).getCode());
+
+        for (DLedgerProxy proxy : proxies) {
+            proxy.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchHeartBeatToOlderPeer() throws Exception {
+        //a peer of an old version answers the batch with request code not supported
+        NettyServerConfig serverConfig = new NettyServerConfig();
+        serverConfig.setListenPort(nextPort());
+        NettyRemotingServer olderPeer = new NettyRemotingServer(serverConfig, null);
+        olderPeer.start();
+        NettyRemotingClient remotingClient = new NettyRemotingClient(new NettyClientConfig(), null);
+        remotingClient.start();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger singles = new AtomicInteger(0);
+        HeartBeatCoalescer coalescer = new HeartBeatCoalescer(remotingClient, 10, scheduler, request -> {
+            singles.incrementAndGet();
+            return CompletableFuture.completedFuture(new HeartBeatResponse());
+        });
+        String addr = "localhost:" + serverConfig.getListenPort();
+
+        List<CompletableFuture<HeartBeatResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            futures.add(coalescer.heartBeat(addr, new HeartBeatRequest()));
+        }
+        for (CompletableFuture<HeartBeatResponse> future : futures) {
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), future.get(3, TimeUnit.SECONDS).getCode());
+        }
+        Assertions.assertEquals(1, coalescer.getBatchRequests());
+        Assertions.assertEquals(2, singles.get());
+
+        //the peer is remembered, and the later heartbeats go to it one by one at once
+        futures.clear();
+        for (int i = 0; i < 2; i++) {
+            futures.add(coalescer.heartBeat(addr, new HeartBeatRequest()));
+        }
+        for (CompletableFuture<HeartBeatResponse> future : futures) {
+            Assertions.assertTrue(future.isDone());
+            Assertions.assertEquals(DLedgerResponseCode.SUCCESS.getCode(), future.get().getCode());
+        }
+        Assertions.assertEquals(1, coalescer.getBatchRequests());
+        Assertions.assertEquals(4, singles.get());
+
+        scheduler.shutdown();
+        remotingClient.shutdown();
+        olderPeer.shutdown();
+    }
+}
@@ -168,6 +168,74 @@ public class DLedgerMappedFileStoreTest extends ServerTestHarness {
         Assertions.assertEquals(9, fileStore.getLedgerEndIndex());
     }
 
+    @Test
+    public void testBatchAppendAsLeader() {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d", nextPort());
+        DLedgerMmapFileStore fileStore = createFileStore(group, peers, "n0", "n0", 10 * 1024 + MIN_BLANK_LEN, 10 * DLedgerMmapFileStore.INDEX_UNIT_SIZE, 0);
+        fileStore.addAppendHook((entry, buffer, bodyOffset) -> {
+            buffer.position(bodyOffset);
+            buffer.putLong(entry.getIndex());
+        });
+        //the batches fitting in a data file are written by one append, the larger one is split across the files
+        int[] batchNums = {1, 5, 3, 4, 12};
+        long nextIndex = 0;
+        for (int batchNum : batchNums) {
+            List<DLedgerEntry> entries = new ArrayList<>();
+            for (int i = 0; i < batchNum; i++) {
+                DLedgerEntry entry = new DLedgerEntry();
+                entry.setBody(new byte[1000]);
+                entries.add(entry);
+            }
+            List<DLedgerEntry> resEntries = fileStore.appendAsLeader(entries);
+            Assertions.assertEquals(batchNum, resEntries.size());
+            for (DLedgerEntry resEntry : resEntries) {
+                Assertions.assertEquals(nextIndex++, resEntry.getIndex());
+            }
+        }
+        Assertions.assertEquals(nextIndex - 1, fileStore.getLedgerEndIndex());
+        fileStore.shutdown();
+
+        fileStore = createFileStore(group, peers, "n0", "n0", 10 * 1024 + MIN_BLANK_LEN, 10 * DLedgerMmapFileStore.INDEX_UNIT_SIZE, 0);
+        Assertions.assertEquals(nextIndex - 1, fileStore.getLedgerEndIndex());
+        for (long i = 0; i < nextIndex; i++) {
+            DLedgerEntry entry = fileStore.get(i);
+            Assertions.assertEquals(i, entry.getIndex());
+            Assertions.assertEquals(i, ByteBuffer.wrap(entry.getBody()).getLong());
+        }
+    }
+
+    @Test
+    public void testGetRange() {
+        String group = UUID.randomUUID().toString();
+        String peers = String.format("n0-localhost:%d", nextPort());
+        DLedgerMmapFileStore fileStore = createFileStore(group, peers, "n0", "n0", 10 * 1024 + MIN_BLANK_LEN, 10 * DLedgerMmapFileStore.INDEX_UNIT_SIZE, 0);
+        for (int i = 0; i < 100; i++) {
+            DLedgerEntry entry = new DLedgerEntry();
+            entry.setBody(ByteBuffer.allocate(1024).putInt(0, i).array());
+            DLedgerEntry resEntry = fileStore.appendAsLeader(entry);
+            Assertions.assertEquals(i, resEntry.getIndex());
+        }
+        int entrySize = fileStore.get(0L).getSize();
+        Assertions.assertEquals(3, fileStore.get(0, 99, 3, Integer.MAX_VALUE).size());
+        Assertions.assertEquals(2, fileStore.get(0, 99, 100, 2 * entrySize + 1).size());
+        Assertions.assertEquals(1, fileStore.get(0, 99, 100, 1).size());
+        Assertions.assertEquals(6, fileStore.get(90, 95, 100, Integer.MAX_VALUE).size());
+        Assertions.assertEquals(1, fileStore.get(99, 200, 100, Integer.MAX_VALUE).size());
+
+        //the range is cut at the end of the mapped files, continue from the next index
+        long nextIndex = 0;
+        while (nextIndex <= 99) {
+            List<DLedgerEntry> entries = fileStore.get(nextIndex, 99, 100, Integer.MAX_VALUE);
+            Assertions.assertFalse(entries.isEmpty());
+            for (DLedgerEntry entry : entries) {
+                Assertions.assertEquals(nextIndex, entry.getIndex());
+                Assertions.assertEquals(nextIndex, ByteBuffer.wrap(entry.getBody()).getInt());
+                nextIndex++;
+            }
+        }
+    }
+
     @Test
     public void testNormalRecovery() {
         String group = UUID.randomUUID().toString();
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.openmessaging.storage.dledger.util;
+
+import io.openmessaging.storage.dledger.utils.PhiAccrualFailureDetector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PhiAccrualFailureDetectorTest {
+
+    @Test
+    public void testPhiGrowsWithSilence() {
+        PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(100, 25);
+        long now = 1000;
+        for (int i = 0; i < 20; i++) {
+            now += 100 + i % 3 * 5;
+            detector.heartBeat(now);
+        }
+        Assertions.assertEquals(19, detector.getSampleCount());
+        Assertions.assertTrue(detector.phi(now + 50, 3) < 1);
+        Assertions.assertTrue(detector.phi(now + 100, 3) < 1);
+        Assertions.assertTrue(detector.phi(now + 200, 3) > 1);
+        Assertions.assertTrue(detector.phi(now + 250, 3) > 8);
+        Assertions.assertTrue(detector.phi(now + 200, 3) < detector.phi(now + 250, 3));
+        //not enough samples to judge
+        Assertions.assertEquals(0, detector.phi(now + 250, 100), 0);
+
+        detector.reset();
+        Assertions.assertEquals(0, detector.getSampleCount());
+        Assertions.assertEquals(0, detector.phi(now + 10000, 0), 0);
+    }
+
+    @Test
+    public void testTolerateJitter() {
+        PhiAccrualFailureDetector regular = new PhiAccrualFailureDetector(100, 10);
+        PhiAccrualFailureDetector jittery = new PhiAccrualFailureDetector(100, 10);
+        long now = 1000;
+        for (int i = 0; i < 100; i++) {
+            now += 100;
+            regular.heartBeat(now);
+            jittery.heartBeat(now + (i % 2 == 0 ? 0 : 80));
+        }
+        //the same silence is much less suspicious on the jittery network
+        Assertions.assertTrue(regular.phi(now + 180, 3) > 8);
+        Assertions.assertTrue(jittery.phi(now + 180, 3) < 8);
+    }
+
+    @Test
+    public void testWindowEvictsOldIntervals() {
+        PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(10, 10);
+        long now = 1000;
+        for (int i = 0; i < 20; i++) {
+            now += 1000;
+            detector.heartBeat(now);
+        }
+        for (int i = 0; i < 10; i++) {
+            now += 100;
+            detector.heartBeat(now);
+        }
+        Assertions.assertEquals(10, detector.getSampleCount());
+        Assertions.assertTrue(detector.phi(now + 300, 3) > 8);
+    }
+}
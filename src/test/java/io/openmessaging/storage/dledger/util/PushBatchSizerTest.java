@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.util;
+
+import io.openmessaging.storage.dledger.utils.MinRttFilter;
+import io.openmessaging.storage.dledger.utils.PushBatchSizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PushBatchSizerTest {
+
+    @Test
+    public void testGrowOnLagAndShrinkOnCatchingUp() {
+        PushBatchSizer sizer = new PushBatchSizer(4 * 1024, 64 * 1024);
+        Assertions.assertEquals(4 * 1024, sizer.getTargetSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.onSend(sizer.getTargetSize(), true);
+        }
+        Assertions.assertEquals(64 * 1024, sizer.getTargetSize());
+        //the batch filling the target on catching up keeps it
+        sizer.onSend(64 * 1024, false);
+        Assertions.assertEquals(64 * 1024, sizer.getTargetSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.onSend(100, false);
+        }
+        Assertions.assertEquals(4 * 1024, sizer.getTargetSize());
+
+        sizer.onSend(100, true);
+        sizer.reset();
+        Assertions.assertEquals(4 * 1024, sizer.getTargetSize());
+    }
+
+    @Test
+    public void testGrowOnRisingRtt() {
+        PushBatchSizer sizer = new PushBatchSizer(4 * 1024, 64 * 1024);
+        for (int i = 0; i < 10; i++) {
+            sizer.onAck(1000 + i % 3 * 100, i * 1_000_000L);
+        }
+        Assertions.assertEquals(4 * 1024, sizer.getTargetSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.onAck(20000, (10 + i) * 1_000_000L);
+        }
+        Assertions.assertEquals(64 * 1024, sizer.getTargetSize());
+    }
+
+    @Test
+    public void testMinRttExpires() {
+        PushBatchSizer sizer = new PushBatchSizer(4 * 1024, 64 * 1024);
+        sizer.onAck(1000, 0);
+        //the link got slower for good, the old minimum expires and the steady rtt does not grow the batches
+        long nowNs = MinRttFilter.WINDOW_NS + 1;
+        for (int i = 0; i < 100; i++) {
+            nowNs += 1_000_000;
+            sizer.onAck(20000, nowNs);
+        }
+        Assertions.assertEquals(4 * 1024, sizer.getTargetSize());
+        for (int i = 0; i < 10; i++) {
+            nowNs += 1_000_000;
+            sizer.onAck(60000, nowNs);
+        }
+        Assertions.assertEquals(64 * 1024, sizer.getTargetSize());
+    }
+
+    @Test
+    public void testMinLargerThanMax() {
+        PushBatchSizer sizer = new PushBatchSizer(4 * 1024, 300);
+        Assertions.assertEquals(300, sizer.getMinSize());
+        Assertions.assertEquals(300, sizer.getTargetSize());
+        sizer.onSend(300, true);
+        Assertions.assertEquals(300, sizer.getTargetSize());
+    }
+}
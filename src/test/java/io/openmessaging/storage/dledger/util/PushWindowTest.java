@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.util;
+
+import io.openmessaging.storage.dledger.utils.PushWindow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PushWindowTest {
+
+    /**
+     * Ack the full window every round trip for the given rounds, as a link limited by the window does.
+     */
+    private long ackRounds(PushWindow window, long rttUs, int rounds, long nowNs) {
+        for (int round = 0; round < rounds; round++) {
+            int size = window.getSize();
+            for (int i = 0; i < size; i++) {
+                nowNs += rttUs * 1000 / size;
+                window.onAck(rttUs, nowNs);
+            }
+        }
+        return nowNs;
+    }
+
+    @Test
+    public void testGrowOnFarLink() {
+        PushWindow window = new PushWindow(16, 1000);
+        Assertions.assertEquals(16, window.getSize());
+        ackRounds(window, 50000, 20, 0);
+        Assertions.assertEquals(1000, window.getSize());
+    }
+
+    @Test
+    public void testShrinkOnNearLink() {
+        PushWindow window = new PushWindow(16, 1000);
+        long nowNs = ackRounds(window, 50000, 20, 0);
+        Assertions.assertEquals(1000, window.getSize());
+        //10k acks per second within a rtt of 200us need 2 requests in flight
+        for (int i = 0; i < 1000; i++) {
+            nowNs += 100_000;
+            window.onAck(200, nowNs);
+        }
+        Assertions.assertEquals(16, window.getSize());
+    }
+
+    @Test
+    public void testMinRttExpires() {
+        PushWindow window = new PushWindow(16, 1000);
+        long nowNs = 0;
+        for (int i = 0; i < 1000; i++) {
+            nowNs += 100_000;
+            window.onAck(200, nowNs);
+        }
+        Assertions.assertEquals(16, window.getSize());
+        //the follower moved to a far link, the window follows once the near minimum expired
+        nowNs = ackRounds(window, 50000, 200, nowNs);
+        Assertions.assertEquals(1000, window.getSize());
+    }
+
+    @Test
+    public void testMinLargerThanMax() {
+        PushWindow window = new PushWindow(100, 10);
+        Assertions.assertEquals(10, window.getMinSize());
+        Assertions.assertEquals(10, window.getSize());
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017-2022 The DLedger Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.openmessaging.storage.dledger.util;
+
+import io.openmessaging.storage.dledger.utils.ThreadUtils;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ThreadUtilsTest {
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        if (!ThreadUtils.isVirtualThreadSupported()) {
+            return false;
+        }
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    @Test
+    public void testBlockingExecutor() throws Exception {
+        for (boolean useVirtualThread : new boolean[] {false, true}) {
+            ExecutorService executor = ThreadUtils.newBlockingExecutor("ThreadUtilsTest", useVirtualThread);
+            CompletableFuture<Thread> future = new CompletableFuture<>();
+            executor.execute(() -> future.complete(Thread.currentThread()));
+            Thread thread = future.get(3, TimeUnit.SECONDS);
+            Assertions.assertTrue(thread.getName().startsWith("ThreadUtilsTest_"), thread.getName());
+            //falls back to the platform threads if the JVM does not support the virtual threads
+            Assertions.assertEquals(useVirtualThread && ThreadUtils.isVirtualThreadSupported(), isVirtual(thread));
+            executor.shutdown();
+        }
+    }
+}